@@ -1,4 +1,6 @@
 import React, { useEffect, useState } from "react";
+import { fetchState } from "./stateCodec";
+import { fetchBuildingDetails, formatBuildingDetails } from "./buildingDetails";
 
 interface Simulation {
   currentTimeStep: number;
@@ -96,8 +98,7 @@ const App: React.FC = () => {
 
   useEffect(() => {
     // Initial fetch
-    fetch(URL + "/Simulation")
-      .then((res) => res.json())
+    fetchState(URL + "/Simulation")
       .then((data: Simulation) => {
         console.log(data);
         setSimulation(data);
@@ -109,8 +110,7 @@ const App: React.FC = () => {
 
     // Set up auto-refresh every second
     const intervalId = setInterval(() => {
-      fetch(URL + "/Simulation")
-        .then((res) => res.json())
+      fetchState(URL + "/Simulation")
         .then((data: Simulation) => {
           setSimulation(data);
         })
@@ -822,6 +822,16 @@ const App: React.FC = () => {
                           x: e.clientX,
                           y: e.clientY,
                         });
+                        // 地图中只有摘要，完整详情按需获取；鼠标已移到别处时不覆盖提示框
+                        fetchBuildingDetails(URL, buildingName)
+                          .then((details) =>
+                            setTooltip((prev) =>
+                              prev.visible && prev.text === buildingDesc
+                                ? { ...prev, text: formatBuildingDetails(details) }
+                                : prev
+                            )
+                          )
+                          .catch((err: Error) => console.error(err));
                       }}
                       onMouseMove={(e) =>
                         setTooltip((prev) => ({ ...prev, x: e.clientX, y: e.clientY }))
@@ -0,0 +1,78 @@
+// GET /Building/{name} 返回的建筑详情；地图单元格中只有摘要，悬停时才按需获取。
+
+export interface RequestInfo {
+  id: number;
+  output: string;
+  status: string;
+  requestor: string;
+}
+
+export interface BuildingDetails {
+  name: string;
+  type: string;
+  viable: boolean;
+  location: { x: number; y: number } | null;
+  markedForRemoval: boolean;
+  sources: string[];
+  storage: { [item: string]: number };
+  currentRequest: RequestInfo | null;
+  recipes?: string[];
+  mine?: string;
+  storedItem?: string;
+  capacity?: number;
+  priority?: number;
+  outstandingRequests?: number;
+  drones?: { idle: number; active: number; inConstruction: number };
+  queue: { total: number; offset: number; limit: number; requests: RequestInfo[] };
+}
+
+function formatRequest(r: RequestInfo): string {
+  return `#${r.id} ${r.output} (${r.status}, for ${r.requestor})`;
+}
+
+/**
+ * 将详情格式化为提示框文本，行标签与服务端 Building.toString() 一致。
+ */
+export function formatBuildingDetails(d: BuildingDetails): string {
+  const lines = [`Name: ${d.name}`, `Type: ${d.type}`, `Viable: ${d.viable}`];
+  if (d.location) {
+    lines.push(`LocationX: ${d.location.x}`, `LocationY: ${d.location.y}`);
+  }
+  if (d.markedForRemoval) {
+    lines.push("MarkedForRemoval: true");
+  }
+  lines.push(`Sources: [${d.sources.join(", ")}]`);
+  lines.push("CurrentRequest: " + (d.currentRequest ? formatRequest(d.currentRequest) : "None"));
+  lines.push(`RequestQueue: ${d.queue.total}`);
+  for (const r of d.queue.requests) {
+    lines.push("  - " + formatRequest(r));
+  }
+  if (d.queue.total > d.queue.offset + d.queue.requests.length) {
+    lines.push(`  ... ${d.queue.total - d.queue.offset - d.queue.requests.length} more`);
+  }
+  const storage = Object.entries(d.storage).map(([item, count]) => `${item}=${count}`);
+  lines.push(`Storage: {${storage.join(", ")}}`);
+  if (d.recipes) {
+    lines.push(`Type Recipes: [${d.recipes.join(", ")}]`);
+  }
+  if (d.mine) {
+    lines.push(`Mine: ${d.mine}`);
+  }
+  if (d.storedItem) {
+    lines.push(`StoredItem: ${d.storedItem}`, `Capacity: ${d.capacity}`,
+      `Priority: ${d.priority}`, `OutstandingRequests: ${d.outstandingRequests}`);
+  }
+  if (d.drones) {
+    lines.push(`Idle: ${d.drones.idle}`, `Active: ${d.drones.active}`,
+      `InConstruction: ${d.drones.inConstruction}`);
+  }
+  return lines.join("\n");
+}
+
+export async function fetchBuildingDetails(baseUrl: string, name: string, limit = 20): Promise<BuildingDetails> {
+  const res = await fetch(`${baseUrl}/Building/${encodeURIComponent(name)}?limit=${limit}`);
+  if (!res.ok) {
+    throw new Error(`Building ${name}: HTTP ${res.status}`);
+  }
+  return res.json();
+}
@@ -0,0 +1,225 @@
+// 二进制模拟状态（application/x-factory-state）的解码器，
+// 格式定义见服务端 BinaryStateCodec.java；解码结果与 GET /Simulation 的 JSON 结构相同。
+
+export const STATE_MEDIA_TYPE = "application/x-factory-state";
+const FORMAT_VERSION = 1;
+
+export interface DecodedSimulation {
+  currentTimeStep: number;
+  verbosityLevel: number;
+  buildings: string[];
+  recipes: string[];
+  buildableTypes: string[];
+  roadMap: (string | [string, string] | null)[][];
+}
+
+const TYPE_NAMES = ["FactoryBuilding", "MineBuilding", "StorageBuilding", "DroneBuilding", "Building"];
+const FLAG_LOCATED = 1;
+const FLAG_MARKED_FOR_REMOVAL = 2;
+
+class Reader {
+  private offset = 0;
+  private readonly view: DataView;
+  private readonly decoder = new TextDecoder();
+
+  constructor(private readonly bytes: Uint8Array) {
+    this.view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+  }
+
+  byte(): number {
+    if (this.offset >= this.bytes.length) {
+      throw new Error("Truncated simulation state");
+    }
+    return this.bytes[this.offset++];
+  }
+
+  // 无符号 LEB128；状态中的数值都在 2^53 以内
+  varint(): number {
+    let value = 0;
+    let scale = 1;
+    for (let i = 0; i < 10; i++) {
+      const b = this.byte();
+      value += (b & 0x7f) * scale;
+      if ((b & 0x80) === 0) {
+        return value;
+      }
+      scale *= 128;
+    }
+    throw new Error("Malformed varint");
+  }
+
+  zigzag(): number {
+    const raw = this.varint();
+    return raw % 2 === 0 ? raw / 2 : -(raw + 1) / 2;
+  }
+
+  float(): number {
+    if (this.offset + 4 > this.bytes.length) {
+      throw new Error("Truncated simulation state");
+    }
+    const value = this.view.getFloat32(this.offset);
+    this.offset += 4;
+    // 与 Java 的 Float.toString 一样只保留 float 精度
+    return parseFloat(value.toPrecision(7));
+  }
+
+  string(): string {
+    const length = this.varint();
+    if (this.offset + length > this.bytes.length) {
+      throw new Error("Truncated simulation state");
+    }
+    const text = this.decoder.decode(this.bytes.subarray(this.offset, this.offset + length));
+    this.offset += length;
+    return text;
+  }
+}
+
+function javaFloat(value: number): string {
+  return Number.isInteger(value) ? value.toFixed(1) : String(value);
+}
+
+function roadDigits(nibbles: number): string {
+  let digits = "";
+  for (let i = 0; i < 4; i++) {
+    const bit = 8 >> i;
+    digits += (nibbles >> 4) & bit ? "2" : nibbles & bit ? "1" : "0";
+  }
+  return digits;
+}
+
+/**
+ * 解码二进制模拟状态。建筑单元格的第二个元素是与 Building.toString()
+ * 使用相同标签（"Type: "、"Type Recipes: " 等）的描述文本。
+ */
+export function decodeState(buffer: ArrayBuffer): DecodedSimulation {
+  const r = new Reader(new Uint8Array(buffer));
+  if (r.byte() !== 0x46 || r.byte() !== 0x53 || r.byte() !== 0x54) {
+    throw new Error("Not an encoded simulation state");
+  }
+  const format = r.byte();
+  if (format !== FORMAT_VERSION) {
+    throw new Error("Unsupported state format version " + format);
+  }
+  r.varint(); // 状态版本号
+  const currentTimeStep = r.varint();
+  const verbosityLevel = r.varint();
+  r.varint(); // rate
+
+  const items: string[] = [];
+  const itemCount = r.varint();
+  const recipeCount = r.varint();
+  for (let i = 0; i < itemCount; i++) {
+    items.push(r.string());
+  }
+  const buildableTypes: string[] = [];
+  const typeCount = r.varint();
+  for (let i = 0; i < typeCount; i++) {
+    buildableTypes.push(r.string());
+  }
+
+  const roadMap: (string | [string, string] | null)[][] =
+    Array(50).fill(null).map(() => Array(50).fill(null));
+  const inBounds = (x: number, y: number) => x >= 0 && x < 50 && y >= 0 && y < 50;
+
+  const names: string[] = [];
+  const sourceIds: number[][] = [];
+  const lines: string[][] = [];
+  const positions: ([number, number] | null)[] = [];
+  const buildingCount = r.varint();
+  for (let i = 0; i < buildingCount; i++) {
+    const name = r.string();
+    const type = r.byte();
+    const flags = r.byte();
+    const head = ["Name: " + name, "Type: " + (TYPE_NAMES[type] ?? "Building")];
+    if (flags & FLAG_LOCATED) {
+      const x = r.zigzag();
+      const y = r.zigzag();
+      positions.push([x, y]);
+      head.push("LocationX: " + x, "LocationY: " + y);
+    } else {
+      positions.push(null);
+      head.push("Location: Not set");
+    }
+    const queueLength = r.varint();
+    const storage: string[] = [];
+    const inventory = r.varint();
+    for (let j = 0; j < inventory; j++) {
+      const item = items[r.varint()];
+      storage.push(item + "=" + r.varint());
+    }
+    const sources: number[] = [];
+    const sourceCount = r.varint();
+    for (let j = 0; j < sourceCount; j++) {
+      sources.push(r.varint());
+    }
+    const tail = ["QueueLength: " + queueLength, "Storage: {" + storage.join(", ") + "}"];
+    if (flags & FLAG_MARKED_FOR_REMOVAL) {
+      tail.push("MarkedForRemoval: true");
+    }
+    switch (type) {
+      case 0: {
+        const recipes: string[] = [];
+        const count = r.varint();
+        for (let j = 0; j < count; j++) {
+          recipes.push(items[r.varint()]);
+        }
+        tail.push("Type Recipes: [" + recipes.join(", ") + "]");
+        break;
+      }
+      case 1:
+        tail.push("Mine: " + items[r.varint()]);
+        break;
+      case 2:
+        tail.push("StoredItem: " + items[r.varint()], "Capacity: " + r.varint(),
+          "Priority: " + javaFloat(r.float()), "OutstandingRequests: " + r.varint());
+        break;
+      case 3:
+        tail.push("Idle: " + r.varint(), "Active: " + r.varint(), "InConstruction: " + r.varint());
+        break;
+    }
+    names.push(name);
+    sourceIds.push(sources);
+    lines.push([...head, "\u0000", ...tail]);
+  }
+  for (let i = 0; i < buildingCount; i++) {
+    const sources = "Sources: [" + sourceIds[i].map((id) => names[id]).join(", ") + "]";
+    const text = lines[i].map((line) => (line === "\u0000" ? sources : line)).join("\n") + "\n";
+    const pos = positions[i];
+    if (pos && inBounds(pos[0], pos[1])) {
+      roadMap[pos[1]][pos[0]] = [names[i], text];
+    }
+  }
+
+  const roadCount = r.varint();
+  for (let i = 0; i < roadCount; i++) {
+    const x = r.zigzag();
+    const y = r.zigzag();
+    const nibbles = r.byte();
+    if (inBounds(x, y) && roadMap[y][x] === null) {
+      roadMap[y][x] = roadDigits(nibbles);
+    }
+  }
+
+  return {
+    currentTimeStep,
+    verbosityLevel,
+    buildings: names,
+    recipes: items.slice(0, recipeCount),
+    buildableTypes,
+    roadMap,
+  };
+}
+
+/**
+ * 请求 /Simulation，优先使用二进制格式；服务端返回 JSON 时按 JSON 解析。
+ */
+export async function fetchState(url: string): Promise<DecodedSimulation> {
+  const res = await fetch(url, {
+    headers: { Accept: STATE_MEDIA_TYPE + ", application/json;q=0.5" },
+  });
+  const contentType = res.headers.get("Content-Type") ?? "";
+  if (res.ok && contentType.startsWith(STATE_MEDIA_TYPE)) {
+    return decodeState(await res.arrayBuffer());
+  }
+  return res.json();
+}
@@ -0,0 +1,210 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Worlds the benchmarks run on: the bundled inputs, and generated worlds
+ * whose size is a benchmark parameter.
+ * <p>
+ * A world is named either by a file under {@link #INPUTS} (e.g. {@code phase_demo.json})
+ * or as {@code clusters:N}, N copies of the door production chain of
+ * phase_demo laid out on a grid, each with its own mines, factories and roads.
+ */
+final class BenchmarkWorlds {
+    /** Bundled inputs, relative to the ServerProgram directory the benchmarks run in. */
+    static final String INPUTS = "src/test/resources/inputs/";
+    private static final String CLUSTERS = "clusters:";
+    // 相邻两个生产簇之间的坐标间距
+    private static final int CLUSTER_SPACING = 8;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Discards console output that does not go through an event sink, such
+     * as the parser's; the simulations themselves are given
+     * {@link EventSink#NONE} so their messages are never formatted.
+     */
+    static void silence() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Parses a world's scenario.
+     *
+     * @param world a bundled file name or {@code clusters:N}.
+     * @return the scenario JSON.
+     */
+    static JsonNode scenario(String world) {
+        if (world.startsWith(CLUSTERS)) {
+            return toNode(clusters(Integer.parseInt(world.substring(CLUSTERS.length()))));
+        }
+        try {
+            return new SimulationParser().parseJsonFile(INPUTS + world);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a simulation from a scenario, the same way sessions do, or the
+     * way Main does for the older format without coordinates and type info
+     * (doors1.json).
+     *
+     * @param json the scenario.
+     * @return the simulation.
+     */
+    static BasicSimulation create(JsonNode json) {
+        SimulationParser parser = new SimulationParser();
+        try {
+            if (!json.path("types").path(0).has("info")) {
+                Map<String, Recipe> recipes = parser.parseRecipes(json);
+                Map<String, BuildingType> types = parser.parseTypes(json, recipes);
+                Map<String, Building> buildings = parser.parseBuildings(json, types, recipes);
+                parser.validateInput(buildings, recipes);
+                BasicSimulation simulation = BasicSimulation.createSimulation(buildings, recipes, types);
+                parser.parseConnections(json, simulation);
+                simulation.setEventSink(EventSink.NONE);
+                return simulation;
+            }
+            BasicSimulation simulation = ScenarioCatalog.parse(parser, json).createSimulation(parser, json);
+            simulation.setEventSink(EventSink.NONE);
+            return simulation;
+        } catch (SimulationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static BasicSimulation open(String world) {
+        return create(scenario(world));
+    }
+
+    /**
+     * Orders the first output of every factory, several times over, so the
+     * engine has work for many ticks. Orders a world cannot fulfil are skipped.
+     *
+     * @param sim    the simulation.
+     * @param rounds how many orders per factory.
+     */
+    static void placeOrders(BasicSimulation sim, int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            for (Building b : sim.getBuildings().values()) {
+                if (b instanceof FactoryBuilding && !b.getProvidedOutputs().isEmpty()) {
+                    sim.executeCommand("request '" + b.getProvidedOutputs().get(0) + "' from '" + b.getName() + "'");
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates N door production clusters on a square grid. Cluster k has
+     * buildings M_k, W_k, Ha_k, Hi_k, Fdoor_k and S_k connected like phase_demo.
+     *
+     * @param n the number of clusters.
+     * @return the scenario JSON.
+     */
+    static JSONObject clusters(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("clusters must be at least 1");
+        }
+        JSONObject json = new JSONObject();
+        json.put("recipes", new JSONArray()
+                .put(recipe("wood", new JSONObject(), 1))
+                .put(recipe("metal", new JSONObject(), 1))
+                .put(recipe("handle", new JSONObject().put("metal", 1), 5))
+                .put(recipe("hinge", new JSONObject().put("metal", 1), 1))
+                .put(recipe("door", new JSONObject().put("wood", 1).put("handle", 1).put("hinge", 3), 12)));
+        json.put("types", new JSONArray()
+                .put(mineType("Metal Mine", "metal"))
+                .put(mineType("Wood Mine", "wood"))
+                .put(factoryType("Handle Factory", "handle"))
+                .put(factoryType("Hinge Factory", "hinge"))
+                .put(factoryType("Door Factory", "door"))
+                .put(new JSONObject().put("name", "Hinge Storage").put("type", "storage")
+                        .put("info", new JSONObject().put("stores", "hinge").put("capacity", 100).put("priority", 1.7))));
+
+        JSONArray buildings = new JSONArray();
+        JSONArray connections = new JSONArray();
+        int side = (int) Math.ceil(Math.sqrt(n));
+        for (int k = 0; k < n; k++) {
+            int x = (k % side) * CLUSTER_SPACING;
+            int y = (k / side) * CLUSTER_SPACING;
+            buildings.put(building("M_" + k, "Metal Mine", x + 1, y + 1));
+            buildings.put(building("W_" + k, "Wood Mine", x + 6, y + 5));
+            buildings.put(building("Ha_" + k, "Handle Factory", x + 4, y + 1, "M_" + k));
+            buildings.put(building("Hi_" + k, "Hinge Factory", x + 1, y + 4, "M_" + k));
+            buildings.put(building("Fdoor_" + k, "Door Factory", x + 4, y + 4, "W_" + k, "Ha_" + k, "Hi_" + k));
+            buildings.put(building("S_" + k, "Hinge Storage", x + 1, y + 6, "Hi_" + k));
+            for (String[] c : new String[][] {{"M_", "Ha_"}, {"M_", "Hi_"}, {"W_", "Fdoor_"}, {"Ha_", "Fdoor_"},
+                    {"Hi_", "Fdoor_"}, {"Hi_", "S_"}}) {
+                connections.put(connection(c[0] + k, c[1] + k));
+            }
+        }
+        json.put("buildings", buildings);
+        json.put("connections", connections);
+        return json;
+    }
+
+    /**
+     * Generates a bill of materials D levels deep: part0 is mined, and each
+     * part_i needs two part_{i-1}, so one order for part_D expands into
+     * 2^(D+1) - 1 requests. Factory F_i makes part_i from F_{i-1}'s output.
+     *
+     * @param depth the number of factory levels.
+     * @return the scenario JSON.
+     */
+    static JSONObject chain(int depth) {
+        JSONArray recipes = new JSONArray().put(recipe("part0", new JSONObject(), 1));
+        JSONArray types = new JSONArray().put(mineType("Part Mine", "part0"));
+        JSONArray buildings = new JSONArray().put(building("F_0", "Part Mine", 1, 1));
+        JSONArray connections = new JSONArray();
+        for (int i = 1; i <= depth; i++) {
+            recipes.put(recipe("part" + i, new JSONObject().put("part" + (i - 1), 2), 1));
+            types.put(factoryType("Part " + i + " Factory", "part" + i));
+            buildings.put(building("F_" + i, "Part " + i + " Factory", 1 + 4 * i, 1, "F_" + (i - 1)));
+            connections.put(connection("F_" + (i - 1), "F_" + i));
+        }
+        return new JSONObject().put("recipes", recipes).put("types", types)
+                .put("buildings", buildings).put("connections", connections);
+    }
+
+    static JsonNode toNode(JSONObject json) {
+        try {
+            return new ObjectMapper().readTree(json.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JSONObject recipe(String output, JSONObject ingredients, int latency) {
+        return new JSONObject().put("output", output).put("ingredients", ingredients).put("latency", latency);
+    }
+
+    private static JSONObject mineType(String name, String item) {
+        return new JSONObject().put("name", name).put("type", "mine").put("info", new JSONObject().put("mine", item));
+    }
+
+    private static JSONObject factoryType(String name, String recipe) {
+        return new JSONObject().put("name", name).put("type", "factory")
+                .put("info", new JSONObject().put("recipes", new JSONArray().put(recipe)));
+    }
+
+    private static JSONObject building(String name, String type, int x, int y, String... sources) {
+        return new JSONObject().put("name", name).put("type", type).put("sources", new JSONArray(sources))
+                .put("x", x).put("y", y);
+    }
+
+    private static JSONObject connection(String source, String destination) {
+        return new JSONObject().put("source", source).put("destination", destination);
+    }
+}
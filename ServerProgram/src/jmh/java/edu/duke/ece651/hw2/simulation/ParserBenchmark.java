@@ -0,0 +1,37 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Loading a scenario end to end: reading and parsing the file, building the
+ * catalog and buildings, validating, and laying the roads for its connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+    @Param({"phase_demo.json", "phase3_1.json", "doors1.json"})
+    public String file;
+
+    private final SimulationParser parser = new SimulationParser();
+
+    @Setup
+    public void setUp() {
+        BenchmarkWorlds.silence();
+    }
+
+    @Benchmark
+    public BasicSimulation load() throws IOException {
+        return BenchmarkWorlds.create(parser.parseJsonFile(BenchmarkWorlds.INPUTS + file));
+    }
+}
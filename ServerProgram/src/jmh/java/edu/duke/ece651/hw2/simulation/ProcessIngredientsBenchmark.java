@@ -0,0 +1,62 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Expanding one order through a deep bill of materials (see
+ * {@link BenchmarkWorlds#chain}): an order for part_D creates 2^(D+1) - 1
+ * requests across D + 1 buildings. Each invocation starts from a fresh
+ * world so queues do not grow from one invocation to the next.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessIngredientsBenchmark {
+    @Param({"6", "8", "10"})
+    public int depth;
+
+    private JsonNode scenario;
+    private BasicSimulation sim;
+    private Building top;
+    private Request order;
+
+    @Setup(Level.Trial)
+    public void parse() {
+        BenchmarkWorlds.silence();
+        scenario = BenchmarkWorlds.toNode(BenchmarkWorlds.chain(depth));
+    }
+
+    // 每次调用前重建世界，建世界的时间不计入测量
+    @Setup(Level.Invocation)
+    public void setUp() {
+        sim = BenchmarkWorlds.create(scenario);
+        top = sim.getBuildings().get("F_" + depth);
+        order = new Request(sim.getNextRequestId(), sim.getRecipe("part" + depth), null, true, 0);
+        top.addRequest(order);
+    }
+
+    @Benchmark
+    public int processIngredients() {
+        RequestRegistry registry = sim.getRequestRegistry();
+        registry.register(order, top);
+        registry.enter(order);
+        try {
+            top.processIngredients("part" + depth);
+        } finally {
+            registry.exit();
+        }
+        return sim.peekNextRequestId();
+    }
+}
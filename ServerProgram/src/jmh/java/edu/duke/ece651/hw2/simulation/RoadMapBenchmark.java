@@ -0,0 +1,55 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Path finding on a generated world: planning a new path corner to corner
+ * across the whole grid, and the road distance between two connected
+ * buildings. The generated worlds have no drone port, so
+ * {@link RoadMap#getShortestDistance} dispatches no drone and the map is
+ * left unchanged between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoadMapBenchmark {
+    @Param({"4", "36"})
+    public int clusters;
+
+    private RoadMap map;
+    private Building farSource;
+    private Building farDest;
+    private Building source;
+    private Building dest;
+
+    @Setup
+    public void setUp() {
+        BenchmarkWorlds.silence();
+        BasicSimulation sim = BenchmarkWorlds.open("clusters:" + clusters);
+        map = sim.getRoadMap();
+        farSource = sim.getBuildings().get("M_0");
+        farDest = sim.getBuildings().get("Fdoor_" + (clusters - 1));
+        source = sim.getBuildings().get("Hi_0");
+        dest = sim.getBuildings().get("Fdoor_0");
+    }
+
+    @Benchmark
+    public List<Coordinate> optimalPath() {
+        return map.getOptimalPath(farSource, farDest);
+    }
+
+    @Benchmark
+    public int shortestDistance() {
+        return map.getShortestDistance(source, dest);
+    }
+}
@@ -0,0 +1,43 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * FIFO recipe selection at a factory with a long queue in which no request
+ * is ready: the worst case, a full scan that selects nothing and leaves the
+ * queue as it was.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectNextRequestBenchmark {
+    @Param({"100", "10000"})
+    public int queueLength;
+
+    private FactoryBuilding factory;
+
+    @Setup
+    public void setUp() {
+        BenchmarkWorlds.silence();
+        BasicSimulation sim = BenchmarkWorlds.open("phase_demo.json");
+        factory = (FactoryBuilding) sim.getBuildings().get("Fdoor");
+        Recipe door = sim.getRecipe("door");
+        for (int i = 0; i < queueLength; i++) {
+            factory.addRequest(new Request(i, door, null, true, 0));
+        }
+    }
+
+    @Benchmark
+    public Request selectNextRequest() {
+        return factory.selectNextRequest(0, 0);
+    }
+}
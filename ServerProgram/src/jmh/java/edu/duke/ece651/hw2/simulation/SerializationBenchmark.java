@@ -0,0 +1,45 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rendering the full state for clients, on a world that has been running
+ * with orders in flight so queues, storage and roads are populated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    @Param({"phase_demo.json", "clusters:36"})
+    public String world;
+
+    private BasicSimulation sim;
+
+    @Setup
+    public void setUp() {
+        BenchmarkWorlds.silence();
+        sim = BenchmarkWorlds.open(world);
+        BenchmarkWorlds.placeOrders(sim, 20);
+        sim.step(25);
+    }
+
+    @Benchmark
+    public JSONObject toSerializable() {
+        return sim.toSerializable();
+    }
+
+    @Benchmark
+    public String toJsonString() {
+        return sim.toSerializable().toString();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of one engine tick with orders in flight.
+ * <p>
+ * Every iteration starts from a freshly loaded world with
+ * {@link #ORDER_ROUNDS} orders per factory and runs {@link #BUSY_TICKS} ticks
+ * once, reported per tick. Those orders keep every world busy for about 2,400
+ * ticks, so all measured ticks have work to do; a time-based iteration would
+ * mostly measure idle ticks after the orders drain. With {@code journal=true}
+ * the simulation also writes an {@link EventJournal} to a temporary directory,
+ * over the same busy ticks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StepBenchmark {
+    static final int ORDER_ROUNDS = 200;
+    /** Ticks measured per iteration; well inside the busy window of the orders. */
+    static final int BUSY_TICKS = 1000;
+
+    @Param({"phase_demo.json", "clusters:4", "clusters:36"})
+    public String world;
+
+    @Param({"false", "true"})
+    public boolean journal;
+
+    private BasicSimulation sim;
+    private Path journalDir;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        BenchmarkWorlds.silence();
+        sim = BenchmarkWorlds.open(world);
+        if (journal) {
+            journalDir = Files.createTempDirectory("journal");
+            sim.setJournal(new EventJournal(journalDir, EventJournal.DEFAULT_SEGMENT_BYTES));
+        }
+        BenchmarkWorlds.placeOrders(sim, ORDER_ROUNDS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        sim.closeJournal();
+        if (journalDir != null) {
+            try (Stream<Path> files = Files.walk(journalDir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+            journalDir = null;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BUSY_TICKS)
+    public int step() {
+        for (int i = 0; i < BUSY_TICKS; i++) {
+            sim.step(1);
+        }
+        return sim.getCurrentTimeStep();
+    }
+}
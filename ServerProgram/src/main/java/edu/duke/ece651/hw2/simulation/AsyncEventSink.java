@@ -0,0 +1,125 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands messages to a background thread that writes them through a buffer.
+ * <p>
+ * The engine thread only filters by level and offers the message to a
+ * bounded queue; it never waits for the output. The writer drains the queue
+ * in batches and flushes once it is empty, so a slow log collector costs
+ * throughput of the writer thread, not tick time. If the queue is full the
+ * message is dropped and counted rather than blocking the engine.
+ * WARN and ERROR messages are prefixed with their level; others are written
+ * as they are.
+ */
+public class AsyncEventSink implements EventSink, AutoCloseable {
+    /** Number of messages that can wait for the writer by default. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final Level threshold;
+    private final BlockingQueue<String> queue;
+    private final Writer out;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Constructs an AsyncEventSink and starts its writer thread.
+     *
+     * @param out       where to write; closed by {@link #close()} unless it is
+     *                  {@code System.out} or {@code System.err}.
+     * @param threshold the least severe level written.
+     * @param capacity  how many messages may wait for the writer.
+     */
+    public AsyncEventSink(OutputStream out, Level threshold, int capacity) {
+        this.threshold = threshold;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        boolean console = out == System.out || out == System.err;
+        this.writer = new Thread(() -> drain(console), "event-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) <= 0;
+    }
+
+    @Override
+    public void emit(Level level, String message) {
+        if (closed || !isEnabled(level)) {
+            return;
+        }
+        String line = level == Level.ERROR || level == Level.WARN ? level + " " + message : message;
+        if (!queue.offer(line)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Gets the number of messages dropped because the queue was full.
+     *
+     * @return the count.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain(boolean console) {
+        List<String> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (String line : batch) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                batch.clear();
+                // 队列暂时空了才刷新，积压时一次写出一批
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+            if (!console) {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Event sink stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting messages, waits for the queued ones to be written and
+     * stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
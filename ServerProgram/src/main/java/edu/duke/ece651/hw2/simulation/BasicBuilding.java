@@ -1,9 +1,11 @@
 package edu.duke.ece651.hw2.simulation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract implementation of the Building interface with common functionality.
@@ -18,6 +20,18 @@ public abstract class BasicBuilding implements Building {
     protected Coordinate location;
     protected boolean markedForRemoval = false;  // Flag to indicate if the building is marked for removal
     protected BasicSimulation simulation;
+    // 详情版本号：队列、当前请求、库存、来源、位置等可能改变详情输出的修改都会使其递增
+    protected long version;
+    // 进程内唯一的实例编号；同名建筑被移除后重建时，版本号只有与编号一起才可比较
+    private static final AtomicLong NEXT_INSTANCE_ID = new AtomicLong();
+    private final long instanceId = NEXT_INSTANCE_ID.incrementAndGet();
+    // 可行性缓存：记录计算时道路图的可达性计数，只有可能影响结果的变化发生后才重新计算
+    private boolean viable;
+    private boolean viabilityKnown;
+    private RoadMap viabilityMap;
+    private long checkedReachGain;
+    private long checkedReachLoss;
+    private final Utilisation utilisation = new Utilisation();
 
     /**
      * Constructs a BasicBuilding.
@@ -42,6 +56,29 @@ public abstract class BasicBuilding implements Building {
     @Override
     public void setLocation(Coordinate location) {
         this.location = location;
+        markChanged();
+    }
+
+    /**
+     * Gets the building's detail version, bumped whenever its queue, current
+     * request, storage, sources, location or removal mark may have changed.
+     * Details rendered at one version stay valid until it changes.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Records that the building's details have (possibly) changed.
+     */
+    protected void markChanged() {
+        version++;
     }
 
     @Override
@@ -64,10 +101,22 @@ public abstract class BasicBuilding implements Building {
         return simulation;
     }
 
+    /**
+     * Gets where this building's messages go: its simulation's sink, or the
+     * console while it belongs to none.
+     *
+     * @return the event sink.
+     */
+    protected EventSink events() {
+        return simulation == null ? ConsoleEventSink.INSTANCE : simulation.getEventSink();
+    }
+
     @Override
     public void addSource(String source) {
         if (!sources.contains(source)) {
             sources.add(source);
+            viabilityKnown = false;
+            markChanged();
         }
     }
 
@@ -76,6 +125,7 @@ public abstract class BasicBuilding implements Building {
     public void addRequest(Request request) {
         // idle function, to be implemented by subclasses
         requestQueue.add(request);
+        markChanged();
     }
 
     @Override
@@ -88,6 +138,7 @@ public abstract class BasicBuilding implements Building {
     public void deliverItem(String item, int quantity) {
         // Add the delivered item to storage
         storage.put(item, storage.getOrDefault(item, 0) + quantity);
+        markChanged();
     }
 
     @Override
@@ -103,16 +154,46 @@ public abstract class BasicBuilding implements Building {
     }
 
 
+    /**
+     * Assigns the ingredients of a request for an item to source buildings,
+     * see {@link #planIngredients}, and reports it as a
+     * {@link EngineEvents.IngredientPlanning} flight recorder event.
+     *
+     * @param item the item requested from this building.
+     */
     @Override
     public void processIngredients(String item) {
+        EngineEvents.IngredientPlanning event = new EngineEvents.IngredientPlanning();
+        event.begin();
+        int firstId = simulation.peekNextRequestId();
+        try {
+            planIngredients(item);
+        } finally {
+            if (event.shouldCommit()) {
+                event.building = name;
+                event.item = item;
+                event.depth = simulation.getRequestRegistry().getPlanningDepth();
+                event.requestsCreated = simulation.peekNextRequestId() - firstId;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Requests each ingredient of an item from the source with the shortest
+     * queue, then plans that request's ingredients in turn.
+     *
+     * @param item the item requested from this building.
+     */
+    protected void planIngredients(String item) {
         int verbosity = simulation.getVerbosity();
         Map<String, Recipe> recipeMap = simulation.getRecipes();
         Recipe recipe = recipeMap.get(item);
         Map<String, Integer> ingredients = recipe.getIngredients();
         Map<String, Building> buildingMap = simulation.getBuildings();
         
-        if (verbosity >= 2) {
-            System.out.println("[source selection]: " + this.getName() + " (qlen) has request for " + item + " on " + simulation.getCurrentTimeStep());
+        if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+            events().emit(EventSink.Level.INFO, "[source selection]: " + this.getName() + " (qlen) has request for " + item + " on " + simulation.getCurrentTimeStep());
         }
         
         // If is mine recipe, return directly
@@ -131,8 +212,8 @@ public abstract class BasicBuilding implements Building {
             int count = ingredients.get(ingredient);
             // Process each quantity of this ingredient
             for (int i = 0; i < count; i++) {
-                if (verbosity >= 2) {
-                    System.out.println("[" + this.getName() + ":" + item + ":" + idx + "] For ingredient " + ingredient);
+                if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "[" + this.getName() + ":" + item + ":" + idx + "] For ingredient " + ingredient);
                 }
                 idx++;
 
@@ -162,8 +243,8 @@ public abstract class BasicBuilding implements Building {
                             queueLength = b.getQueueLength();
                         }
                 
-                        if (verbosity >= 2) {
-                            System.out.println("    " + b.getName() + ": " + b.getQueueLength());
+                        if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+                            events().emit(EventSink.Level.INFO, "    " + b.getName() + ": " + b.getQueueLength());
                         }
                         
                         if (queueLength < minRequest) {
@@ -177,20 +258,26 @@ public abstract class BasicBuilding implements Building {
                     throw new RuntimeException("No building can produce " + ingredient);
                 }
                 
-                if (verbosity >= 2) {
-                    System.out.println("    Selecting " + resBuilding.getName());
+                if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "    Selecting " + resBuilding.getName());
                 }
                 
-                if (verbosity >= 1) {
-                    System.out.println("[ingredient assignment]: " + ingredient + " assigned to " + 
+                if (verbosity >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "[ingredient assignment]: " + ingredient + " assigned to " + 
                                     resBuilding.getName() + " to deliver to " + this.getName());
                 }
                 
                 Request newRequest = new Request(simulation.getNextRequestId(), r, this, false, simulation.getCurrentTimeStep());
                 resBuilding.addRequest(newRequest);
+                simulation.getRequestRegistry().register(newRequest, resBuilding);
                 
                 // DFS: process this ingredient's dependencies before moving to the next
-                resBuilding.processIngredients(r.getOutput());
+                simulation.getRequestRegistry().enter(newRequest);
+                try {
+                    resBuilding.processIngredients(r.getOutput());
+                } finally {
+                    simulation.getRequestRegistry().exit();
+                }
             }
         }
     }
@@ -205,6 +292,7 @@ public abstract class BasicBuilding implements Building {
     @Override
     public void markForRemoval() {
         this.markedForRemoval = true;
+        markChanged();
     }
 
     @Override
@@ -212,8 +300,116 @@ public abstract class BasicBuilding implements Building {
         return markedForRemoval;
     }
 
+    /**
+     * Gets the items currently held by this building.
+     *
+     * @return read-only view of item names to quantities.
+     */
+    public Map<String, Integer> getStorage() {
+        return Collections.unmodifiableMap(storage);
+    }
+
+    /**
+     * Gets the request being processed, if any.
+     *
+     * @return the current request, or null.
+     */
+    public Request getCurrentRequest() {
+        return currentRequest;
+    }
+
+    /**
+     * Gets the number of steps left on the current request.
+     *
+     * @return the remaining time; 0 when idle.
+     */
+    public int getRemainingTime() {
+        return remainingTime;
+    }
+
+    /**
+     * Gets the number of requests waiting in the queue, not counting the current one.
+     *
+     * @return the waiting request count.
+     */
+    public int getQueuedRequestCount() {
+        return requestQueue.size();
+    }
+
+    /**
+     * Gets a page of the waiting requests, in queue order.
+     *
+     * @param offset index of the first request to return.
+     * @param limit  maximum number of requests to return.
+     * @return copy of the requested slice; empty if offset is past the end.
+     */
+    public List<Request> getQueuedRequests(int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, requestQueue.size()));
+        int to = (int) Math.min((long) from + Math.max(0, limit), requestQueue.size());
+        return new ArrayList<>(requestQueue.subList(from, to));
+    }
+
+    /**
+     * Gets whether this building can obtain everything it may need. The result
+     * is cached and recomputed only after its sources change or the road map
+     * reports a change that could flip it: a viable building is rechecked only
+     * after something was removed, a non-viable one only after something was
+     * added.
+     *
+     * @return true if the building is viable.
+     */
     @Override
     public boolean isViable() {
+        if (simulation == null) {
+            return computeViability();
+        }
+        RoadMap map = simulation.getRoadMap();
+        boolean stale = !viabilityKnown || map != viabilityMap
+                || (viable ? map.getReachLossVersion() != checkedReachLoss
+                        : map.getReachGainVersion() != checkedReachGain);
+        if (stale) {
+            EngineMetrics.VIABILITY_CACHE_MISSES.increment();
+            viable = computeViability();
+            viabilityKnown = true;
+            viabilityMap = map;
+            checkedReachGain = map.getReachGainVersion();
+            checkedReachLoss = map.getReachLossVersion();
+        } else {
+            EngineMetrics.VIABILITY_CACHE_HITS.increment();
+        }
+        return viable;
+    }
+
+    /**
+     * Records how this building spent the time step that was just processed.
+     * Called by the simulation after {@link #step}.
+     *
+     * @param completedWork whether the building completed a request this step.
+     */
+    public void recordUtilisation(boolean completedWork) {
+        Utilisation.State state;
+        if (currentRequest != null || completedWork) {
+            state = Utilisation.State.BUSY;
+        } else if (requestQueue.isEmpty()) {
+            state = Utilisation.State.IDLE;
+        } else {
+            // 有排队的请求却没有开工：原料还能到达就是等待原料，否则是被阻塞
+            state = isViable() ? Utilisation.State.STARVED : Utilisation.State.BLOCKED;
+        }
+        utilisation.record(state);
+    }
+
+    public Utilisation getUtilisation() {
+        return utilisation;
+    }
+
+    /**
+     * Computes viability from scratch; called by {@link #isViable()} when the
+     * cached value may be out of date.
+     *
+     * @return true if the building is viable.
+     */
+    protected boolean computeViability() {
         // idle function for abstraction
         return true;
     }
@@ -3,6 +3,7 @@ package edu.duke.ece651.hw2.simulation;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -23,13 +24,30 @@ public class BasicSimulation implements Simulation {
     private Map<String, BuildingType> buildingTypes;
     private int verbosityLevel;
     private int nextRequestId;
-    private List<Request> userRequests;
+    // 未完成的用户订单，按 id 索引，保持下单顺序
+    private Map<Integer, Request> userRequests;
     private CommandProcessor commandProcessor;
     private RoadMap roadMap;
     // delayed delivery
     private List<DelayedDelivery> delayedDeliveries = new ArrayList<>();
     // buildabletypes
     private Map<String, BuildableType> buildableTypes = new HashMap<>();
+    // 状态版本号：任何可能改变 toSerializable() 输出的操作都会使其递增
+    private long version;
+    // 上一个时间步结束时仍有工作的建筑数；-1 表示之后有命令改变了状态，需要重新统计
+    private int busyBuildings = -1;
+    // 所有请求的生命周期索引（状态、父子关系、完成时间）
+    private final RequestRegistry requestRegistry = new RequestRegistry(this);
+    // 慢时间步追踪；未设置预算时为 null，不产生任何开销
+    private TickTracer tickTracer;
+    // 文本输出的去向；默认与以前一样直接写控制台
+    private EventSink events = ConsoleEventSink.INSTANCE;
+    // 审计日志；未启用时为 null
+    private EventJournal journal;
+    // 命令日志，用于重放；未启用时为 null
+    private CommandLog commandLog;
+    // 正在执行一条要记录的命令；期间不写检查点
+    private boolean inLoggedCommand;
 
 
     /**
@@ -47,7 +65,7 @@ public class BasicSimulation implements Simulation {
         this.buildingTypes = buildingTypes;
         this.verbosityLevel = 0;
         this.nextRequestId = 0;
-        this.userRequests = new ArrayList<>();
+        this.userRequests = new LinkedHashMap<>();
         this.commandProcessor = new CommandProcessor(this);
         this.roadMap = new RoadMap();
         this.delayedDeliveries = new ArrayList<>();
@@ -69,7 +87,7 @@ public class BasicSimulation implements Simulation {
         this.buildingTypes = buildingTypes;
         this.verbosityLevel = 0;
         this.nextRequestId = 0;
-        this.userRequests = new ArrayList<>();
+        this.userRequests = new LinkedHashMap<>();
         this.commandProcessor = new CommandProcessor(this);
         this.roadMap = new RoadMap();
 
@@ -111,7 +129,9 @@ public class BasicSimulation implements Simulation {
      * @param request the Request object.
      */
     public void addRequest(Request request) {
-        userRequests.add(request);
+        markChanged();
+        userRequests.put(request.getId(), request);
+        requestRegistry.register(request, null);
         nextRequestId++;
     }
 
@@ -136,7 +156,91 @@ public class BasicSimulation implements Simulation {
 
     @Override
     public void processCommand(String command) {
-        commandProcessor.processCommand(command);
+        markChanged();
+        Command cmd;
+        try {
+            cmd = parseCommand(command);
+        } catch (SimulationException e) {
+            events.emit(EventSink.Level.WARN, "Error: " + e.getMessage());
+            return;
+        }
+        int start = beginCommand(cmd);
+        boolean accepted = false;
+        try {
+            cmd.execute(this);
+            accepted = true;
+        } catch (SimulationException e) {
+            events.emit(EventSink.Level.WARN, "Error: " + e.getMessage());
+        } finally {
+            endCommand(command, start, accepted);
+        }
+    }
+
+    /**
+     * Executes a list of commands in order and reports the outcome of each.
+     * A failing command does not stop the ones after it.
+     *
+     * @param commands the command strings to execute.
+     * @return one result per command, in the same order.
+     */
+    public List<CommandResult> processCommands(List<String> commands) {
+        List<CommandResult> results = new ArrayList<>();
+        for (String command : commands) {
+            results.add(executeCommand(command));
+        }
+        return results;
+    }
+
+    /**
+     * Executes one command and reports its outcome. Read-only commands (see
+     * {@link Command#isReadOnly()}) do not bump the version, so the cached
+     * state snapshot is still served after them.
+     *
+     * @param command the command string.
+     * @return the result of the command.
+     */
+    public CommandResult executeCommand(String command) {
+        Command cmd;
+        try {
+            cmd = parseCommand(command);
+        } catch (SimulationException e) {
+            return CommandResult.failure(command, e.getMessage(), currentTimeStep);
+        }
+        int start = beginCommand(cmd);
+        CommandResult result = commandProcessor.executeCommand(cmd, command);
+        endCommand(command, start, result.isSuccess());
+        return result;
+    }
+
+    // 命令开始：改变状态的命令提升版本，有命令日志时暂停检查点
+    private int beginCommand(Command cmd) {
+        if (!cmd.isReadOnly()) {
+            markChanged();
+            inLoggedCommand = commandLog != null;
+        }
+        return currentTimeStep;
+    }
+
+    /**
+     * Logs a command once it has run, at the time step it started at. A failed
+     * command is logged only if it advanced time (e.g. "step until" hitting its
+     * cap), since that changed the state. Checkpoints are held back while the
+     * command runs; if it crossed one, a single checkpoint follows its entry,
+     * so a replay runs the command before checking the hash.
+     */
+    private void endCommand(String command, int start, boolean accepted) {
+        if (!inLoggedCommand) {
+            return;
+        }
+        inLoggedCommand = false;
+        if (commandLog == null || !accepted && currentTimeStep == start) {
+            return;
+        }
+        commandLog.command(start, command);
+        int interval = commandLog.getCheckpointInterval();
+        if (currentTimeStep / interval != start / interval) {
+            commandLog.checkpoint(this);
+        }
     }
 
     /**
@@ -148,19 +252,44 @@ public class BasicSimulation implements Simulation {
      * @param deliveryTime the time step when the delivery should arrive.
      */
     public void scheduleDelivery(Building source, Building destination, String item, int quantity, int deliveryTime) {
-        delayedDeliveries.add(new DelayedDelivery(source, destination, item, quantity, deliveryTime));
+        scheduleDelivery(source, destination, item, quantity, deliveryTime, null);
+    }
+
+    /**
+     * Schedules the delivery of a request's output; its arrival is recorded
+     * in the request registry.
+     *
+     * @param destination the building that will receive the item.
+     * @param item the item type to be delivered.
+     * @param quantity the quantity of the item.
+     * @param deliveryTime the time step when the delivery should arrive.
+     * @param request the request whose output this is, or null.
+     */
+    public void scheduleDelivery(Building source, Building destination, String item, int quantity, int deliveryTime,
+                                 Request request) {
+        delayedDeliveries.add(new DelayedDelivery(source, destination, item, quantity, deliveryTime, request));
+        EngineMetrics.DELIVERIES_SCHEDULED.increment();
     }
 
     @Override
     public void step(int steps) {
         if (steps < 0) {
-            System.err.println("Error: Steps must be at least 1");
+            events.emit(EventSink.Level.ERROR, "Error: Steps must be at least 1");
             return;
         }
-        
+        markChanged();
+
         for (int i = 0; i < steps; i++) {
             processSingleTimeStep();
             currentTimeStep++;
+            checkpoint();
+        }
+    }
+
+    // 按命令日志的间隔记录状态哈希
+    private void checkpoint() {
+        if (commandLog != null && !inLoggedCommand && currentTimeStep % commandLog.getCheckpointInterval() == 0) {
+            commandLog.checkpoint(this);
         }
     }
 
@@ -212,45 +341,98 @@ public class BasicSimulation implements Simulation {
      * Calls step() on all buildings and processes completed requests.
      */
     private void processSingleTimeStep() {
+        long started = System.nanoTime();
+        EngineEvents.Tick tick = new EngineEvents.Tick();
+        tick.begin();
+        TickTracer tracer = tickTracer;
+        if (tracer != null) {
+            tracer.beginTick();
+        }
         // Process delayed deliveries that are due at the current time step
-        processDelayedDeliveries();
+        processDelayedDeliveries(tracer);
         List<Request> completedRequests = new ArrayList<>();
         List<Building> orderedBuildings = getTopOrder(buildings);
 
         // Process all buildings in order
         for (Building building : orderedBuildings) {
             // check which building goes wrong
-            System.out.println("Processing building: " + building.getName());
+            if (events.isEnabled(EventSink.Level.DEBUG)) {
+                events.emit(EventSink.Level.DEBUG, "Processing building: " + building.getName());
+            }
+            EngineEvents.BuildingStep event = new EngineEvents.BuildingStep();
+            event.begin();
+            long stepStarted = 0;
+            if (tracer != null) {
+                tracer.enterBuilding(building.getName());
+                stepStarted = System.nanoTime();
+            }
             List<Request> buildingCompletedRequests = building.step(currentTimeStep, verbosityLevel);
+            if (tracer != null) {
+                tracer.building(building.getName(), System.nanoTime() - stepStarted);
+            }
+            if (event.shouldCommit()) {
+                event.building = building.getName();
+                event.type = building.getClass().getSimpleName();
+                event.timeStep = currentTimeStep;
+                event.queueLength = building.getQueueLength();
+                event.completedRequests = buildingCompletedRequests.size();
+                event.commit();
+            }
             completedRequests.addAll(buildingCompletedRequests);
+            if (building instanceof BasicBuilding basic) {
+                basic.recordUtilisation(!buildingCompletedRequests.isEmpty());
+            }
         }
 
         // Process completed requests
         for (Request request : completedRequests) {
+            requestRegistry.completed(request, currentTimeStep + 1);
             if (request.isUserRequest()) {
-                userRequests.remove(request);
+                userRequests.remove(request.getId());
             }
         }
 
         // Check for buildings marked for removal, if marked and can be removed, remove them
         checkBuildingsMarkedForRemoval();
+        // 所有建筑都走完之后再数：仓库补货可能给本轮已经处理过的上游建筑加请求
+        busyBuildings = countBusyBuildings();
+        EngineMetrics.TICKS.increment();
+        long elapsed = System.nanoTime() - started;
+        EngineMetrics.TICK_SECONDS.observeNanos(elapsed);
+        if (tracer != null) {
+            tracer.endTick(currentTimeStep, elapsed);
+        }
+        if (tick.shouldCommit()) {
+            tick.timeStep = currentTimeStep;
+            tick.buildings = orderedBuildings.size();
+            tick.busyBuildings = busyBuildings;
+            tick.completedRequests = completedRequests.size();
+            tick.deliveriesInFlight = delayedDeliveries.size();
+            tick.commit();
+        }
     }
 
     /**
      * Processes all delayed deliveries that are due at the current time step.
      * Removes processed deliveries from the queue.
+     *
+     * @param tracer the slow time step tracer, or null.
      */
-    private void processDelayedDeliveries() {
+    private void processDelayedDeliveries(TickTracer tracer) {
         Iterator<DelayedDelivery> iterator = delayedDeliveries.iterator();
         while (iterator.hasNext()) {
             DelayedDelivery delivery = iterator.next();
             if (delivery.getDeliveryTime() <= currentTimeStep) {
+                long deliveryStarted = tracer == null ? 0 : System.nanoTime();
                 // 物品到达目的地，实际递送
                 delivery.getDestination().deliverItem(delivery.getItem(), delivery.getQuantity());
+                if (delivery.getRequest() != null) {
+                    requestRegistry.delivered(delivery.getRequest(), currentTimeStep + 1);
+                }
                 
                 // 根据需要报告递送信息
-                if (verbosityLevel >= 1) {
-                    System.out.println("[ingredient delivered]: " + delivery.getItem() + 
+                if (verbosityLevel >= 1 && events.isEnabled(EventSink.Level.INFO)) {
+                    events.emit(EventSink.Level.INFO, "[ingredient delivered]: " + delivery.getItem() + 
                                     " to " + delivery.getDestination().getName() + 
                                     " from " + delivery.getSource().getName() + 
                                     " on cycle " + (currentTimeStep + 1));
@@ -261,6 +443,9 @@ public class BasicSimulation implements Simulation {
                     }
                 }
                 
+                if (tracer != null) {
+                    tracer.delivery(delivery, System.nanoTime() - deliveryStarted);
+                }
                 iterator.remove();
             }
         }
@@ -309,7 +494,7 @@ public class BasicSimulation implements Simulation {
             }
             
             if (isReady) {
-                System.out.println("    " + i + ": " + recipe.getOutput() + " is ready");
+                events.emit(EventSink.Level.INFO, "    " + i + ": " + recipe.getOutput() + " is ready");
             }
         }
     }
@@ -317,11 +502,13 @@ public class BasicSimulation implements Simulation {
     @Override
     public void finish() {
         // Final simulation processing can be added here.
+        markChanged();
         while (!userRequests.isEmpty()) {
             processSingleTimeStep();
             currentTimeStep++;
+            checkpoint();
         }
-        System.out.println("Final simulation time: " + currentTimeStep);
+        events.emit(EventSink.Level.INFO, "Final simulation time: " + currentTimeStep);
     }
 
     @Override
@@ -331,6 +518,7 @@ public class BasicSimulation implements Simulation {
 
     @Override
     public void setVerbosity(int level) {
+        markChanged();
         this.verbosityLevel = level;
     }
 
@@ -392,12 +580,21 @@ public class BasicSimulation implements Simulation {
         }
         
         // Create the user request
+        markChanged();
         Request userRequest = new Request(getNextRequestId(), recipe, null, true, currentTimeStep);
-        userRequests.add(userRequest);
+        userRequests.put(userRequest.getId(), userRequest);
         building.addRequest(userRequest);
+        requestRegistry.register(userRequest, building);
         // process ingredients recursively
-        building.processIngredients(itemName);
-        System.out.println("Added request for '" + itemName + "' from '" + buildingName + "'");
+        requestRegistry.enter(userRequest);
+        try {
+            building.processIngredients(itemName);
+        } finally {
+            requestRegistry.exit();
+        }
+        if (events.isEnabled(EventSink.Level.INFO)) {
+            events.emit(EventSink.Level.INFO, "Added request for '" + itemName + "' from '" + buildingName + "'");
+        }
     }
 
     /**
@@ -423,7 +620,9 @@ public class BasicSimulation implements Simulation {
     public void validateConnections(Building building, String item, StringBuilder errors) {
         // Avoid processing the same building-item combination multiple times
 //        String key = building.getName() + ":" + item;
-        System.out.println("Validating connections for building: " + building.getName() + ", item: " + item);
+        if (events.isEnabled(EventSink.Level.DEBUG)) {
+            events.emit(EventSink.Level.DEBUG, "Validating connections for building: " + building.getName() + ", item: " + item);
+        }
         Recipe recipe = recipes.get(item);
         Map<String, Integer> ingredients = recipe.getIngredients();
         
@@ -549,10 +748,14 @@ public class BasicSimulation implements Simulation {
         newBuilding.setSimulation(this);
         
         // 5. 将建筑添加到模拟系统
+        markChanged();
         buildings.put(buildingName, newBuilding);
         roadMap.addBuilding(newBuilding);
         
-        System.out.println("Building " + buildingName + " of type " + typeName + " created at (" + x + ", " + y + ")");
+        if (journal != null) {
+            journal.built(currentTimeStep, buildingName, typeName, x, y);
+        }
+        events.emit(EventSink.Level.INFO, "Building " + buildingName + " of type " + typeName + " created at (" + x + ", " + y + ")");
     }
 
     /*
@@ -582,11 +785,12 @@ public class BasicSimulation implements Simulation {
             throw new SimulationException("Building '" + buildingName + "' does not exist");
         }
         
+        markChanged();
         if (building.canBeRemovedImmediately()) {
             performRemoveBuilding(building);
         } else {
             building.markForRemoval();
-            System.out.println("Building '" + buildingName + "' has been marked for removal");
+            events.emit(EventSink.Level.INFO, "Building '" + buildingName + "' has been marked for removal");
         }
     }
 
@@ -618,17 +822,144 @@ public class BasicSimulation implements Simulation {
 
         // 4. 从roadMap种删除路格
         roadMap.removeRoad(location);
+        if (journal != null) {
+            journal.removed(currentTimeStep, buildingName);
+        }
         
-        System.out.println("Building '" + buildingName + "' has been removed");
+        events.emit(EventSink.Level.INFO, "Building '" + buildingName + "' has been removed");
     }
 
     public Map<String, Building> getBuildings() {
         return buildings;
     }
+
+    /**
+     * Gets the number of user requests that have not completed yet.
+     *
+     * @return the number of open user requests.
+     */
+    public int getOpenUserRequestCount() {
+        return userRequests.size();
+    }
+
+    /**
+     * Gets the number of deliveries still in transit.
+     *
+     * @return the number of scheduled deliveries.
+     */
+    public int getPendingDeliveryCount() {
+        return delayedDeliveries.size();
+    }
+
+    /**
+     * Gets the state version. It changes whenever a command, step or structural
+     * change may have altered the serialized state, so equal versions mean a
+     * cached snapshot is still current.
+     *
+     * @return the state version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void markChanged() {
+        version++;
+        busyBuildings = -1;
+    }
+
+    private static boolean hasWork(Building building) {
+        return building.getQueueLength() > 0
+                || (building instanceof BasicBuilding basic && basic.getCurrentRequest() != null);
+    }
+
+    /**
+     * Checks whether a user order is still open.
+     *
+     * @param requestId the id of the order's request.
+     * @return true if the order has not been completed yet.
+     */
+    public boolean isOpenOrder(int requestId) {
+        return userRequests.containsKey(requestId);
+    }
+
+    /**
+     * Checks whether nothing is left to do: no open user order, no delivery
+     * in flight and no building with queued or current work. Uses the count
+     * of busy buildings taken during the last tick, so checking it after
+     * every tick costs O(1); only the first check after a command rescans
+     * the buildings.
+     *
+     * @return true if the simulation is idle.
+     */
+    public boolean isIdle() {
+        if (!userRequests.isEmpty() || !delayedDeliveries.isEmpty()) {
+            return false;
+        }
+        if (busyBuildings < 0) {
+            busyBuildings = countBusyBuildings();
+        }
+        return busyBuildings == 0;
+    }
+
+    private int countBusyBuildings() {
+        int busy = 0;
+        for (Building building : buildings.values()) {
+            if (hasWork(building)) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * Steps until a condition holds, checking it before every tick.
+     *
+     * @param condition the condition to wait for.
+     * @param maxSteps  the most steps to run before giving up.
+     * @return the number of steps run.
+     * @throws SimulationException if the condition names an order that never
+     *                             existed, or does not hold within maxSteps.
+     */
+    public int stepUntil(StepCondition condition, int maxSteps) throws SimulationException {
+        condition.validate(this);
+        int steps = 0;
+        while (!condition.isMet(this)) {
+            if (steps >= maxSteps) {
+                throw new SimulationException("Condition '" + condition + "' not met after " + steps + " steps");
+            }
+            step(1);
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Parses a command string without running it.
+     *
+     * @param command the command string.
+     * @return the parsed command.
+     * @throws SimulationException if the command is invalid.
+     */
+    public Command parseCommand(String command) throws SimulationException {
+        return commandProcessor.parseCommand(command);
+    }
+
+    /**
+     * Gets the id the next request will receive; every lower id has been issued.
+     *
+     * @return the next request id.
+     */
+    public int peekNextRequestId() {
+        return nextRequestId;
+    }
     
     public Map<String, Recipe> getRecipes() {
         return recipes;
     }
+
+    public Map<String, BuildableType> getBuildableTypes() {
+        return buildableTypes;
+    }
     public Recipe getRecipe(String id) {
         return recipes.get(id);
     }
@@ -636,6 +967,114 @@ public class BasicSimulation implements Simulation {
         return roadMap;
     }
 
+    /**
+     * Gets the lifecycle index of every request made in this simulation.
+     *
+     * @return the request registry.
+     */
+    public RequestRegistry getRequestRegistry() {
+        return requestRegistry;
+    }
+
+    /**
+     * Gets the slow time step tracer.
+     *
+     * @return the tracer, or null if tracing is disabled.
+     */
+    public TickTracer getTickTracer() {
+        return tickTracer;
+    }
+
+    /**
+     * Enables or disables the slow time step tracer.
+     *
+     * @param tracer the tracer, or null to disable tracing.
+     */
+    public void setTickTracer(TickTracer tracer) {
+        tickTracer = tracer;
+        roadMap.setTickTracer(tracer);
+    }
+
+    /**
+     * Gets the journal orders, deliveries, builds and connections are written to.
+     *
+     * @return the journal, or null if journaling is disabled.
+     */
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Starts or stops journaling. The previous journal is not closed.
+     *
+     * @param journal the journal, or null to stop.
+     */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+        if (journal != null) {
+            journal.setEventSink(events);
+        }
+    }
+
+    /**
+     * Closes the journal, if any, and stops journaling.
+     */
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Gets the log accepted commands are written to.
+     *
+     * @return the command log, or null if commands are not logged.
+     */
+    public CommandLog getCommandLog() {
+        return commandLog;
+    }
+
+    /**
+     * Starts or stops logging commands. The previous log is not closed.
+     *
+     * @param log the log, or null to stop.
+     */
+    public void setCommandLog(CommandLog log) {
+        commandLog = log;
+    }
+
+    /**
+     * Writes a final state hash to the command log, if any, closes it and
+     * stops logging commands.
+     */
+    public void closeCommandLog() {
+        if (commandLog != null) {
+            commandLog.checkpoint(this);
+            commandLog.close();
+            commandLog = null;
+        }
+    }
+
+    @Override
+    public EventSink getEventSink() {
+        return events;
+    }
+
+    /**
+     * Sets where the simulation's text output goes. Messages at levels the
+     * sink does not want are not even formatted.
+     *
+     * @param sink the sink, e.g. {@link EventSink#NONE} to stay silent.
+     */
+    public void setEventSink(EventSink sink) {
+        events = sink;
+        roadMap.setEventSink(sink);
+        if (journal != null) {
+            journal.setEventSink(sink);
+        }
+    }
+
     // 新增：连接两建筑（对应新指令 connect 'SOURCE_NAME' to 'DEST_NAME'）
     public void connectBuildings(String sourceName, String destName) throws SimulationException {
         if (!buildings.containsKey(sourceName)) {
@@ -646,6 +1085,7 @@ public class BasicSimulation implements Simulation {
         }
         Building source = buildings.get(sourceName);
         Building dest = buildings.get(destName);
+        markChanged();
 
         // 把destbuilding 的 sourcelist当中 加上 sourcebuilding
         // if already exists, do nothing
@@ -654,6 +1094,9 @@ public class BasicSimulation implements Simulation {
         }
 
         roadMap.createPath(source, dest);
+        if (journal != null) {
+            journal.connected(currentTimeStep, sourceName, destName);
+        }
     }
 
     @Override
@@ -669,6 +1112,7 @@ public class BasicSimulation implements Simulation {
      *     buildings: String[],      // 每个元素为 Building.getName()
      *     recipes: String[],        // 每个元素为 Recipe.getName()
      *     roadMap: String[50][50]    // 根据 RoadMap 中的数据转化得到
+     *     utilisation: {name: {..}}  // 各建筑的时间利用情况，见 {@link Utilisation#toSerializable()}
      * }
      * @return JSONObject 包含上述字段
      */
@@ -698,7 +1142,8 @@ public class BasicSimulation implements Simulation {
 
         // 处理建筑位置：
         // 如果坐标 (x, y) 存在建筑，则赋值为 JSONArray 包含两个字符串，
-        // 第一个为 Building.getName(), 第二个为 Building.toString()
+        // 第一个为 Building.getName(), 第二个为 Building.toSummary()；
+        // 完整详情（队列、库存、可行性）由 GET /Building/{name} 按需获取
         for (Map.Entry<Coordinate, Building> entry : roadMap.getBuildingLocations().entrySet()) {
             Coordinate coord = entry.getKey();
             int x = coord.getX();
@@ -706,7 +1151,7 @@ public class BasicSimulation implements Simulation {
             if (x >= 0 && x < 50 && y >= 0 && y < 50) {
                 JSONArray buildingInfo = new JSONArray();
                 buildingInfo.put(entry.getValue().getName());
-                buildingInfo.put(entry.getValue().toString());
+                buildingInfo.put(entry.getValue().toSummary());
                 arr[x][y] = buildingInfo;
             }
         }
@@ -721,19 +1166,7 @@ public class BasicSimulation implements Simulation {
             int x = coord.getX();
             int y = coord.getY();
             if (x >= 0 && x < 50 && y >= 0 && y < 50 && arr[x][y] == null) {
-                Road road = entry.getValue();
-                StringBuilder sb = new StringBuilder();
-                // 按照 NORTH, EAST, SOUTH, WEST 顺序
-                for (Direction d : new Direction[]{Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST}) {
-                    if (road.getExitDirections().contains(d)) {
-                        sb.append("2");
-                    } else if (road.getEnterDirections().contains(d)) {
-                        sb.append("1");
-                    } else {
-                        sb.append("0");
-                    }
-                }
-                arr[x][y] = sb.toString();
+                arr[x][y] = entry.getValue().getDirectionCode();
             }
         }
 
@@ -753,18 +1186,76 @@ public class BasicSimulation implements Simulation {
 
         List<String> typeNames = new ArrayList<>(this.buildableTypes.keySet());
         result.put("buildableTypes", new JSONArray(typeNames));
+        result.put("utilisation", utilisationToSerializable());
+
+        return result;
+    }
+
+    /**
+     * 序列化所有建筑的时间利用情况：{name: {busy, starved, blocked, idle, utilisation, last, recent}}。
+     *
+     * @return JSONObject，以建筑名为键
+     */
+    public JSONObject utilisationToSerializable() {
+        JSONObject result = new JSONObject();
+        for (Building b : buildings.values()) {
+            if (b instanceof BasicBuilding basic) {
+                result.put(b.getName(), basic.getUtilisation().toSerializable());
+            }
+        }
+        return result;
+    }
 
+    /**
+     * 只序列化矩形区域 [x0, x1) × [y0, y1) 内的路格与建筑，通过 RoadMap 的瓦片索引查找，
+     * 不扫描整张地图。输出结构：
+     * {
+     *     x0, y0, x1, y1: int,
+     *     version: long,            // 区域内瓦片的最新版本，内容不变时版本不变
+     *     roads: [{x, y, dirs}],    // dirs 与 roadMap 中的方向字符串相同
+     *     buildings: [{x, y, name, type}]
+     * }
+     * 区域内容只取决于路格和建筑位置，因此可以按版本缓存。
+     *
+     * @return JSONObject 包含上述字段
+     */
+    public JSONObject regionToSerializable(int x0, int y0, int x1, int y1) {
+        JSONObject result = new JSONObject();
+        result.put("x0", x0);
+        result.put("y0", y0);
+        result.put("x1", x1);
+        result.put("y1", y1);
+        result.put("version", roadMap.getTileIndex().getRegionVersion(x0, y0, x1, y1));
+        JSONArray roadsJson = new JSONArray();
+        JSONArray buildingsJson = new JSONArray();
+        for (Coordinate c : roadMap.getTileIndex().query(x0, y0, x1, y1)) {
+            Building building = roadMap.getBuildingLocations().get(c);
+            if (building != null) {
+                buildingsJson.put(new JSONObject().put("x", c.getX()).put("y", c.getY())
+                        .put("name", building.getName()).put("type", building.getClass().getSimpleName()));
+            } else if (roadMap.getRoads().containsKey(c)) {
+                Road road = roadMap.getRoads().get(c);
+                roadsJson.put(new JSONObject().put("x", c.getX()).put("y", c.getY())
+                        .put("dirs", road.getDirectionCode()));
+            }
+        }
+        result.put("roads", roadsJson);
+        result.put("buildings", buildingsJson);
         return result;
     }
 
     public void setRoadMap(RoadMap rm) {
+        markChanged();
         roadMap = rm;
+        roadMap.setTickTracer(tickTracer);
+        roadMap.setEventSink(events);
     }
 
     @Override
     public void simpleRemove(String src, String dest) {
         Building srcBuilding = buildings.get(src);
         Building destBuilding = buildings.get(dest);
+        markChanged();
         roadMap.simpleRemoval(srcBuilding, destBuilding);
     }
 
@@ -772,6 +1263,7 @@ public class BasicSimulation implements Simulation {
     public void complexRemove(String src, String dest) {
         Building srcBuilding = buildings.get(src);
         Building destBuilding = buildings.get(dest);
+        markChanged();
         roadMap.complexRemoval(srcBuilding, destBuilding);
     }
     @Override
@@ -0,0 +1,613 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compact binary encoding of a simulation's state, served on /Simulation to
+ * clients that send {@code Accept: application/x-factory-state}.
+ * <p>
+ * Layout (format version 1); "varint" is an unsigned LEB128 integer, "zigzag"
+ * a signed one, "string" a varint byte length followed by UTF-8 bytes:
+ * <pre>
+ * magic "FST", format version (1 byte)
+ * state version, time step, verbosity, rate           varint each
+ * item table:  count, recipe count, names             varint, varint, string*
+ * buildable types: count, names                       varint, string*
+ * buildings:   count, then per building:
+ *   name (string), type (byte), flags (byte), x, y (zigzag, only if located),
+ *   queue length (varint),
+ *   inventory: count, then (item id, quantity) varint pairs,
+ *   sources: count, then building ids                 varint*
+ *   factory: recipe count, item ids                   varint*
+ *   mine:    item id                                  varint
+ *   storage: item id, capacity, priority, outstanding varint, varint, float, varint
+ *   drone:   idle, active, in construction            varint*
+ * roads: count, then x, y (zigzag) and one byte of direction nibbles:
+ *   high nibble = exits, low nibble = entries, bits N=8 E=4 S=2 W=1
+ * </pre>
+ * Buildings and items are referred to by their index in this message. A
+ * decoder must reject a format version it does not know.
+ */
+public class BinaryStateCodec {
+    public static final String MEDIA_TYPE = "application/x-factory-state";
+    public static final int FORMAT_VERSION = 1;
+    private static final byte[] MAGIC = {'F', 'S', 'T'};
+
+    static final int TYPE_FACTORY = 0;
+    static final int TYPE_MINE = 1;
+    static final int TYPE_STORAGE = 2;
+    static final int TYPE_DRONE = 3;
+    static final int TYPE_OTHER = 4;
+
+    static final int FLAG_LOCATED = 1;
+    static final int FLAG_MARKED_FOR_REMOVAL = 2;
+
+    // 方向位顺序与 JSON 中的 "NESW" 字符串一致
+    private static final Direction[] NESW = {Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+
+    /**
+     * Encodes the current state of a simulation.
+     *
+     * @param sim the simulation; must not change while encoding.
+     * @return the encoded state.
+     */
+    public static byte[] encode(BasicSimulation sim) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        out.writeBytes(MAGIC);
+        out.write(FORMAT_VERSION);
+        writeVarint(out, sim.getVersion());
+        writeVarint(out, sim.getCurrentTimeStep());
+        writeVarint(out, sim.getVerbosity());
+        writeVarint(out, sim.getRate());
+
+        // 物品表：先放所有配方产出，再补充只出现在库存里的物品
+        Map<String, Integer> itemIds = new LinkedHashMap<>();
+        for (Recipe recipe : sim.getRecipes().values()) {
+            itemIds.putIfAbsent(recipe.getName(), itemIds.size());
+        }
+        int recipeCount = itemIds.size();
+        for (Building b : sim.getBuildings().values()) {
+            if (b instanceof BasicBuilding bb) {
+                for (String item : bb.getStorage().keySet()) {
+                    itemIds.putIfAbsent(item, itemIds.size());
+                }
+            }
+            if (b instanceof StorageBuilding storage) {
+                itemIds.putIfAbsent(storage.getStoredItem(), itemIds.size());
+            } else if (b instanceof MineBuilding mine) {
+                itemIds.putIfAbsent(mine.getMine(), itemIds.size());
+            }
+        }
+        writeVarint(out, itemIds.size());
+        writeVarint(out, recipeCount);
+        for (String item : itemIds.keySet()) {
+            writeString(out, item);
+        }
+
+        writeVarint(out, sim.getBuildableTypes().size());
+        for (String type : sim.getBuildableTypes().keySet()) {
+            writeString(out, type);
+        }
+
+        Map<String, Integer> buildingIds = new HashMap<>();
+        for (Building b : sim.getBuildings().values()) {
+            buildingIds.put(b.getName(), buildingIds.size());
+        }
+        writeVarint(out, buildingIds.size());
+        for (Building b : sim.getBuildings().values()) {
+            writeBuilding(out, b, itemIds, buildingIds);
+        }
+
+        Map<Coordinate, Road> roads = sim.getRoadMap().getRoads();
+        Map<Coordinate, Building> locations = sim.getRoadMap().getBuildingLocations();
+        List<Road> visibleRoads = new ArrayList<>();
+        for (Map.Entry<Coordinate, Road> entry : roads.entrySet()) {
+            if (!locations.containsKey(entry.getKey())) {
+                visibleRoads.add(entry.getValue());
+            }
+        }
+        writeVarint(out, visibleRoads.size());
+        for (Road road : visibleRoads) {
+            writeZigZag(out, road.getLocation().getX());
+            writeZigZag(out, road.getLocation().getY());
+            int exits = 0;
+            int enters = 0;
+            for (int i = 0; i < NESW.length; i++) {
+                int bit = 8 >> i;
+                if (road.getExitDirections().contains(NESW[i])) {
+                    exits |= bit;
+                }
+                if (road.getEnterDirections().contains(NESW[i])) {
+                    enters |= bit;
+                }
+            }
+            out.write((exits << 4) | enters);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeBuilding(ByteArrayOutputStream out, Building b, Map<String, Integer> itemIds,
+                                      Map<String, Integer> buildingIds) {
+        writeString(out, b.getName());
+        int type = b instanceof FactoryBuilding ? TYPE_FACTORY
+                : b instanceof MineBuilding ? TYPE_MINE
+                : b instanceof StorageBuilding ? TYPE_STORAGE
+                : b instanceof DroneBuilding ? TYPE_DRONE
+                : TYPE_OTHER;
+        out.write(type);
+        Coordinate location = b.getLocation();
+        int flags = (location != null ? FLAG_LOCATED : 0)
+                | (b instanceof BasicBuilding bb && bb.isMarkedForRemoval() ? FLAG_MARKED_FOR_REMOVAL : 0);
+        out.write(flags);
+        if (location != null) {
+            writeZigZag(out, location.getX());
+            writeZigZag(out, location.getY());
+        }
+        writeVarint(out, b.getQueueLength());
+
+        Map<String, Integer> storage = b instanceof BasicBuilding bb ? bb.getStorage() : Map.of();
+        writeVarint(out, storage.size());
+        for (Map.Entry<String, Integer> entry : storage.entrySet()) {
+            writeVarint(out, itemIds.get(entry.getKey()));
+            writeVarint(out, Math.max(0, entry.getValue()));
+        }
+
+        List<Integer> sources = new ArrayList<>();
+        for (String source : b.getSources()) {
+            Integer id = buildingIds.get(source);
+            if (id != null) {
+                sources.add(id);
+            }
+        }
+        writeVarint(out, sources.size());
+        for (int id : sources) {
+            writeVarint(out, id);
+        }
+
+        switch (type) {
+            case TYPE_FACTORY -> {
+                List<String> recipes = ((FactoryBuilding) b).getBuildingType().getRecipes();
+                List<Integer> ids = new ArrayList<>();
+                for (String recipe : recipes) {
+                    Integer id = itemIds.get(recipe);
+                    if (id != null) {
+                        ids.add(id);
+                    }
+                }
+                writeVarint(out, ids.size());
+                for (int id : ids) {
+                    writeVarint(out, id);
+                }
+            }
+            case TYPE_MINE -> writeVarint(out, itemIds.get(((MineBuilding) b).getMine()));
+            case TYPE_STORAGE -> {
+                StorageBuilding storageBuilding = (StorageBuilding) b;
+                writeVarint(out, itemIds.get(storageBuilding.getStoredItem()));
+                writeVarint(out, Math.max(0, storageBuilding.getCapacity()));
+                writeFloat(out, storageBuilding.getPriority());
+                writeVarint(out, Math.max(0, storageBuilding.getOutstandingRequests()));
+            }
+            case TYPE_DRONE -> {
+                DroneBuilding drone = (DroneBuilding) b;
+                writeVarint(out, drone.countIdleDrones());
+                writeVarint(out, drone.countActiveDrones());
+                writeVarint(out, drone.countInConstructDrones());
+            }
+            default -> { }
+        }
+    }
+
+    /**
+     * Decodes an encoded state.
+     *
+     * @param in the encoded bytes, between position and limit; consumed.
+     * @return the decoded state.
+     * @throws SimulationException if the bytes are not a state of a known format version.
+     */
+    public static State decode(ByteBuffer in) throws SimulationException {
+        try {
+            for (byte b : MAGIC) {
+                if (in.get() != b) {
+                    throw new SimulationException("Not an encoded simulation state");
+                }
+            }
+            int format = in.get() & 0xff;
+            if (format != FORMAT_VERSION) {
+                throw new SimulationException("Unsupported state format version " + format);
+            }
+            State state = new State(readVarint(in), (int) readVarint(in), (int) readVarint(in), (int) readVarint(in));
+
+            int itemCount = readCount(in);
+            state.recipeCount = readCount(in);
+            for (int i = 0; i < itemCount; i++) {
+                state.items.add(readString(in));
+            }
+            int typeCount = readCount(in);
+            for (int i = 0; i < typeCount; i++) {
+                state.buildableTypes.add(readString(in));
+            }
+
+            int buildingCount = readCount(in);
+            List<int[]> sourceIds = new ArrayList<>();
+            for (int i = 0; i < buildingCount; i++) {
+                BuildingInfo info = new BuildingInfo(i, readString(in), in.get() & 0xff, in.get() & 0xff);
+                if ((info.flags & FLAG_LOCATED) != 0) {
+                    info.x = readZigZag(in);
+                    info.y = readZigZag(in);
+                }
+                info.queueLength = (int) readVarint(in);
+                int inventory = readCount(in);
+                for (int j = 0; j < inventory; j++) {
+                    info.storage.put(state.item(readCount(in)), (int) readVarint(in));
+                }
+                int[] sources = new int[readCount(in)];
+                for (int j = 0; j < sources.length; j++) {
+                    sources[j] = readCount(in);
+                }
+                sourceIds.add(sources);
+                switch (info.type) {
+                    case TYPE_FACTORY -> {
+                        int recipes = readCount(in);
+                        for (int j = 0; j < recipes; j++) {
+                            info.recipes.add(state.item(readCount(in)));
+                        }
+                    }
+                    case TYPE_MINE -> info.item = state.item(readCount(in));
+                    case TYPE_STORAGE -> {
+                        info.item = state.item(readCount(in));
+                        info.capacity = (int) readVarint(in);
+                        info.priority = in.getFloat();
+                        info.outstanding = (int) readVarint(in);
+                    }
+                    case TYPE_DRONE -> {
+                        info.idleDrones = (int) readVarint(in);
+                        info.activeDrones = (int) readVarint(in);
+                        info.constructingDrones = (int) readVarint(in);
+                    }
+                    default -> { }
+                }
+                state.buildings.add(info);
+            }
+            for (int i = 0; i < buildingCount; i++) {
+                for (int id : sourceIds.get(i)) {
+                    if (id >= buildingCount) {
+                        throw new SimulationException("Invalid building id " + id);
+                    }
+                    state.buildings.get(i).sources.add(state.buildings.get(id).name);
+                }
+            }
+
+            int roadCount = readCount(in);
+            for (int i = 0; i < roadCount; i++) {
+                int x = readZigZag(in);
+                int y = readZigZag(in);
+                int nibbles = in.get() & 0xff;
+                state.roads.add(new RoadCell(x, y, nibbles >> 4, nibbles & 0xf));
+            }
+            return state;
+        } catch (BufferUnderflowException e) {
+            throw new SimulationException("Truncated simulation state");
+        }
+    }
+
+    /**
+     * Finds where the encoded state continues after the state version, i.e.
+     * where the part that depends only on the simulation's content starts.
+     *
+     * @param encoded a state from {@link #encode}.
+     * @return the offset of the time step field.
+     */
+    static int skipStateVersion(byte[] encoded) {
+        int at = MAGIC.length + 1;
+        while ((encoded[at++] & 0x80) != 0) {
+            // 状态版本号是变长整数，跳到最后一个字节之后
+        }
+        return at;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeZigZag(ByteArrayOutputStream out, int value) {
+        // 在 int 上做 zigzag，再按无符号 32 位写出
+        writeVarint(out, ((value << 1) ^ (value >> 31)) & 0xffffffffL);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    static long readVarint(ByteBuffer in) throws SimulationException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get() & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SimulationException("Malformed varint");
+    }
+
+    static int readZigZag(ByteBuffer in) throws SimulationException {
+        long raw = readVarint(in);
+        return (int) ((raw >>> 1) ^ -(raw & 1));
+    }
+
+    private static int readCount(ByteBuffer in) throws SimulationException {
+        long value = readVarint(in);
+        if (value > in.limit()) {
+            // 任何计数都不可能超过剩余的字节数
+            throw new SimulationException("Invalid count " + value);
+        }
+        return (int) value;
+    }
+
+    private static String readString(ByteBuffer in) throws SimulationException {
+        byte[] bytes = new byte[readCount(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A decoded simulation state.
+     */
+    public static class State {
+        public final long version;
+        public final int currentTimeStep;
+        public final int verbosityLevel;
+        public final int rate;
+        public final List<String> items = new ArrayList<>();
+        public final List<String> buildableTypes = new ArrayList<>();
+        public final List<BuildingInfo> buildings = new ArrayList<>();
+        public final List<RoadCell> roads = new ArrayList<>();
+        int recipeCount;
+
+        State(long version, int currentTimeStep, int verbosityLevel, int rate) {
+            this.version = version;
+            this.currentTimeStep = currentTimeStep;
+            this.verbosityLevel = verbosityLevel;
+            this.rate = rate;
+        }
+
+        private String item(int id) throws SimulationException {
+            if (id >= items.size()) {
+                throw new SimulationException("Invalid item id " + id);
+            }
+            return items.get(id);
+        }
+
+        /**
+         * Gets the recipe names, in the server's order.
+         *
+         * @return list of recipe names.
+         */
+        public List<String> getRecipes() {
+            return items.subList(0, recipeCount);
+        }
+
+        /**
+         * Converts the decoded state to the JSON shape of
+         * {@link BasicSimulation#toSerializable()}, without "mapText". Building
+         * cells carry {@link BuildingInfo#describe()} instead of the full
+         * building text.
+         *
+         * @return JSONObject of the state.
+         */
+        public JSONObject toSerializable() {
+            JSONObject result = new JSONObject();
+            result.put("currentTimeStep", currentTimeStep);
+            result.put("verbosityLevel", verbosityLevel);
+            List<String> names = new ArrayList<>();
+            for (BuildingInfo b : buildings) {
+                names.add(b.name);
+            }
+            result.put("buildings", new JSONArray(names));
+            result.put("recipes", new JSONArray(getRecipes()));
+
+            Object[][] arr = new Object[50][50];
+            for (BuildingInfo b : buildings) {
+                if (b.isLocated() && b.x >= 0 && b.x < 50 && b.y >= 0 && b.y < 50) {
+                    arr[b.x][b.y] = new JSONArray().put(b.name).put(b.describe());
+                }
+            }
+            for (RoadCell road : roads) {
+                if (road.x >= 0 && road.x < 50 && road.y >= 0 && road.y < 50 && arr[road.x][road.y] == null) {
+                    arr[road.x][road.y] = road.toDigits();
+                }
+            }
+            JSONArray roadMapJson = new JSONArray();
+            for (int i = 0; i < 50; i++) {
+                JSONArray row = new JSONArray();
+                for (int j = 0; j < 50; j++) {
+                    row.put(arr[j][i]);
+                }
+                roadMapJson.put(row);
+            }
+            result.put("roadMap", roadMapJson);
+            result.put("buildableTypes", new JSONArray(buildableTypes));
+            return result;
+        }
+
+        /**
+         * Renders a plain text map: each building as the first two letters of its
+         * name, each road cell as '+'.
+         *
+         * @return the map text, or "" if nothing is placed.
+         */
+        public String renderMap() {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            Map<Coordinate, String> cells = new HashMap<>();
+            for (RoadCell road : roads) {
+                cells.put(new Coordinate(road.x, road.y), " + ");
+            }
+            for (BuildingInfo b : buildings) {
+                if (b.isLocated()) {
+                    String label = b.name.length() >= 2 ? b.name.substring(0, 2) : b.name + " ";
+                    cells.put(new Coordinate(b.x, b.y), label + " ");
+                }
+            }
+            for (Coordinate c : cells.keySet()) {
+                minX = Math.min(minX, c.getX());
+                minY = Math.min(minY, c.getY());
+                maxX = Math.max(maxX, c.getX());
+                maxY = Math.max(maxY, c.getY());
+            }
+            if (cells.isEmpty()) {
+                return "";
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    sb.append(cells.getOrDefault(new Coordinate(x, y), " . "));
+                }
+                sb.append("\n");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A decoded building.
+     */
+    public static class BuildingInfo {
+        public final int id;
+        public final String name;
+        public final int type;
+        public final int flags;
+        public int x;
+        public int y;
+        public int queueLength;
+        public final Map<String, Integer> storage = new LinkedHashMap<>();
+        public final List<String> sources = new ArrayList<>();
+        public final List<String> recipes = new ArrayList<>();
+        public String item;
+        public int capacity;
+        public float priority;
+        public int outstanding;
+        public int idleDrones;
+        public int activeDrones;
+        public int constructingDrones;
+
+        BuildingInfo(int id, String name, int type, int flags) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.flags = flags;
+        }
+
+        public boolean isLocated() {
+            return (flags & FLAG_LOCATED) != 0;
+        }
+
+        /**
+         * Gets the building's class name as shown in its "Type:" line.
+         *
+         * @return e.g. "FactoryBuilding".
+         */
+        public String getTypeName() {
+            return switch (type) {
+                case TYPE_FACTORY -> "FactoryBuilding";
+                case TYPE_MINE -> "MineBuilding";
+                case TYPE_STORAGE -> "StorageBuilding";
+                case TYPE_DRONE -> "DroneBuilding";
+                default -> "Building";
+            };
+        }
+
+        /**
+         * Describes the building with the same line labels as the building's
+         * own toString(), for clients that parse those lines.
+         *
+         * @return the description text.
+         */
+        public String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Name: ").append(name).append("\n");
+            sb.append("Type: ").append(getTypeName()).append("\n");
+            if (isLocated()) {
+                sb.append("LocationX: ").append(x).append("\n");
+                sb.append("LocationY: ").append(y).append("\n");
+            } else {
+                sb.append("Location: Not set\n");
+            }
+            sb.append("Sources: ").append(sources).append("\n");
+            sb.append("QueueLength: ").append(queueLength).append("\n");
+            sb.append("Storage: ").append(storage).append("\n");
+            if ((flags & FLAG_MARKED_FOR_REMOVAL) != 0) {
+                sb.append("MarkedForRemoval: true\n");
+            }
+            switch (type) {
+                case TYPE_FACTORY -> sb.append("Type Recipes: ").append(recipes).append("\n");
+                case TYPE_MINE -> sb.append("Mine: ").append(item).append("\n");
+                case TYPE_STORAGE -> sb.append("StoredItem: ").append(item).append("\n")
+                        .append("Capacity: ").append(capacity).append("\n")
+                        .append("Priority: ").append(priority).append("\n")
+                        .append("OutstandingRequests: ").append(outstanding).append("\n");
+                case TYPE_DRONE -> sb.append("Idle: ").append(idleDrones).append("\n")
+                        .append("Active: ").append(activeDrones).append("\n")
+                        .append("InConstruction: ").append(constructingDrones).append("\n");
+                default -> { }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A decoded road cell.
+     */
+    public static class RoadCell {
+        public final int x;
+        public final int y;
+        public final int exits;
+        public final int enters;
+
+        RoadCell(int x, int y, int exits, int enters) {
+            this.x = x;
+            this.y = y;
+            this.exits = exits;
+            this.enters = enters;
+        }
+
+        /**
+         * Gets the cell in the JSON "NESW" form: per direction '2' for an exit,
+         * '1' for an entry, '0' otherwise.
+         *
+         * @return the four-digit direction string.
+         */
+        public String toDigits() {
+            StringBuilder sb = new StringBuilder(4);
+            for (int i = 0; i < 4; i++) {
+                int bit = 8 >> i;
+                sb.append((exits & bit) != 0 ? '2' : (enters & bit) != 0 ? '1' : '0');
+            }
+            return sb.toString();
+        }
+    }
+}
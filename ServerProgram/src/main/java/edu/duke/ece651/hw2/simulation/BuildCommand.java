@@ -25,6 +25,7 @@ public class BuildCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.buildBuilding(type, x, y);
-        System.out.println("Built building of type " + type + "on coordinates " + x + ", " + y);
+        simulation.getEventSink().emit(EventSink.Level.INFO,
+                "Built building of type " + type + "on coordinates " + x + ", " + y);
     }
 }
\ No newline at end of file
@@ -141,4 +141,29 @@ public interface Building {
      * @return true if the building is marked for removal, false otherwise.
      */
     boolean isMarkedForRemoval();
+
+    /**
+     * Describes the building in a few lines for map cells: name, type, location
+     * and whatever identifies what it makes. Unlike {@link #toString()} it does
+     * not list the queue or storage and does not check viability, so it is cheap
+     * enough to build for every building on every poll.
+     *
+     * @return the summary text, using the same line labels as toString().
+     */
+    default String toSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Name: ").append(getName()).append("\n");
+        sb.append("Type: ").append(getClass().getSimpleName()).append("\n");
+        Coordinate location = getLocation();
+        if (location != null) {
+            sb.append("LocationX: ").append(location.getX()).append("\n");
+            sb.append("LocationY: ").append(location.getY()).append("\n");
+        } else {
+            sb.append("Location: Not set\n");
+        }
+        if (isMarkedForRemoval()) {
+            sb.append("MarkedForRemoval: true\n");
+        }
+        return sb.toString();
+    }
 }
\ No newline at end of file
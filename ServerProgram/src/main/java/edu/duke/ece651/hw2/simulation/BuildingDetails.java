@@ -0,0 +1,155 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Renders one building's full details for GET /Building/{name}.
+ * <p>
+ * Everything except viability and the queue listing is cached per building:
+ * it is rendered again only when the building's version or the road map's
+ * version has changed. Viability is read from the building's own cached
+ * flag. The queue is listed one page at a time, so a building with
+ * thousands of queued requests costs one page per request.
+ * A BuildingDetails belongs to one session and is used on its engine thread only.
+ */
+public class BuildingDetails {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static class Entry {
+        final long instanceId;
+        final long version;
+        final long mapVersion;
+        final JSONObject details;
+
+        Entry(long instanceId, long version, long mapVersion, JSONObject details) {
+            this.instanceId = instanceId;
+            this.version = version;
+            this.mapVersion = mapVersion;
+            this.details = details;
+        }
+    }
+
+    private final Map<String, Entry> cache = new HashMap<>();
+
+    /**
+     * Builds the entity tag of one page of a building's details.
+     *
+     * @param building the building.
+     * @param map      the simulation's road map.
+     * @param offset   index of the first queued request listed.
+     * @param limit    page size.
+     * @return the quoted ETag value.
+     */
+    public static String entityTag(BasicBuilding building, RoadMap map, int offset, int limit) {
+        return "\"" + building.getInstanceId() + "-" + building.getVersion() + "-" + map.getId() + "-"
+                + map.getVersion() + "-" + (building.isViable() ? 1 : 0) + "-" + offset + "-" + limit + "\"";
+    }
+
+    /**
+     * Renders a building's details with one page of its queue:
+     * <pre>
+     * { name, type, version, viable, location: {x, y} | null, markedForRemoval,
+     *   sources: [..], storage: {item: count}, currentRequest: {..} | null,
+     *   recipes | mine | storedItem, capacity, priority, outstandingRequests | drones: {..},
+     *   queue: { total, offset, limit, requests: [{id, output, status, requestor}] } }
+     * </pre>
+     *
+     * @param sim    the simulation.
+     * @param name   the building name.
+     * @param offset index of the first queued request to list.
+     * @param limit  page size, at most {@link #MAX_PAGE_SIZE}.
+     * @return the details.
+     * @throws SimulationException if there is no such building.
+     */
+    public JSONObject render(BasicSimulation sim, String name, int offset, int limit) throws SimulationException {
+        BasicBuilding building = find(sim, name);
+        RoadMap map = sim.getRoadMap();
+        Entry entry = cache.get(name);
+        if (entry == null || entry.instanceId != building.getInstanceId() || entry.version != building.getVersion()
+                || entry.mapVersion != map.getVersion()) {
+            if (cache.size() > 2 * sim.getBuildings().size()) {
+                // 清理已被移除的建筑
+                cache.keySet().retainAll(sim.getBuildings().keySet());
+            }
+            entry = new Entry(building.getInstanceId(), building.getVersion(), map.getVersion(), describe(building));
+            cache.put(name, entry);
+        }
+
+        JSONObject result = new JSONObject(entry.details, JSONObject.getNames(entry.details));
+        result.put("viable", building.isViable());
+        JSONArray requests = new JSONArray();
+        for (Request r : building.getQueuedRequests(offset, limit)) {
+            requests.put(requestToJson(r));
+        }
+        JSONObject queue = new JSONObject();
+        queue.put("total", building.getQueuedRequestCount());
+        queue.put("offset", offset);
+        queue.put("limit", limit);
+        queue.put("requests", requests);
+        result.put("queue", queue);
+        return result;
+    }
+
+    /**
+     * Looks up a building by name.
+     *
+     * @param sim  the simulation.
+     * @param name the building name.
+     * @return the building.
+     * @throws SimulationException if there is no such building.
+     */
+    static BasicBuilding find(BasicSimulation sim, String name) throws SimulationException {
+        Building building = sim.getBuildings().get(name);
+        if (!(building instanceof BasicBuilding basic)) {
+            throw new SimulationException("Building '" + name + "' does not exist");
+        }
+        return basic;
+    }
+
+    private static JSONObject describe(BasicBuilding building) {
+        JSONObject result = new JSONObject();
+        result.put("name", building.getName());
+        result.put("type", building.getClass().getSimpleName());
+        result.put("version", building.getVersion());
+        Coordinate location = building.getLocation();
+        result.put("location", location == null ? JSONObject.NULL
+                : new JSONObject().put("x", location.getX()).put("y", location.getY()));
+        result.put("markedForRemoval", building.isMarkedForRemoval());
+        result.put("sources", new JSONArray(building.getSources()));
+        result.put("storage", new JSONObject(building.getStorage()));
+        Request current = building.getCurrentRequest();
+        result.put("currentRequest", current == null ? JSONObject.NULL : requestToJson(current));
+
+        if (building instanceof FactoryBuilding factory) {
+            result.put("buildingType", factory.getBuildingType().getName());
+            result.put("recipes", new JSONArray(factory.getBuildingType().getRecipes()));
+        } else if (building instanceof MineBuilding mine) {
+            result.put("mine", mine.getMine());
+        } else if (building instanceof StorageBuilding storage) {
+            result.put("storedItem", storage.getStoredItem());
+            result.put("capacity", storage.getCapacity());
+            result.put("priority", storage.getPriority());
+            result.put("outstandingRequests", storage.getOutstandingRequests());
+        } else if (building instanceof DroneBuilding drones) {
+            result.put("drones", new JSONObject()
+                    .put("idle", drones.countIdleDrones())
+                    .put("active", drones.countActiveDrones())
+                    .put("inConstruction", drones.countInConstructDrones()));
+        }
+        return result;
+    }
+
+    private static JSONObject requestToJson(Request r) {
+        JSONObject json = new JSONObject();
+        json.put("id", r.getId());
+        json.put("output", r.getRecipe().getOutput());
+        json.put("status", r.getStatus().toString());
+        json.put("requestor", r.getRequestor() == null ? "user" : r.getRequestor().getName());
+        return json;
+    }
+}
@@ -6,20 +6,22 @@ import org.json.JSONObject;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 public class ClientMain {
     public static void main(String[] args) {
         String serverUrl = "http://localhost:3000";
         String simulationUrl = serverUrl + "/Simulation";
         String instructionUrl = serverUrl + "/Instruction";
+        // 参数 binary：以紧凑的二进制格式获取模拟状态，而不是 JSON
+        boolean binary = args.length > 0 && "binary".equalsIgnoreCase(args[0]);
 
         // 1. 初始时，向服务器发起 GET 请求，获取当前模拟状态并以自定义格式美化打印
         try {
-            String getResponse = sendGet(simulationUrl);
-            JSONObject jsonResponse = new JSONObject(getResponse);
+            JSONObject jsonResponse = sendGet(simulationUrl, binary);
             printFormattedSimulation(jsonResponse);
         } catch (Exception e) {
             System.err.println("GET error: " + e.getMessage());
@@ -41,8 +43,7 @@ public class ClientMain {
             }
 
             try {
-                String postResponse = sendPost(instructionUrl, command);
-                JSONObject jsonPostResponse = new JSONObject(postResponse);
+                JSONObject jsonPostResponse = sendPost(instructionUrl, command, binary);
                 printFormattedSimulation(jsonPostResponse);
             } catch (Exception e) {
                 System.err.println("POST error: " + e.getMessage());
@@ -53,48 +54,67 @@ public class ClientMain {
     }
 
     /**
-     * 发起 GET 请求，并返回响应字符串
+     * 发起 GET 请求，并返回解析后的模拟状态
      */
-    private static String sendGet(String urlStr) throws IOException {
+    private static JSONObject sendGet(String urlStr, boolean binary) throws IOException, SimulationException {
         URL url = new URL(urlStr);
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
         con.setRequestMethod("GET");
-        con.setRequestProperty("Accept", "application/json");
+        con.setRequestProperty("Accept", acceptHeader(binary));
+        con.setRequestProperty("Accept-Encoding", "gzip");
 
-        int responseCode = con.getResponseCode();
-        InputStream inputStream = (responseCode >= 200 && responseCode < 300)
-                ? con.getInputStream() : con.getErrorStream();
-
-        BufferedReader in = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-        String response = in.lines().collect(Collectors.joining("\n"));
-        in.close();
-        return response;
+        return readResponse(con);
     }
 
     /**
-     * 发起 POST 请求，将 payload 内容发送给指定 URL，并返回响应字符串
+     * 发起 POST 请求，将 payload 内容发送给指定 URL，并返回解析后的模拟状态
      */
-    private static String sendPost(String urlStr, String payload) throws IOException {
+    private static JSONObject sendPost(String urlStr, String payload, boolean binary)
+            throws IOException, SimulationException {
         URL url = new URL(urlStr);
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
         con.setRequestMethod("POST");
         con.setDoOutput(true);
         con.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
-        con.setRequestProperty("Accept", "application/json");
+        con.setRequestProperty("Accept", acceptHeader(binary));
+        con.setRequestProperty("Accept-Encoding", "gzip");
 
         try (OutputStream os = con.getOutputStream()) {
             byte[] input = payload.getBytes(StandardCharsets.UTF_8);
             os.write(input, 0, input.length);
         }
 
+        return readResponse(con);
+    }
+
+    private static String acceptHeader(boolean binary) {
+        return binary ? BinaryStateCodec.MEDIA_TYPE + ", application/json;q=0.5" : "application/json";
+    }
+
+    /**
+     * 读取响应并解析为 JSON；服务端返回 gzip 压缩内容时先解压。
+     * 二进制状态解码后转换为与 JSON 接口相同的结构，并用 renderMap() 补上 mapText。
+     */
+    private static JSONObject readResponse(HttpURLConnection con) throws IOException, SimulationException {
         int responseCode = con.getResponseCode();
         InputStream inputStream = (responseCode >= 200 && responseCode < 300)
                 ? con.getInputStream() : con.getErrorStream();
+        if ("gzip".equalsIgnoreCase(con.getContentEncoding())) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-        String response = in.lines().collect(Collectors.joining("\n"));
-        in.close();
-        return response;
+        byte[] body;
+        try (InputStream in = inputStream) {
+            body = in.readAllBytes();
+        }
+        String contentType = con.getContentType();
+        if (contentType != null && contentType.startsWith(BinaryStateCodec.MEDIA_TYPE)) {
+            BinaryStateCodec.State state = BinaryStateCodec.decode(ByteBuffer.wrap(body));
+            JSONObject json = state.toSerializable();
+            json.put("mapText", state.renderMap());
+            return json;
+        }
+        return new JSONObject(new String(body, StandardCharsets.UTF_8));
     }
 
     /**
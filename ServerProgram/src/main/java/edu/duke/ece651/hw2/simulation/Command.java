@@ -11,4 +11,14 @@ public abstract class Command {
      * @throws SimulationException if an error occurs during execution.
      */
     public abstract void execute(Simulation simulation) throws SimulationException;
+
+    /**
+     * Whether the command only reads the simulation. Read-only commands leave
+     * the simulation version unchanged, so cached state snapshots stay valid.
+     *
+     * @return true if the command does not change the simulation.
+     */
+    public boolean isReadOnly() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+import org.json.JSONObject;
+
+/**
+ * Write-ahead log of the commands that changed a simulation, so its state can
+ * be reproduced by {@link ReplayRunner} from the scenario it was loaded from.
+ * <p>
+ * The log is JSON lines. The first line is a header
+ * {@code {"version":1,"start":T,"checkpointInterval":N}}; after it come
+ * <pre>
+ * {"t":12,"command":"request 'door' from 'Fdoor'"}   a command, applied at time step 12
+ * {"t":100,"hash":"5f0e2c1a"}                        the state hash after time step 100
+ * </pre>
+ * Every accepted command that is not read-only is logged once it has run,
+ * with the time step it started at; a failed command is logged only if it
+ * advanced time anyway. Time steps advanced by the real-time clock, jobs or
+ * merged step commands are not logged as commands: the time step of each
+ * entry says how far to step before applying it. Every
+ * {@code checkpointInterval} steps, and when the log is closed, a hash of the
+ * state is written so a replay can tell where it diverged. While a logged
+ * command runs no hash is written; a command that crosses a checkpoint is
+ * followed by one hash at the time step it ended at.
+ * <p>
+ * Each entry is flushed as it is written. A CommandLog belongs to one
+ * simulation and is used on its engine thread only.
+ */
+public class CommandLog implements AutoCloseable {
+    /** Time steps between state hashes unless given otherwise. */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+    static final int VERSION = 1;
+
+    private final BufferedWriter out;
+    private final int checkpointInterval;
+    private long commands;
+    private long checkpoints;
+
+    /**
+     * Constructs a CommandLog, replacing any file of the same name.
+     *
+     * @param file               the log file.
+     * @param startTimeStep      the simulation's time step now.
+     * @param checkpointInterval time steps between state hashes.
+     * @throws IOException if the file cannot be written.
+     */
+    public CommandLog(Path file, int startTimeStep, int checkpointInterval) throws IOException {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        JSONObject header = new JSONObject();
+        header.put("version", VERSION);
+        header.put("start", startTimeStep);
+        header.put("checkpointInterval", checkpointInterval);
+        write(header);
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Logs a command about to be applied.
+     *
+     * @param timeStep the time step it is applied at.
+     * @param command  the command string.
+     */
+    public void command(int timeStep, String command) {
+        JSONObject entry = new JSONObject();
+        entry.put("t", timeStep);
+        entry.put("command", command);
+        write(entry);
+        commands++;
+    }
+
+    /**
+     * Logs the state hash of a simulation.
+     *
+     * @param sim the simulation.
+     */
+    public void checkpoint(BasicSimulation sim) {
+        JSONObject entry = new JSONObject();
+        entry.put("t", sim.getCurrentTimeStep());
+        entry.put("hash", stateHash(sim));
+        write(entry);
+        checkpoints++;
+    }
+
+    private void write(JSONObject entry) {
+        try {
+            out.write(entry.toString());
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hashes the state commands and time steps determine: the buildings, their
+     * queues, stock and sources, the roads, the time step and settings (as in
+     * {@link BinaryStateCodec}, without the state version, which also counts
+     * changes that do not affect the outcome), and the numbers of requests
+     * issued, open and completed and of deliveries in flight.
+     *
+     * @param sim the simulation.
+     * @return the CRC-32C of that state, as 8 hex digits.
+     */
+    public static String stateHash(BasicSimulation sim) {
+        byte[] state = BinaryStateCodec.encode(sim);
+        int from = BinaryStateCodec.skipStateVersion(state);
+        CRC32C crc = new CRC32C();
+        crc.update(state, from, state.length - from);
+        crc.update(ByteBuffer.allocate(20)
+                .putInt(sim.peekNextRequestId())
+                .putInt(sim.getOpenUserRequestCount())
+                .putInt(sim.getPendingDeliveryCount())
+                .putLong(sim.getRequestRegistry().getCompletedCount())
+                .array());
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Closes the file. Callers write a final checkpoint first if they want one.
+     */
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
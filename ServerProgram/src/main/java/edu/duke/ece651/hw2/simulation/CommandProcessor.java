@@ -22,6 +22,7 @@ public class CommandProcessor {
      * <ul>
      *   <li>request 'ITEM' from 'BUILDING'</li>
      *   <li>step N</li>
+     *   <li>step until order ID | time T | idle [within N]</li>
      *   <li>finish</li>
      *   <li>verbose N</li>
      * </ul>
@@ -48,6 +49,8 @@ public class CommandProcessor {
             String item = commandStr.substring(firstQuote + 1, secondQuote);
             String building = commandStr.substring(thirdQuote + 1, fourthQuote);
             return new RequestCommand(item, building);
+        } else if (commandStr.startsWith("step until")) {
+            return parseStepUntil(commandStr.substring("step until".length()).trim());
         } else if (commandStr.startsWith("step")) {
             // Expected format: step N
             String[] parts = commandStr.split("\\s+");
@@ -158,6 +161,37 @@ public class CommandProcessor {
         }
     }
 
+    /**
+     * Parses the condition part of a step until command:
+     * order ID | time T | idle, optionally followed by within N.
+     */
+    private Command parseStepUntil(String rest) throws SimulationException {
+        String[] parts = rest.split("\\s+");
+        int maxSteps = StepUntilCommand.DEFAULT_MAX_STEPS;
+        int length = parts.length;
+        try {
+            if (length >= 2 && parts[length - 2].equals("within")) {
+                maxSteps = Integer.parseInt(parts[length - 1]);
+                if (maxSteps < 0) {
+                    throw new SimulationException("Step limit must be >= 0");
+                }
+                length -= 2;
+            }
+            if (length == 1 && parts[0].equals("idle")) {
+                return new StepUntilCommand(new StepCondition(StepCondition.Kind.IDLE, 0), maxSteps);
+            }
+            if (length == 2 && parts[0].equals("order")) {
+                return new StepUntilCommand(new StepCondition(StepCondition.Kind.ORDER, Integer.parseInt(parts[1])), maxSteps);
+            }
+            if (length == 2 && parts[0].equals("time")) {
+                return new StepUntilCommand(new StepCondition(StepCondition.Kind.TIME, Integer.parseInt(parts[1])), maxSteps);
+            }
+        } catch (NumberFormatException e) {
+            throw new SimulationException("Invalid number for step until command");
+        }
+        throw new SimulationException("Invalid step until command format");
+    }
+
     /**
      * Processes a command string by parsing and executing it.
      *
@@ -168,7 +202,44 @@ public class CommandProcessor {
             Command cmd = parseCommand(commandStr);
             cmd.execute(simulation);
         } catch (SimulationException e) {
-            System.err.println("Error: " + e.getMessage());
+            simulation.getEventSink().emit(EventSink.Level.WARN, "Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses and executes a command string, capturing any error in the result
+     * instead of printing it.
+     * <p>
+     * Runtime failures raised while planning (e.g. no source can produce an
+     * ingredient) are captured as well, so one bad command in a batch does not
+     * abort the commands after it.
+     *
+     * @param commandStr the command string.
+     * @return the result of the command.
+     */
+    public CommandResult executeCommand(String commandStr) {
+        Command cmd;
+        try {
+            cmd = parseCommand(commandStr);
+        } catch (SimulationException e) {
+            return CommandResult.failure(commandStr, e.getMessage(), simulation.getCurrentTimeStep());
+        }
+        return executeCommand(cmd, commandStr);
+    }
+
+    /**
+     * Executes an already parsed command, capturing any error in the result.
+     *
+     * @param cmd        the parsed command.
+     * @param commandStr the command string it was parsed from.
+     * @return the result of the command.
+     */
+    public CommandResult executeCommand(Command cmd, String commandStr) {
+        try {
+            cmd.execute(simulation);
+            return CommandResult.success(commandStr, simulation.getCurrentTimeStep());
+        } catch (SimulationException | RuntimeException e) {
+            return CommandResult.failure(commandStr, e.getMessage(), simulation.getCurrentTimeStep());
         }
     }
 }
\ No newline at end of file
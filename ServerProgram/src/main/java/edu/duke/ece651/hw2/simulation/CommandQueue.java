@@ -0,0 +1,246 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Multi-producer, single-consumer queue of commands for one session.
+ * <p>
+ * Any thread may submit commands; submitting never blocks and takes no lock.
+ * Only the session's engine thread applies them, in submission order, at tick
+ * boundaries: the real-time clock drains the queue before every step, and when
+ * the clock is stopped a single drain task is scheduled on the engine for
+ * however many commands arrive meanwhile. Each command's result records its
+ * sequence number and the time step at whose boundary it was applied;
+ * sequence numbers are given out by the engine thread as commands are
+ * applied, so they follow apply order across all producers.
+ * Consecutive {@code step N} submissions found in one drain run as one
+ * {@code step} call.
+ */
+public class CommandQueue {
+    private static class Pending {
+        final List<String> commands;
+        final boolean withState;
+        // 引擎线程在完成 result 之前写入，完成之后才会被读取
+        JSONObject state;
+        final CompletableFuture<List<CommandResult>> result = new CompletableFuture<>();
+
+        Pending(List<String> commands, boolean withState) {
+            this.commands = commands;
+            this.withState = withState;
+        }
+    }
+
+    /**
+     * The results of a batch and, if requested, the state right after it.
+     */
+    public static class Batch {
+        private final List<CommandResult> results;
+        private final JSONObject state;
+
+        Batch(List<CommandResult> results, JSONObject state) {
+            this.results = results;
+            this.state = state;
+        }
+
+        public List<CommandResult> getResults() {
+            return results;
+        }
+
+        /**
+         * Gets the state serialized right after the last command of the batch,
+         * before any other tick or command.
+         *
+         * @return the state, or null if it was not requested.
+         */
+        public JSONObject getState() {
+            return state;
+        }
+    }
+
+    private final BasicSimulation simulation;
+    private final Executor engine;
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong submitted = new AtomicLong();
+    // 下一条被执行的命令的序号；engine thread only
+    private long nextSequence;
+
+    /**
+     * Constructs a CommandQueue.
+     *
+     * @param simulation the simulation the commands are applied to.
+     * @param engine     the session's single-threaded engine executor.
+     */
+    public CommandQueue(BasicSimulation simulation, Executor engine) {
+        this.simulation = simulation;
+        this.engine = engine;
+    }
+
+    /**
+     * Enqueues one command.
+     *
+     * @param command the command string.
+     * @return a future completed on the engine thread with the command's result.
+     */
+    public CompletableFuture<CommandResult> submit(String command) {
+        return submitAll(List.of(command)).thenApply(results -> results.get(0));
+    }
+
+    /**
+     * Enqueues several commands that are applied back to back at the same tick
+     * boundary, with no command from another producer in between.
+     *
+     * @param commands the command strings.
+     * @return a future completed on the engine thread with one result per command.
+     */
+    public CompletableFuture<List<CommandResult>> submitAll(List<String> commands) {
+        return enqueue(commands, false).result;
+    }
+
+    /**
+     * Like {@link #submitAll}, and optionally serializes the simulation in the
+     * same engine task, so the state returned is exactly the one the batch
+     * left even while the real-time clock is running.
+     *
+     * @param commands     the command strings.
+     * @param includeState true to serialize the state after the batch.
+     * @return a future completed with the results and the state.
+     */
+    public CompletableFuture<Batch> submitBatch(List<String> commands, boolean includeState) {
+        Pending p = enqueue(commands, includeState);
+        return p.result.thenApply(results -> new Batch(results, p.state));
+    }
+
+    private Pending enqueue(List<String> commands, boolean withState) {
+        Pending p = new Pending(List.copyOf(commands), withState);
+        submitted.addAndGet(commands.size());
+        pending.offer(p);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                engine.execute(() -> {
+                    // 先清除标记再取命令，之后提交的命令会重新调度一次
+                    drainScheduled.set(false);
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                pending.remove(p);
+                p.result.completeExceptionally(new SimulationException("Session has been closed"));
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Applies every queued command. Must be called on the engine thread,
+     * between ticks. Consecutive single {@code step N} submissions are merged
+     * into one engine run; each still gets its own result and position.
+     *
+     * @return the number of commands applied.
+     */
+    public int drain() {
+        int applied = 0;
+        Pending p = pending.poll();
+        while (p != null) {
+            int steps = stepCount(p);
+            if (steps <= 0) {
+                applied += apply(p);
+                p = pending.poll();
+                continue;
+            }
+            List<Pending> run = new ArrayList<>();
+            List<Integer> counts = new ArrayList<>();
+            run.add(p);
+            counts.add(steps);
+            long total = steps;
+            Pending next;
+            while ((next = pending.poll()) != null) {
+                int more = stepCount(next);
+                if (more <= 0 || total + more > Integer.MAX_VALUE) {
+                    break;
+                }
+                run.add(next);
+                counts.add(more);
+                total += more;
+            }
+            applied += run.size() == 1 ? apply(p) : applySteps(run, counts, (int) total);
+            p = next;
+        }
+        return applied;
+    }
+
+    private int apply(Pending p) {
+        List<CommandResult> results = new ArrayList<>(p.commands.size());
+        try {
+            for (int i = 0; i < p.commands.size(); i++) {
+                int appliedAt = simulation.getCurrentTimeStep();
+                results.add(simulation.executeCommand(p.commands.get(i)).withPosition(nextSequence++, appliedAt));
+            }
+            if (p.withState) {
+                p.state = simulation.toSerializable();
+            }
+        } catch (RuntimeException e) {
+            p.result.completeExceptionally(e);
+            return results.size();
+        }
+        p.result.complete(results);
+        return results.size();
+    }
+
+    // 合并执行连续的 step 命令：只调用一次 step()，再按各自的步数还原每条命令的时间位置
+    private int applySteps(List<Pending> run, List<Integer> counts, int total) {
+        int start = simulation.getCurrentTimeStep();
+        String error = null;
+        try {
+            simulation.step(total);
+            EventSink events = simulation.getEventSink();
+            if (events.isEnabled(EventSink.Level.INFO)) {
+                events.emit(EventSink.Level.INFO, "Advanced simulation by " + total + " steps (" + run.size()
+                        + " step commands merged). Current time: " + simulation.getCurrentTimeStep());
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        int time = start;
+        for (int i = 0; i < run.size(); i++) {
+            Pending p = run.get(i);
+            int appliedAt = time;
+            time += counts.get(i);
+            CommandResult r = error == null
+                    ? CommandResult.success(p.commands.get(0), time)
+                    : CommandResult.failure(p.commands.get(0), error, simulation.getCurrentTimeStep());
+            p.result.complete(List.of(r.withPosition(nextSequence++, appliedAt)));
+        }
+        return run.size();
+    }
+
+    // 单条 step N 命令返回 N，其他情况返回 0；要求返回状态的批次不参与合并
+    private int stepCount(Pending p) {
+        if (p.withState || p.commands.size() != 1 || !p.commands.get(0).trim().startsWith("step")) {
+            return 0;
+        }
+        try {
+            return simulation.parseCommand(p.commands.get(0)) instanceof StepCommand step ? step.getSteps() : 0;
+        } catch (SimulationException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the number of commands submitted so far, applied or not.
+     *
+     * @return the number of submitted commands.
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+}
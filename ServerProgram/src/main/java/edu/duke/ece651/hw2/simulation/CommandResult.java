@@ -0,0 +1,104 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.json.JSONObject;
+
+/**
+ * Outcome of executing a single command string against a simulation.
+ * Errors are captured here instead of being printed, so callers that run
+ * many commands (e.g. the batch endpoint) can report them per command.
+ */
+public class CommandResult {
+    private final String command;
+    private final boolean success;
+    private final String error;
+    private final int timeStep;
+    // position in the session's command queue; -1 when the command was not queued
+    private final long sequence;
+    private final int appliedAt;
+
+    /**
+     * Constructs a CommandResult.
+     *
+     * @param command  the command string that was executed.
+     * @param success  true if the command was parsed and executed without error.
+     * @param error    the error message, or null on success.
+     * @param timeStep the simulation time step after the command ran.
+     */
+    public CommandResult(String command, boolean success, String error, int timeStep) {
+        this(command, success, error, timeStep, -1, timeStep);
+    }
+
+    private CommandResult(String command, boolean success, String error, int timeStep, long sequence, int appliedAt) {
+        this.command = command;
+        this.success = success;
+        this.error = error;
+        this.timeStep = timeStep;
+        this.sequence = sequence;
+        this.appliedAt = appliedAt;
+    }
+
+    public static CommandResult success(String command, int timeStep) {
+        return new CommandResult(command, true, null, timeStep);
+    }
+
+    public static CommandResult failure(String command, String error, int timeStep) {
+        return new CommandResult(command, false, error, timeStep);
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getTimeStep() {
+        return timeStep;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getAppliedAt() {
+        return appliedAt;
+    }
+
+    /**
+     * Returns a copy of this result that records where the command was applied.
+     *
+     * @param sequence  the command's position in the session's command queue.
+     * @param appliedAt the time step at whose boundary the command was applied.
+     * @return the positioned result.
+     */
+    public CommandResult withPosition(long sequence, int appliedAt) {
+        return new CommandResult(command, success, error, timeStep, sequence, appliedAt);
+    }
+
+    /**
+     * Converts this result into the JSON shape used by the HTTP endpoints:
+     * { command: String, ok: boolean, error: String (only on failure), timeStep: int,
+     *   sequence: long, appliedAt: int (both only for queued commands) }
+     *
+     * @return JSONObject describing this result.
+     */
+    public JSONObject toSerializable() {
+        JSONObject result = new JSONObject();
+        result.put("command", command);
+        result.put("ok", success);
+        if (!success) {
+            result.put("error", error);
+        }
+        result.put("timeStep", timeStep);
+        if (sequence >= 0) {
+            result.put("sequence", sequence);
+            result.put("appliedAt", appliedAt);
+        }
+        return result;
+    }
+}
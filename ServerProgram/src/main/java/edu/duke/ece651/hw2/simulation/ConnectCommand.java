@@ -12,6 +12,6 @@ public class ConnectCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.connectBuildings(sourceName, destName);
-        System.out.println("Connected " + sourceName + " to " + destName);
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Connected " + sourceName + " to " + destName);
     }
 }
\ No newline at end of file
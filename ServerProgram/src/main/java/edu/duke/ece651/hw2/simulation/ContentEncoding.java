@@ -0,0 +1,112 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body encodings the server can negotiate through Accept-Encoding.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Gets the token used in Accept-Encoding and Content-Encoding headers.
+     *
+     * @return the header token.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Picks the encoding for a response from the request's Accept-Encoding header.
+     * The supported coding with the highest q-value wins, gzip before deflate on
+     * ties; codings with q=0 are refused. Without a usable coding the body is
+     * sent as is.
+     *
+     * @param acceptEncoding the header value, or null if absent.
+     * @return the chosen encoding.
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return IDENTITY;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case "gzip", "x-gzip" -> gzip = Math.max(gzip, q);
+                case "deflate" -> deflate = Math.max(deflate, q);
+                case "*" -> wildcard = Math.max(wildcard, q);
+                default -> { }
+            }
+        }
+        // 未显式列出的编码按通配符 * 的 q 值处理
+        if (gzip < 0) {
+            gzip = wildcard;
+        }
+        if (deflate < 0) {
+            deflate = wildcard;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        if (deflate > 0) {
+            return DEFLATE;
+        }
+        return IDENTITY;
+    }
+
+    /**
+     * Encodes bytes with this coding into a new direct buffer.
+     *
+     * @param data the bytes to encode, between position and limit; not consumed.
+     * @return a read-only buffer holding the encoded bytes.
+     */
+    public ByteBuffer encode(ByteBuffer data) {
+        if (this == IDENTITY) {
+            return data.asReadOnlyBuffer();
+        }
+        ByteBuffer source = data.duplicate();
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(64, bytes.length / 8));
+        try (OutputStream out = (this == GZIP) ? new GZIPOutputStream(encoded) : new DeflaterOutputStream(encoded)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // 写入内存流不会失败
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer result = ByteBuffer.allocateDirect(encoded.size());
+        result.put(encoded.toByteArray()).flip();
+        return result.asReadOnlyBuffer();
+    }
+}
@@ -9,6 +9,7 @@ public class DelayedDelivery {
     private String item;
     private int quantity;
     private int deliveryTime;
+    private Request request;
     
     /**
      * Constructs a DelayedDelivery.
@@ -26,6 +27,22 @@ public class DelayedDelivery {
         this.quantity = quantity;
         this.deliveryTime = deliveryTime;
     }
+
+    /**
+     * Constructs a DelayedDelivery carrying the output of a request.
+     *
+     * @param source the building that sends the item.
+     * @param destination the building that will receive the item.
+     * @param item the item type to be delivered.
+     * @param quantity the quantity of the item.
+     * @param deliveryTime the time step when the delivery should arrive.
+     * @param request the request whose output this is, or null.
+     */
+    public DelayedDelivery(Building source, Building destination, String item, int quantity, int deliveryTime,
+                           Request request) {
+        this(source, destination, item, quantity, deliveryTime);
+        this.request = request;
+    }
     
     /**
      * Gets the source building.
@@ -71,4 +88,13 @@ public class DelayedDelivery {
     public int getDeliveryTime() {
         return deliveryTime;
     }
+
+    /**
+     * Gets the request whose output is being delivered.
+     *
+     * @return the request, or null if the delivery is not tied to one.
+     */
+    public Request getRequest() {
+        return request;
+    }
 }
\ No newline at end of file
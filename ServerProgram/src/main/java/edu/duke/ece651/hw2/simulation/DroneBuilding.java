@@ -23,13 +23,14 @@ public class DroneBuilding extends BasicBuilding {
     // use a drone for time steps
     public void useDrone(int time) {
         if (!hasDrone()) {
-            System.out.println("No drones available!");
+            events().emit(EventSink.Level.INFO, "No drones available!");
             return;
         }
         for (Drone d : droneList) {
             if (d.getStatus() == DroneStatus.IDLE) {
                 d.assignWork(time);
                 d.setStatus(DroneStatus.ACTIVE);
+                markChanged();
                 break;
             }
         }
@@ -78,11 +79,16 @@ public class DroneBuilding extends BasicBuilding {
     // construct a new drone
     public void constructDrone() {
         if (droneList.size() >= 10) {
-            System.out.println("Cannot make any new drones!");
+            events().emit(EventSink.Level.INFO, "Cannot make any new drones!");
             return;
         }
         Drone d = new Drone();
         droneList.add(d);
+        if (droneList.size() == 1 && simulation != null) {
+            // 第一架无人机让射程内的建筑变得可达
+            simulation.getRoadMap().noteReachGain();
+        }
+        markChanged();
     }
 
     // will return an empty list
@@ -92,6 +98,9 @@ public class DroneBuilding extends BasicBuilding {
             constructDrone();
         }
         for (Drone d : droneList) {
+            if (d.getStatus() != DroneStatus.IDLE) {
+                markChanged();
+            }
             d.step();
         }
         return new ArrayList<>();
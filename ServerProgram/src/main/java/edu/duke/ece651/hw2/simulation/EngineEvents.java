@@ -0,0 +1,141 @@
+package edu.duke.ece651.hw2.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by the engine, so a recording shows
+ * which tick, building, path search or HTTP request took the time.
+ * <p>
+ * Each event is timed with {@code begin()} and committed only if
+ * {@code shouldCommit()} says the recording wants it, so fields are filled in
+ * only then; with no recording running the cost is a few flag checks.
+ * {@code factory.jfc} in the distribution enables them with thresholds that
+ * keep only the slow ones.
+ */
+public final class EngineEvents {
+    private EngineEvents() {
+    }
+
+    @Name("factory.Tick")
+    @Label("Tick")
+    @Category({"Factory", "Engine"})
+    @Description("One time step of a simulation.")
+    @StackTrace(false)
+    public static class Tick extends Event {
+        @Label("Time Step")
+        public int timeStep;
+
+        @Label("Buildings")
+        public int buildings;
+
+        @Label("Busy Buildings")
+        public int busyBuildings;
+
+        @Label("Completed Requests")
+        public int completedRequests;
+
+        @Label("Deliveries In Flight")
+        public int deliveriesInFlight;
+    }
+
+    @Name("factory.BuildingStep")
+    @Label("Building Step")
+    @Category({"Factory", "Engine"})
+    @Description("One building's share of a time step.")
+    @StackTrace(false)
+    public static class BuildingStep extends Event {
+        @Label("Building")
+        public String building;
+
+        @Label("Type")
+        public String type;
+
+        @Label("Time Step")
+        public int timeStep;
+
+        @Label("Queue Length")
+        public int queueLength;
+
+        @Label("Completed Requests")
+        public int completedRequests;
+    }
+
+    @Name("factory.PathSearch")
+    @Label("Path Search")
+    @Category({"Factory", "Roads"})
+    @Description("Search for the cheapest road to build between two buildings.")
+    public static class PathSearch extends Event {
+        @Label("Source")
+        public String source;
+
+        @Label("Destination")
+        public String destination;
+
+        @Label("Path Length")
+        @Description("Cells on the path found, or 0 if there is none.")
+        public int pathLength;
+
+        @Label("Nodes Expanded")
+        public int nodesExpanded;
+    }
+
+    @Name("factory.DistanceSearch")
+    @Label("Distance Search")
+    @Category({"Factory", "Roads"})
+    @Description("Breadth-first search for the road distance between two buildings.")
+    public static class DistanceSearch extends Event {
+        @Label("Source")
+        public String source;
+
+        @Label("Destination")
+        public String destination;
+
+        @Label("Distance")
+        @Description("Steps along the roads, 0 if adjacent, -1 if unreachable.")
+        public int distance;
+
+        @Label("Nodes Expanded")
+        public int nodesExpanded;
+    }
+
+    @Name("factory.IngredientPlanning")
+    @Label("Ingredient Planning")
+    @Category({"Factory", "Engine"})
+    @Description("Assignment of a request's ingredients to source buildings, including the nested assignments it causes.")
+    public static class IngredientPlanning extends Event {
+        @Label("Building")
+        public String building;
+
+        @Label("Item")
+        public String item;
+
+        @Label("Depth")
+        @Description("Requests from the root of the ingredient tree down to the one being planned; 1 for a user order.")
+        public int depth;
+
+        @Label("Requests Created")
+        @Description("Requests created by this assignment and those nested in it.")
+        public int requestsCreated;
+    }
+
+    @Name("factory.HttpRequest")
+    @Label("HTTP Request")
+    @Category({"Factory", "Server"})
+    @Description("Handling of one HTTP request, from routing to the response.")
+    @StackTrace(false)
+    public static class HttpExchange extends Event {
+        @Label("Method")
+        public String method;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Status")
+        public int status;
+    }
+}
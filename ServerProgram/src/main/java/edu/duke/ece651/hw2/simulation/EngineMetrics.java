@@ -0,0 +1,33 @@
+package edu.duke.ece651.hw2.simulation;
+
+/**
+ * The engine's process-wide counters and histograms, shared by all sessions
+ * and served by GET /metrics together with per-session gauges.
+ */
+public final class EngineMetrics {
+    public static final Metrics REGISTRY = new Metrics();
+
+    public static final Metrics.Counter TICKS =
+            REGISTRY.counter("factory_ticks", "Time steps executed.");
+    public static final Metrics.Histogram TICK_SECONDS =
+            REGISTRY.histogram("factory_tick_duration_seconds", "Wall time of one time step.");
+    public static final Metrics.Counter DELIVERIES_SCHEDULED =
+            REGISTRY.counter("factory_deliveries_scheduled", "Deliveries put in transit.");
+    public static final Metrics.LabeledCounter REQUESTS_CREATED =
+            REGISTRY.counter("factory_requests_created", "Requests created, by item.", "item");
+    public static final Metrics.LabeledCounter REQUESTS_COMPLETED =
+            REGISTRY.counter("factory_requests_completed", "Requests completed, by item.", "item");
+    public static final Metrics.Histogram PATH_SEARCH_SECONDS =
+            REGISTRY.histogram("factory_path_search_duration_seconds", "Searches for a new road between two buildings.");
+    public static final Metrics.Histogram DISTANCE_SEARCH_SECONDS =
+            REGISTRY.histogram("factory_distance_search_duration_seconds", "Shortest road distance searches.");
+    public static final Metrics.Counter VIABILITY_CACHE_HITS =
+            REGISTRY.counter("factory_viability_cache_hits", "Viability checks answered from a building's cache.");
+    public static final Metrics.Counter VIABILITY_CACHE_MISSES =
+            REGISTRY.counter("factory_viability_cache_misses", "Viability checks that had to recompute reachability.");
+    public static final Metrics.Histogram HTTP_SECONDS =
+            REGISTRY.histogram("factory_http_request_duration_seconds", "Time spent handling one HTTP request.");
+
+    private EngineMetrics() {
+    }
+}
@@ -0,0 +1,361 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary record of what a simulation did: orders, ingredient
+ * assignments, deliveries, completions, buildings built and removed, and
+ * connections. {@link JournalReader} exports it as JSON lines.
+ * <p>
+ * The journal is a directory of segment files {@code 00000001.journal},
+ * {@code 00000002.journal}, ... each mapped into memory whole. A segment
+ * starts with a {@value #HEADER_BYTES}-byte header followed by
+ * {@value #RECORD_BYTES}-byte records, all big-endian:
+ * <pre>
+ * offset  0  byte  kind (1 + {@link Kind} ordinal; 0 marks the end)
+ *         4  int   time step
+ *         8  int   request id, or -1
+ *        12  int   parent request id, or -1
+ *        16  int   building name, or -1
+ *        20  int   other building name (requestor, connection target), or -1
+ *        24  int   item or building type name, or -1
+ *        28  short x, short y (BUILD only)
+ * </pre>
+ * Names are numbered per segment. The first time a segment needs a name, a
+ * NAME record holding its number and UTF-8 length is written, followed by the
+ * bytes padded to a whole record; so each segment can be read on its own and
+ * old ones can be archived or deleted. A record's kind byte is written last,
+ * so a record cut short by a crash reads as the end of the journal.
+ * <p>
+ * Writing a record is a few absolute puts into the mapped buffer and, for
+ * names seen before in the segment, a map lookup; it allocates nothing. The
+ * pages belong to the operating system, so records survive the process
+ * crashing; {@link #close()} and each rotation also force them to disk.
+ * If the next segment cannot be created, the journal closes itself and
+ * reports it once to its {@link EventSink}; the simulation carries on.
+ * An EventJournal belongs to one simulation and is used on its engine thread only.
+ */
+public class EventJournal implements AutoCloseable {
+    /** What a record describes. */
+    public enum Kind {
+        ORDER, ASSIGN, DELIVER, COMPLETE, BUILD, REMOVE, CONNECT, NAME;
+
+        private static final Kind[] VALUES = values();
+
+        byte code() {
+            return (byte) (ordinal() + 1);
+        }
+
+        /**
+         * Gets the kind stored as a code.
+         *
+         * @param code the code.
+         * @return the kind, or null for 0 or an unknown code.
+         */
+        static Kind of(int code) {
+            return code < 1 || code > VALUES.length ? null : VALUES[code - 1];
+        }
+    }
+
+    /** Size of a segment file unless given otherwise. */
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+    /** Smallest segment size accepted. */
+    public static final int MIN_SEGMENT_BYTES = 64 << 10;
+    static final int MAGIC = 0x464A524E;
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 32;
+    static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private long segment;
+    private MappedByteBuffer buffer;
+    // 段内名字编号；换段时清空，保证每段可以独立读取
+    private final Map<String, Integer> names = new HashMap<>();
+    private long records;
+    private EventSink events = ConsoleEventSink.INSTANCE;
+
+    /**
+     * Constructs an EventJournal that starts a new segment after any already
+     * in the directory.
+     *
+     * @param directory    the journal directory; created if missing.
+     * @param segmentBytes the size of each segment file.
+     * @throws IOException if the directory or the first segment cannot be created.
+     */
+    public EventJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Segments must be at least " + MIN_SEGMENT_BYTES + " bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.mapToLong(EventJournal::segmentOf).max().orElse(0);
+        }
+        openSegment();
+    }
+
+    /**
+     * Gets the number of a segment file.
+     *
+     * @param file the file.
+     * @return its number, or -1 if it is not a segment.
+     */
+    static long segmentOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX) || name.length() == SUFFIX.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String fileName(long segment) {
+        return String.format("%08d%s", segment, SUFFIX);
+    }
+
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(fileName(segment + 1));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment++;
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short) RECORD_BYTES);
+        buffer.putLong(8, segment);
+        buffer.putLong(16, System.currentTimeMillis());
+        buffer.position(HEADER_BYTES);
+        names.clear();
+    }
+
+    // 换段失败时关闭日志并报告一次，不让异常中断正在进行的时间步
+    private boolean rotate() {
+        try {
+            buffer.force();
+            openSegment();
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            buffer = null;
+            events.emit(EventSink.Level.ERROR, "Event journal " + directory + " stopped: cannot start segment "
+                    + (segment + 1) + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Sets where a failure to start a new segment is reported.
+     *
+     * @param sink the sink.
+     */
+    public void setEventSink(EventSink sink) {
+        events = sink;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of the segment being written.
+     *
+     * @return the segment number, from 1.
+     */
+    public long getSegment() {
+        return segment;
+    }
+
+    /**
+     * Gets the number of records written, not counting names.
+     *
+     * @return the count.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    public boolean isOpen() {
+        return buffer != null;
+    }
+
+    /**
+     * Records a user order.
+     *
+     * @param timeStep the time step it was placed at.
+     * @param request  the request id.
+     * @param building the building it was assigned to.
+     * @param item     the item ordered.
+     */
+    public void order(int timeStep, int request, String building, String item) {
+        append(Kind.ORDER, timeStep, request, -1, building, null, item, 0, 0);
+    }
+
+    /**
+     * Records an ingredient request assigned to a source building.
+     *
+     * @param timeStep the time step it was created at.
+     * @param request  the request id.
+     * @param parent   the request the ingredient is for, or -1 if none
+     *                 (e.g. a storage restocking itself).
+     * @param building the building it was assigned to.
+     * @param item     the ingredient.
+     */
+    public void assigned(int timeStep, int request, int parent, String building, String item) {
+        append(Kind.ASSIGN, timeStep, request, parent, building, null, item, 0, 0);
+    }
+
+    /**
+     * Records a request's output reaching its requestor.
+     *
+     * @param timeStep the time step it arrived at.
+     * @param request  the request id.
+     * @param from     the building that made it.
+     * @param to       the requestor.
+     * @param item     the item.
+     */
+    public void delivered(int timeStep, int request, String from, String to, String item) {
+        append(Kind.DELIVER, timeStep, request, -1, from, to, item, 0, 0);
+    }
+
+    /**
+     * Records a request completing.
+     *
+     * @param timeStep the time step it completed at.
+     * @param request  the request id.
+     * @param building the building that worked on it.
+     * @param item     the item made.
+     */
+    public void completed(int timeStep, int request, String building, String item) {
+        append(Kind.COMPLETE, timeStep, request, -1, building, null, item, 0, 0);
+    }
+
+    /**
+     * Records a building being built.
+     *
+     * @param timeStep the time step.
+     * @param building the building.
+     * @param type     its type.
+     * @param x        its x coordinate.
+     * @param y        its y coordinate.
+     */
+    public void built(int timeStep, String building, String type, int x, int y) {
+        append(Kind.BUILD, timeStep, -1, -1, building, null, type, x, y);
+    }
+
+    /**
+     * Records a building being removed.
+     *
+     * @param timeStep the time step.
+     * @param building the building.
+     */
+    public void removed(int timeStep, String building) {
+        append(Kind.REMOVE, timeStep, -1, -1, building, null, null, 0, 0);
+    }
+
+    /**
+     * Records a connection between two buildings.
+     *
+     * @param timeStep the time step.
+     * @param source   the building supplying.
+     * @param dest     the building supplied.
+     */
+    public void connected(int timeStep, String source, String dest) {
+        append(Kind.CONNECT, timeStep, -1, -1, source, dest, null, 0, 0);
+    }
+
+    private void append(Kind kind, int timeStep, int request, int parent,
+                        String building, String peer, String item, int x, int y) {
+        if (buffer == null) {
+            return;
+        }
+        int b;
+        int p;
+        int i;
+        long started;
+        // 写名字或记录时若换了段，名字编号作废，重新解析
+        do {
+            started = segment;
+            b = nameId(building);
+            p = nameId(peer);
+            i = nameId(item);
+            if (buffer == null || buffer.remaining() < RECORD_BYTES && !rotate()) {
+                return;
+            }
+        } while (started != segment);
+
+        int at = buffer.position();
+        buffer.putInt(at + 4, timeStep);
+        buffer.putInt(at + 8, request);
+        buffer.putInt(at + 12, parent);
+        buffer.putInt(at + 16, b);
+        buffer.putInt(at + 20, p);
+        buffer.putInt(at + 24, i);
+        buffer.putShort(at + 28, (short) x);
+        buffer.putShort(at + 30, (short) y);
+        buffer.put(at, kind.code());
+        buffer.position(at + RECORD_BYTES);
+        records++;
+    }
+
+    // 返回名字在当前段的编号，第一次出现时先写一条 NAME 记录
+    private int nameId(String name) {
+        if (name == null || buffer == null) {
+            return -1;
+        }
+        Integer id = names.get(name);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_BYTES + (bytes.length + RECORD_BYTES - 1) / RECORD_BYTES * RECORD_BYTES;
+        if (size > segmentBytes - HEADER_BYTES) {
+            throw new IllegalArgumentException("Name too long for a journal segment: " + name);
+        }
+        if (buffer.remaining() < size && !rotate()) {
+            return -1;
+        }
+        int next = names.size();
+        int at = buffer.position();
+        buffer.putInt(at + 8, next);
+        buffer.putInt(at + 28, bytes.length);
+        buffer.put(at + RECORD_BYTES, bytes);
+        buffer.put(at, Kind.NAME.code());
+        buffer.position(at + size);
+        names.put(name, next);
+        return next;
+    }
+
+    /**
+     * Forces the records written so far to disk.
+     */
+    public void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Forces the records to disk and stops writing; later records are ignored.
+     */
+    @Override
+    public void close() {
+        flush();
+        buffer = null;
+    }
+}
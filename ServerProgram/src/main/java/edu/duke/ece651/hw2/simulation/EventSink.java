@@ -0,0 +1,51 @@
+package edu.duke.ece651.hw2.simulation;
+
+/**
+ * Where a simulation's log output goes.
+ * <p>
+ * Callers check {@link #isEnabled} before building a message, so a sink that
+ * drops a level costs one call per message and no string concatenation:
+ * <pre>
+ * if (events.isEnabled(EventSink.Level.DEBUG)) {
+ *     events.emit(EventSink.Level.DEBUG, "Processing building: " + name);
+ * }
+ * </pre>
+ * The simulation's verbosity still decides which of the verbose messages
+ * are produced at all; the sink's level decides which reach the output.
+ * Messages printed to stderr before sinks existed are WARN or ERROR, those
+ * printed to stdout are INFO or DEBUG.
+ */
+public interface EventSink {
+    /** Severity of a message, most severe first. */
+    enum Level {
+        ERROR, WARN, INFO, DEBUG
+    }
+
+    /** Discards everything, e.g. for benchmarks. */
+    EventSink NONE = new EventSink() {
+        @Override
+        public boolean isEnabled(Level level) {
+            return false;
+        }
+
+        @Override
+        public void emit(Level level, String message) {
+        }
+    };
+
+    /**
+     * Checks whether messages of a level would be written.
+     *
+     * @param level the level.
+     * @return true if they would.
+     */
+    boolean isEnabled(Level level);
+
+    /**
+     * Writes one message, a single line without its terminator.
+     *
+     * @param level   the message's level.
+     * @param message the message.
+     */
+    void emit(Level level, String message);
+}
@@ -30,6 +30,11 @@ public class FactoryBuilding extends BasicBuilding{
                 "Type Recipes: " + buildingType.getRecipes() + "\n";
     }
 
+    @Override
+    public String toSummary() {
+        return super.toSummary() + "Type Recipes: " + buildingType.getRecipes() + "\n";
+    }
+
     /**
      * Gets the BuildingType associated with this factory.
      *
@@ -68,6 +73,7 @@ public class FactoryBuilding extends BasicBuilding{
     @Override
     public void addRequest(Request request) {
         requestQueue.add(request);
+        markChanged();
 
     }
 
@@ -88,20 +94,23 @@ public class FactoryBuilding extends BasicBuilding{
             if (this.getLocation() != null && requestor.getLocation() != null) {
                 transitTime = simulation.getRoadMap().getShortestDistance(this, requestor);
                 if (transitTime < 0) {
-                    System.err.println("Warning: No valid path found from " + this.getName() + 
-                                    " to " + requestor.getName() + ", using direct delivery");
+                    if (events().isEnabled(EventSink.Level.WARN)) {
+                        events().emit(EventSink.Level.WARN, "Warning: No valid path found from " + this.getName() + 
+                                        " to " + requestor.getName() + ", using direct delivery");
+                    }
                     transitTime = 0;
                 }
             }
             if (transitTime > 0) {
                 simulation.scheduleDelivery(this, requestor, recipe.getOutput(), 1, 
-                                         currentTimeStep + transitTime);
+                                         currentTimeStep + transitTime, currentRequest);
             } else {
                 // if adjacent, deliver immediately
                 requestor.deliverItem(recipe.getOutput(), 1);
+                simulation.getRequestRegistry().delivered(currentRequest, currentTimeStep + 1);
                 
-                if (verbosity >= 1) {
-                    System.out.println("[ingredient delivered]: " + recipe.getOutput() + 
+                if (verbosity >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "[ingredient delivered]: " + recipe.getOutput() + 
                                      " to " + requestor.getName() + 
                                      " from " + name + 
                                      " on cycle " + (currentTimeStep+1));
@@ -114,9 +123,11 @@ public class FactoryBuilding extends BasicBuilding{
 
         } else {
             // This is a user request
-            System.out.println("[order complete] Order " + currentRequest.getId() + 
-                            " completed (" + currentRequest.getRecipe().getOutput() + 
-                            ") at time " + (currentTimeStep+1));
+            if (events().isEnabled(EventSink.Level.INFO)) {
+                events().emit(EventSink.Level.INFO, "[order complete] Order " + currentRequest.getId() + 
+                                " completed (" + currentRequest.getRecipe().getOutput() + 
+                                ") at time " + (currentTimeStep+1));
+            }
         }
     }
         
@@ -125,6 +136,10 @@ public class FactoryBuilding extends BasicBuilding{
     public List<Request> step(int currentTimeStep, int verbosity) {
         List<Request> completedRequests = new ArrayList<>();
         boolean processed = false;  
+        // 空闲的工厂在这一步不会有任何变化
+        if (currentRequest != null || !requestQueue.isEmpty()) {
+            markChanged();
+        }
         // 1. Process current request if one is in progress
         if (currentRequest != null && remainingTime > 0) {
             remainingTime--;
@@ -143,6 +158,7 @@ public class FactoryBuilding extends BasicBuilding{
             Request nextRequest = selectNextRequest(currentTimeStep, verbosity);
             if (nextRequest != null) {
                 currentRequest = nextRequest;
+                currentRequest.setTimeStarted(currentTimeStep);
                 remainingTime = currentRequest.getRecipe().getLatency();
                 if (processed) {
                     return completedRequests;
@@ -176,12 +192,12 @@ public class FactoryBuilding extends BasicBuilding{
     @Override
     public Request selectNextRequest(int currentTimeStep, int verbosity) {
         // Default implementation: FIFO policy
-        if (verbosity >= 2 && !requestQueue.isEmpty()) {
-            System.out.println("[recipe selection]: " + name + " has fifo on cycle " + (currentTimeStep + 1));
+        if (verbosity >= 2 && !requestQueue.isEmpty() && events().isEnabled(EventSink.Level.INFO)) {
+            events().emit(EventSink.Level.INFO, "[recipe selection]: " + name + " has fifo on cycle " + (currentTimeStep + 1));
         }
 
         // First pass: print status of all requests
-        if (verbosity >= 2) {
+        if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
             for (int i = 0; i < requestQueue.size(); i++) {
                 Request request = requestQueue.get(i);
                 Recipe recipe = request.getRecipe();
@@ -206,7 +222,7 @@ public class FactoryBuilding extends BasicBuilding{
 
                 // Report status
                 if (isReady) {
-                    System.out.println("    " + i + ": is ready");
+                    events().emit(EventSink.Level.INFO, "    " + i + ": is ready");
                 } else {
                     // Format missing ingredients list
                     Map<String, Integer> missing = new HashMap<>();
@@ -228,7 +244,7 @@ public class FactoryBuilding extends BasicBuilding{
                         sb.append(entry.getKey());
                     }
                     sb.append("}");
-                    System.out.println(sb);
+                    events().emit(EventSink.Level.INFO, sb.toString());
                 }
             }
         }
@@ -253,8 +269,8 @@ public class FactoryBuilding extends BasicBuilding{
 
             // If the request is ready, select it
             if (isReady) {
-                if (verbosity >= 2) {
-                    System.out.println("    Selecting " + i);
+                if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "    Selecting " + i);
                 }
                 // Remove from queue and return
                 return requestQueue.remove(i);
@@ -265,7 +281,7 @@ public class FactoryBuilding extends BasicBuilding{
     }
 
     @Override
-    public boolean isViable() {
+    protected boolean computeViability() {
         // 工厂需要能够获取所有可能需要的原料
         for (String recipeName : buildingType.getRecipes()) {
             Recipe recipe = simulation.getRecipes().get(recipeName);
@@ -278,7 +294,7 @@ public class FactoryBuilding extends BasicBuilding{
                     Building source = simulation.getBuildings().get(sourceName);
                     if (source != null && source.canProduce(ingredient)) {
                         // 还需要检查是否有有效的路径连接
-                        if (simulation.getRoadMap().getShortestDistance(source, this) >= 0) {
+                        if (simulation.getRoadMap().canReach(source, this)) {
                             canGet = true;
                             break;
                         }
@@ -12,6 +12,6 @@ public class FinishCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.finish();
-        System.out.println("Simulation finished at time " + simulation.getCurrentTimeStep());
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Simulation finished at time " + simulation.getCurrentTimeStep());
     }
 }
\ No newline at end of file
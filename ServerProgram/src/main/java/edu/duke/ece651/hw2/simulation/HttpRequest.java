@@ -0,0 +1,238 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A parsed HTTP request, independent of the transport that received it.
+ */
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final String query;
+    private final String version;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    /**
+     * Constructs an HttpRequest.
+     *
+     * @param method  the request method, e.g. "GET".
+     * @param path    the decoded request path.
+     * @param query   the raw query string, or null if there is none.
+     * @param version the protocol version, e.g. "HTTP/1.1".
+     * @param headers the request headers, keyed by lower-case name.
+     * @param body    the request body.
+     */
+    public HttpRequest(String method, String path, String query, String version,
+                       Map<String, String> headers, byte[] body) {
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.version = version;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Gets a header value.
+     *
+     * @param name the header name, in any case.
+     * @return the header value, or null if absent.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets the body decoded as UTF-8 text.
+     *
+     * @return the body text.
+     */
+    public String getBodyText() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets a decoded query parameter.
+     *
+     * @param name the parameter name.
+     * @return the value, "" for a parameter without '=', or null if absent.
+     * @throws UncheckedIOException wrapping a {@link BadRequestException} with
+     *                              status 400 if the value has a malformed %-escape.
+     */
+    public String getQueryParam(String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                if (eq < 0) {
+                    return "";
+                }
+                try {
+                    return decode(pair.substring(eq + 1));
+                } catch (BadRequestException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the client wants the connection kept open after this request.
+     * HTTP/1.1 keeps it open unless "Connection: close"; HTTP/1.0 closes it unless
+     * "Connection: keep-alive".
+     *
+     * @return true to keep the connection open.
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    /**
+     * Parses one request from the front of a buffer in read mode.
+     * <p>
+     * If the buffer holds a complete request, its bytes are consumed and the
+     * request is returned; further pipelined requests stay in the buffer. If the
+     * request is still incomplete, the buffer is left untouched and null is
+     * returned.
+     *
+     * @param buffer       the received bytes, in read mode.
+     * @param maxBodyBytes largest accepted body.
+     * @return the request, or null if more bytes are needed.
+     * @throws BadRequestException if the bytes are not a valid request or exceed the limits.
+     */
+    public static HttpRequest parse(ByteBuffer buffer, int maxBodyBytes) throws BadRequestException {
+        int start = buffer.position();
+        int headerEnd = indexOfHeaderEnd(buffer);
+        if (headerEnd < 0) {
+            return null;
+        }
+        String head = StandardCharsets.ISO_8859_1.decode(buffer.slice(start, headerEnd - start)).toString();
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new BadRequestException(400, "Malformed request line: " + lines[0]);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new BadRequestException(400, "Malformed header: " + lines[i]);
+            }
+            headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    lines[i].substring(colon + 1).trim());
+        }
+        if (headers.containsKey("transfer-encoding")) {
+            throw new BadRequestException(411, "Chunked request bodies are not supported; send Content-Length");
+        }
+
+        int length = 0;
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            try {
+                length = Integer.parseInt(contentLength);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException(400, "Invalid Content-Length: " + contentLength);
+            }
+            if (length < 0) {
+                throw new BadRequestException(400, "Invalid Content-Length: " + contentLength);
+            }
+            if (length > maxBodyBytes) {
+                throw new BadRequestException(413, "Request body exceeds " + maxBodyBytes + " bytes");
+            }
+        }
+        int bodyStart = headerEnd + 4;
+        if (buffer.limit() - bodyStart < length) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        buffer.get(bodyStart, body);
+        buffer.position(bodyStart + length);
+
+        String target = requestLine[1];
+        int q = target.indexOf('?');
+        String path = decode(q < 0 ? target : target.substring(0, q));
+        String query = q < 0 ? null : target.substring(q + 1);
+        return new HttpRequest(requestLine[0], path, query, requestLine[2], headers, body);
+    }
+
+    /**
+     * Decodes a %-escaped URL component.
+     *
+     * @throws BadRequestException if an escape is malformed, e.g. "%zz".
+     */
+    private static String decode(String text) throws BadRequestException {
+        try {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(400, "Malformed escape in " + text);
+        }
+    }
+
+    /**
+     * Finds the "\r\n\r\n" that ends the header block.
+     *
+     * @return the absolute index of the terminator, or -1 if not yet received.
+     */
+    private static int indexOfHeaderEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i + 3 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Thrown when received bytes cannot be parsed as an acceptable request.
+     * The status is the HTTP status to answer with before closing the connection.
+     */
+    public static class BadRequestException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
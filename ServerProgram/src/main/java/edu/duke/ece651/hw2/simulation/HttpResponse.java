@@ -0,0 +1,119 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * An HTTP response, independent of the transport that sends it.
+ * <p>
+ * The body is a read-only buffer so cached bytes (e.g. a state snapshot) can be
+ * shared by many responses without copying; each response writes from its own
+ * duplicate.
+ */
+public class HttpResponse {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final ByteBuffer body;
+
+    /**
+     * Constructs an HttpResponse.
+     *
+     * @param status the HTTP status code.
+     * @param body   the body bytes, between position and limit.
+     */
+    public HttpResponse(int status, ByteBuffer body) {
+        this.status = status;
+        this.body = body.asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates a response without a body.
+     *
+     * @param status the HTTP status code.
+     * @return the response.
+     */
+    public static HttpResponse empty(int status) {
+        return new HttpResponse(status, EMPTY);
+    }
+
+    /**
+     * Creates a JSON response from text.
+     *
+     * @param status the HTTP status code.
+     * @param json   the JSON text.
+     * @return the response.
+     */
+    public static HttpResponse json(int status, String json) {
+        return json(status, ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Creates a JSON response from already encoded UTF-8 bytes.
+     *
+     * @param status the HTTP status code.
+     * @param json   the encoded JSON.
+     * @return the response.
+     */
+    public static HttpResponse json(int status, ByteBuffer json) {
+        return new HttpResponse(status, json).header("Content-Type", "application/json; charset=utf-8");
+    }
+
+    /**
+     * Creates an error response of the form {"error": message}.
+     *
+     * @param status  the HTTP status code.
+     * @param message the error message.
+     * @return the response.
+     */
+    public static HttpResponse error(int status, String message) {
+        return json(status, new JSONObject().put("error", message).toString());
+    }
+
+    /**
+     * Sets a header, replacing any earlier value.
+     *
+     * @param name  the header name.
+     * @param value the header value.
+     * @return this response.
+     */
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets a fresh view of the body; reading it does not affect other views.
+     *
+     * @return the body buffer.
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    public int getBodyLength() {
+        return body.remaining();
+    }
+
+    /**
+     * Checks whether the status forbids a body (1xx, 204 and 304).
+     *
+     * @return true if no body may be sent.
+     */
+    public boolean isBodyless() {
+        return status < 200 || status == 204 || status == 304;
+    }
+}
@@ -0,0 +1,167 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+/**
+ * Exports an {@link EventJournal} as JSON lines, one object per record, e.g.
+ * <pre>
+ * {"kind":"assign","step":3,"request":12,"parent":7,"building":"Fdoor","item":"wood"}
+ * </pre>
+ * Segments are read in order; each stops at its first empty record, so the
+ * journal of a running or crashed simulation can be read too.
+ * <p>
+ * Usage: {@code java JournalReader <journal-dir> [from-step [to-step]]}
+ */
+public class JournalReader {
+    private JournalReader() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java simulation.JournalReader <journal-dir> [from-step [to-step]]");
+            System.exit(1);
+        }
+        try {
+            int from = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+            int to = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            export(Paths.get(args[0]), from, to, out);
+            out.flush();
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid time step: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes the records of a time step range as JSON lines.
+     *
+     * @param directory the journal directory.
+     * @param fromStep  the first time step exported.
+     * @param toStep    the last time step exported.
+     * @param out       where to write.
+     * @return the number of records written.
+     * @throws IOException if a segment cannot be read or is not a journal segment.
+     */
+    public static long export(Path directory, int fromStep, int toStep, Writer out) throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(f -> EventJournal.segmentOf(f) > 0)
+                    .sorted(Comparator.comparingLong(EventJournal::segmentOf))
+                    .collect(Collectors.toList());
+        }
+        long written = 0;
+        for (Path segment : segments) {
+            written += exportSegment(segment, fromStep, toStep, out);
+        }
+        return written;
+    }
+
+    private static long exportSegment(Path file, int fromStep, int toStep, Writer out) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < EventJournal.HEADER_BYTES || buffer.getInt(0) != EventJournal.MAGIC) {
+            throw new IOException(file + " is not a journal segment");
+        }
+        if (buffer.getShort(4) != EventJournal.VERSION) {
+            throw new IOException(file + " has unsupported version " + buffer.getShort(4));
+        }
+        Map<Integer, String> names = new HashMap<>();
+        long written = 0;
+        int at = EventJournal.HEADER_BYTES;
+        while (at + EventJournal.RECORD_BYTES <= buffer.limit()) {
+            EventJournal.Kind kind = EventJournal.Kind.of(buffer.get(at));
+            if (kind == null) {
+                break;
+            }
+            if (kind == EventJournal.Kind.NAME) {
+                int length = buffer.getInt(at + 28);
+                byte[] bytes = new byte[length];
+                buffer.get(at + EventJournal.RECORD_BYTES, bytes);
+                names.put(buffer.getInt(at + 8), new String(bytes, StandardCharsets.UTF_8));
+                at += EventJournal.RECORD_BYTES
+                        + (length + EventJournal.RECORD_BYTES - 1) / EventJournal.RECORD_BYTES * EventJournal.RECORD_BYTES;
+                continue;
+            }
+            int step = buffer.getInt(at + 4);
+            if (step >= fromStep && step <= toStep) {
+                out.write(toJson(kind, buffer, at, names).toString());
+                out.write('\n');
+                written++;
+            }
+            at += EventJournal.RECORD_BYTES;
+        }
+        return written;
+    }
+
+    /**
+     * Converts one record; only the fields its kind uses are included.
+     */
+    static JSONObject toJson(EventJournal.Kind kind, MappedByteBuffer buffer, int at, Map<Integer, String> names) {
+        JSONObject json = new JSONObject();
+        json.put("kind", kind.name().toLowerCase(Locale.ROOT));
+        json.put("step", buffer.getInt(at + 4));
+        String building = names.get(buffer.getInt(at + 16));
+        String peer = names.get(buffer.getInt(at + 20));
+        String item = names.get(buffer.getInt(at + 24));
+        switch (kind) {
+            case ORDER, COMPLETE -> {
+                json.put("request", buffer.getInt(at + 8));
+                json.put("building", building);
+                json.put("item", item);
+            }
+            case ASSIGN -> {
+                json.put("request", buffer.getInt(at + 8));
+                if (buffer.getInt(at + 12) >= 0) {
+                    json.put("parent", buffer.getInt(at + 12));
+                }
+                json.put("building", building);
+                json.put("item", item);
+            }
+            case DELIVER -> {
+                json.put("request", buffer.getInt(at + 8));
+                json.put("from", building);
+                json.put("to", peer);
+                json.put("item", item);
+            }
+            case BUILD -> {
+                json.put("building", building);
+                json.put("type", item);
+                json.put("x", buffer.getShort(at + 28));
+                json.put("y", buffer.getShort(at + 30));
+            }
+            case REMOVE -> json.put("building", building);
+            case CONNECT -> {
+                json.put("from", building);
+                json.put("to", peer);
+            }
+            default -> {
+            }
+        }
+        return json;
+    }
+}
@@ -0,0 +1,124 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * A histogram of non-negative durations in time steps, laid out like an HDR
+ * histogram: values below 32 are counted exactly, and every power-of-two
+ * range above that is split into 16 equal sub-buckets, so any recorded value
+ * is reported within 1/16 of its true value. The bucket array only grows as
+ * far as the largest value seen, and recording is an index computation and
+ * an increment.
+ * A LatencyHistogram is not thread-safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    // 小于 2 * SUB_BUCKETS 的值各占一个桶
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private long[] counts = new long[LINEAR];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records one duration.
+     *
+     * @param value the duration in time steps; negative values count as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        int index = indexOf(v);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + SUB_BUCKETS));
+        }
+        counts[index]++;
+        count++;
+        sum += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    static int indexOf(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int sub = (int) (v >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+    }
+
+    // 桶内能表示的最大值
+    static long highestValueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest recorded value.
+     *
+     * @return the minimum, or 0 if nothing was recorded.
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Gets the value at or below which the given share of recorded values lie.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the largest value of the bucket holding that rank, capped at the
+     *         maximum; 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Summarizes the histogram: { count, min, max, mean, p50, p90, p99 }.
+     *
+     * @return the summary.
+     */
+    public JSONObject toSerializable() {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        json.put("min", getMin());
+        json.put("max", max);
+        json.put("mean", getMean());
+        json.put("p50", getValueAtPercentile(50));
+        json.put("p90", getValueAtPercentile(90));
+        json.put("p99", getValueAtPercentile(99));
+        return json;
+    }
+}
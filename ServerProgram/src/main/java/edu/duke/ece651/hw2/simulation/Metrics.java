@@ -0,0 +1,265 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A small metrics registry rendered in the Prometheus text exposition format.
+ * <p>
+ * Counters and histograms are backed by {@link LongAdder}s, so any thread can
+ * record without locking, and recording allocates nothing: histogram buckets
+ * are fixed when the histogram is created, and a labelled counter allocates
+ * only the first time it sees a label value. Values that are cheaper to read
+ * on demand (queue depths, drones in use) are written as gauges by whoever
+ * renders the registry, with {@link #writeHeader} and {@link #writeSample}.
+ */
+public class Metrics {
+    /** Histogram bucket bounds, in seconds, from 10 µs to 5 s. */
+    public static final double[] DEFAULT_BUCKETS = {
+        0.00001, 0.00005, 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5
+    };
+
+    private final List<Family> families = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a counter.
+     *
+     * @param name the metric name, without the {@code _total} suffix.
+     * @param help the help text.
+     * @return the counter.
+     */
+    public Counter counter(String name, String help) {
+        return register(new Counter(name, help));
+    }
+
+    /**
+     * Registers a counter with one label.
+     *
+     * @param name  the metric name, without the {@code _total} suffix.
+     * @param help  the help text.
+     * @param label the label name.
+     * @return the counter.
+     */
+    public LabeledCounter counter(String name, String help, String label) {
+        return register(new LabeledCounter(name, help, label));
+    }
+
+    /**
+     * Registers a histogram of durations with {@link #DEFAULT_BUCKETS}.
+     *
+     * @param name the metric name, ending in {@code _seconds}.
+     * @param help the help text.
+     * @return the histogram.
+     */
+    public Histogram histogram(String name, String help) {
+        return register(new Histogram(name, help, DEFAULT_BUCKETS));
+    }
+
+    private <T extends Family> T register(T family) {
+        families.add(family);
+        return family;
+    }
+
+    /**
+     * Renders every registered metric.
+     *
+     * @param out where to append the exposition text.
+     */
+    public void writeTo(StringBuilder out) {
+        for (Family family : families) {
+            family.writeTo(out);
+        }
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric.
+     *
+     * @param out  where to append.
+     * @param name the metric name.
+     * @param type counter, gauge or histogram.
+     * @param help the help text.
+     */
+    public static void writeHeader(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n"))
+                .append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes one sample line.
+     *
+     * @param out    where to append.
+     * @param name   the sample name.
+     * @param value  the value.
+     * @param labels alternating label names and values.
+     */
+    public static void writeSample(StringBuilder out, String name, double value, String... labels) {
+        out.append(name);
+        if (labels.length > 0) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.isInfinite(value) ? (value > 0 ? "+Inf" : "-Inf") : Double.toString(value);
+    }
+
+    /**
+     * One named metric.
+     */
+    private abstract static class Family {
+        final String name;
+        final String help;
+
+        Family(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void writeTo(StringBuilder out);
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter extends Family {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        void writeTo(StringBuilder out) {
+            writeHeader(out, name + "_total", "counter", help);
+            writeSample(out, name + "_total", value.sum());
+        }
+    }
+
+    /**
+     * A counter split by the value of one label, e.g. per item.
+     */
+    public static class LabeledCounter extends Family {
+        private static final Function<String, LongAdder> NEW_ADDER = k -> new LongAdder();
+
+        private final String label;
+        private final Map<String, LongAdder> values = new ConcurrentHashMap<>();
+
+        LabeledCounter(String name, String help, String label) {
+            super(name, help);
+            this.label = label;
+        }
+
+        public void increment(String labelValue) {
+            LongAdder adder = values.get(labelValue);
+            if (adder == null) {
+                adder = values.computeIfAbsent(labelValue, NEW_ADDER);
+            }
+            adder.increment();
+        }
+
+        public long get(String labelValue) {
+            LongAdder adder = values.get(labelValue);
+            return adder == null ? 0 : adder.sum();
+        }
+
+        @Override
+        void writeTo(StringBuilder out) {
+            writeHeader(out, name + "_total", "counter", help);
+            // 按标签值排序输出，便于对比两次抓取
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(values).entrySet()) {
+                writeSample(out, name + "_total", entry.getValue().sum(), label, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * A distribution of durations over fixed buckets.
+     */
+    public static class Histogram extends Family {
+        private final double[] bounds;
+        private final long[] boundNanos;
+        // 每个桶只计落在本桶内的次数，输出时再累加；最后一个桶是 +Inf
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram(String name, String help, double[] bounds) {
+            super(name, help);
+            this.bounds = bounds.clone();
+            boundNanos = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                boundNanos[i] = Math.round(bounds[i] * 1e9);
+            }
+            buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one duration.
+         *
+         * @param nanos the duration in nanoseconds, e.g. a difference of
+         *              {@link System#nanoTime()} readings.
+         */
+        public void observeNanos(long nanos) {
+            int i = 0;
+            while (i < boundNanos.length && nanos > boundNanos[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        void writeTo(StringBuilder out) {
+            writeHeader(out, name, "histogram", help);
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < bounds.length ? Double.toString(bounds[i]) : "+Inf";
+                writeSample(out, name + "_bucket", cumulative, "le", le);
+            }
+            writeSample(out, name + "_sum", sumNanos.sum() / 1e9);
+            writeSample(out, name + "_count", count.sum());
+        }
+    }
+}
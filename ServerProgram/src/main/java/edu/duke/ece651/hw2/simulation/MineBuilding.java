@@ -35,6 +35,11 @@ public class MineBuilding extends BasicBuilding {
                 "MineRecipe: " + mineRecipe.getOutput() + "\n";
     }
 
+    @Override
+    public String toSummary() {
+        return super.toSummary() + "Mine: " + mine + "\n";
+    }
+
     /**
      * Sets the mine recipe reference.
      *
@@ -99,20 +104,23 @@ public class MineBuilding extends BasicBuilding {
             if (this.getLocation() != null && requestor.getLocation() != null) {
                 transitTime = simulation.getRoadMap().getShortestDistance(this, requestor);
                 if (transitTime < 0) {
-                    System.err.println("Warning: No valid path found from " + this.getName() + 
-                                    " to " + requestor.getName() + ", using direct delivery");
+                    if (events().isEnabled(EventSink.Level.WARN)) {
+                        events().emit(EventSink.Level.WARN, "Warning: No valid path found from " + this.getName() + 
+                                        " to " + requestor.getName() + ", using direct delivery");
+                    }
                     transitTime = 0;
                 }
             }
             if (transitTime > 0) {
                 simulation.scheduleDelivery(this, requestor, mine, 1, 
-                                         currentTimeStep + transitTime);
+                                         currentTimeStep + transitTime, currentRequest);
             } else {
                 // if adjacent, deliver immediately
                 requestor.deliverItem(mine, 1);
+                simulation.getRequestRegistry().delivered(currentRequest, currentTimeStep + 1);
                 
-                if (verbosity >= 1) {
-                    System.out.println("[ingredient delivered]: " + mine + 
+                if (verbosity >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "[ingredient delivered]: " + mine + 
                                      " to " + requestor.getName() + 
                                      " from " + name + 
                                      " on cycle " + (currentTimeStep+1));
@@ -123,8 +131,10 @@ public class MineBuilding extends BasicBuilding {
             }
         } else {
             // This is a user request
-            System.out.println("[order complete] Order " + currentRequest.getId() + 
-                            " completed (" + mine + ") at time " + (currentTimeStep + 1));
+            if (events().isEnabled(EventSink.Level.INFO)) {
+                events().emit(EventSink.Level.INFO, "[order complete] Order " + currentRequest.getId() + 
+                                " completed (" + mine + ") at time " + (currentTimeStep + 1));
+            }
         }
     }
 
@@ -132,6 +142,9 @@ public class MineBuilding extends BasicBuilding {
     public List<Request> step(int currentTimeStep, int verbosity) {
         List<Request> completedRequests = new ArrayList<>();
         boolean processed = false;
+        if (currentRequest != null || !requestQueue.isEmpty()) {
+            markChanged();
+        }
 
         // Process current request if one is in progress
         if (currentRequest != null && remainingTime > 0) {
@@ -150,6 +163,7 @@ public class MineBuilding extends BasicBuilding {
             Request nextRequest = selectNextRequest(currentTimeStep, verbosity);
             if (nextRequest != null) {
                 currentRequest = nextRequest;
+                currentRequest.setTimeStarted(currentTimeStep);
                 remainingTime = mineRecipe.getLatency();
                 
                 if (!processed) {
@@ -182,7 +196,7 @@ public class MineBuilding extends BasicBuilding {
     }
 
     @Override
-    public boolean isViable() {
+    protected boolean computeViability() {
         return true;
     }
 }
\ No newline at end of file
@@ -1,172 +1,127 @@
 package edu.duke.ece651.hw2.simulation;
 
-import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
-import static edu.duke.ece651.hw2.simulation.NewMain.extractBuildingTypes;
-
 public class NewServerMain {
+    /** Number of threads running request handlers; simulation work runs on each session's own engine thread. */
+    static final int HTTP_THREADS = 16;
+    static final int PORT = 3000;
+
     /**
      * Entry point for the simulation server.
+     * Pass "real-time" to start the default session's clock, "nio" to serve
+     * with the non-blocking {@link NioHttpServer} instead of com.sun.net.httpserver,
+     * "journal" to keep an {@link EventJournal} of each session under journal/,
+     * and "command-log" to log each session's commands for {@link ReplayRunner}
+     * under commands/. Clients may load further sessions by name from the
+     * directory of the JSON file.
      *
      * @param args Command line arguments; the first argument should be the JSON file path.
      */
     public static void main(String[] args) {
+        SessionManager sessions = new SessionManager();
+        // 引擎线程只把消息放进队列，由后台线程成批写到控制台；退出时写完队列中剩余的消息
+        AsyncEventSink events = new AsyncEventSink(System.out, EventSink.Level.INFO, AsyncEventSink.DEFAULT_CAPACITY);
+        Runtime.getRuntime().addShutdownHook(new Thread(events::close, "event-sink-shutdown"));
+        sessions.setEventSink(events);
         if (args.length < 1) {
-            System.err.println("Usage: java simulation.ServerMain <json-file>");
+            events.emit(EventSink.Level.ERROR,
+                    "Usage: java simulation.ServerMain <json-file> [real-time] [nio] [journal] [command-log]");
             System.exit(0);
         }
         String filePath = args[0];
-        SimulationParser parser = new SimulationParser();
-        try {
-            // 解析 JSON 文件以及相关组件
-            JsonNode json = parser.parseJsonFile(filePath);
-            Map<String, Recipe> recipes = parser.parseRecipes(json);
-            Map<String, BuildableType> buildableTypes = parser.parseBuildableTypes(json, recipes);
-            Map<String, BuildingType> buildingTypes = extractBuildingTypes(buildableTypes);
-            Map<String, Building> buildings = parser.parseBuildings(json, buildableTypes, buildingTypes, recipes);
-            parser.validateInput(buildings, recipes);
-            BasicSimulation simulation = BasicSimulation.createSimulation(buildings, recipes, buildingTypes, buildableTypes);
-            parser.parseConnections(json, simulation);
-
-
-            boolean realTime = false;
-            for (String arg : args) {
-                if ("real-time".equalsIgnoreCase(arg)) {
-                    realTime = true;
-                    break;
-                }
+        boolean realTime = false;
+        boolean nio = false;
+        boolean journal = false;
+        boolean commandLog = false;
+        for (String arg : args) {
+            if ("real-time".equalsIgnoreCase(arg)) {
+                realTime = true;
+            } else if ("nio".equalsIgnoreCase(arg)) {
+                nio = true;
+            } else if ("journal".equalsIgnoreCase(arg)) {
+                journal = true;
+            } else if ("command-log".equalsIgnoreCase(arg)) {
+                commandLog = true;
             }
-            startServer(simulation, realTime);
+        }
+        // 客户端只能按名字加载默认场景所在目录下的场景文件
+        sessions.setScenarioDirectory(Paths.get(filePath).toAbsolutePath().getParent());
+        if (journal) {
+            sessions.setJournalDirectory(Paths.get("journal"));
+        }
+        if (commandLog) {
+            sessions.setCommandLogDirectory(Paths.get("commands"));
+        }
+        try {
+            // 解析 JSON 文件，创建默认会话
+            sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, filePath, realTime);
+            startServer(sessions, realTime, nio);
         } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
+            events.emit(EventSink.Level.ERROR, "Error reading file: " + e.getMessage());
             System.exit(1);
         } catch (JSONException e) {
-            System.err.println("Invalid JSON format: " + e.getMessage());
+            events.emit(EventSink.Level.ERROR, "Invalid JSON format: " + e.getMessage());
             System.exit(1);
         } catch (SimulationException e) {
-            System.err.println("Simulation error: " + e.getMessage());
+            events.emit(EventSink.Level.ERROR, "Simulation error: " + e.getMessage());
             System.exit(1);
         }
     }
 
-    static void startServer(BasicSimulation simulation, final boolean realTime) {
+    static void startServer(SessionManager sessions, final boolean realTime, boolean nio) throws SimulationException {
+        // 与会话输出走同一个 sink，保持先后顺序
+        EventSink events = sessions.getEventSink();
         if (realTime) {
-            System.out.println("===== REAL TIME MODE =====");
+            events.emit(EventSink.Level.INFO, "===== REAL TIME MODE =====");
         }
+        sessions.get(SimulationRoutes.DEFAULT_SESSION).call(sim -> {
+            sim.printMap();
+            return null;
+        });
+        SimulationRoutes routes = new SimulationRoutes(sessions, realTime);
 
         try {
-            simulation.printMap();
-            // 创建并启动 HTTP 服务器，监听 3000 端口
-            HttpServer server = HttpServer.create(new InetSocketAddress(3000), 0);
-
-            // 定义 GET 接口：访问 /Simulation 时返回当前模拟状态 JSON
-            server.createContext("/Simulation", exchange -> {
-                // 处理 OPTIONS 请求，返回 204 No Content
-                if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
-                    addCorsHeaders(exchange);
-                    exchange.sendResponseHeaders(204, -1);
-                    return;
-                }
-
-                if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
-                    String jsonResponse = simulation.toSerializable().toString();
-                    addCorsHeaders(exchange);
-                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-                    byte[] responseBytes = jsonResponse.getBytes(StandardCharsets.UTF_8);
-                    exchange.sendResponseHeaders(200, responseBytes.length);
-                    try (OutputStream os = exchange.getResponseBody()) {
-                        os.write(responseBytes);
-                    }
-                } else {
-                    addCorsHeaders(exchange);
-                    exchange.sendResponseHeaders(405, -1);  // 返回 405 方法不允许
-                }
-            });
-
-            // 定义 POST 接口：处理其它指令，更新 simulation 状态后返回更新后的 JSON
-            server.createContext("/Instruction", exchange -> {
-                // 同样先处理 OPTIONS 请求
-                if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
-                    addCorsHeaders(exchange);
-                    exchange.sendResponseHeaders(204, -1);
-                    return;
-                }
-
-                if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-                    addCorsHeaders(exchange);
-                    InputStream is = exchange.getRequestBody();
-                    String requestBody = new BufferedReader(new InputStreamReader(is))
-                            .lines().collect(Collectors.joining("\n"));
-                    is.close();
-
-                    // 用 processCommand() 处理命令并更新 simulation 状态
-                    System.out.println("Received " + exchange.getRequestMethod() +
-                            " request for " + exchange.getRequestURI());
-                    System.out.println("Request body: " + requestBody);
-                    synchronized (simulation) {
-                        System.out.println("Processing command: " + requestBody);
-                        simulation.processCommand(requestBody);
-                    }
-                    String jsonResponse = simulation.toSerializable().toString();
-                    // System.out.println("jsonResponse: " + jsonResponse);
-                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-                    byte[] responseBytes = jsonResponse.getBytes(StandardCharsets.UTF_8);
-                    exchange.sendResponseHeaders(200, responseBytes.length);
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(responseBytes);
-                    os.close();
-                } else {
-                    addCorsHeaders(exchange);
-                    exchange.sendResponseHeaders(405, -1);  // 返回 405 方法不允许
-                }
-            });
-
-            // 使用默认 Executor，并启动服务器
-            server.setExecutor(null);
-            server.start();
-            System.out.println("Server started on port 3000.");
+            // 创建并启动 HTTP 服务器，监听 3000 端口；两种传输层共用同一套路由
+            if (nio) {
+                NioHttpServer server = new NioHttpServer(new InetSocketAddress(PORT), routes::handle, HTTP_THREADS, events);
+                server.start();
+                events.emit(EventSink.Level.INFO, "Server started on port " + PORT + " (nio).");
+            } else {
+                HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+                server.createContext("/", exchange -> respond(exchange, routes.handle(toRequest(exchange))));
+                // HTTP 线程池只负责收发请求，各会话的模拟都在自己的引擎线程上执行
+                server.setExecutor(Executors.newFixedThreadPool(HTTP_THREADS));
+                server.start();
+                events.emit(EventSink.Level.INFO, "Server started on port " + PORT + ".");
+            }
 
-            // 新线程：每 1 秒，获得 simulation 锁后调用 getRate() 次 step() 方法，并存储当前状态到本地文件
-            new Thread(() -> {
-                while (!Thread.currentThread().isInterrupted()) {
-                    try {
-                        Thread.sleep(1000);
-                        synchronized (simulation) {
-                            if (realTime) {
-                                simulation.step(simulation.getRate());
-                            }
-                            // 将 simulation 当前状态转换成 JSON 字符串（格式化输出便于查看）
-                            String jsonState = simulation.toSerializable().toString(4);
-                            // 存储到本地文件 "simulation_state.json"
-                            try (FileOutputStream fos = new FileOutputStream("simulation_state.json");
-                                 OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
-                                writer.write(jsonState);
-                            } catch (IOException e) {
-                                System.err.println("Error writing simulation state: " + e.getMessage());
-                            }
-                        }
-                    } catch (InterruptedException e) {
-                        System.err.println("Stepping thread interrupted: " + e.getMessage());
-                        break;
-                    }
-                }
-            }).start();
+            // 状态持久化独立调度，不占用任何会话的引擎线程做格式化和写文件
+            ScheduledExecutorService persistence = Executors.newSingleThreadScheduledExecutor();
+            persistence.scheduleWithFixedDelay(() -> saveState(sessions), 1, 1, TimeUnit.SECONDS);
 
             // 阻塞主线程保持服务器一直运行
             Object lock = new Object();
@@ -174,20 +129,76 @@ public class NewServerMain {
                 lock.wait();
             }
         } catch (IOException e) {
-            System.err.println("Failed to create server: " + e.getMessage());
+            events.emit(EventSink.Level.ERROR, "Failed to create server: " + e.getMessage());
             System.exit(1);
         } catch (InterruptedException e) {
-            System.err.println("Server interrupted: " + e.getMessage());
+            events.emit(EventSink.Level.ERROR, "Server interrupted: " + e.getMessage());
             System.exit(1);
         }
     }
 
     /**
-     * 添加 CORS 支持的响应头，允许所有来源和 GET、POST、OPTIONS 方法。
+     * 将 com.sun.net.httpserver 的请求转换为与传输层无关的 HttpRequest。
      */
-    private static void addCorsHeaders(HttpExchange exchange) {
-        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+    static HttpRequest toRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().get(0));
+            }
+        }
+        byte[] body;
+        try (InputStream is = exchange.getRequestBody()) {
+            body = is.readAllBytes();
+        }
+        return new HttpRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getRawQuery(), exchange.getProtocol(), headers, body);
+    }
+
+    /**
+     * 将 HttpResponse 写回 com.sun.net.httpserver 的连接，响应体直接从缓冲区写出。
+     */
+    static void respond(HttpExchange exchange, HttpResponse response) throws IOException {
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        int length = response.getBodyLength();
+        if (response.isBodyless() || length == 0) {
+            exchange.sendResponseHeaders(response.getStatus(), -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(response.getStatus(), length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            WritableByteChannel channel = Channels.newChannel(os);
+            ByteBuffer body = response.getBody();
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+    }
+
+    /**
+     * 将默认会话的当前状态保存到本地文件 "simulation_state.json"。
+     * 只在会话引擎线程上生成状态快照，格式化与写文件都在引擎线程之外进行，避免阻塞步进和请求处理。
+     */
+    static void saveState(SessionManager sessions) {
+        Session session = sessions.get(SimulationRoutes.DEFAULT_SESSION);
+        if (session == null) {
+            return;
+        }
+        JSONObject state;
+        try {
+            state = session.call(BasicSimulation::toSerializable);
+        } catch (SimulationException e) {
+            return;
+        }
+        String jsonState = state.toString(4);
+        try (FileOutputStream fos = new FileOutputStream("simulation_state.json");
+             OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            writer.write(jsonState);
+        } catch (IOException e) {
+            sessions.getEventSink().emit(EventSink.Level.WARN, "Error writing simulation state: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
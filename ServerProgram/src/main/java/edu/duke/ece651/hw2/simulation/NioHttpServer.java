@@ -0,0 +1,444 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Non-blocking HTTP/1.1 server built on a single {@link Selector} event loop.
+ * <p>
+ * One thread accepts, reads and writes every connection, so thousands of idle
+ * keep-alive clients cost a socket and a small buffer each rather than a
+ * thread. Parsed requests run on a small worker pool (handlers may block on a
+ * session's engine); their responses are written back in request order, so
+ * clients may pipeline requests on one connection.
+ * <p>
+ * Per-connection memory is bounded: the read buffer starts small, grows only
+ * up to one maximal request, and shrinks back once drained; at most
+ * {@link #MAX_PIPELINED} requests per connection are in flight, after which
+ * the connection is not read until responses have been written. Response
+ * bodies are written with gathering writes straight from the handler's buffer,
+ * e.g. a session's cached direct snapshot, without copying them per client.
+ */
+public class NioHttpServer {
+    /** Initial (and idle) size of a connection's read buffer. */
+    static final int INITIAL_READ_BYTES = 4 * 1024;
+    /** Largest request body accepted. */
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+    /** Largest request accepted, headers included; the read buffer never grows beyond it. */
+    static final int MAX_REQUEST_BYTES = MAX_BODY_BYTES + 16 * 1024;
+    /** Requests per connection that may be awaiting their response. */
+    static final int MAX_PIPELINED = 32;
+    /** Keep-alive connections with nothing in flight are closed after this long. */
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final Function<HttpRequest, HttpResponse> handler;
+    private final EventSink events;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    // connections whose responses were completed by a worker and need flushing
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+    private Thread loopThread;
+    private volatile boolean running;
+    private long lastIdleSweep;
+
+    /**
+     * Constructs a NioHttpServer that reports its errors to the console, and binds it.
+     *
+     * @param address       the address to listen on; port 0 picks a free port.
+     * @param handler       turns each request into a response; must not throw.
+     * @param workerThreads number of threads running the handler.
+     * @throws IOException if the address cannot be bound.
+     */
+    public NioHttpServer(InetSocketAddress address, Function<HttpRequest, HttpResponse> handler,
+                         int workerThreads) throws IOException {
+        this(address, handler, workerThreads, ConsoleEventSink.INSTANCE);
+    }
+
+    /**
+     * Constructs a NioHttpServer and binds it.
+     *
+     * @param address       the address to listen on; port 0 picks a free port.
+     * @param handler       turns each request into a response; must not throw.
+     * @param workerThreads number of threads running the handler.
+     * @param events        where connection and event loop errors are reported.
+     * @throws IOException if the address cannot be bound.
+     */
+    public NioHttpServer(InetSocketAddress address, Function<HttpRequest, HttpResponse> handler,
+                         int workerThreads, EventSink events) throws IOException {
+        this.handler = handler;
+        this.events = events;
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "nio-http-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the event loop thread.
+     */
+    public synchronized void start() {
+        if (loopThread != null) {
+            return;
+        }
+        running = true;
+        loopThread = new Thread(this::runLoop, "nio-http");
+        loopThread.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the local port.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the event loop, closes every connection and the workers.
+     *
+     * @throws InterruptedException if interrupted while waiting for the loop to exit.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        Thread thread;
+        synchronized (this) {
+            thread = loopThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+        workers.shutdownNow();
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select(1000);
+                Connection completed;
+                while ((completed = ready.poll()) != null) {
+                    if (!completed.closed) {
+                        try {
+                            flush(completed);
+                        } catch (RuntimeException e) {
+                            events.emit(EventSink.Level.WARN, "Closing connection after error: " + e);
+                            close(completed);
+                        }
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    // 单个连接上的意外错误只关闭这个连接，不终止事件循环
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (!connection.closed && key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    } catch (RuntimeException e) {
+                        events.emit(EventSink.Level.WARN, "Closing connection after error: " + e);
+                        close(connection);
+                    }
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException e) {
+            events.emit(EventSink.Level.ERROR, "NIO server stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                if (key.attachment() instanceof Connection connection) {
+                    close(connection);
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                events.emit(EventSink.Level.WARN, "Error closing NIO server: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            int n = connection.channel.read(connection.in);
+            if (n < 0) {
+                connection.inputClosed = true;
+            } else {
+                connection.lastActive = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        parseRequests(connection);
+        flush(connection);
+    }
+
+    /**
+     * Parses and dispatches every complete request in the read buffer, up to the
+     * pipelining limit, then resizes the buffer for what is left.
+     */
+    private void parseRequests(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        try {
+            boolean incomplete = false;
+            while (!connection.closing && connection.pending.size() < MAX_PIPELINED) {
+                HttpRequest request = HttpRequest.parse(in, MAX_BODY_BYTES);
+                if (request == null) {
+                    incomplete = true;
+                    break;
+                }
+                dispatch(connection, request);
+            }
+            if (incomplete && in.remaining() >= MAX_REQUEST_BYTES) {
+                throw new HttpRequest.BadRequestException(413, "Request exceeds " + MAX_REQUEST_BYTES + " bytes");
+            }
+        } catch (HttpRequest.BadRequestException e) {
+            reject(connection, HttpResponse.error(e.getStatus(), e.getMessage()));
+        } catch (RuntimeException e) {
+            reject(connection, HttpResponse.error(400, "Cannot parse request: " + e.getMessage()));
+        }
+        in.compact();
+
+        if (!in.hasRemaining() && in.capacity() < MAX_REQUEST_BYTES) {
+            // 缓冲区已满但请求尚不完整：按需扩容，最大不超过一个完整请求
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(in.capacity() * 2, MAX_REQUEST_BYTES));
+            in.flip();
+            larger.put(in);
+            connection.in = larger;
+        } else if (in.position() == 0 && in.capacity() > INITIAL_READ_BYTES) {
+            // 缓冲区已清空：释放扩容的内存，空闲连接只占用初始大小
+            connection.in = ByteBuffer.allocate(INITIAL_READ_BYTES);
+        }
+    }
+
+    // 回复错误后关闭连接，缓冲区中剩余的字节不再解析
+    private void reject(Connection connection, HttpResponse response) {
+        PendingResponse error = new PendingResponse(false);
+        error.buffers = encode(response, false);
+        connection.pending.add(error);
+        connection.closing = true;
+    }
+
+    private void dispatch(Connection connection, HttpRequest request) {
+        boolean keepAlive = request.isKeepAlive();
+        PendingResponse pending = new PendingResponse(keepAlive);
+        connection.pending.add(pending);
+        if (!keepAlive) {
+            connection.closing = true;
+        }
+        try {
+            workers.execute(() -> {
+                pending.buffers = encode(handler.apply(request), keepAlive);
+                ready.add(connection);
+                selector.wakeup();
+            });
+        } catch (RejectedExecutionException e) {
+            pending.buffers = encode(HttpResponse.error(503, "Server is shutting down"), false);
+        }
+    }
+
+    /**
+     * Writes completed responses in request order until the socket would block
+     * or the next response is still being produced, then updates the interest set.
+     */
+    private void flush(Connection connection) {
+        try {
+            while (!connection.pending.isEmpty()) {
+                PendingResponse head = connection.pending.peek();
+                ByteBuffer[] buffers = head.buffers;
+                if (buffers == null) {
+                    break;
+                }
+                connection.channel.write(buffers);
+                if (buffers[buffers.length - 1].hasRemaining()) {
+                    break;
+                }
+                connection.pending.poll();
+                connection.lastActive = System.currentTimeMillis();
+                if (!head.keepAlive) {
+                    close(connection);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        // 流水线上限解除后，继续处理已缓存的请求
+        if (!connection.closing && connection.pending.size() < MAX_PIPELINED && connection.in.position() > 0) {
+            int before = connection.pending.size();
+            parseRequests(connection);
+            if (connection.pending.size() > before && connection.pending.peek().buffers != null) {
+                flush(connection);
+                return;
+            }
+        }
+        if (connection.inputClosed && connection.pending.isEmpty()) {
+            close(connection);
+            return;
+        }
+        updateInterest(connection);
+    }
+
+    private void updateInterest(Connection connection) {
+        int ops = 0;
+        if (!connection.closing && !connection.inputClosed && connection.pending.size() < MAX_PIPELINED) {
+            ops |= SelectionKey.OP_READ;
+        }
+        PendingResponse head = connection.pending.peek();
+        if (head != null && head.buffers != null) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (connection.key.isValid()) {
+            connection.key.interestOps(ops);
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleSweep < 1000) {
+            return;
+        }
+        lastIdleSweep = now;
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof Connection connection
+                    && connection.pending.isEmpty()
+                    && now - connection.lastActive > IDLE_TIMEOUT_MILLIS) {
+                close(connection);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.closed = true;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // 连接已断开，忽略
+        }
+    }
+
+    /**
+     * Encodes a response as a status line and headers followed by the body buffer,
+     * ready for a gathering write.
+     */
+    static ByteBuffer[] encode(HttpResponse response, boolean keepAlive) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(response.getStatus()).append(' ')
+                .append(reasonPhrase(response.getStatus())).append("\r\n");
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        ByteBuffer body = response.isBodyless() ? ByteBuffer.allocate(0) : response.getBody();
+        if (!response.isBodyless()) {
+            head.append("Content-Length: ").append(body.remaining()).append("\r\n");
+        }
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return new ByteBuffer[]{headBuffer, body};
+    }
+
+    static String reasonPhrase(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 410 -> "Gone";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "Status";
+        };
+    }
+
+    /**
+     * A response slot, created in request order; a worker fills in the encoded
+     * buffers, the event loop writes them once every earlier slot is written.
+     */
+    private static class PendingResponse {
+        final boolean keepAlive;
+        volatile ByteBuffer[] buffers;
+
+        PendingResponse(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * Per-connection state. Only the event loop thread touches it, except for
+     * {@link PendingResponse#buffers}, which workers publish.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final Queue<PendingResponse> pending = new ArrayDeque<>();
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_READ_BYTES);
+        long lastActive = System.currentTimeMillis();
+        // no further requests are read: the last one asked to close, or was rejected
+        boolean closing;
+        boolean inputClosed;
+        volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -4,6 +4,6 @@ public class PauseCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.pause();
-        System.out.println("Simulation paused.");
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Simulation paused.");
     }
 }
\ No newline at end of file
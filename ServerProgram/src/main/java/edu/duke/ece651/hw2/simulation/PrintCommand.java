@@ -5,4 +5,9 @@ public class PrintCommand extends Command {
     public void execute(Simulation simulation) throws SimulationException {
         simulation.printMap();
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
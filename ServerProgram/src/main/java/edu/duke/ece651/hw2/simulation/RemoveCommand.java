@@ -12,6 +12,6 @@ public class RemoveCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.removeBuilding(buildingName);
-        System.out.println("Removed building named " + buildingName);
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Removed building named " + buildingName);
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Reproduces a simulation from its scenario and {@link CommandLog}: steps to
+ * the time step of each logged command and applies it, as fast as possible
+ * and without printing, checking the state hash at every checkpoint.
+ * <p>
+ * Since the log holds real production commands, the replay also serves as a
+ * trace-driven benchmark: the summary reports ticks per second, with the time
+ * spent hashing left out.
+ * <p>
+ * Usage: {@code java ReplayRunner <command-log> [scenario.json] [no-verify]}.
+ * The scenario defaults to the copy written next to the log; "no-verify"
+ * skips the hashes. The exit status is 2 if the replay diverged.
+ */
+public class ReplayRunner {
+    /** Suffix of a session's command log. */
+    public static final String LOG_SUFFIX = ".log";
+    /** Suffix of the scenario copy written next to a command log. */
+    public static final String SCENARIO_SUFFIX = ".scenario.json";
+
+    private ReplayRunner() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java simulation.ReplayRunner <command-log> [scenario.json] [no-verify]");
+            System.exit(1);
+        }
+        Path log = Paths.get(args[0]);
+        Path scenario = null;
+        boolean verify = true;
+        for (int i = 1; i < args.length; i++) {
+            if ("no-verify".equalsIgnoreCase(args[i])) {
+                verify = false;
+            } else {
+                scenario = Paths.get(args[i]);
+            }
+        }
+        if (scenario == null) {
+            scenario = defaultScenario(log);
+        }
+
+        // 重放时引擎不输出；命令层剩下的零星打印也一并丢弃
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            JSONObject summary = replay(load(scenario), reader, verify);
+            report.println(summary);
+            if (summary.getInt("mismatches") > 0) {
+                System.exit(2);
+            }
+        } catch (IOException | SimulationException | JSONException e) {
+            report.println(new JSONObject().put("event", "error").put("message", e.getMessage()));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the scenario copy SessionManager writes next to a command log.
+     *
+     * @param log the command log.
+     * @return the path of the scenario copy.
+     */
+    static Path defaultScenario(Path log) {
+        String name = log.getFileName().toString();
+        if (name.endsWith(LOG_SUFFIX)) {
+            name = name.substring(0, name.length() - LOG_SUFFIX.length());
+        }
+        return log.resolveSibling(name + SCENARIO_SUFFIX);
+    }
+
+    /**
+     * Loads a scenario the way sessions do, with output discarded.
+     *
+     * @param scenario the scenario file.
+     * @return the simulation.
+     * @throws IOException         if the file cannot be read.
+     * @throws SimulationException if the scenario is invalid.
+     */
+    public static BasicSimulation load(Path scenario) throws IOException, SimulationException {
+        SimulationParser parser = new SimulationParser();
+        JsonNode json = parser.parseJsonFile(scenario.toString());
+        BasicSimulation sim = ScenarioCatalog.parse(parser, json).createSimulation(parser, json);
+        sim.setEventSink(EventSink.NONE);
+        return sim;
+    }
+
+    /**
+     * Replays a command log against a freshly loaded simulation.
+     *
+     * @param sim    the simulation, as loaded from the log's scenario.
+     * @param log    the command log.
+     * @param verify true to compare state hashes at checkpoints.
+     * @return a summary: { timeStep, steps, commands, failedCommands, checkpoints,
+     *         mismatches, firstMismatch?, millis, ticksPerSecond }.
+     * @throws IOException         if the log cannot be read.
+     * @throws SimulationException if the log is not a command log or goes back in time.
+     */
+    public static JSONObject replay(BasicSimulation sim, BufferedReader log, boolean verify)
+            throws IOException, SimulationException {
+        String line = log.readLine();
+        JSONObject header = line == null ? null : new JSONObject(line);
+        if (header == null || header.optInt("version") != CommandLog.VERSION) {
+            throw new SimulationException("Not a command log of version " + CommandLog.VERSION);
+        }
+        int start = sim.getCurrentTimeStep();
+        int commands = 0;
+        int failed = 0;
+        int checkpoints = 0;
+        int mismatches = 0;
+        JSONObject firstMismatch = null;
+        long hashNanos = 0;
+        long started = System.nanoTime();
+
+        advanceTo(sim, header.getInt("start"));
+        while ((line = log.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            JSONObject entry = new JSONObject(line);
+            advanceTo(sim, entry.getInt("t"));
+            if (entry.has("command")) {
+                commands++;
+                if (!sim.executeCommand(entry.getString("command")).isSuccess()) {
+                    failed++;
+                }
+            } else if (entry.has("hash")) {
+                checkpoints++;
+                if (!verify) {
+                    continue;
+                }
+                long hashStarted = System.nanoTime();
+                String actual = CommandLog.stateHash(sim);
+                hashNanos += System.nanoTime() - hashStarted;
+                if (!actual.equals(entry.getString("hash"))) {
+                    mismatches++;
+                    if (firstMismatch == null) {
+                        firstMismatch = new JSONObject().put("t", entry.getInt("t"))
+                                .put("expected", entry.getString("hash")).put("actual", actual);
+                    }
+                }
+            }
+        }
+
+        long elapsed = Math.max(1, System.nanoTime() - started - hashNanos);
+        int steps = sim.getCurrentTimeStep() - start;
+        JSONObject summary = new JSONObject();
+        summary.put("timeStep", sim.getCurrentTimeStep());
+        summary.put("steps", steps);
+        summary.put("commands", commands);
+        summary.put("failedCommands", failed);
+        summary.put("checkpoints", checkpoints);
+        summary.put("mismatches", mismatches);
+        if (firstMismatch != null) {
+            summary.put("firstMismatch", firstMismatch);
+        }
+        summary.put("millis", elapsed / 1_000_000);
+        summary.put("ticksPerSecond", Math.round(steps * 1e9 / elapsed));
+        return summary;
+    }
+
+    private static void advanceTo(BasicSimulation sim, int timeStep) throws SimulationException {
+        int behind = timeStep - sim.getCurrentTimeStep();
+        if (behind < 0) {
+            throw new SimulationException("Log entry at time " + timeStep
+                    + " is behind the replay at time " + sim.getCurrentTimeStep());
+        }
+        if (behind > 0) {
+            sim.step(behind);
+        }
+    }
+}
@@ -10,6 +10,11 @@ public class Request {
     private boolean isUserRequest;
     private int timeRequested;
     private RequestStatus status;
+    // 生命周期时间戳，尚未发生时为 -1
+    private int timeIngredientsReady = -1;
+    private int timeStarted = -1;
+    private int timeCompleted = -1;
+    private int timeDelivered = -1;
 
     /**
      * Constructs a Request.
@@ -74,6 +79,63 @@ public class Request {
         return timeRequested;
     }
 
+    /**
+     * Gets the time step by which the last ingredient delivered so far arrived.
+     *
+     * @return the time step, or -1 if no ingredient has arrived.
+     */
+    public int getTimeIngredientsReady() {
+        return timeIngredientsReady;
+    }
+
+    /**
+     * Records that one of this request's ingredients arrived.
+     *
+     * @param timeStep the time step it arrived at.
+     */
+    public void ingredientArrived(int timeStep) {
+        timeIngredientsReady = Math.max(timeIngredientsReady, timeStep);
+    }
+
+    /**
+     * Gets the time step its building started producing it.
+     *
+     * @return the time step, or -1 if production has not started.
+     */
+    public int getTimeStarted() {
+        return timeStarted;
+    }
+
+    public void setTimeStarted(int timeStarted) {
+        this.timeStarted = timeStarted;
+    }
+
+    /**
+     * Gets the time step it completed at.
+     *
+     * @return the time step, or -1 while it is open.
+     */
+    public int getTimeCompleted() {
+        return timeCompleted;
+    }
+
+    public void setTimeCompleted(int timeCompleted) {
+        this.timeCompleted = timeCompleted;
+    }
+
+    /**
+     * Gets the time step its output reached the requestor.
+     *
+     * @return the time step, or -1 if it has not arrived yet.
+     */
+    public int getTimeDelivered() {
+        return timeDelivered;
+    }
+
+    public void setTimeDelivered(int timeDelivered) {
+        this.timeDelivered = timeDelivered;
+    }
+
     /**
      * Gets the current status of this request.
      *
@@ -0,0 +1,594 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Index of every request in a simulation by id, with its lifecycle.
+ * <p>
+ * Requests are registered where they are created, together with the building
+ * they were assigned to and the request whose ingredients they supply, and
+ * marked complete from the list of completed requests each tick returns.
+ * Status, parent and children are looked up in O(1); the estimated completion
+ * time is computed on demand from the remaining latencies, queue positions
+ * and transit times along the request's open ingredient tree.
+ * <p>
+ * A completed request drops its references to the live request and building
+ * and moves to a fixed-size history ring; once the ring is full the oldest
+ * record is forgotten. Totals and lead times of all completed requests are
+ * kept as aggregate statistics, so memory stays bounded however long the
+ * simulation runs.
+ * <p>
+ * Once a request's output reaches its requestor (or, for a user order, once
+ * it completes), the time it spent in each {@link Stage} is added to
+ * histograms kept per item. Creation, delivery and completion are also
+ * written to the simulation's {@link EventJournal}, if it has one.
+ * A RequestRegistry belongs to one simulation and is used on its engine thread only.
+ */
+public class RequestRegistry {
+    /** Number of completed requests kept for lookup by default. */
+    public static final int DEFAULT_HISTORY_CAPACITY = 1024;
+
+    /**
+     * The stages of a request's life, each measured in time steps:
+     * waiting for its last ingredient to arrive, then queued until its
+     * building starts it, in production, and in transit to the requestor.
+     * Total runs from the request to its delivery.
+     */
+    public enum Stage {
+        WAITING, QUEUED, PRODUCTION, TRANSIT, TOTAL;
+
+        private static final Stage[] VALUES = values();
+    }
+
+    /** Lifecycle record of one request. */
+    public static class Entry {
+        private final int id;
+        private final String item;
+        private final boolean userRequest;
+        private final String buildingName;
+        private final int parent;
+        private final int requestedAt;
+        private List<Integer> children = new ArrayList<>();
+        // 完成前保留请求与建筑的引用，用于读取实时状态与估算完成时间
+        private Request request;
+        private Building building;
+        private int completedAt = -1;
+
+        Entry(Request request, Building building, int parent) {
+            this.id = request.getId();
+            this.item = request.getRecipe().getOutput();
+            this.userRequest = request.isUserRequest();
+            this.buildingName = building == null ? null : building.getName();
+            this.parent = parent;
+            this.requestedAt = request.getTimeRequested();
+            this.request = request;
+            this.building = building;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        public boolean isUserRequest() {
+            return userRequest;
+        }
+
+        public String getBuildingName() {
+            return buildingName;
+        }
+
+        public int getParent() {
+            return parent;
+        }
+
+        public int getRequestedAt() {
+            return requestedAt;
+        }
+
+        public List<Integer> getChildren() {
+            return children;
+        }
+
+        public int getCompletedAt() {
+            return completedAt;
+        }
+
+        public boolean isCompleted() {
+            return completedAt >= 0;
+        }
+
+        /**
+         * Gets the request's lifecycle state.
+         *
+         * @return the live request status, or COMPLETED once it has completed.
+         */
+        public RequestStatus getStatus() {
+            return request == null ? RequestStatus.COMPLETED : request.getStatus();
+        }
+    }
+
+    private final BasicSimulation simulation;
+    // 未完成的请求
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, Entry> openOrders = new LinkedHashMap<>();
+    // 已完成请求的环形缓冲区及其索引；写满后覆盖最旧的记录
+    private final Entry[] history;
+    private final Map<Integer, Entry> archived = new HashMap<>();
+    private int historyNext;
+    // 所有已完成请求的汇总统计，不随环形缓冲区淘汰
+    private long completedCount;
+    private long completedUserCount;
+    private long totalLeadTime;
+    private long totalUserLeadTime;
+    private int maxUserLeadTime;
+    private final Map<String, Long> completedByItem = new HashMap<>();
+    // 每种物品各阶段耗时的直方图，按 Stage 的顺序排列
+    private final Map<String, LatencyHistogram[]> latencyByItem = new HashMap<>();
+    // 正在为哪个请求分配原料：processIngredients 递归期间新建的请求都是栈顶请求的子请求
+    private final Deque<Integer> parents = new ArrayDeque<>();
+
+    /**
+     * Constructs a RequestRegistry.
+     *
+     * @param simulation the simulation whose requests are indexed.
+     */
+    public RequestRegistry(BasicSimulation simulation) {
+        this(simulation, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Constructs a RequestRegistry.
+     *
+     * @param simulation      the simulation whose requests are indexed.
+     * @param historyCapacity how many completed requests are kept for lookup.
+     */
+    public RequestRegistry(BasicSimulation simulation, int historyCapacity) {
+        if (historyCapacity < 1) {
+            throw new IllegalArgumentException("History capacity must be positive");
+        }
+        this.simulation = simulation;
+        this.history = new Entry[historyCapacity];
+    }
+
+    /**
+     * Records a new request. If it is created while the ingredients of another
+     * request are being assigned (see {@link #enter}), it becomes that
+     * request's child.
+     *
+     * @param request  the request.
+     * @param building the building it was assigned to.
+     */
+    public void register(Request request, Building building) {
+        int parent = parents.isEmpty() ? -1 : parents.peek();
+        Entry entry = new Entry(request, building, parent);
+        entries.put(entry.id, entry);
+        Entry parentEntry = entries.get(parent);
+        if (parentEntry != null) {
+            parentEntry.children.add(entry.id);
+        }
+        if (entry.userRequest) {
+            openOrders.put(entry.id, entry);
+        }
+        EngineMetrics.REQUESTS_CREATED.increment(request.getRecipe().getOutput());
+        EventJournal journal = simulation.getJournal();
+        if (journal != null) {
+            if (entry.userRequest) {
+                journal.order(simulation.getCurrentTimeStep(), entry.id, entry.buildingName, entry.item);
+            } else {
+                journal.assigned(simulation.getCurrentTimeStep(), entry.id, parent, entry.buildingName, entry.item);
+            }
+            if (request.getTimeDelivered() >= 0) {
+                journal.delivered(request.getTimeDelivered(), entry.id, entry.buildingName,
+                        request.getRequestor() == null ? null : request.getRequestor().getName(), entry.item);
+            }
+        }
+        // 仓库用库存满足的请求在登记之前就可能已经送达
+        if (request.getTimeDelivered() >= 0) {
+            ingredientArrived(parentEntry, request.getTimeDelivered());
+        }
+    }
+
+    /**
+     * Marks the start of ingredient assignment for a request; requests
+     * registered until the matching {@link #exit()} are its children.
+     *
+     * @param request the request whose ingredients are being assigned.
+     */
+    public void enter(Request request) {
+        parents.push(request.getId());
+    }
+
+    /**
+     * Marks the end of the innermost {@link #enter}.
+     */
+    public void exit() {
+        parents.pop();
+    }
+
+    /**
+     * Gets how many ingredient assignments are in progress, i.e. the depth in
+     * its ingredient tree of the request now being planned, 1 for the root.
+     *
+     * @return the number of unmatched {@link #enter} calls.
+     */
+    public int getPlanningDepth() {
+        return parents.size();
+    }
+
+    /**
+     * Records that a request has completed and moves it to the history.
+     *
+     * @param request  the request.
+     * @param timeStep the time step it completed at.
+     */
+    public void completed(Request request, int timeStep) {
+        Entry entry = entries.remove(request.getId());
+        if (entry == null) {
+            return;
+        }
+        entry.completedAt = timeStep;
+        entry.request = null;
+        entry.building = null;
+        entry.children = List.copyOf(entry.children);
+        openOrders.remove(entry.id);
+        request.setTimeCompleted(timeStep);
+        EngineMetrics.REQUESTS_COMPLETED.increment(request.getRecipe().getOutput());
+        EventJournal journal = simulation.getJournal();
+        if (journal != null) {
+            journal.completed(timeStep, entry.id, entry.buildingName, entry.item);
+        }
+        if (request.isUserRequest() || request.getTimeDelivered() >= 0) {
+            recordLatency(request);
+        }
+
+        int leadTime = timeStep - entry.requestedAt;
+        completedCount++;
+        totalLeadTime += leadTime;
+        if (entry.userRequest) {
+            completedUserCount++;
+            totalUserLeadTime += leadTime;
+            maxUserLeadTime = Math.max(maxUserLeadTime, leadTime);
+        }
+        completedByItem.merge(entry.item, 1L, Long::sum);
+
+        Entry evicted = history[historyNext];
+        if (evicted != null) {
+            archived.remove(evicted.id);
+        }
+        history[historyNext] = entry;
+        archived.put(entry.id, entry);
+        historyNext = (historyNext + 1) % history.length;
+    }
+
+    /**
+     * Records that a request's output reached its requestor. The requestor's
+     * own request learns that one more ingredient has arrived.
+     *
+     * @param request  the request.
+     * @param timeStep the time step it arrived at.
+     */
+    public void delivered(Request request, int timeStep) {
+        request.setTimeDelivered(timeStep);
+        Entry entry = get(request.getId());
+        if (entry == null) {
+            // 尚未登记（见 register）或已移出历史记录
+            return;
+        }
+        EventJournal journal = simulation.getJournal();
+        if (journal != null) {
+            journal.delivered(timeStep, entry.id, entry.buildingName,
+                    request.getRequestor() == null ? null : request.getRequestor().getName(), entry.item);
+        }
+        ingredientArrived(entries.get(entry.parent), timeStep);
+        if (request.getTimeCompleted() >= 0) {
+            recordLatency(request);
+        }
+    }
+
+    private static void ingredientArrived(Entry parent, int timeStep) {
+        if (parent != null && parent.request != null) {
+            parent.request.ingredientArrived(timeStep);
+        }
+    }
+
+    // 把请求各阶段的耗时计入其物品的直方图；时间戳之间的先后关系在这里夹紧，保证各阶段非负
+    private void recordLatency(Request request) {
+        int requested = request.getTimeRequested();
+        int completed = Math.max(requested, request.getTimeCompleted());
+        // 仓库请求没有生产阶段
+        int started = request.getTimeStarted() < 0 ? completed
+                : Math.min(completed, Math.max(requested, request.getTimeStarted()));
+        int ready = request.getTimeIngredientsReady() < 0 ? requested
+                : Math.min(started, Math.max(requested, request.getTimeIngredientsReady()));
+        int delivered = request.isUserRequest() ? completed : Math.max(completed, request.getTimeDelivered());
+
+        LatencyHistogram[] stages = latencyByItem.get(request.getRecipe().getOutput());
+        if (stages == null) {
+            stages = new LatencyHistogram[Stage.VALUES.length];
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+            latencyByItem.put(request.getRecipe().getOutput(), stages);
+        }
+        stages[Stage.WAITING.ordinal()].record(ready - requested);
+        stages[Stage.QUEUED.ordinal()].record(started - ready);
+        stages[Stage.PRODUCTION.ordinal()].record(completed - started);
+        stages[Stage.TRANSIT.ordinal()].record(delivered - completed);
+        stages[Stage.TOTAL.ordinal()].record(delivered - requested);
+    }
+
+    /**
+     * Gets the histogram of time spent in one stage by requests for an item.
+     *
+     * @param item  the item.
+     * @param stage the stage.
+     * @return the histogram, or null if no request for the item has been delivered.
+     */
+    public LatencyHistogram getLatency(String item, Stage stage) {
+        LatencyHistogram[] stages = latencyByItem.get(item);
+        return stages == null ? null : stages[stage.ordinal()];
+    }
+
+    /**
+     * Gets a request's lifecycle record.
+     *
+     * @param id the request id.
+     * @return the record, or null if no such request was registered or it
+     *         completed long enough ago to have left the history.
+     */
+    public Entry get(int id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry : archived.get(id);
+    }
+
+    /**
+     * Gets the user orders that have not completed yet, oldest first.
+     *
+     * @return the open orders.
+     */
+    public List<Entry> getOpenOrders() {
+        return new ArrayList<>(openOrders.values());
+    }
+
+    /**
+     * Gets the number of requests that have not completed yet.
+     *
+     * @return the number of open records.
+     */
+    public int getOpenCount() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of completed requests still kept in the history.
+     *
+     * @return the number of archived records, at most the history capacity.
+     */
+    public int getHistorySize() {
+        return archived.size();
+    }
+
+    public int getHistoryCapacity() {
+        return history.length;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Estimates the time step at which a request will complete. A request
+     * starts once its building has finished the work ahead of it and its
+     * open ingredients have been made and carried over; it then takes its
+     * recipe's latency. Storage requests complete as soon as their stock
+     * arrives.
+     *
+     * @param id the request id.
+     * @return the estimated time step, the completion time if it already
+     *         completed, or -1 if there is no such request.
+     */
+    public int estimateCompletion(int id) {
+        return estimate(get(id), new HashMap<>());
+    }
+
+    private int estimate(Entry entry, Map<Integer, Integer> memo) {
+        if (entry == null) {
+            return -1;
+        }
+        if (entry.isCompleted()) {
+            return entry.completedAt;
+        }
+        Integer known = memo.get(entry.id);
+        if (known != null) {
+            return known;
+        }
+        int now = simulation.getCurrentTimeStep();
+        Request request = entry.request;
+        Building building = entry.building;
+        int eta;
+        if (request.getStatus() == RequestStatus.COMPLETED) {
+            // 仓库已用库存满足，下一个时间步结算
+            eta = now + 1;
+        } else if (building instanceof BasicBuilding basic && basic.getCurrentRequest() == request) {
+            eta = now + basic.getRemainingTime();
+        } else {
+            int ready = now;
+            for (int childId : entry.children) {
+                Entry child = get(childId);
+                if (child == null) {
+                    continue;
+                }
+                int arrival = estimate(child, memo);
+                if (child.isCompleted()) {
+                    // 已经完成的原料可能还在路上
+                    arrival = Math.max(arrival, now);
+                }
+                Building source = child.building;
+                if (source == null) {
+                    source = simulation.getBuildings().get(child.buildingName);
+                }
+                if (source != null && building != null) {
+                    arrival += Math.max(0, simulation.getRoadMap().estimateDistance(source, building));
+                }
+                ready = Math.max(ready, arrival);
+            }
+            int latency = building instanceof StorageBuilding ? 1 : request.getRecipe().getLatency();
+            eta = Math.max(ready, now + workAhead(building, request)) + latency;
+        }
+        memo.put(entry.id, eta);
+        return eta;
+    }
+
+    // 建筑在开始这个请求之前还要完成的工作量：当前请求的剩余时间加上队列中排在前面的请求的延迟
+    private static int workAhead(Building building, Request request) {
+        if (!(building instanceof BasicBuilding basic) || building instanceof StorageBuilding) {
+            return 0;
+        }
+        int ahead = basic.getCurrentRequest() == null ? 0 : basic.getRemainingTime();
+        for (Request queued : basic.getQueuedRequests(0, basic.getQueuedRequestCount())) {
+            if (queued == request) {
+                break;
+            }
+            ahead += queued.getRecipe().getLatency();
+        }
+        return ahead;
+    }
+
+    /**
+     * Describes one request:
+     * { id, item, user, building, status, requestedAt, completedAt, parent, children: [ids],
+     *   estimatedCompletion, remainingSteps }
+     *
+     * @param id the request id.
+     * @return the description, or null if there is no such request.
+     */
+    public JSONObject toSerializable(int id) {
+        Entry entry = get(id);
+        if (entry == null) {
+            return null;
+        }
+        JSONObject json = summarize(entry);
+        json.put("requestedAt", entry.requestedAt);
+        json.put("completedAt", entry.completedAt);
+        json.put("parent", entry.parent);
+        json.put("children", new JSONArray(entry.children));
+        return json;
+    }
+
+    /**
+     * Describes every open user order, oldest first:
+     * { orders: [ { id, item, user, building, status, estimatedCompletion, remainingSteps } ] }
+     *
+     * @return the description.
+     */
+    public JSONObject openOrdersToSerializable() {
+        JSONArray orders = new JSONArray();
+        for (Entry entry : openOrders.values()) {
+            orders.put(summarize(entry));
+        }
+        return new JSONObject().put("orders", orders);
+    }
+
+    /**
+     * Describes the completed requests:
+     * { capacity, completed: [ { id, item, user, building, requestedAt, completedAt, parent } ] (newest first),
+     *   stats: {..} }
+     *
+     * @return the description.
+     */
+    public JSONObject historyToSerializable() {
+        JSONArray completed = new JSONArray();
+        for (int i = 1; i <= history.length; i++) {
+            Entry entry = history[Math.floorMod(historyNext - i, history.length)];
+            if (entry == null) {
+                break;
+            }
+            JSONObject json = new JSONObject();
+            json.put("id", entry.id);
+            json.put("item", entry.item);
+            json.put("user", entry.userRequest);
+            json.put("building", entry.buildingName == null ? JSONObject.NULL : entry.buildingName);
+            json.put("requestedAt", entry.requestedAt);
+            json.put("completedAt", entry.completedAt);
+            json.put("parent", entry.parent);
+            completed.put(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("capacity", history.length);
+        json.put("completed", completed);
+        json.put("stats", statsToSerializable());
+        return json;
+    }
+
+    /**
+     * Summarizes every request made so far, including those no longer in the history:
+     * { open, openOrders, completed, completedOrders, meanLeadTime, meanOrderLeadTime, maxOrderLeadTime,
+     *   completedByItem: { item: count } }
+     * Lead time is the number of steps from request to completion.
+     *
+     * @return the statistics.
+     */
+    public JSONObject statsToSerializable() {
+        JSONObject json = new JSONObject();
+        json.put("open", entries.size());
+        json.put("openOrders", openOrders.size());
+        json.put("completed", completedCount);
+        json.put("completedOrders", completedUserCount);
+        json.put("meanLeadTime", completedCount == 0 ? 0.0 : (double) totalLeadTime / completedCount);
+        json.put("meanOrderLeadTime", completedUserCount == 0 ? 0.0 : (double) totalUserLeadTime / completedUserCount);
+        json.put("maxOrderLeadTime", maxUserLeadTime);
+        json.put("completedByItem", new JSONObject(completedByItem));
+        return json;
+    }
+
+    /**
+     * Describes the time delivered requests spent in each stage, per item:
+     * { items: { item: { waiting: {..}, queued: {..}, production: {..}, transit: {..}, total: {..} } } }
+     * Each stage is summarized by {@link LatencyHistogram#toSerializable()}.
+     *
+     * @param item the only item to describe, or null for all of them.
+     * @return the description; items is empty if the item has no deliveries yet.
+     */
+    public JSONObject latencyToSerializable(String item) {
+        JSONObject items = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram[]> entry : new TreeMap<>(latencyByItem).entrySet()) {
+            if (item != null && !item.equals(entry.getKey())) {
+                continue;
+            }
+            JSONObject stages = new JSONObject();
+            for (Stage stage : Stage.VALUES) {
+                stages.put(stage.name().toLowerCase(Locale.ROOT), entry.getValue()[stage.ordinal()].toSerializable());
+            }
+            items.put(entry.getKey(), stages);
+        }
+        return new JSONObject().put("items", items);
+    }
+
+    private JSONObject summarize(Entry entry) {
+        JSONObject json = new JSONObject();
+        json.put("id", entry.id);
+        json.put("item", entry.item);
+        json.put("user", entry.userRequest);
+        json.put("building", entry.buildingName == null ? JSONObject.NULL : entry.buildingName);
+        json.put("status", entry.getStatus().toString());
+        int eta = estimateCompletion(entry.id);
+        json.put("estimatedCompletion", eta);
+        json.put("remainingSteps", Math.max(0, eta - simulation.getCurrentTimeStep()));
+        return json;
+    }
+}
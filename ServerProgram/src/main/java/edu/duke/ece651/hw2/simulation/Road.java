@@ -40,6 +40,23 @@ public class Road {
         return new ArrayList<>(exitDirections);
     }
 
+    /**
+     * 按 N、E、S、W 顺序编码方向：出口为 '2'，入口为 '1'，否则为 '0'，例如 "2010"。
+     */
+    public String getDirectionCode() {
+        StringBuilder sb = new StringBuilder(4);
+        for (Direction d : new Direction[]{Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST}) {
+            if (exitDirections.contains(d)) {
+                sb.append("2");
+            } else if (enterDirections.contains(d)) {
+                sb.append("1");
+            } else {
+                sb.append("0");
+            }
+        }
+        return sb.toString();
+    }
+
     public void increSharedCountBy(int n) {
         sharedCount += n;
     }
@@ -11,6 +11,7 @@ import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 class Triple<F, S, T> {
     private final F first;
@@ -35,6 +36,45 @@ public class RoadMap {
     private Map<Coordinate, Building> buildingLocations;
     // all pairs of connections，方向敏感，去重
     private List<Pair<Building, Building>> connectionSet = new ArrayList<>();
+    // 地图版本号：路格或建筑位置每变化一次加一；瓦片索引记录每个瓦片最后变化时的版本
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    private final long id = NEXT_ID.incrementAndGet();
+    private long version;
+    private final TileIndex tileIndex = new TileIndex();
+    // 可达性计数：reachGain 在新增路格、方向、建筑或第一架无人机时递增，reachLoss 在删除路格或建筑时递增。
+    // 只会变多的改动不会让可达的建筑变得不可达，反之亦然，建筑据此判断缓存的可行性是否仍然有效
+    private long reachGainVersion;
+    private long reachLossVersion;
+    /** Roads are planned within 0..MIN_GRID_LIMIT on both axes, or further out if buildings are placed there. */
+    static final int MIN_GRID_LIMIT = 50;
+    // 寻路的坐标上限：至少为 50，并扩展到最远的建筑或路格，使大地图上的建筑之间也能修路。
+    // 移除了位于上限处的格子后标记为过期，下次读取时重新计算
+    private int gridLimit = MIN_GRID_LIMIT;
+    private boolean gridStale;
+    // 最近一次寻路展开的节点数，供 JFR 事件读取
+    private int expanded;
+    // 所属模拟的慢时间步追踪，未启用时为 null
+    private TickTracer tickTracer;
+    // 所属模拟的文本输出
+    private EventSink eventSink = ConsoleEventSink.INSTANCE;
+
+    /**
+     * Sets the tracer that road searches made during a traced time step are reported to.
+     *
+     * @param tracer the tracer, or null.
+     */
+    public void setTickTracer(TickTracer tracer) {
+        tickTracer = tracer;
+    }
+
+    /**
+     * Sets where messages about roads go.
+     *
+     * @param sink the sink.
+     */
+    public void setEventSink(EventSink sink) {
+        eventSink = sink;
+    }
 
     public Map<Coordinate, Road> getRoads() {
         return roads;
@@ -49,9 +89,123 @@ public class RoadMap {
         buildingLocations = new HashMap<>();
     }
 
+    /**
+     * Gets the map version, bumped whenever a road or building location changes.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets an id unique to this map within the process. Versions of different
+     * maps (e.g. after a session is reloaded) are only comparable together
+     * with the id.
+     *
+     * @return the id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the spatial index of the occupied cells.
+     *
+     * @return the index; kept in sync by this map.
+     */
+    public TileIndex getTileIndex() {
+        return tileIndex;
+    }
+
+    /**
+     * Gets the reachability gain counter, bumped whenever a change can only
+     * make more buildings reachable: a road, road direction, building or
+     * first drone was added.
+     *
+     * @return the counter.
+     */
+    public long getReachGainVersion() {
+        return reachGainVersion;
+    }
+
+    /**
+     * Gets the reachability loss counter, bumped whenever a change can make a
+     * reachable building unreachable: a road or building was removed.
+     *
+     * @return the counter.
+     */
+    public long getReachLossVersion() {
+        return reachLossVersion;
+    }
+
+    /**
+     * Records a change outside the map that can only make more buildings
+     * reachable, e.g. a drone port getting its first drone.
+     */
+    public void noteReachGain() {
+        reachGainVersion++;
+    }
+
+    // 坐标 c 上的路格或建筑发生变化后调用，更新版本号与瓦片索引；gain 表示这次变化只增加了连通性
+    private void touch(Coordinate c, boolean gain) {
+        version++;
+        if (gain) {
+            reachGainVersion++;
+        } else {
+            reachLossVersion++;
+        }
+        boolean occupied = roads.containsKey(c) || buildingLocations.containsKey(c);
+        tileIndex.update(c, occupied, version);
+        if (occupied) {
+            extendGrid(c);
+        } else if (Math.max(c.getX(), c.getY()) >= gridLimit) {
+            gridStale = true;
+        }
+    }
+
+    private void extendGrid(Coordinate c) {
+        gridLimit = Math.max(gridLimit, Math.max(c.getX(), c.getY()));
+    }
+
+    /**
+     * Gets the largest coordinate roads may be planned on: the furthest
+     * coordinate of any building or road, but at least {@link #MIN_GRID_LIMIT}.
+     *
+     * @return the grid limit.
+     */
+    public int getGridLimit() {
+        if (gridStale) {
+            gridStale = false;
+            gridLimit = MIN_GRID_LIMIT;
+            for (Coordinate c : roads.keySet()) {
+                extendGrid(c);
+            }
+            for (Coordinate c : buildingLocations.keySet()) {
+                extendGrid(c);
+            }
+        }
+        return gridLimit;
+    }
+
+    private void rebuildIndex() {
+        version++;
+        reachGainVersion++;
+        reachLossVersion++;
+        tileIndex.clear(version);
+        for (Coordinate c : roads.keySet()) {
+            tileIndex.update(c, true, version);
+        }
+        for (Coordinate c : buildingLocations.keySet()) {
+            tileIndex.update(c, true, version);
+        }
+        gridStale = true;
+    }
+
     public void addBuilding(Building building) {
         if (building.getLocation() != null) {
             buildingLocations.put(building.getLocation(), building);
+            touch(building.getLocation(), true);
         }
     }
 
@@ -111,6 +265,27 @@ public class RoadMap {
      * @return 从 source 到 dest 之间（连接建筑的）的最优路径（不含起点），若无路径则返回空列表。
      */
     public List<Coordinate> getOptimalPath(Building source, Building dest) {
+        long started = System.nanoTime();
+        EngineEvents.PathSearch event = new EngineEvents.PathSearch();
+        event.begin();
+        expanded = 0;
+        List<Coordinate> path = findOptimalPath(source, dest);
+        long elapsed = System.nanoTime() - started;
+        EngineMetrics.PATH_SEARCH_SECONDS.observeNanos(elapsed);
+        if (tickTracer != null && tickTracer.isTracing()) {
+            tickTracer.search("path", source.getName(), dest.getName(), elapsed);
+        }
+        if (event.shouldCommit()) {
+            event.source = source.getName();
+            event.destination = dest.getName();
+            event.pathLength = path.size();
+            event.nodesExpanded = expanded;
+            event.commit();
+        }
+        return path;
+    }
+
+    private List<Coordinate> findOptimalPath(Building source, Building dest) {
         Coordinate start = source.getLocation();
         Coordinate goal = dest.getLocation();
         if (start == null || goal == null) return Collections.emptyList();
@@ -129,6 +304,7 @@ public class RoadMap {
             startNodes.add(new Node(candidate, stepCost, 1, d, initPath));
         }
 
+        int limit = getGridLimit();
         PriorityQueue<Node> pq = new PriorityQueue<>(Comparator.comparingInt(n -> n.totalCost));
         Map<String, Integer> bestCost = new HashMap<>();
         for (Node node : startNodes) {
@@ -139,6 +315,7 @@ public class RoadMap {
         Node bestNode = null;
         while (!pq.isEmpty()) {
             Node cur = pq.poll();
+            expanded++;
             if (cur.coord.manhattanDistance(goal) == 1) {
                 bestNode = cur;
                 break;
@@ -147,7 +324,7 @@ public class RoadMap {
             for (Direction d : Direction.values()) {
                 Coordinate next = cur.coord.getNeighbor(d);
 
-                if (next.getX() > 50 || next.getY() > 50 || next.getX() < 0 || next.getY() < 0) {
+                if (next.getX() > limit || next.getY() > limit || next.getX() < 0 || next.getY() < 0) {
                     continue;
                 }
 
@@ -188,14 +365,24 @@ public class RoadMap {
         for (Coordinate coord : bestNode.path) {
             Direction d = getDirection(prev, coord);
 
+            boolean created = !roads.containsKey(coord);
             Road road = roads.computeIfAbsent(coord, Road::new);
             if (!road.getEnterDirections().contains(getOpposite(d))) {
                 road.addEnterDirection(getOpposite(d));
+                created = true;
+            }
+            if (created) {
+                touch(coord, true);
             }
 
+            boolean prevCreated = !roads.containsKey(prev);
             Road prevRoad = roads.computeIfAbsent(prev, Road::new);
             if (!prevRoad.getExitDirections().contains(d)) {
                 prevRoad.addExitDirection(d);
+                prevCreated = true;
+            }
+            if (prevCreated) {
+                touch(prev, true);
             }
 
             prev = coord;
@@ -214,7 +401,9 @@ public class RoadMap {
     public void createPath(Building source, Building dest) {
         List<Coordinate> path = getOptimalPath(source, dest);
         if (path.isEmpty()) {
-            System.err.println("Can not create a path from " + source.getName() + " to " + dest.getName());
+            if (eventSink.isEnabled(EventSink.Level.WARN)) {
+                eventSink.emit(EventSink.Level.WARN, "Can not create a path from " + source.getName() + " to " + dest.getName());
+            }
             return;
         }
         Coordinate prev = source.getLocation();
@@ -227,6 +416,7 @@ public class RoadMap {
                 // 同时，新建的路格默认设置入口方向为本次移动方向的相反方向
                 newRoad.addEnterDirection(getOpposite(d));
                 roads.put(coord, newRoad);
+                touch(coord, true);
             }
             // 如果已存在，不修改已有方向（保证不反向）
             prev = coord;
@@ -281,6 +471,94 @@ public class RoadMap {
         }
 
         // 用于存放最终的最短距离
+        int bfsDist = getRoadDistance(sourceCoord, destCoord);
+
+        // 尝试使用无人机
+        Triple<DroneBuilding,Integer,Integer> droneInfo = getDroneDist(sourceCoord, destCoord);
+        DroneBuilding db = droneInfo.getFirst();
+        int goTime = droneInfo.getSecond();
+        int returnTime = droneInfo.getThird();
+        // System.out.println("goTime: " + goTime + " returnTime: " + returnTime);
+        if (db != null && goTime >= 0 && (bfsDist == -1 || goTime < bfsDist)) {
+            db.useDrone(returnTime);
+            return goTime;
+        }
+
+        return bfsDist;
+    }
+
+    /**
+     * Checks whether items can get from one building to another, by being
+     * adjacent, over roads, or by a drone port within range of both that has
+     * drones. Unlike {@link #getShortestDistance} this dispatches no drone and
+     * does not depend on which drones are idle right now.
+     *
+     * @param source the source building.
+     * @param dest   the destination building.
+     * @return true if dest can be supplied from source.
+     */
+    public boolean canReach(Building source, Building dest) {
+        return estimateDistance(source, dest) >= 0;
+    }
+
+    /**
+     * Estimates the delivery time from one building to another like
+     * {@link #getShortestDistance}, but without dispatching a drone: any drone
+     * port in range that has drones counts, whether or not one is idle now.
+     *
+     * @param source the source building.
+     * @param dest   the destination building.
+     * @return the shorter of the road and drone times, or -1 if dest cannot be reached.
+     */
+    public int estimateDistance(Building source, Building dest) {
+        Coordinate sourceCoord = source.getLocation();
+        Coordinate destCoord = dest.getLocation();
+        if (sourceCoord == null || destCoord == null) {
+            return -1;
+        }
+        int best = getRoadDistance(sourceCoord, destCoord);
+        for (Building b : buildingLocations.values()) {
+            if (b instanceof DroneBuilding db && db.getDroneNumber() > 0) {
+                Coordinate home = db.getLocation();
+                if (home.manhattanDistance(sourceCoord) <= 20 && destCoord.manhattanDistance(home) <= 20) {
+                    int goTime = home.manhattanDistance(sourceCoord) + sourceCoord.manhattanDistance(destCoord);
+                    if (best < 0 || goTime < best) {
+                        best = goTime;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // 只沿道路（含单向约束）计算距离：相邻为 0，不可达为 -1
+    private int getRoadDistance(Coordinate sourceCoord, Coordinate destCoord) {
+        long started = System.nanoTime();
+        EngineEvents.DistanceSearch event = new EngineEvents.DistanceSearch();
+        event.begin();
+        expanded = 0;
+        int distance = findRoadDistance(sourceCoord, destCoord);
+        long elapsed = System.nanoTime() - started;
+        EngineMetrics.DISTANCE_SEARCH_SECONDS.observeNanos(elapsed);
+        if (tickTracer != null && tickTracer.isTracing()) {
+            tickTracer.search("distance", nameAt(sourceCoord), nameAt(destCoord), elapsed);
+        }
+        if (event.shouldCommit()) {
+            event.source = nameAt(sourceCoord);
+            event.destination = nameAt(destCoord);
+            event.distance = distance;
+            event.nodesExpanded = expanded;
+            event.commit();
+        }
+        return distance;
+    }
+
+    private String nameAt(Coordinate coord) {
+        Building b = buildingLocations.get(coord);
+        return b == null ? coord.toString() : b.getName();
+    }
+
+    private int findRoadDistance(Coordinate sourceCoord, Coordinate destCoord) {
         int bfsDist = -1;
 
         // 如果两建筑直接相邻，距离为 0（直接搬运，无需路格）
@@ -303,6 +581,7 @@ public class RoadMap {
             // BFS 循环
             while (!queue.isEmpty()) {
                 Coordinate cur = queue.poll();
+                expanded++;
                 int curDist = distMap.get(cur);
 
                 // 如果该路格与 dest 相邻，则最终距离 = curDist + 1
@@ -334,18 +613,6 @@ public class RoadMap {
                 }
             }
         }
-
-        // 尝试使用无人机
-        Triple<DroneBuilding,Integer,Integer> droneInfo = getDroneDist(sourceCoord, destCoord);
-        DroneBuilding db = droneInfo.getFirst();
-        int goTime = droneInfo.getSecond();
-        int returnTime = droneInfo.getThird();
-        // System.out.println("goTime: " + goTime + " returnTime: " + returnTime);
-        if (db != null && goTime >= 0 && (bfsDist == -1 || goTime < bfsDist)) {
-            db.useDrone(returnTime);
-            return goTime;
-        }
-
         return bfsDist;
     }
 
@@ -454,10 +721,12 @@ public class RoadMap {
     
     public void setRoads(Map<Coordinate, Road> roads) {
         this.roads = roads;
+        rebuildIndex();
     }
     
     public void setBuildingLocations(Map<Coordinate, Building> buildingLocations) {
         this.buildingLocations = buildingLocations;
+        rebuildIndex();
     }
 
     /**
@@ -466,6 +735,7 @@ public class RoadMap {
      */
     public void removeBuilding(Coordinate location) {
         buildingLocations.remove(location);
+        touch(location, false);
     }
 
     /*
@@ -474,6 +744,7 @@ public class RoadMap {
      */
     public void removeRoad(Coordinate location) {
         roads.remove(location);
+        touch(location, false);
     }
     /**
      * 获取所有连接
@@ -491,17 +762,21 @@ public class RoadMap {
      */
     public void simpleRemoval(Building src, Building dest) {
         if (!connectionSet.contains(new Pair<>(src, dest))) {
-            System.out.println("Cannot remove non-existing path!");
+            eventSink.emit(EventSink.Level.INFO, "Cannot remove non-existing path!");
             return;
         }
         connectionSet.remove(new Pair<>(src, dest));
+        List<Coordinate> cleared = new ArrayList<>(roads.keySet());
         roads.clear();
+        for (Coordinate c : cleared) {
+            touch(c, false);
+        }
         for (Pair<Building, Building> pair : connectionSet) {
             Building s = pair.first;
             Building d = pair.second;
             createPath(s, d);
         }
-        System.out.println("Removed path from " + src.getName() + " to " + dest.getName());
+        eventSink.emit(EventSink.Level.INFO, "Removed path from " + src.getName() + " to " + dest.getName());
         printConnections();
     }
 
@@ -551,7 +826,7 @@ public class RoadMap {
     public void complexRemoval(Building src, Building dest) {
         Pair<Building, Building> target = new Pair<>(src, dest);
         if (!connectionSet.contains(target)) {
-            System.out.println("Cannot remove non-existing path!");
+            eventSink.emit(EventSink.Level.INFO, "Cannot remove non-existing path!");
             return;
         }
     
@@ -569,6 +844,7 @@ public class RoadMap {
             rd.increSharedCountBy(-1);
             if (rd.getSharedCount() <= 0) {
                 roads.remove(c);
+                touch(c, false);
                 remainPath.remove(c); // remove only if it has been deleted
             }
         }
@@ -584,16 +860,17 @@ public class RoadMap {
         for (Coordinate c : remainPath) {
             if (!usedCoords.contains(c)) {
                 roads.remove(c);
+                touch(c, false);
             }
         }
     
-        System.out.println("Removed path from " + src.getName() + " to " + dest.getName());
+        eventSink.emit(EventSink.Level.INFO, "Removed path from " + src.getName() + " to " + dest.getName());
         printConnections();
     }
 
     public void printConnections() {
         for (Pair<Building, Building> pair : connectionSet) {
-            System.out.println(pair.first.getName() + " to " + pair.second.getName());
+            eventSink.emit(EventSink.Level.INFO, pair.first.getName() + " to " + pair.second.getName());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static edu.duke.ece651.hw2.simulation.NewMain.extractBuildingTypes;
+
+/**
+ * The immutable part of a parsed scenario: recipes, buildable types and the
+ * factory building types derived from them.
+ * <p>
+ * None of these are modified by a running simulation, so every session loaded
+ * from the same recipes and types shares one catalog instead of parsing its own.
+ */
+public class ScenarioCatalog {
+    private final Map<String, Recipe> recipes;
+    private final Map<String, BuildableType> buildableTypes;
+    private final Map<String, BuildingType> buildingTypes;
+
+    /**
+     * Constructs a ScenarioCatalog from already parsed maps.
+     *
+     * @param recipes        map of recipe outputs to Recipe objects.
+     * @param buildableTypes map of type names to BuildableType objects.
+     * @param buildingTypes  map of type names to BuildingType objects.
+     */
+    public ScenarioCatalog(Map<String, Recipe> recipes, Map<String, BuildableType> buildableTypes,
+                           Map<String, BuildingType> buildingTypes) {
+        this.recipes = Collections.unmodifiableMap(new LinkedHashMap<>(recipes));
+        this.buildableTypes = Collections.unmodifiableMap(new LinkedHashMap<>(buildableTypes));
+        this.buildingTypes = Collections.unmodifiableMap(new LinkedHashMap<>(buildingTypes));
+    }
+
+    /**
+     * Parses the recipes and types sections of a scenario.
+     *
+     * @param parser the parser to use.
+     * @param json   the whole scenario JSON.
+     * @return the parsed catalog.
+     * @throws SimulationException if the recipes or types are invalid.
+     */
+    public static ScenarioCatalog parse(SimulationParser parser, JsonNode json) throws SimulationException {
+        Map<String, Recipe> recipes = parser.parseRecipes(json);
+        Map<String, BuildableType> buildableTypes = parser.parseBuildableTypes(json, recipes);
+        Map<String, BuildingType> buildingTypes = extractBuildingTypes(buildableTypes);
+        return new ScenarioCatalog(recipes, buildableTypes, buildingTypes);
+    }
+
+    /**
+     * Gets the key under which a scenario's catalog can be shared: two scenarios
+     * with identical recipes and types sections get the same key.
+     *
+     * @param json the whole scenario JSON.
+     * @return the sharing key.
+     */
+    public static String keyOf(JsonNode json) {
+        return String.valueOf(json.get("recipes")) + "\n" + json.get("types");
+    }
+
+    public Map<String, Recipe> getRecipes() {
+        return recipes;
+    }
+
+    public Map<String, BuildableType> getBuildableTypes() {
+        return buildableTypes;
+    }
+
+    public Map<String, BuildingType> getBuildingTypes() {
+        return buildingTypes;
+    }
+
+    /**
+     * Creates a new simulation for the buildings and connections of a scenario,
+     * backed by this catalog.
+     *
+     * @param parser the parser to use.
+     * @param json   the whole scenario JSON.
+     * @return the new simulation.
+     * @throws SimulationException if the buildings or connections are invalid.
+     */
+    public BasicSimulation createSimulation(SimulationParser parser, JsonNode json) throws SimulationException {
+        Map<String, Building> buildings = parser.parseBuildings(json, buildableTypes, buildingTypes, recipes);
+        parser.validateInput(buildings, recipes);
+        BasicSimulation simulation = BasicSimulation.createSimulation(buildings, recipes, buildingTypes, buildableTypes);
+        parser.parseConnections(json, simulation);
+        return simulation;
+    }
+}
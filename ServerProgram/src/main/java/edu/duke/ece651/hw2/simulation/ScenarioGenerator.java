@@ -0,0 +1,371 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Generates random but valid scenarios for scale and soak testing.
+ * <p>
+ * The recipes form a layered DAG: the items of level 0 are mined, and every
+ * item on level L (1..depth) needs {@code fanOut} distinct items of level L-1.
+ * <p>
+ * Roads in this engine cannot cross each other, so buildings are not wired up
+ * at random. Instead the map is tiled with clusters, each a production tree
+ * for one top-level item: the root factory makes the item, its sources are
+ * one producer per ingredient, and so on down to the mines. A tree is laid
+ * out in columns, mines on the left and the root on the right, with every
+ * parent level with its middle child, so the roads of the tree never meet.
+ * Storages and drone ports sit right next to a mine; adjacent buildings need
+ * no road.
+ * <p>
+ * With probability {@code connectionDensity} a factory also lists, after its
+ * own source, the producer of the same ingredient in the previous cluster.
+ * No road is built for it: it is only usable through a drone port in range,
+ * and otherwise just lengthens the source scans.
+ * <p>
+ * The output uses the same format as the bundled inputs. The same seed and
+ * settings always give the same scenario and the same orders.
+ */
+public class ScenarioGenerator {
+    // 同一列中相邻建筑的间距，以及相邻两层之间的列距，中间两格留给道路
+    private static final int SPACING = 3;
+    private static final String DRONE_TYPE = "Drone Port";
+
+    private final long seed;
+    private int depth = 3;
+    private int fanOut = 2;
+    private int itemsPerLevel = 3;
+    private int clusters = 2;
+    private int storages = 2;
+    private int dronePorts = 1;
+    private int mapSize = 50;
+    private double connectionDensity = 0.2;
+
+    /**
+     * Constructs a ScenarioGenerator with small default settings.
+     *
+     * @param seed the random seed.
+     */
+    public ScenarioGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /** Sets the number of crafted levels above the mined items. */
+    public ScenarioGenerator depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /** Sets the number of distinct ingredients of every crafted item, 1..3. */
+    public ScenarioGenerator fanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    /** Sets the number of items on every level, including the mined level. */
+    public ScenarioGenerator itemsPerLevel(int itemsPerLevel) {
+        this.itemsPerLevel = itemsPerLevel;
+        return this;
+    }
+
+    /**
+     * Sets the number of production trees. Each has
+     * {@link #minesPerCluster()} mines and {@link #factoriesPerCluster()}
+     * factories.
+     */
+    public ScenarioGenerator clusters(int clusters) {
+        this.clusters = clusters;
+        return this;
+    }
+
+    /** Sets the total number of storages, spread over the clusters. */
+    public ScenarioGenerator storages(int storages) {
+        this.storages = storages;
+        return this;
+    }
+
+    /** Sets the total number of drone ports, spread over the clusters. */
+    public ScenarioGenerator dronePorts(int dronePorts) {
+        this.dronePorts = dronePorts;
+        return this;
+    }
+
+    /** Sets the side of the square map; coordinates range over 0..mapSize-1. */
+    public ScenarioGenerator mapSize(int mapSize) {
+        this.mapSize = mapSize;
+        return this;
+    }
+
+    /** Sets the probability, 0..1, of a factory's extra source in the previous cluster. */
+    public ScenarioGenerator connectionDensity(double connectionDensity) {
+        this.connectionDensity = connectionDensity;
+        return this;
+    }
+
+    public int minesPerCluster() {
+        int mines = 1;
+        for (int level = 0; level < depth; level++) {
+            mines *= fanOut;
+        }
+        return mines;
+    }
+
+    public int factoriesPerCluster() {
+        int factories = 0;
+        for (int level = 0, width = 1; level < depth; level++, width *= fanOut) {
+            factories += width;
+        }
+        return factories;
+    }
+
+    /**
+     * Gets the smallest map side that holds the clusters.
+     *
+     * @return the map size to pass to {@link #mapSize(int)}.
+     */
+    public int requiredMapSize() {
+        int size = Math.max(clusterWidth(), clusterHeight());
+        while ((long) (size / clusterWidth()) * (size / clusterHeight()) < clusters) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Generates the scenario.
+     *
+     * @return the scenario JSON.
+     * @throws IllegalArgumentException if the settings cannot give a valid
+     *                                  scenario, e.g. the clusters do not fit
+     *                                  on the map.
+     */
+    public JSONObject generate() {
+        validate();
+        Random random = new Random(seed);
+
+        // 配方：第 0 层为矿产，第 L 层的每个物品需要第 L-1 层的 fanOut 种不同物品
+        List<List<String>> levels = new ArrayList<>();
+        Map<String, List<String>> ingredientsOf = new HashMap<>();
+        JSONArray recipes = new JSONArray();
+        for (int level = 0; level <= depth; level++) {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < itemsPerLevel; i++) {
+                String item = level == 0 ? "raw" + i : "L" + level + "_" + i;
+                items.add(item);
+                List<String> chosen = new ArrayList<>();
+                JSONObject ingredients = new JSONObject();
+                if (level > 0) {
+                    List<String> below = new ArrayList<>(levels.get(level - 1));
+                    Collections.shuffle(below, random);
+                    chosen.addAll(below.subList(0, fanOut));
+                    for (String ingredient : chosen) {
+                        ingredients.put(ingredient, 1 + random.nextInt(2));
+                    }
+                }
+                ingredientsOf.put(item, chosen);
+                recipes.put(new JSONObject().put("output", item).put("ingredients", ingredients)
+                        .put("latency", 1 + random.nextInt(level == 0 ? 2 : 5)));
+            }
+            levels.add(items);
+        }
+
+        JSONArray types = new JSONArray();
+        for (int level = 0; level <= depth; level++) {
+            for (String item : levels.get(level)) {
+                if (level == 0) {
+                    types.put(new JSONObject().put("name", "Mine " + item).put("type", "mine")
+                            .put("info", new JSONObject().put("mine", item)));
+                    types.put(new JSONObject().put("name", "Storage " + item).put("type", "storage")
+                            .put("info", new JSONObject().put("stores", item).put("capacity", 20 + random.nextInt(81))
+                                    .put("priority", 1 + random.nextInt(20) / 10.0)));
+                } else {
+                    types.put(new JSONObject().put("name", "Factory " + item).put("type", "factory")
+                            .put("info", new JSONObject().put("recipes", new JSONArray().put(item))));
+                }
+            }
+        }
+        types.put(new JSONObject().put("name", DRONE_TYPE).put("type", "drone").put("info", new JSONObject()));
+
+        JSONArray buildings = new JSONArray();
+        JSONArray connections = new JSONArray();
+        List<String> top = levels.get(depth);
+        int columns = mapSize / clusterWidth();
+        Map<String, String> previousProducers = new HashMap<>();
+        for (int c = 0; c < clusters; c++) {
+            Cluster cluster = new Cluster(c, (c % columns) * clusterWidth(), (c / columns) * clusterHeight(),
+                    ingredientsOf, random, previousProducers);
+            cluster.layout(top.get(random.nextInt(top.size())), depth);
+            cluster.addStoragesAndPorts(share(storages, c), share(dronePorts, c));
+            cluster.appendTo(buildings, connections);
+            previousProducers = cluster.producers;
+        }
+
+        JSONObject scenario = new JSONObject();
+        scenario.put("recipes", recipes);
+        scenario.put("types", types);
+        scenario.put("buildings", buildings);
+        scenario.put("connections", connections);
+        return scenario;
+    }
+
+    /**
+     * Generates a stream of orders for the clusters' root factories, as
+     * {@code request} commands. The first n orders of a longer stream are the
+     * same as a stream of n.
+     *
+     * @param scenario a scenario produced by {@link #generate()}.
+     * @param count    the number of orders.
+     * @return the order commands.
+     */
+    public List<String> orders(JSONObject scenario, int count) {
+        List<String> targets = new ArrayList<>();
+        JSONArray buildings = scenario.getJSONArray("buildings");
+        for (int i = 0; i < buildings.length(); i++) {
+            JSONObject b = buildings.getJSONObject(i);
+            if (b.getString("name").endsWith("_root")) {
+                String item = b.getString("type").substring("Factory ".length());
+                targets.add("request '" + item + "' from '" + b.getString("name") + "'");
+            }
+        }
+        // 订单流使用独立的随机序列，与场景本身的生成互不影响
+        Random random = new Random(~seed);
+        List<String> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(targets.get(random.nextInt(targets.size())));
+        }
+        return orders;
+    }
+
+    private void validate() {
+        if (depth < 1 || fanOut < 1 || fanOut > 3 || itemsPerLevel < fanOut) {
+            throw new IllegalArgumentException("Need depth >= 1, 1 <= fanOut <= 3 and fanOut <= itemsPerLevel");
+        }
+        if (clusters < 1 || storages < 0 || dronePorts < 0 || connectionDensity < 0 || connectionDensity > 1) {
+            throw new IllegalArgumentException("Need at least one cluster, counts >= 0 and connectionDensity in 0..1");
+        }
+        if (share(storages, 0) + share(dronePorts, 0) > minesPerCluster()) {
+            throw new IllegalArgumentException("A cluster holds at most " + minesPerCluster()
+                    + " storages and drone ports; add clusters");
+        }
+        if (mapSize < requiredMapSize()) {
+            throw new IllegalArgumentException(clusters + " clusters need a map of at least " + requiredMapSize());
+        }
+    }
+
+    // 总数在各簇之间平均分配，靠前的簇多分一个
+    private int share(int total, int cluster) {
+        return total / clusters + (cluster < total % clusters ? 1 : 0);
+    }
+
+    // 最左一列放仓库和无人机站，其后每层占 SPACING 列
+    private int clusterWidth() {
+        return 2 + SPACING * depth + 1;
+    }
+
+    private int clusterHeight() {
+        return SPACING * minesPerCluster() + 1;
+    }
+
+    /**
+     * One production tree while it is being laid out.
+     */
+    private class Cluster {
+        private final int index;
+        private final int left;
+        private final Map<String, List<String>> ingredientsOf;
+        private final Random random;
+        private final Map<String, String> previousProducers;
+        // 本簇中每种物品的第一个生产者，供下一簇作为备用来源
+        final Map<String, String> producers = new HashMap<>();
+        private final List<JSONObject> placed = new ArrayList<>();
+        private final List<JSONObject> mines = new ArrayList<>();
+        private int nextMineY;
+        private int count;
+
+        Cluster(int index, int left, int top, Map<String, List<String>> ingredientsOf, Random random,
+                Map<String, String> previousProducers) {
+            this.index = index;
+            this.left = left;
+            this.ingredientsOf = ingredientsOf;
+            this.random = random;
+            this.previousProducers = previousProducers;
+            this.nextMineY = top + 1;
+        }
+
+        /**
+         * Places the subtree that makes an item, its mines from the next free
+         * row down, and returns the subtree's root.
+         */
+        JSONObject layout(String item, int level) {
+            int x = left + 1 + SPACING * level;
+            if (level == 0) {
+                JSONObject mine = building("M", "Mine " + item, x, nextMineY);
+                nextMineY += SPACING;
+                mines.add(mine);
+                producers.putIfAbsent(item, mine.getString("name"));
+                return mine;
+            }
+            List<JSONObject> children = new ArrayList<>();
+            for (String ingredient : ingredientsOf.get(item)) {
+                children.add(layout(ingredient, level - 1));
+            }
+            // 父节点与中间的子节点同行，其余子节点从上方和下方接入，道路互不相交
+            int y = children.get((children.size() - 1) / 2).getInt("y");
+            JSONObject factory = building("F", "Factory " + item, x, y);
+            if (level == depth) {
+                factory.put("name", "C" + index + "_root");
+            }
+            producers.putIfAbsent(item, factory.getString("name"));
+            JSONArray sources = factory.getJSONArray("sources");
+            for (JSONObject child : children) {
+                sources.put(child.getString("name"));
+                child.put("destination", factory.getString("name"));
+            }
+            for (String ingredient : ingredientsOf.get(item)) {
+                String extra = previousProducers.get(ingredient);
+                if (extra != null && random.nextDouble() < connectionDensity) {
+                    sources.put(extra);
+                }
+            }
+            return factory;
+        }
+
+        // 仓库紧挨着上方的矿，无人机站紧挨着下方的矿，相邻建筑之间不需要道路
+        void addStoragesAndPorts(int storageCount, int portCount) {
+            for (int i = 0; i < storageCount; i++) {
+                JSONObject mine = mines.get(i);
+                JSONObject storage = building("S", "Storage " + mine.getString("type").substring("Mine ".length()),
+                        mine.getInt("x") - 1, mine.getInt("y"));
+                storage.getJSONArray("sources").put(mine.getString("name"));
+            }
+            for (int i = 0; i < portCount; i++) {
+                JSONObject mine = mines.get(mines.size() - 1 - i);
+                building("D", DRONE_TYPE, mine.getInt("x") - 1, mine.getInt("y"));
+            }
+        }
+
+        void appendTo(JSONArray buildings, JSONArray connections) {
+            for (JSONObject b : placed) {
+                Object destination = b.remove("destination");
+                if (destination != null) {
+                    connections.put(new JSONObject().put("source", b.getString("name")).put("destination", destination));
+                }
+                buildings.put(b);
+            }
+        }
+
+        private JSONObject building(String prefix, String type, int x, int y) {
+            JSONObject b = new JSONObject().put("name", "C" + index + "_" + prefix + count++).put("type", type)
+                    .put("sources", new JSONArray()).put("x", x).put("y", y);
+            placed.add(b);
+            return b;
+        }
+    }
+}
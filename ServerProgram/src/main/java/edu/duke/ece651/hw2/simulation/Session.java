@@ -0,0 +1,407 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * One independent simulation hosted by the server.
+ * <p>
+ * Every access to the simulation, including real-time stepping, runs on the
+ * session's own single-threaded executor. Sessions therefore never contend
+ * with each other, and within a session commands and ticks are applied one at
+ * a time in submission order.
+ * <p>
+ * Commands that change the simulation go through the session's
+ * {@link CommandQueue} and are applied at tick boundaries; read-only access
+ * uses {@link #call} and the cached snapshots.
+ */
+public class Session {
+    // rough retained sizes used for memory accounting, in bytes
+    static final long BUILDING_BYTES = 512;
+    static final long ROAD_BYTES = 160;
+    static final long REQUEST_BYTES = 96;
+    static final long DELIVERY_BYTES = 64;
+    static final long ORDER_RECORD_BYTES = 120;
+    /** How many ended jobs are kept for polling before the oldest are forgotten. */
+    static final int MAX_ENDED_JOBS = 100;
+
+    private final String id;
+    private final BasicSimulation simulation;
+    private final ScenarioCatalog catalog;
+    private final ScheduledExecutorService engine;
+    private final SimulationClock clock;
+    private final CommandQueue commands;
+    private final ConcurrentSkipListMap<Long, SimulationJob> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final long createdAt;
+    // state encoded at the latest version it was requested at; engine thread only
+    private StateSnapshot snapshot;
+    // fixed-size map tiles, each encoded at its latest tile version; engine thread only
+    private final Map<Long, StateSnapshot> tiles = new HashMap<>();
+    private long tilesMapId;
+    // per-building details cache; engine thread only
+    private final BuildingDetails buildingDetails = new BuildingDetails();
+
+    /**
+     * Constructs a Session and starts its engine thread.
+     *
+     * @param id         the session id.
+     * @param simulation the simulation owned by this session.
+     * @param catalog    the shared catalog the simulation was created from.
+     * @param realTime   true to start the real-time clock immediately.
+     */
+    public Session(String id, BasicSimulation simulation, ScenarioCatalog catalog, boolean realTime) {
+        this.id = id;
+        this.simulation = simulation;
+        this.catalog = catalog;
+        this.engine = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-" + id);
+            t.setDaemon(true);
+            return t;
+        });
+        this.clock = new SimulationClock(simulation, simulation, engine);
+        this.commands = new CommandQueue(simulation, engine);
+        clock.setTickBoundary(commands::drain);
+        this.createdAt = System.currentTimeMillis();
+        if (realTime) {
+            clock.start();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ScenarioCatalog getCatalog() {
+        return catalog;
+    }
+
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Runs a task against the simulation on the session's engine thread and waits
+     * for its result.
+     *
+     * @param task the task to run; it receives the session's simulation.
+     * @param <T>  the result type.
+     * @return the task's result.
+     * @throws SimulationException if the task fails or the session has been closed.
+     */
+    public <T> T call(SimulationTask<T> task) throws SimulationException {
+        Callable<T> callable = () -> task.run(simulation);
+        try {
+            return await(engine.submit(callable));
+        } catch (RejectedExecutionException e) {
+            throw new SimulationException("Session " + id + " has been closed");
+        }
+    }
+
+    /**
+     * Enqueues a command to be applied at the next tick boundary. Returns as
+     * soon as the command is queued.
+     *
+     * @param command the command string.
+     * @return a future completed with the command's result once it is applied.
+     */
+    public CompletableFuture<CommandResult> submit(String command) {
+        return commands.submit(command);
+    }
+
+    /**
+     * Enqueues several commands that are applied back to back at the next tick
+     * boundary.
+     *
+     * @param commandList the command strings.
+     * @return a future completed with one result per command once they are applied.
+     */
+    public CompletableFuture<List<CommandResult>> submitAll(List<String> commandList) {
+        return commands.submitAll(commandList);
+    }
+
+    /**
+     * Enqueues a batch like {@link #submitAll} and, if asked, serializes the
+     * state in the same engine task right after it.
+     *
+     * @param commandList  the command strings.
+     * @param includeState true to return the state the batch left.
+     * @return a future completed with the results and the state.
+     */
+    public CompletableFuture<CommandQueue.Batch> submitBatch(List<String> commandList, boolean includeState) {
+        return commands.submitBatch(commandList, includeState);
+    }
+
+    /**
+     * Starts a command as an asynchronous job (see {@link SimulationJob}) and
+     * returns at once. Ended jobs are kept for polling until more than
+     * {@link #MAX_ENDED_JOBS} have piled up.
+     *
+     * @param command the command string.
+     * @return the job.
+     */
+    public SimulationJob startJob(String command) {
+        SimulationJob job = new SimulationJob(nextJobId.getAndIncrement(), command, simulation, engine);
+        jobs.put(job.getId(), job);
+        pruneJobs();
+        job.start();
+        return job;
+    }
+
+    private void pruneJobs() {
+        List<Long> ended = new ArrayList<>();
+        for (SimulationJob job : jobs.values()) {
+            if (job.isDone()) {
+                ended.add(job.getId());
+            }
+        }
+        for (int i = 0; i < ended.size() - MAX_ENDED_JOBS; i++) {
+            jobs.remove(ended.get(i));
+        }
+    }
+
+    /**
+     * Gets a job by id.
+     *
+     * @param jobId the job id.
+     * @return the job, or null if there is none or it has been forgotten.
+     */
+    public SimulationJob getJob(long jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Gets the jobs still known to this session, oldest first.
+     *
+     * @return the jobs.
+     */
+    public List<SimulationJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Waits for the result of work submitted to this session, unwrapping the
+     * exception it failed with.
+     *
+     * @param future the pending result.
+     * @param <T>    the result type.
+     * @return the result.
+     * @throws SimulationException if the work failed or the session has been closed.
+     */
+    public <T> T await(Future<T> future) throws SimulationException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SimulationException se) {
+                throw se;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new SimulationException("Session " + id + " task failed: " + cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulationException("Interrupted while waiting for session " + id);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the current state.
+     *
+     * @return the snapshot.
+     * @throws SimulationException if the session has been closed.
+     */
+    public StateSnapshot getSnapshot() throws SimulationException {
+        return getSnapshot(StateSnapshot.Format.JSON);
+    }
+
+    /**
+     * Gets a snapshot of the current state that holds the given format.
+     *
+     * @param format the body format the caller will serve.
+     * @return the snapshot.
+     * @throws SimulationException if the session has been closed.
+     */
+    public StateSnapshot getSnapshot(StateSnapshot.Format format) throws SimulationException {
+        return call(sim -> currentSnapshot(format));
+    }
+
+    /**
+     * Gets a snapshot of the current state. The state is only re-serialized when
+     * the simulation version has changed since the last call, so clients polling
+     * between ticks all share one snapshot (and its compressed forms), and
+     * transports can write it to sockets without another copy. Must be called
+     * on the engine thread.
+     *
+     * @return the snapshot.
+     */
+    StateSnapshot currentSnapshot() {
+        long version = simulation.getVersion();
+        if (snapshot == null || version != snapshot.getVersion()) {
+            snapshot = new StateSnapshot(version, simulation.toSerializable().toString());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Like {@link #currentSnapshot()}, and also encodes the state in the given
+     * format if this version has not been encoded in it yet. Must be called on
+     * the engine thread.
+     *
+     * @param format the body format the caller will serve.
+     * @return the snapshot.
+     */
+    StateSnapshot currentSnapshot(StateSnapshot.Format format) {
+        StateSnapshot current = currentSnapshot();
+        if (format == StateSnapshot.Format.BINARY && !current.hasFormat(format)) {
+            current.putFormat(format, BinaryStateCodec.encode(simulation));
+        }
+        return current;
+    }
+
+    /**
+     * Gets one fixed-size map tile (see {@link TileIndex#TILE_SIZE}). A tile is
+     * only re-serialized when a road or building inside it has changed since it
+     * was last requested. Must be called on the engine thread.
+     *
+     * @param tileX tile column.
+     * @param tileY tile row.
+     * @return the tile as a snapshot whose version is the tile version.
+     */
+    StateSnapshot currentTile(int tileX, int tileY) {
+        RoadMap map = simulation.getRoadMap();
+        if (map.getId() != tilesMapId) {
+            tiles.clear();
+            tilesMapId = map.getId();
+        }
+        long version = map.getTileIndex().getTileVersion(tileX, tileY);
+        long key = ((long) tileX << 32) | (tileY & 0xffffffffL);
+        StateSnapshot tile = tiles.get(key);
+        if (tile == null || tile.getVersion() != version) {
+            int x0 = tileX * TileIndex.TILE_SIZE;
+            int y0 = tileY * TileIndex.TILE_SIZE;
+            tile = new StateSnapshot(version, simulation.regionToSerializable(
+                    x0, y0, x0 + TileIndex.TILE_SIZE, y0 + TileIndex.TILE_SIZE).toString());
+            // 从未有过内容的瓦片不缓存，避免任意坐标的请求让缓存无限增长
+            if (version != 0) {
+                tiles.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Gets the session's building details renderer. Must be used on the engine thread.
+     *
+     * @return the renderer.
+     */
+    BuildingDetails getBuildingDetails() {
+        return buildingDetails;
+    }
+
+    /**
+     * Builds the entity tag of map content at a map version.
+     *
+     * @param map     the road map.
+     * @param version the tile or region version.
+     * @return the quoted ETag value.
+     */
+    static String entityTag(RoadMap map, long version) {
+        return "\"" + map.getId() + "-" + version + "\"";
+    }
+
+    /**
+     * Estimates the heap retained by this session's mutable state from the number
+     * of buildings, road cells, queued requests, deliveries in flight and request
+     * records (open and archived) in the request registry. Must be
+     * called on the engine thread (e.g. from within {@link #call}).
+     *
+     * @return the estimated size in bytes.
+     */
+    long estimateRetainedBytes() {
+        RequestRegistry registry = simulation.getRequestRegistry();
+        long requests = simulation.getOpenUserRequestCount();
+        for (Building b : simulation.getBuildings().values()) {
+            requests += b.getQueueLength();
+        }
+        return simulation.getBuildings().size() * BUILDING_BYTES
+                + simulation.getRoadMap().getRoads().size() * ROAD_BYTES
+                + requests * REQUEST_BYTES
+                + simulation.getPendingDeliveryCount() * DELIVERY_BYTES
+                + (registry.getOpenCount() + registry.getHistorySize()) * ORDER_RECORD_BYTES;
+    }
+
+    /**
+     * Summarizes this session for the session listing:
+     * { id: String, createdAt: long, currentTimeStep: int, buildings: int, estimatedBytes: long,
+     *   requests: {..} (see {@link RequestRegistry#statsToSerializable()}), clock: {...} }
+     *
+     * @return JSONObject describing the session.
+     * @throws SimulationException if the session has been closed.
+     */
+    public JSONObject describe() throws SimulationException {
+        JSONObject result = call(sim -> {
+            JSONObject info = new JSONObject();
+            info.put("currentTimeStep", sim.getCurrentTimeStep());
+            info.put("buildings", sim.getBuildings().size());
+            info.put("estimatedBytes", estimateRetainedBytes());
+            info.put("requests", sim.getRequestRegistry().statsToSerializable());
+            return info;
+        });
+        result.put("id", id);
+        result.put("createdAt", createdAt);
+        result.put("clock", clock.toSerializable());
+        return result;
+    }
+
+    /**
+     * Stops the clock and the engine thread. Tasks already queued still run,
+     * then the simulation's journal and command log are closed.
+     */
+    public void close() {
+        clock.stop();
+        if (!engine.isShutdown()) {
+            engine.execute(() -> {
+                simulation.closeJournal();
+                simulation.closeCommandLog();
+            });
+        }
+        engine.shutdown();
+    }
+
+    /**
+     * Waits for the engine thread to finish after {@link #close()}.
+     *
+     * @param timeoutMillis maximum time to wait.
+     * @return true if the engine terminated.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+        return engine.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A unit of work run against a session's simulation on its engine thread.
+     *
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    public interface SimulationTask<T> {
+        T run(BasicSimulation simulation) throws Exception;
+    }
+}
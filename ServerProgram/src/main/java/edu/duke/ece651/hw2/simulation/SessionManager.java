@@ -0,0 +1,360 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Hosts many independent simulation sessions in one server.
+ * <p>
+ * Sessions loaded from scenarios with the same recipes and types share one
+ * {@link ScenarioCatalog}; only buildings, roads and requests are per session.
+ * A catalog is dropped once the last session using it is deleted or replaced.
+ */
+public class SessionManager {
+    /** How long replacing a session waits for the old one to close its logs. */
+    static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // 正在创建的会话 id：同一个 id 同时只能有一次创建，日志文件不会被两个会话共用
+    private final Set<String> creating = ConcurrentHashMap.newKeySet();
+    // 共享的目录及引用它的会话数；用 catalogs 自身加锁
+    private final Map<String, SharedCatalog> catalogs = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final SimulationParser parser = new SimulationParser();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile EventSink eventSink = ConsoleEventSink.INSTANCE;
+    private volatile Path journalDirectory;
+    private volatile Path commandLogDirectory;
+    private volatile Path scenarioDirectory;
+
+    /**
+     * Sets where the text output of sessions created from now on goes.
+     *
+     * @param sink the sink shared by those sessions.
+     */
+    public void setEventSink(EventSink sink) {
+        eventSink = sink;
+    }
+
+    /**
+     * Gets the sink sessions created from now on write to; the server's own
+     * messages go there too.
+     *
+     * @return the sink.
+     */
+    public EventSink getEventSink() {
+        return eventSink;
+    }
+
+    /**
+     * Makes sessions created from now on keep an {@link EventJournal} in a
+     * subdirectory named after the session.
+     *
+     * @param directory the parent directory, or null to stop journaling new sessions.
+     */
+    public void setJournalDirectory(Path directory) {
+        journalDirectory = directory;
+    }
+
+    /**
+     * Makes sessions created from now on log their commands for
+     * {@link ReplayRunner}: session {@code id} writes {@code id.log} and a copy
+     * of its scenario, {@code id.scenario.json}, to the directory.
+     *
+     * @param directory the directory, or null to stop logging new sessions.
+     */
+    public void setCommandLogDirectory(Path directory) {
+        commandLogDirectory = directory;
+    }
+
+    /**
+     * Sets the directory clients may load scenario files from by name.
+     *
+     * @param directory the directory, or null to accept only uploaded scenarios.
+     */
+    public void setScenarioDirectory(Path directory) {
+        scenarioDirectory = directory == null ? null : directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves a scenario name sent by a client against the scenario directory.
+     *
+     * @param name the file name, relative to the scenario directory.
+     * @return the path of the scenario file.
+     * @throws SimulationException if no scenario directory is set or the name
+     *                             points outside it.
+     */
+    public Path resolveScenario(String name) throws SimulationException {
+        Path directory = scenarioDirectory;
+        if (directory == null) {
+            throw new SimulationException("Loading scenarios by name is disabled; send the scenario as the request body");
+        }
+        Path file;
+        try {
+            file = directory.resolve(name).normalize();
+        } catch (InvalidPathException e) {
+            throw new SimulationException("Invalid scenario name: " + name);
+        }
+        // 规范化之后仍必须位于场景目录之内，拒绝 ../ 和绝对路径
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            throw new SimulationException("Scenario '" + name + "' is outside the scenario directory");
+        }
+        return file;
+    }
+
+    /**
+     * Loads a scenario file into a new session.
+     *
+     * @param id       the session id, or null to generate one.
+     * @param filePath path to the scenario JSON file.
+     * @param realTime true to start the session's real-time clock.
+     * @return the new session.
+     * @throws IOException         if the file cannot be read.
+     * @throws SimulationException if the scenario is invalid or the id is taken.
+     */
+    public Session createFromFile(String id, String filePath, boolean realTime) throws IOException, SimulationException {
+        return create(id, parser.parseJsonFile(filePath), realTime, false);
+    }
+
+    /**
+     * Loads a scenario file into a session that takes the place of any session
+     * with the same id. The old session is closed only once the new one has
+     * loaded, so an invalid scenario leaves it running.
+     *
+     * @param id       the session id.
+     * @param filePath path to the scenario JSON file.
+     * @param realTime true to start the session's real-time clock.
+     * @return the new session.
+     * @throws IOException         if the file cannot be read.
+     * @throws SimulationException if the scenario is invalid.
+     */
+    public Session replaceFromFile(String id, String filePath, boolean realTime) throws IOException, SimulationException {
+        return create(id, parser.parseJsonFile(filePath), realTime, true);
+    }
+
+    /**
+     * Loads an inline scenario into a new session.
+     *
+     * @param id       the session id, or null to generate one.
+     * @param scenario the scenario JSON text.
+     * @param realTime true to start the session's real-time clock.
+     * @return the new session.
+     * @throws IOException         if the text is not valid JSON.
+     * @throws SimulationException if the scenario is invalid or the id is taken.
+     */
+    public Session createFromJson(String id, String scenario, boolean realTime) throws IOException, SimulationException {
+        return create(id, mapper.readTree(scenario), realTime, false);
+    }
+
+    /**
+     * Loads an inline scenario into a session that takes the place of any
+     * session with the same id, as {@link #replaceFromFile} does.
+     *
+     * @param id       the session id.
+     * @param scenario the scenario JSON text.
+     * @param realTime true to start the session's real-time clock.
+     * @return the new session.
+     * @throws IOException         if the text is not valid JSON.
+     * @throws SimulationException if the scenario is invalid.
+     */
+    public Session replaceFromJson(String id, String scenario, boolean realTime) throws IOException, SimulationException {
+        return create(id, mapper.readTree(scenario), realTime, true);
+    }
+
+    /**
+     * Creates a session from a parsed scenario, reusing the catalog of any
+     * earlier scenario with the same recipes and types. With replace set, an
+     * existing session of the same id is swapped out and closed instead of
+     * being an error.
+     * <p>
+     * The journal and command log are attached before the session is
+     * published and before its clock starts, so nothing it does goes unlogged.
+     */
+    private Session create(String id, JsonNode json, boolean realTime, boolean replace) throws SimulationException {
+        String sessionId = (id == null || id.isEmpty()) ? generateId() : id;
+        if (!sessionId.matches("[A-Za-z0-9_-]+")) {
+            throw new SimulationException("Invalid session id: " + sessionId);
+        }
+        if (!creating.add(sessionId)) {
+            throw new SimulationException("Session '" + sessionId + "' is being created");
+        }
+        try {
+            if (!replace && sessions.containsKey(sessionId)) {
+                throw new SimulationException("Session '" + sessionId + "' already exists");
+            }
+            ScenarioCatalog catalog = acquireCatalog(json);
+            Session session;
+            try {
+                BasicSimulation simulation = catalog.createSimulation(parser, json);
+                simulation.setEventSink(eventSink);
+                session = new Session(sessionId, simulation, catalog, false);
+            } catch (SimulationException | RuntimeException e) {
+                releaseCatalog(catalog);
+                throw e;
+            }
+            Session previous = sessions.get(sessionId);
+            if (previous != null) {
+                // 事件记录和命令日志按会话 id 命名，等旧会话写完关闭后新会话才能接上
+                close(sessionId, previous);
+                try {
+                    previous.awaitClosed(CLOSE_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                attachLogs(session, json);
+            } catch (SimulationException e) {
+                session.close();
+                releaseCatalog(catalog);
+                throw e;
+            }
+            sessions.put(sessionId, session);
+            if (realTime) {
+                session.getClock().start();
+            }
+            return session;
+        } finally {
+            creating.remove(sessionId);
+        }
+    }
+
+    private void attachLogs(Session session, JsonNode json) throws SimulationException {
+        String sessionId = session.getId();
+        Path journals = journalDirectory;
+        Path commandLogs = commandLogDirectory;
+        if (journals == null && commandLogs == null) {
+            return;
+        }
+        session.call(sim -> {
+            if (journals != null) {
+                sim.setJournal(new EventJournal(journals.resolve(sessionId), EventJournal.DEFAULT_SEGMENT_BYTES));
+            }
+            if (commandLogs != null) {
+                Files.createDirectories(commandLogs);
+                // 场景与日志放在一起，重放不依赖原来的场景文件
+                Files.writeString(commandLogs.resolve(sessionId + ReplayRunner.SCENARIO_SUFFIX),
+                        mapper.writeValueAsString(json));
+                sim.setCommandLog(new CommandLog(commandLogs.resolve(sessionId + ReplayRunner.LOG_SUFFIX),
+                        sim.getCurrentTimeStep(), CommandLog.DEFAULT_CHECKPOINT_INTERVAL));
+            }
+            return null;
+        });
+    }
+
+    /** A catalog shared by the sessions loaded from the same recipes and types. */
+    private static class SharedCatalog {
+        private final ScenarioCatalog catalog;
+        private int sessions;
+
+        SharedCatalog(ScenarioCatalog catalog) {
+            this.catalog = catalog;
+        }
+    }
+
+    // 取得场景对应的目录并增加其引用计数；每次成功调用都要有一次 releaseCatalog 与之对应
+    private ScenarioCatalog acquireCatalog(JsonNode json) throws SimulationException {
+        String key = ScenarioCatalog.keyOf(json);
+        synchronized (catalogs) {
+            SharedCatalog shared = catalogs.get(key);
+            if (shared != null) {
+                shared.sessions++;
+                return shared.catalog;
+            }
+        }
+        // 在锁外解析，解析失败不影响其他会话
+        ScenarioCatalog parsed = ScenarioCatalog.parse(parser, json);
+        synchronized (catalogs) {
+            SharedCatalog shared = catalogs.computeIfAbsent(key, k -> new SharedCatalog(parsed));
+            shared.sessions++;
+            return shared.catalog;
+        }
+    }
+
+    private void releaseCatalog(ScenarioCatalog catalog) {
+        synchronized (catalogs) {
+            Iterator<SharedCatalog> it = catalogs.values().iterator();
+            while (it.hasNext()) {
+                SharedCatalog shared = it.next();
+                if (shared.catalog == catalog) {
+                    if (--shared.sessions == 0) {
+                        it.remove();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // 只有真正把会话移出表的一方关闭它并释放目录，避免与并发的 delete 重复释放
+    private boolean close(String id, Session session) {
+        if (!sessions.remove(id, session)) {
+            return false;
+        }
+        session.close();
+        releaseCatalog(session.getCatalog());
+        return true;
+    }
+
+    private String generateId() {
+        String id;
+        do {
+            id = "s" + nextId.getAndIncrement();
+        } while (sessions.containsKey(id));
+        return id;
+    }
+
+    /**
+     * Gets a session by id.
+     *
+     * @param id the session id.
+     * @return the session, or null if none exists.
+     */
+    public Session get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Removes a session and stops its engine.
+     *
+     * @param id the session id.
+     * @return true if the session existed.
+     */
+    public boolean delete(String id) {
+        Session session = sessions.get(id);
+        return session != null && close(id, session);
+    }
+
+    /**
+     * Gets all sessions currently hosted.
+     *
+     * @return list of sessions.
+     */
+    public List<Session> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Gets the number of distinct catalogs shared by the hosted sessions.
+     *
+     * @return the number of catalogs.
+     */
+    public int getCatalogCount() {
+        synchronized (catalogs) {
+            return catalogs.size();
+        }
+    }
+}
@@ -59,5 +59,14 @@ public interface Simulation {
 
     void setRate(int rate);
 
+    /**
+     * Gets where the simulation's text output goes, command messages included.
+     *
+     * @return the sink; the console unless the simulation says otherwise.
+     */
+    default EventSink getEventSink() {
+        return ConsoleEventSink.INSTANCE;
+    }
+
     int getRate();
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * Fixed-rate real-time clock that drives a simulation at {@code getRate()} steps
+ * per wall-clock second.
+ * <p>
+ * Instead of sleeping a second and then running all of the second's steps at
+ * once, the clock wakes up every {@link #SLICE_NANOS} and runs the steps that
+ * are due by now, measured against a fixed wall-clock origin. Step cost
+ * therefore never accumulates as drift, and the steps of one second are spread
+ * evenly across it.
+ * <p>
+ * When stepping falls behind, each slice catches up by at most
+ * {@link #CATCH_UP_FACTOR} times its normal share of steps. If the backlog
+ * grows beyond one virtual second, the clock reports an overrun and drops the
+ * backlog rather than stalling the server with an unbounded burst.
+ * <p>
+ * An optional tick boundary hook (see {@link #setTickBoundary}) runs before
+ * every step, so queued commands land between ticks rather than in the middle
+ * of a burst.
+ */
+public class SimulationClock {
+    /** Wake-up period of the clock. */
+    static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** How many slices' worth of steps one slice may run while catching up. */
+    static final int CATCH_UP_FACTOR = 4;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Simulation simulation;
+    private final Object lock;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    private Runnable tickBoundary;
+
+    // wall-clock origin and steps run since then, for the current rate
+    private long epochNanos;
+    private long stepsSinceEpoch;
+    private int epochRate;
+
+    private long totalSteps;
+    private long lagSteps;
+    private long overruns;
+    private long droppedSteps;
+
+    /**
+     * Constructs a SimulationClock.
+     *
+     * @param simulation the simulation to step.
+     * @param lock       the monitor that guards the simulation.
+     * @param scheduler  the executor that runs the clock slices.
+     */
+    public SimulationClock(Simulation simulation, Object lock, ScheduledExecutorService scheduler) {
+        this.simulation = simulation;
+        this.lock = lock;
+        this.scheduler = scheduler;
+        this.epochRate = -1;
+    }
+
+    /**
+     * Sets the hook run at each tick boundary, on the clock's thread with the
+     * lock held. With a hook set, steps are run one at a time.
+     *
+     * @param tickBoundary the hook, or null for none.
+     */
+    public void setTickBoundary(Runnable tickBoundary) {
+        synchronized (lock) {
+            this.tickBoundary = tickBoundary;
+        }
+    }
+
+    /**
+     * Starts stepping the simulation at its current rate.
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        reset(System.nanoTime());
+        task = scheduler.scheduleAtFixedRate(() -> runDueSteps(System.nanoTime()),
+                SLICE_NANOS, SLICE_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops stepping; steps already running complete normally.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Restarts the wall-clock origin at the given time.
+     *
+     * @param nowNanos the current value of the nano clock.
+     */
+    void reset(long nowNanos) {
+        synchronized (lock) {
+            epochNanos = nowNanos;
+            stepsSinceEpoch = 0;
+            epochRate = simulation.getRate();
+            lagSteps = 0;
+        }
+    }
+
+    /**
+     * Runs the steps that are due at the given time, bounded by the catch-up
+     * budget of one slice. A rate change (including {@code pause}) restarts the
+     * origin, so steps owed under the old rate are not replayed under the new one.
+     *
+     * @param nowNanos the current value of the nano clock.
+     * @return the number of steps run.
+     */
+    int runDueSteps(long nowNanos) {
+        synchronized (lock) {
+            if (tickBoundary != null) {
+                tickBoundary.run();
+            }
+            int rate = simulation.getRate();
+            if (rate != epochRate) {
+                epochNanos = nowNanos;
+                stepsSinceEpoch = 0;
+                epochRate = rate;
+            }
+            if (rate <= 0) {
+                lagSteps = 0;
+                return 0;
+            }
+
+            long due = (long) ((nowNanos - epochNanos) * (double) rate / NANOS_PER_SECOND);
+            long behind = due - stepsSinceEpoch;
+            if (behind <= 0) {
+                lagSteps = 0;
+                return 0;
+            }
+
+            int toRun = (int) Math.min(behind, maxStepsPerSlice(rate));
+            if (tickBoundary == null) {
+                simulation.step(toRun);
+            } else {
+                for (int i = 0; i < toRun; i++) {
+                    if (i > 0) {
+                        tickBoundary.run();
+                        if (simulation.getRate() != rate) {
+                            // 命令改变了速率（如 pause），下一个时间片按新速率重新计时
+                            totalSteps += i;
+                            lagSteps = 0;
+                            return i;
+                        }
+                    }
+                    simulation.step(1);
+                }
+            }
+            stepsSinceEpoch += toRun;
+            totalSteps += toRun;
+            lagSteps = due - stepsSinceEpoch;
+
+            if (lagSteps > rate) {
+                overruns++;
+                droppedSteps += lagSteps;
+                simulation.getEventSink().emit(EventSink.Level.WARN, "Real-time overrun: " + lagSteps
+                        + " steps behind at rate " + rate + ", skipping ahead (" + overruns + " overruns so far)");
+                stepsSinceEpoch = due;
+                lagSteps = 0;
+            }
+            return toRun;
+        }
+    }
+
+    /**
+     * Gets the maximum number of steps a single slice may run at the given rate.
+     *
+     * @param rate steps per second.
+     * @return the per-slice step budget.
+     */
+    static int maxStepsPerSlice(int rate) {
+        long perSlice = (rate * SLICE_NANOS + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+        return (int) Math.max(1, perSlice * CATCH_UP_FACTOR);
+    }
+
+    public long getTotalSteps() {
+        synchronized (lock) {
+            return totalSteps;
+        }
+    }
+
+    public long getLagSteps() {
+        synchronized (lock) {
+            return lagSteps;
+        }
+    }
+
+    public long getOverruns() {
+        synchronized (lock) {
+            return overruns;
+        }
+    }
+
+    public long getDroppedSteps() {
+        synchronized (lock) {
+            return droppedSteps;
+        }
+    }
+
+    /**
+     * Converts the clock statistics to JSON:
+     * { running: boolean, rate: int, totalSteps: long, lagSteps: long, overruns: long, droppedSteps: long }
+     *
+     * @return JSONObject with the clock statistics.
+     */
+    public JSONObject toSerializable() {
+        JSONObject result = new JSONObject();
+        synchronized (this) {
+            result.put("running", task != null);
+        }
+        synchronized (lock) {
+            result.put("rate", simulation.getRate());
+            result.put("totalSteps", totalSteps);
+            result.put("lagSteps", lagSteps);
+            result.put("overruns", overruns);
+            result.put("droppedSteps", droppedSteps);
+        }
+        return result;
+    }
+}
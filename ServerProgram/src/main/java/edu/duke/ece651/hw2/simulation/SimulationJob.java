@@ -0,0 +1,247 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * A command run asynchronously on a session's engine thread.
+ * <p>
+ * {@code step N}, {@code step until ...} and {@code finish} run in slices of at most
+ * {@link #SLICE_NANOS}; between slices the job re-queues itself on the engine,
+ * so other clients' reads and commands are served while it runs. Progress is
+ * published after every tick and cancellation is checked before every tick.
+ * Any other command runs in one go, exactly as if it had been queued.
+ */
+public class SimulationJob {
+    /** Longest time a job runs on the engine thread before letting other work in. */
+    static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final long id;
+    private final String command;
+    private final BasicSimulation simulation;
+    private final Executor engine;
+    private final CompletableFuture<CommandResult> result = new CompletableFuture<>();
+    private final long submittedAt = System.currentTimeMillis();
+
+    // 以下字段由引擎线程写入，其他线程只读
+    private volatile Status status = Status.QUEUED;
+    private volatile int startedAt = -1;
+    private volatile long completedSteps;
+    // step 与 step until time 的总步数；finish 和其他 step until 为 -1（步数事先未知）
+    private volatile long totalSteps = -1;
+    private volatile int openRequestsAtStart;
+    private volatile int openRequests;
+    private volatile boolean cancelRequested;
+
+    private Command parsed;
+    private StepCondition condition;
+    private int maxSteps;
+
+    /**
+     * Constructs a SimulationJob; call {@link #start()} to queue it.
+     *
+     * @param id         the job id, unique within the session.
+     * @param command    the command string.
+     * @param simulation the session's simulation.
+     * @param engine     the session's engine executor.
+     */
+    SimulationJob(long id, String command, BasicSimulation simulation, Executor engine) {
+        this.id = id;
+        this.command = command;
+        this.simulation = simulation;
+        this.engine = engine;
+    }
+
+    /**
+     * Queues the job's first slice on the engine.
+     */
+    void start() {
+        schedule(this::begin);
+    }
+
+    private void schedule(Runnable slice) {
+        try {
+            engine.execute(slice);
+        } catch (RejectedExecutionException e) {
+            finish(Status.FAILED, CommandResult.failure(command, "Session has been closed", -1));
+        }
+    }
+
+    private void begin() {
+        startedAt = simulation.getCurrentTimeStep();
+        try {
+            parsed = simulation.parseCommand(command);
+            if (parsed instanceof StepUntilCommand until) {
+                condition = until.getCondition();
+                condition.validate(simulation);
+                maxSteps = until.getMaxSteps();
+            }
+        } catch (SimulationException e) {
+            finish(Status.FAILED, CommandResult.failure(command, e.getMessage(), startedAt));
+            return;
+        }
+        if (cancelRequested) {
+            finish(Status.CANCELLED, cancelled());
+            return;
+        }
+        status = Status.RUNNING;
+        if (parsed instanceof StepCommand stepCommand) {
+            totalSteps = stepCommand.getSteps();
+        } else if (parsed instanceof FinishCommand) {
+            openRequestsAtStart = simulation.getOpenUserRequestCount();
+            openRequests = openRequestsAtStart;
+        } else if (condition != null) {
+            if (condition.getKind() == StepCondition.Kind.TIME) {
+                totalSteps = Math.max(0, condition.getValue() - startedAt);
+            }
+        } else {
+            CommandResult r = simulation.executeCommand(command);
+            finish(r.isSuccess() ? Status.DONE : Status.FAILED, r);
+            return;
+        }
+        runSlice();
+    }
+
+    private void runSlice() {
+        long deadline = System.nanoTime() + SLICE_NANOS;
+        boolean isFinish = parsed instanceof FinishCommand;
+        while (true) {
+            boolean ended = condition != null ? condition.isMet(simulation)
+                    : isFinish ? simulation.getOpenUserRequestCount() == 0 : completedSteps >= totalSteps;
+            if (ended) {
+                if (isFinish) {
+                    simulation.getEventSink().emit(EventSink.Level.INFO, "Simulation finished at time " + simulation.getCurrentTimeStep());
+                }
+                finish(Status.DONE, CommandResult.success(command, simulation.getCurrentTimeStep()));
+                return;
+            }
+            if (condition != null && completedSteps >= maxSteps) {
+                finish(Status.FAILED, CommandResult.failure(command, "Condition '" + condition + "' not met after "
+                        + completedSteps + " steps", simulation.getCurrentTimeStep()));
+                return;
+            }
+            if (cancelRequested) {
+                finish(Status.CANCELLED, cancelled());
+                return;
+            }
+            if (System.nanoTime() >= deadline) {
+                schedule(this::runSlice);
+                return;
+            }
+            try {
+                simulation.step(1);
+            } catch (RuntimeException e) {
+                finish(Status.FAILED, CommandResult.failure(command, e.getMessage(), simulation.getCurrentTimeStep()));
+                return;
+            }
+            completedSteps++;
+            if (isFinish) {
+                openRequests = simulation.getOpenUserRequestCount();
+            }
+        }
+    }
+
+    private CommandResult cancelled() {
+        return CommandResult.failure(command, "Cancelled after " + completedSteps + " steps",
+                simulation.getCurrentTimeStep());
+    }
+
+    private void finish(Status finalStatus, CommandResult r) {
+        status = finalStatus;
+        result.complete(r);
+    }
+
+    /**
+     * Asks the job to stop. A running job stops before its next tick; the
+     * ticks already run are kept.
+     *
+     * @return false if the job had already ended.
+     */
+    public boolean cancel() {
+        if (isDone()) {
+            return false;
+        }
+        cancelRequested = true;
+        return true;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    public long getCompletedSteps() {
+        return completedSteps;
+    }
+
+    /**
+     * Gets the job's result.
+     *
+     * @return a future completed once the job has ended, whether it succeeded,
+     *         failed or was cancelled.
+     */
+    public CompletableFuture<CommandResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Converts the job to JSON:
+     * { id, command, status, submittedAt, startedAt, progress: { completedSteps, totalSteps | openRequests,
+     *   openRequestsAtStart, fraction }, result: {..} (once ended) }
+     * A {@code step until} job without a known length reports completedSteps only.
+     *
+     * @return JSONObject describing the job.
+     */
+    public JSONObject toSerializable() {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("command", command);
+        json.put("status", status.toString());
+        json.put("submittedAt", submittedAt);
+        json.put("startedAt", startedAt);
+
+        JSONObject progress = new JSONObject();
+        long done = completedSteps;
+        progress.put("completedSteps", done);
+        double fraction;
+        if (condition != null && totalSteps < 0) {
+            fraction = 0;
+        } else if (totalSteps >= 0) {
+            progress.put("totalSteps", totalSteps);
+            fraction = totalSteps == 0 ? 1 : (double) done / totalSteps;
+        } else {
+            int atStart = openRequestsAtStart;
+            int open = openRequests;
+            progress.put("openRequestsAtStart", atStart);
+            progress.put("openRequests", open);
+            fraction = atStart == 0 ? (isDone() ? 1 : 0) : (double) (atStart - open) / atStart;
+        }
+        progress.put("fraction", status == Status.DONE ? 1.0 : Math.min(1.0, fraction));
+        json.put("progress", progress);
+
+        CommandResult r = result.getNow(null);
+        if (r != null) {
+            json.put("result", r.toSerializable());
+        }
+        return json;
+    }
+}
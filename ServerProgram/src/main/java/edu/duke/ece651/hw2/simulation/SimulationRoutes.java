@@ -0,0 +1,781 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The server's HTTP API, shared by every transport.
+ * <p>
+ * The un-prefixed endpoints act on the default session:
+ * GET /Simulation 返回当前模拟状态；POST /Instruction 处理单条指令；
+ * POST /Instructions 批量处理指令；GET /Clock 返回实时时钟统计；
+ * GET /Simulation/tiles 只返回地图的一个区域（见 {@link #handleTiles}）；
+ * GET /Building/{name} 返回单个建筑的完整详情（见 {@link #handleBuilding}）；
+ * /Jobs 以异步任务运行耗时指令（见 {@link #handleJobs}）；
+ * /Orders 查询订单状态、预计完成时间与历史（见 {@link #handleOrders}）；
+ * GET /Utilisation 返回各建筑忙碌、缺料、阻塞、空闲的时间步统计（见 {@link #handleUtilisation}）；
+ * /Trace 设置时间步预算并查询超出预算的时间步中最慢的建筑、运输与寻路（见 {@link #handleTrace}）；
+ * GET /metrics 以 Prometheus 文本格式返回整个进程的指标（见 {@link #handleMetrics}）。
+ * The same endpoints exist per session under /sessions/{id}/, next to the
+ * session management routes (see {@link #handleSessions}).
+ */
+public class SimulationRoutes {
+    /** Id of the session loaded from the command line; the un-prefixed endpoints act on it. */
+    static final String DEFAULT_SESSION = "default";
+    /** Largest region, in cells, one /Simulation/tiles?x0=&amp;y0=&amp;x1=&amp;y1= request may ask for. */
+    static final int MAX_REGION_CELLS = 256 * 256;
+    private static final String TILES = "Simulation/tiles";
+    private static final String BUILDING = "Building/";
+    private static final String JOBS = "Jobs";
+    private static final String ORDERS = "Orders";
+    private static final String METRICS = "/metrics";
+
+    private final SessionManager sessions;
+    private final boolean realTimeDefault;
+
+    /**
+     * Constructs SimulationRoutes.
+     *
+     * @param sessions        the hosted sessions.
+     * @param realTimeDefault whether sessions created over HTTP start their clock by default.
+     */
+    public SimulationRoutes(SessionManager sessions, boolean realTimeDefault) {
+        this.sessions = sessions;
+        this.realTimeDefault = realTimeDefault;
+    }
+
+    /**
+     * Handles one request. Never throws; failures become error responses.
+     *
+     * @param request the request.
+     * @return the response, with CORS headers set.
+     */
+    public HttpResponse handle(HttpRequest request) {
+        long started = System.nanoTime();
+        EngineEvents.HttpExchange event = new EngineEvents.HttpExchange();
+        event.begin();
+        HttpResponse response;
+        try {
+            response = route(request);
+        } catch (UncheckedIOException e) {
+            // 查询参数中的错误转义由 getQueryParam 报告为 400
+            response = e.getCause() instanceof HttpRequest.BadRequestException bad
+                    ? HttpResponse.error(bad.getStatus(), bad.getMessage())
+                    : HttpResponse.error(500, String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            response = HttpResponse.error(500, String.valueOf(e.getMessage()));
+        }
+        EngineMetrics.HTTP_SECONDS.observeNanos(System.nanoTime() - started);
+        if (event.shouldCommit()) {
+            event.method = request.getMethod();
+            event.path = request.getPath();
+            event.status = response.getStatus();
+            event.commit();
+        }
+        return addCorsHeaders(response);
+    }
+
+    private HttpResponse route(HttpRequest request) {
+        // 处理 OPTIONS 请求，返回 204 No Content
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(204);
+        }
+        String path = request.getPath();
+        if (path.equals("/sessions") || path.startsWith("/sessions/")) {
+            return handleSessions(request);
+        }
+        if (path.equals(METRICS)) {
+            return handleMetrics(request);
+        }
+        Session session = sessions.get(DEFAULT_SESSION);
+        if (session == null) {
+            return HttpResponse.error(404, "No default session is loaded");
+        }
+        return handleResource(request, session, path.substring(1));
+    }
+
+    private HttpResponse handleResource(HttpRequest request, Session session, String resource) {
+        return switch (resource) {
+            case "Simulation" -> handleSimulation(request, session);
+            case "Instruction" -> handleInstruction(request, session);
+            case "Instructions" -> handleInstructions(request, session);
+            case "Clock" -> handleClock(request, session);
+            case "Utilisation" -> handleUtilisation(request, session);
+            case "Trace" -> handleTrace(request, session);
+            default -> resource.equals(JOBS) || resource.startsWith(JOBS + "/")
+                    ? handleJobs(request, session, resource.substring(JOBS.length()))
+                    : resource.equals(ORDERS) || resource.startsWith(ORDERS + "/")
+                    ? handleOrders(request, session, resource.substring(ORDERS.length()))
+                    : resource.startsWith(TILES)
+                    ? handleTiles(request, session, resource.substring(TILES.length()))
+                    : resource.startsWith(BUILDING)
+                    ? handleBuilding(request, session, resource.substring(BUILDING.length()))
+                    : HttpResponse.error(404, "Unknown resource: " + resource);
+        };
+    }
+
+    /**
+     * GET：返回会话当前的模拟状态 JSON，使用会话缓存的快照字节。
+     * Accept 中包含 application/x-factory-state 时返回二进制状态（见 {@link BinaryStateCodec}）。
+     * 根据 Accept-Encoding 返回 gzip/deflate 压缩后的内容，压缩结果随快照缓存。
+     */
+    HttpResponse handleSimulation(HttpRequest request, Session session) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);  // 返回 405 方法不允许
+        }
+        try {
+            return stateResponse(request, session.getSnapshot(requestedFormat(request)));
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * 以客户端接受的编码返回快照；压缩在请求线程上进行，不占用会话引擎线程。
+     */
+    static HttpResponse stateResponse(HttpRequest request, StateSnapshot snapshot) {
+        return encodedResponse(request, snapshot, requestedFormat(request));
+    }
+
+    private static HttpResponse encodedResponse(HttpRequest request, StateSnapshot snapshot,
+                                                StateSnapshot.Format format) {
+        ContentEncoding encoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+        HttpResponse response = new HttpResponse(200, snapshot.getEncoded(format, encoding))
+                .header("Content-Type", format.getMediaType())
+                .header("Vary", "Accept, Accept-Encoding");
+        if (encoding != ContentEncoding.IDENTITY) {
+            response.header("Content-Encoding", encoding.getToken());
+        }
+        return response;
+    }
+
+    /**
+     * GET：只返回地图的一部分，通过 RoadMap 的瓦片索引查找，不生成整张 50×50 网格。
+     * /Simulation/tiles?x0=&amp;y0=&amp;x1=&amp;y1= 返回矩形 [x0, x1) × [y0, y1)；
+     * /Simulation/tiles/{tx}/{ty} 返回固定大小的瓦片（{@link TileIndex#TILE_SIZE} 格），瓦片按版本缓存在会话中。
+     * 响应带 ETag，区域内的路格和建筑没有变化时，带 If-None-Match 的请求得到 304。
+     */
+    HttpResponse handleTiles(HttpRequest request, Session session, String rest) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        Pair<String, StateSnapshot> tagged;
+        try {
+            if (rest.isEmpty()) {
+                int x0 = Integer.parseInt(String.valueOf(request.getQueryParam("x0")));
+                int y0 = Integer.parseInt(String.valueOf(request.getQueryParam("y0")));
+                int x1 = Integer.parseInt(String.valueOf(request.getQueryParam("x1")));
+                int y1 = Integer.parseInt(String.valueOf(request.getQueryParam("y1")));
+                // 先各自扩展为 long 再相减，极端坐标不会回绕成小区域
+                long width = (long) x1 - x0;
+                long height = (long) y1 - y0;
+                if (width <= 0 || height <= 0 || width > MAX_REGION_CELLS || height > MAX_REGION_CELLS
+                        || width * height > MAX_REGION_CELLS) {
+                    return HttpResponse.error(400, "Region must be non-empty and at most "
+                            + MAX_REGION_CELLS + " cells");
+                }
+                tagged = session.call(sim -> {
+                    long version = sim.getRoadMap().getTileIndex().getRegionVersion(x0, y0, x1, y1);
+                    String tag = Session.entityTag(sim.getRoadMap(), version);
+                    // 客户端已有当前内容时不再序列化
+                    if (matchesTag(ifNoneMatch, tag)) {
+                        return new Pair<>(tag, null);
+                    }
+                    return new Pair<>(tag, new StateSnapshot(version,
+                            sim.regionToSerializable(x0, y0, x1, y1).toString()));
+                });
+            } else {
+                String[] tile = rest.substring(1).split("/");
+                if (!rest.startsWith("/") || tile.length != 2) {
+                    return HttpResponse.error(404, "Unknown resource: " + TILES + rest);
+                }
+                int tileX = Integer.parseInt(tile[0]);
+                int tileY = Integer.parseInt(tile[1]);
+                tagged = session.call(sim -> {
+                    StateSnapshot snapshot = session.currentTile(tileX, tileY);
+                    return new Pair<>(Session.entityTag(sim.getRoadMap(), snapshot.getVersion()), snapshot);
+                });
+            }
+        } catch (NumberFormatException e) {
+            return HttpResponse.error(400, "Invalid tile coordinates: " + e.getMessage());
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+        if (tagged.second == null || matchesTag(ifNoneMatch, tagged.first)) {
+            return HttpResponse.empty(304).header("ETag", tagged.first);
+        }
+        return encodedResponse(request, tagged.second, StateSnapshot.Format.JSON)
+                .header("ETag", tagged.first)
+                .header("Cache-Control", "no-cache");
+    }
+
+    /**
+     * GET：返回单个建筑的详情（来源、库存、当前请求、可行性及类型相关字段），
+     * 等待队列分页返回：?offset=（默认 0）&amp;limit=（默认 50，最多 500）。
+     * 详情按建筑版本缓存在会话中；响应带 ETag，建筑与道路都未变化时 If-None-Match 得到 304。
+     */
+    HttpResponse handleBuilding(HttpRequest request, Session session, String name) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        int offset;
+        int limit;
+        try {
+            String offsetParam = request.getQueryParam("offset");
+            String limitParam = request.getQueryParam("limit");
+            offset = offsetParam == null ? 0 : Integer.parseInt(offsetParam);
+            limit = limitParam == null ? BuildingDetails.DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            return HttpResponse.error(400, "Invalid page: " + e.getMessage());
+        }
+        if (offset < 0 || limit < 1 || limit > BuildingDetails.MAX_PAGE_SIZE) {
+            return HttpResponse.error(400, "offset must be >= 0 and limit between 1 and "
+                    + BuildingDetails.MAX_PAGE_SIZE);
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        Pair<String, String> tagged;
+        try {
+            tagged = session.call(sim -> {
+                BasicBuilding building = BuildingDetails.find(sim, name);
+                String tag = BuildingDetails.entityTag(building, sim.getRoadMap(), offset, limit);
+                if (matchesTag(ifNoneMatch, tag)) {
+                    return new Pair<>(tag, null);
+                }
+                return new Pair<>(tag, session.getBuildingDetails().render(sim, name, offset, limit).toString());
+            });
+        } catch (SimulationException e) {
+            return HttpResponse.error(404, e.getMessage());
+        }
+        if (tagged.second == null) {
+            return HttpResponse.empty(304).header("ETag", tagged.first);
+        }
+        return HttpResponse.json(200, tagged.second)
+                .header("ETag", tagged.first)
+                .header("Cache-Control", "no-cache");
+    }
+
+    /**
+     * 判断 If-None-Match（可能是以逗号分隔的多个 ETag，或 *）是否包含给定的 ETag。
+     */
+    static boolean matchesTag(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static StateSnapshot.Format requestedFormat(HttpRequest request) {
+        return StateSnapshot.Format.negotiate(request.getHeader("Accept"));
+    }
+
+    /**
+     * POST：处理一条指令，更新 simulation 状态后返回更新后的 JSON。
+     * 指令进入会话的命令队列，在下一个时钟边界执行；?wait=false 时入队后立即返回 202。
+     */
+    HttpResponse handleInstruction(HttpRequest request, Session session) {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        String requestBody = request.getBodyText();
+
+        EventSink events = sessions.getEventSink();
+        if (events.isEnabled(EventSink.Level.INFO)) {
+            events.emit(EventSink.Level.INFO, "Received " + request.getMethod() + " request for " + request.getPath());
+            events.emit(EventSink.Level.INFO, "Request body: " + requestBody);
+        }
+        CompletableFuture<CommandResult> pending = session.submit(requestBody);
+        if ("false".equalsIgnoreCase(request.getQueryParam("wait"))) {
+            return HttpResponse.json(202, new JSONObject().put("command", requestBody).put("queued", true).toString());
+        }
+        try {
+            CommandResult result = session.await(pending);
+            if (!result.isSuccess() && events.isEnabled(EventSink.Level.WARN)) {
+                events.emit(EventSink.Level.WARN, "Error: " + result.getError());
+            }
+            return stateResponse(request, session.getSnapshot(requestedFormat(request)));
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * POST：批量处理指令，全部命令作为一组进入命令队列，在同一个时钟边界连续执行，返回每条命令的结果。
+     * 请求体可以是 JSON 字符串数组，也可以是按行分隔的命令；?state=false 时不返回模拟状态。
+     */
+    HttpResponse handleInstructions(HttpRequest request, Session session) {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        List<String> commands;
+        try {
+            commands = parseCommandBatch(request.getBodyText());
+        } catch (JSONException e) {
+            return HttpResponse.error(400, "Invalid command array: " + e.getMessage());
+        }
+        boolean includeState = !"false".equalsIgnoreCase(request.getQueryParam("state"));
+
+        try {
+            // 状态与命令在同一个引擎任务里序列化，实时时钟无法在两者之间推进
+            CommandQueue.Batch batch = session.await(session.submitBatch(commands, includeState));
+            List<CommandResult> results = batch.getResults();
+            JSONObject response = new JSONObject();
+            JSONArray resultsJson = new JSONArray();
+            int failed = 0;
+            for (CommandResult commandResult : results) {
+                resultsJson.put(commandResult.toSerializable());
+                if (!commandResult.isSuccess()) {
+                    failed++;
+                }
+            }
+            response.put("results", resultsJson);
+            response.put("succeeded", results.size() - failed);
+            response.put("failed", failed);
+            if (includeState) {
+                response.put("state", batch.getState());
+            }
+            return HttpResponse.json(200, response.toString());
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * 异步任务：
+     * POST /Jobs 以请求体中的指令创建任务，立即返回 202 和任务信息（Location 指向 /Jobs/{id}）；
+     * GET /Jobs 列出任务；GET /Jobs/{id} 返回任务状态与进度；DELETE /Jobs/{id} 请求取消，
+     * 正在运行的任务在下一个时间步之前停止。
+     */
+    HttpResponse handleJobs(HttpRequest request, Session session, String rest) {
+        String method = request.getMethod();
+        if (rest.isEmpty() || rest.equals("/")) {
+            if ("POST".equalsIgnoreCase(method)) {
+                String command = request.getBodyText().trim();
+                if (command.isEmpty()) {
+                    return HttpResponse.error(400, "Empty command");
+                }
+                SimulationJob job = session.startJob(command);
+                return HttpResponse.json(202, job.toSerializable().toString())
+                        .header("Location", "Jobs/" + job.getId());
+            }
+            if ("GET".equalsIgnoreCase(method)) {
+                JSONArray list = new JSONArray();
+                for (SimulationJob job : session.getJobs()) {
+                    list.put(job.toSerializable());
+                }
+                return HttpResponse.json(200, new JSONObject().put("jobs", list).toString());
+            }
+            return HttpResponse.empty(405);
+        }
+
+        long jobId;
+        try {
+            jobId = Long.parseLong(rest.substring(1));
+        } catch (NumberFormatException e) {
+            return HttpResponse.error(404, "Unknown job: " + rest.substring(1));
+        }
+        SimulationJob job = session.getJob(jobId);
+        if (job == null) {
+            return HttpResponse.error(404, "Unknown job: " + jobId);
+        }
+        if ("GET".equalsIgnoreCase(method)) {
+            return HttpResponse.json(200, job.toSerializable().toString());
+        }
+        if ("DELETE".equalsIgnoreCase(method)) {
+            job.cancel();
+            return HttpResponse.json(200, job.toSerializable().toString());
+        }
+        return HttpResponse.empty(405);
+    }
+
+    /**
+     * 订单查询：
+     * GET /Orders 列出未完成的用户订单及其预计完成时间；
+     * GET /Orders/history 返回最近完成的请求（固定容量的环形记录）与全部已完成请求的汇总统计；
+     * GET /Orders/latency[?item=] 返回各物品请求在等待原料、排队、生产、运输各阶段耗时的分布；
+     * GET /Orders/{id} 返回任一请求（用户订单或原料请求）的状态、时间戳、所在建筑、父子请求和预计完成时间。
+     */
+    HttpResponse handleOrders(HttpRequest request, Session session, String rest) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        try {
+            if (rest.isEmpty() || rest.equals("/")) {
+                String body = session.call(sim -> sim.getRequestRegistry().openOrdersToSerializable().toString());
+                return HttpResponse.json(200, body);
+            }
+            if (rest.equals("/latency")) {
+                String item = request.getQueryParam("item");
+                String body = session.call(sim -> sim.getRequestRegistry().latencyToSerializable(item).toString());
+                return HttpResponse.json(200, body);
+            }
+            if (rest.equals("/history")) {
+                String body = session.call(sim -> sim.getRequestRegistry().historyToSerializable().toString());
+                return HttpResponse.json(200, body);
+            }
+            int id;
+            try {
+                id = Integer.parseInt(rest.substring(1));
+            } catch (NumberFormatException e) {
+                return HttpResponse.error(404, "Unknown order: " + rest.substring(1));
+            }
+            JSONObject order = session.call(sim -> sim.getRequestRegistry().toSerializable(id));
+            if (order == null) {
+                return HttpResponse.error(404, "Unknown order: " + id);
+            }
+            return HttpResponse.json(200, order.toString());
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * GET：返回会话实时时钟的统计信息（累计步数、落后步数、超时次数）。
+     */
+    HttpResponse handleClock(HttpRequest request, Session session) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        return HttpResponse.json(200, session.getClock().toSerializable().toString());
+    }
+
+    /**
+     * GET：返回各建筑的时间利用情况 {timeStep, window, buildings: {name: {...}}}，
+     * 在引擎线程上读取，见 {@link Utilisation#toSerializable()}。
+     */
+    HttpResponse handleUtilisation(HttpRequest request, Session session) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        try {
+            String body = session.call(sim -> {
+                JSONObject json = new JSONObject();
+                json.put("timeStep", sim.getCurrentTimeStep());
+                json.put("window", Utilisation.DEFAULT_WINDOW);
+                json.put("buildings", sim.utilisationToSerializable());
+                return json.toString();
+            });
+            return HttpResponse.json(200, body);
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * 慢时间步追踪：
+     * PUT /Trace?budgetMs=&capacity= 启用追踪，budgetMs 为 0 时关闭；
+     * GET /Trace 返回预算与最近超出预算的时间步记录（见 {@link TickTracer#toSerializable()}），未启用时 budgetMs 为 0；
+     * DELETE /Trace 清空已有记录。
+     */
+    HttpResponse handleTrace(HttpRequest request, Session session) {
+        String method = request.getMethod();
+        try {
+            if ("GET".equalsIgnoreCase(method)) {
+                String body = session.call(sim -> sim.getTickTracer() == null
+                        ? new JSONObject().put("budgetMs", 0).put("traces", new JSONArray()).toString()
+                        : sim.getTickTracer().toSerializable().toString());
+                return HttpResponse.json(200, body);
+            }
+            if ("PUT".equalsIgnoreCase(method)) {
+                double budgetMs;
+                int capacity;
+                try {
+                    budgetMs = Double.parseDouble(String.valueOf(request.getQueryParam("budgetMs")));
+                    String capacityParam = request.getQueryParam("capacity");
+                    capacity = capacityParam == null ? TickTracer.DEFAULT_CAPACITY : Integer.parseInt(capacityParam);
+                } catch (NumberFormatException e) {
+                    return HttpResponse.error(400, "budgetMs must be a number and capacity an integer");
+                }
+                if (!(budgetMs >= 0) || capacity < 1) {
+                    return HttpResponse.error(400, "budgetMs must not be negative and capacity must be positive");
+                }
+                TickTracer tracer = budgetMs == 0 ? null
+                        : new TickTracer(Math.max(1, Math.round(budgetMs * 1e6)), capacity);
+                session.call(sim -> {
+                    sim.setTickTracer(tracer);
+                    return null;
+                });
+                return HttpResponse.empty(204);
+            }
+            if ("DELETE".equalsIgnoreCase(method)) {
+                session.call(sim -> {
+                    if (sim.getTickTracer() != null) {
+                        sim.getTickTracer().clear();
+                    }
+                    return null;
+                });
+                return HttpResponse.empty(204);
+            }
+            return HttpResponse.empty(405);
+        } catch (SimulationException e) {
+            return HttpResponse.error(410, e.getMessage());
+        }
+    }
+
+    /**
+     * GET：返回 Prometheus 文本格式的指标。计数器与直方图取自 {@link EngineMetrics}；
+     * 每个会话的仪表值（在途运输、各建筑队列长度、无人机使用情况）在各自的引擎线程上读取，
+     * 文本在请求线程上生成。
+     */
+    HttpResponse handleMetrics(HttpRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return HttpResponse.empty(405);
+        }
+        StringBuilder out = new StringBuilder();
+        EngineMetrics.REGISTRY.writeTo(out);
+
+        List<Pair<String, SessionGauges>> gauges = new ArrayList<>();
+        for (Session session : sessions.getSessions()) {
+            try {
+                gauges.add(new Pair<>(session.getId(), session.call(SessionGauges::new)));
+            } catch (SimulationException e) {
+                // 会话在抓取期间被删除，跳过
+            }
+        }
+        Metrics.writeHeader(out, "factory_current_tick", "gauge", "Current time step of a session.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            Metrics.writeSample(out, "factory_current_tick", g.second.tick, "session", g.first);
+        }
+        Metrics.writeHeader(out, "factory_deliveries_in_flight", "gauge", "Deliveries currently in transit.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            Metrics.writeSample(out, "factory_deliveries_in_flight", g.second.deliveriesInFlight, "session", g.first);
+        }
+        Metrics.writeHeader(out, "factory_open_orders", "gauge", "User orders not yet completed.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            Metrics.writeSample(out, "factory_open_orders", g.second.openOrders, "session", g.first);
+        }
+        Metrics.writeHeader(out, "factory_building_queue_depth", "gauge", "Requests queued at a building.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            for (int i = 0; i < g.second.buildings.length; i++) {
+                Metrics.writeSample(out, "factory_building_queue_depth", g.second.queueDepths[i],
+                        "session", g.first, "building", g.second.buildings[i]);
+            }
+        }
+        Metrics.writeHeader(out, "factory_drones", "gauge", "Drones by state.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            Metrics.writeSample(out, "factory_drones", g.second.activeDrones, "session", g.first, "state", "active");
+            Metrics.writeSample(out, "factory_drones", g.second.idleDrones, "session", g.first, "state", "idle");
+            Metrics.writeSample(out, "factory_drones", g.second.constructingDrones,
+                    "session", g.first, "state", "constructing");
+        }
+        Metrics.writeHeader(out, "factory_drone_utilisation", "gauge", "Share of built drones that are in flight.");
+        for (Pair<String, SessionGauges> g : gauges) {
+            int built = g.second.activeDrones + g.second.idleDrones;
+            Metrics.writeSample(out, "factory_drone_utilisation", built == 0 ? 0 : (double) g.second.activeDrones / built,
+                    "session", g.first);
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        Metrics.writeHeader(out, "jvm_heap_used_bytes", "gauge", "Used heap memory.");
+        Metrics.writeSample(out, "jvm_heap_used_bytes", heap.getUsed());
+
+        return new HttpResponse(200, ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8)))
+                .header("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    }
+
+    /**
+     * 在会话引擎线程上读取的一组仪表值。
+     */
+    private static class SessionGauges {
+        final int tick;
+        final int deliveriesInFlight;
+        final int openOrders;
+        final String[] buildings;
+        final int[] queueDepths;
+        int activeDrones;
+        int idleDrones;
+        int constructingDrones;
+
+        SessionGauges(BasicSimulation sim) {
+            tick = sim.getCurrentTimeStep();
+            deliveriesInFlight = sim.getPendingDeliveryCount();
+            openOrders = sim.getOpenUserRequestCount();
+            Map<String, Building> all = new TreeMap<>(sim.getBuildings());
+            buildings = all.keySet().toArray(new String[0]);
+            queueDepths = new int[buildings.length];
+            int i = 0;
+            for (Building b : all.values()) {
+                queueDepths[i++] = b.getQueueLength();
+                if (b instanceof DroneBuilding port) {
+                    activeDrones += port.countActiveDrones();
+                    idleDrones += port.countIdleDrones();
+                    constructingDrones += port.countInConstructDrones();
+                }
+            }
+        }
+    }
+
+    /**
+     * 进程堆内存使用情况（字节）：{ used, committed, max }，max 未限制时为 -1。
+     */
+    static JSONObject heapReport() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        JSONObject json = new JSONObject();
+        json.put("used", heap.getUsed());
+        json.put("committed", heap.getCommitted());
+        json.put("max", heap.getMax());
+        return json;
+    }
+
+    /**
+     * 会话管理与会话内路由：
+     * GET /sessions 列出所有会话及其内存估算、请求统计，以及进程堆内存使用情况；
+     * POST /sessions?file=NAME[&amp;id=ID][&amp;realTime=true] 从场景目录下的文件创建会话，没有 file 参数时请求体为完整场景 JSON；
+     * GET /sessions/{id} 返回会话信息；PUT /sessions/{id} 以同样方式加载新会话，成功后替换该会话；
+     * DELETE /sessions/{id} 删除会话并停止其引擎线程；
+     * /sessions/{id}/Simulation、/Simulation/tiles、/Building/{name}、/Instruction、/Instructions、/Clock
+     * 与默认会话的接口相同。
+     */
+    HttpResponse handleSessions(HttpRequest request) {
+        String method = request.getMethod();
+        // parts[0] 为空串，parts[1] 为 "sessions"
+        String[] parts = request.getPath().split("/");
+        String id = parts.length > 2 ? parts[2] : null;
+        String resource = parts.length > 3 ? String.join("/", Arrays.copyOfRange(parts, 3, parts.length)) : null;
+
+        if (id == null) {
+            if ("GET".equalsIgnoreCase(method)) {
+                JSONArray list = new JSONArray();
+                for (Session session : sessions.getSessions()) {
+                    try {
+                        list.put(session.describe());
+                    } catch (SimulationException e) {
+                        // 会话在列举期间被删除，跳过
+                    }
+                }
+                JSONObject response = new JSONObject();
+                response.put("sessions", list);
+                response.put("sharedCatalogs", sessions.getCatalogCount());
+                response.put("heap", heapReport());
+                return HttpResponse.json(200, response.toString());
+            }
+            if ("POST".equalsIgnoreCase(method)) {
+                return loadSession(request, request.getQueryParam("id"), false);
+            }
+            return HttpResponse.empty(405);
+        }
+
+        if (resource == null) {
+            if ("DELETE".equalsIgnoreCase(method)) {
+                return sessions.delete(id)
+                        ? HttpResponse.empty(204)
+                        : HttpResponse.error(404, "Session '" + id + "' does not exist");
+            }
+            if ("PUT".equalsIgnoreCase(method)) {
+                // 新场景加载成功后才替换旧会话，无效的场景不会毁掉正在运行的会话
+                return loadSession(request, id, true);
+            }
+            if ("GET".equalsIgnoreCase(method)) {
+                Session session = sessions.get(id);
+                if (session == null) {
+                    return HttpResponse.error(404, "Session '" + id + "' does not exist");
+                }
+                try {
+                    return HttpResponse.json(200, session.describe().toString());
+                } catch (SimulationException e) {
+                    return HttpResponse.error(410, e.getMessage());
+                }
+            }
+            return HttpResponse.empty(405);
+        }
+
+        Session session = sessions.get(id);
+        if (session == null) {
+            return HttpResponse.error(404, "Session '" + id + "' does not exist");
+        }
+        return handleResource(request, session, resource);
+    }
+
+    /**
+     * 从 file 查询参数或请求体中的场景 JSON 创建会话，成功时返回 201 和会话信息。
+     * file 只能是场景目录下的文件名；replace 为 true 时替换同 id 的会话。
+     */
+    private HttpResponse loadSession(HttpRequest request, String id, boolean replace) {
+        String file = request.getQueryParam("file");
+        String realTimeParam = request.getQueryParam("realTime");
+        boolean realTime = realTimeParam == null ? realTimeDefault : "true".equalsIgnoreCase(realTimeParam);
+        String scenario = null;
+        if (file != null) {
+            try {
+                scenario = sessions.resolveScenario(file).toString();
+            } catch (SimulationException e) {
+                return HttpResponse.error(403, e.getMessage());
+            }
+        }
+        try {
+            Session session;
+            if (scenario != null) {
+                session = replace
+                        ? sessions.replaceFromFile(id, scenario, realTime)
+                        : sessions.createFromFile(id, scenario, realTime);
+            } else {
+                session = replace
+                        ? sessions.replaceFromJson(id, request.getBodyText(), realTime)
+                        : sessions.createFromJson(id, request.getBodyText(), realTime);
+            }
+            return HttpResponse.json(201, session.describe().toString());
+        } catch (IOException e) {
+            return HttpResponse.error(400, "Cannot read scenario: " + e.getMessage());
+        } catch (SimulationException | JSONException e) {
+            return HttpResponse.error(400, "Invalid scenario: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 解析批量指令的请求体。
+     * 如果请求体以 '[' 开头，则按 JSON 字符串数组解析；否则按行拆分，忽略空行。
+     *
+     * @param body 请求体
+     * @return 按顺序排列的命令列表
+     * @throws JSONException 如果 JSON 数组格式不正确或其中包含非字符串元素
+     */
+    static List<String> parseCommandBatch(String body) {
+        List<String> commands = new ArrayList<>();
+        String trimmed = body.trim();
+        if (trimmed.startsWith("[")) {
+            JSONArray array = new JSONArray(trimmed);
+            for (int i = 0; i < array.length(); i++) {
+                commands.add(array.getString(i));
+            }
+        } else {
+            for (String line : trimmed.split("\\r?\\n")) {
+                if (!line.trim().isEmpty()) {
+                    commands.add(line.trim());
+                }
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * 添加 CORS 支持的响应头，允许所有来源和 GET、POST、PUT、DELETE、OPTIONS 方法。
+     */
+    private static HttpResponse addCorsHeaders(HttpResponse response) {
+        return response.header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type, Accept, If-None-Match")
+                .header("Access-Control-Expose-Headers", "ETag, Location");
+    }
+}
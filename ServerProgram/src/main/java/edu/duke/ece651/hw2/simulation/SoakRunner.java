@@ -0,0 +1,129 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Soak test: runs a generated scenario under a steady order load and reports
+ * throughput and heap use while it runs.
+ * <p>
+ * Usage: java simulation.SoakRunner [key=value ...]
+ * <ul>
+ *   <li>{@code buildings} – approximate number of buildings (default 10000)</li>
+ *   <li>{@code seed} – generator seed (default 1)</li>
+ *   <li>{@code depth}, {@code fanOut} – shape of the recipe DAG (default 3, 2)</li>
+ *   <li>{@code ordersPerTick} – orders placed before every tick (default 1)</li>
+ *   <li>{@code seconds} – how long to run (default 600)</li>
+ *   <li>{@code reportEvery} – seconds between reports (default 10)</li>
+ * </ul>
+ * Each report is one JSON line on standard output; the engine's own console
+ * output is discarded.
+ */
+public class SoakRunner {
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("Usage: java simulation.SoakRunner [buildings=N] [seed=N] [depth=N] [fanOut=N]"
+                        + " [ordersPerTick=N] [seconds=N] [reportEvery=N]");
+                System.exit(0);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int buildings = Integer.parseInt(options.getOrDefault("buildings", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int ordersPerTick = Integer.parseInt(options.getOrDefault("ordersPerTick", "1"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "600"));
+        long reportEvery = Long.parseLong(options.getOrDefault("reportEvery", "10"));
+
+        ScenarioGenerator generator = new ScenarioGenerator(seed)
+                .depth(Integer.parseInt(options.getOrDefault("depth", "3")))
+                .fanOut(Integer.parseInt(options.getOrDefault("fanOut", "2")));
+        int perCluster = generator.minesPerCluster() + generator.factoriesPerCluster() + 2;
+        int clusters = Math.max(1, buildings / perCluster);
+        generator.clusters(clusters).storages(clusters).dronePorts(clusters);
+        generator.mapSize(generator.requiredMapSize());
+
+        // 引擎的输出交给空事件槽，连字符串都不拼；命令层剩下的零星打印也一并丢弃
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        long started = System.nanoTime();
+        JSONObject scenario = generator.generate();
+        SessionManager sessions = new SessionManager();
+        sessions.setEventSink(EventSink.NONE);
+        try {
+            Session session = sessions.createFromJson("soak", scenario.toString(), false);
+            int size = session.call(sim -> sim.getBuildings().size());
+            report.println(new JSONObject().put("event", "loaded")
+                    .put("buildings", size)
+                    .put("mapSize", generator.requiredMapSize())
+                    .put("loadMillis", (System.nanoTime() - started) / 1_000_000));
+            run(session, generator.orders(scenario, 100_000), ordersPerTick, seconds, reportEvery, report);
+            session.close();
+        } catch (IOException | SimulationException e) {
+            report.println(new JSONObject().put("event", "error").put("message", e.getMessage()));
+            System.exit(1);
+        }
+    }
+
+    private static void run(Session session, List<String> orders, int ordersPerTick, long seconds, long reportEvery,
+                            PrintStream report) throws SimulationException {
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextReport = start + reportEvery * 1_000_000_000L;
+        long lastReport = start;
+        int lastTick = session.call(BasicSimulation::getCurrentTimeStep);
+        int[] placed = new int[2];
+        while (System.nanoTime() < end) {
+            session.call(sim -> {
+                for (int i = 0; i < ordersPerTick; i++) {
+                    // 订单流循环使用，被拒绝的订单单独计数
+                    String order = orders.get((placed[0] + placed[1]) % orders.size());
+                    if (sim.executeCommand(order).isSuccess()) {
+                        placed[0]++;
+                    } else {
+                        placed[1]++;
+                    }
+                }
+                sim.step(1);
+                return null;
+            });
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                int tick = session.call(BasicSimulation::getCurrentTimeStep);
+                report.println(sample(session, now - start, (tick - lastTick) * 1e9 / (now - lastReport),
+                        placed[0], placed[1]));
+                lastTick = tick;
+                lastReport = now;
+                nextReport += reportEvery * 1_000_000_000L;
+            }
+        }
+    }
+
+    private static JSONObject sample(Session session, long elapsedNanos, double ticksPerSecond, int placed,
+                                     int rejected) throws SimulationException {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        JSONObject sample = new JSONObject();
+        sample.put("elapsedSeconds", elapsedNanos / 1_000_000_000L);
+        sample.put("tick", session.call(BasicSimulation::getCurrentTimeStep));
+        sample.put("ticksPerSecond", Math.round(ticksPerSecond * 10) / 10.0);
+        sample.put("heapUsedBytes", heap.getUsed());
+        sample.put("heapCommittedBytes", heap.getCommitted());
+        sample.put("ordersPlaced", placed);
+        sample.put("ordersRejected", rejected);
+        JSONObject requests = session.call(sim -> sim.getRequestRegistry().statsToSerializable());
+        sample.put("requests", requests);
+        return sample;
+    }
+}
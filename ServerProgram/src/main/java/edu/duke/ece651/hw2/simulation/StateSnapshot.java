@@ -0,0 +1,128 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The serialized state of a simulation at one version.
+ * <p>
+ * The JSON is encoded once when the snapshot is taken; the binary form (see
+ * {@link BinaryStateCodec}) is added the first time a client asks for it. Each
+ * compressed form is produced the first time a client asks for it and then
+ * shared, so a state is compressed at most once per format and encoding
+ * however many clients fetch it.
+ */
+public class StateSnapshot {
+    /**
+     * The body formats a snapshot can be served in.
+     */
+    public enum Format {
+        JSON("application/json; charset=utf-8"),
+        BINARY(BinaryStateCodec.MEDIA_TYPE);
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Picks the format for a response from the request's Accept header. The
+         * binary format is only sent to clients that name it explicitly.
+         *
+         * @param accept the header value, or null if absent.
+         * @return the chosen format.
+         */
+        public static Format negotiate(String accept) {
+            return accept != null && accept.contains(BinaryStateCodec.MEDIA_TYPE) ? BINARY : JSON;
+        }
+    }
+
+    private final long version;
+    private final Map<Format, ByteBuffer> bodies = new EnumMap<>(Format.class);
+    private final Map<Format, Map<ContentEncoding, ByteBuffer>> encoded = new EnumMap<>(Format.class);
+
+    /**
+     * Constructs a StateSnapshot.
+     *
+     * @param version the simulation version the state was taken at.
+     * @param json    the state as JSON text.
+     */
+    public StateSnapshot(long version, String json) {
+        this.version = version;
+        bodies.put(Format.JSON, toDirect(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ByteBuffer toDirect(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the state as UTF-8 JSON.
+     *
+     * @return a read-only view of the JSON bytes.
+     */
+    public ByteBuffer getJson() {
+        return getEncoded(Format.JSON, ContentEncoding.IDENTITY);
+    }
+
+    /**
+     * Checks whether the snapshot holds the state in a format.
+     *
+     * @param format the body format.
+     * @return true if {@link #getEncoded(Format, ContentEncoding)} can serve it.
+     */
+    public synchronized boolean hasFormat(Format format) {
+        return bodies.containsKey(format);
+    }
+
+    /**
+     * Adds the state in another format. Called by the session on its engine
+     * thread, while the simulation is still at this snapshot's version.
+     *
+     * @param format the body format.
+     * @param body   the encoded state.
+     */
+    synchronized void putFormat(Format format, byte[] body) {
+        bodies.putIfAbsent(format, toDirect(body));
+    }
+
+    /**
+     * Gets the state JSON in the given encoding, compressing it on first use.
+     *
+     * @param encoding the content encoding.
+     * @return a read-only view of the encoded bytes.
+     */
+    public ByteBuffer getEncoded(ContentEncoding encoding) {
+        return getEncoded(Format.JSON, encoding);
+    }
+
+    /**
+     * Gets the state in the given format and encoding, compressing it on first use.
+     *
+     * @param format   the body format; must have been added.
+     * @param encoding the content encoding.
+     * @return a read-only view of the encoded bytes.
+     * @throws IllegalStateException if the snapshot does not hold the format.
+     */
+    public synchronized ByteBuffer getEncoded(Format format, ContentEncoding encoding) {
+        ByteBuffer body = bodies.get(format);
+        if (body == null) {
+            throw new IllegalStateException("Snapshot has no " + format + " body");
+        }
+        return encoded.computeIfAbsent(format, f -> new EnumMap<>(ContentEncoding.class))
+                .computeIfAbsent(encoding, e -> e.encode(body)).duplicate();
+    }
+}
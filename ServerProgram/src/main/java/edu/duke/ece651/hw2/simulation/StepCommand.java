@@ -27,6 +27,7 @@ public class StepCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.step(steps);
-        System.out.println("Advanced simulation by " + steps + " steps. Current time: " + simulation.getCurrentTimeStep());
+        simulation.getEventSink().emit(EventSink.Level.INFO,
+                "Advanced simulation by " + steps + " steps. Current time: " + simulation.getCurrentTimeStep());
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package edu.duke.ece651.hw2.simulation;
+
+/**
+ * Condition that ends a {@code step until} command. Every kind is checked
+ * in O(1) per tick from state the simulation already keeps: the open-order
+ * index, the clock, and the busy-building count taken during the last tick.
+ */
+public class StepCondition {
+    public enum Kind {
+        /** The user order with the given request id has been completed. */
+        ORDER,
+        /** The simulation time has reached the given time step. */
+        TIME,
+        /** Nothing is left to do (see {@link BasicSimulation#isIdle()}). */
+        IDLE
+    }
+
+    private final Kind kind;
+    private final int value;
+
+    /**
+     * Constructs a StepCondition.
+     *
+     * @param kind  the kind of condition.
+     * @param value the order id or time step; ignored for IDLE.
+     */
+    public StepCondition(Kind kind, int value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Checks that the condition refers to something that exists.
+     *
+     * @param simulation the simulation.
+     * @throws SimulationException if the condition waits for an order that was
+     *                             never placed, or for a request that is not a user order.
+     */
+    public void validate(BasicSimulation simulation) throws SimulationException {
+        if (kind != Kind.ORDER) {
+            return;
+        }
+        if (value < 0 || value >= simulation.peekNextRequestId()) {
+            throw new SimulationException("Order " + value + " does not exist");
+        }
+        // 配料请求不在用户订单表中，若不拒绝会被当作已完成；已移出历史的旧请求无法区分，按已完成处理
+        RequestRegistry.Entry entry = simulation.getRequestRegistry().get(value);
+        if (!simulation.isOpenOrder(value) && entry != null && !entry.isUserRequest()) {
+            throw new SimulationException("Request " + value + " is not a user order");
+        }
+    }
+
+    /**
+     * Checks whether the condition holds now.
+     *
+     * @param simulation the simulation.
+     * @return true if stepping should stop.
+     */
+    public boolean isMet(BasicSimulation simulation) {
+        return switch (kind) {
+            case ORDER -> !simulation.isOpenOrder(value);
+            case TIME -> simulation.getCurrentTimeStep() >= value;
+            case IDLE -> simulation.isIdle();
+        };
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.IDLE ? "idle" : kind.name().toLowerCase() + " " + value;
+    }
+}
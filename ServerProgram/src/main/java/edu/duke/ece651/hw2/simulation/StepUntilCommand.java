@@ -0,0 +1,43 @@
+package edu.duke.ece651.hw2.simulation;
+
+/**
+ * Command to advance simulation time until a condition holds:
+ * {@code step until order ID}, {@code step until time T} or {@code step until idle},
+ * optionally followed by {@code within N} to cap the number of steps.
+ */
+public class StepUntilCommand extends Command {
+    /** Step cap used when the command gives no {@code within N}. */
+    public static final int DEFAULT_MAX_STEPS = 100000;
+
+    private final StepCondition condition;
+    private final int maxSteps;
+
+    /**
+     * Constructs a StepUntilCommand.
+     *
+     * @param condition the condition to wait for.
+     * @param maxSteps  the most steps to run before giving up.
+     */
+    public StepUntilCommand(StepCondition condition, int maxSteps) {
+        this.condition = condition;
+        this.maxSteps = maxSteps;
+    }
+
+    public StepCondition getCondition() {
+        return condition;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    @Override
+    public void execute(Simulation simulation) throws SimulationException {
+        if (!(simulation instanceof BasicSimulation basic)) {
+            throw new SimulationException("step until is not supported by this simulation");
+        }
+        int steps = basic.stepUntil(condition, maxSteps);
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Advanced simulation by " + steps + " steps until "
+                + condition + ". Current time: " + simulation.getCurrentTimeStep());
+    }
+}
@@ -41,6 +41,11 @@ public class StorageBuilding extends BasicBuilding {
                 "OutstandingRequests: " + outstandingRequests + "\n";
     }
 
+    @Override
+    public String toSummary() {
+        return super.toSummary() + "StoredItem: " + storedItem + "\n";
+    }
+
     /**
      * Gets the item type that this storage building stores.
      *
@@ -68,6 +73,15 @@ public class StorageBuilding extends BasicBuilding {
         return priority;
     }
 
+    /**
+     * Gets the number of requests sent to sources that have not been fulfilled yet.
+     *
+     * @return the outstanding request count.
+     */
+    public int getOutstandingRequests() {
+        return outstandingRequests;
+    }
+
     /**
      * Gets the current amount of items in storage.
      *
@@ -152,20 +166,23 @@ public class StorageBuilding extends BasicBuilding {
                 if (this.getLocation() != null && requestor.getLocation() != null) {
                     transitTime = simulation.getRoadMap().getShortestDistance(this, requestor);
                     if (transitTime < 0) {
-                        System.err.println("Warning: No valid path found from " + this.getName() + 
-                                        " to " + requestor.getName() + ", using direct delivery");
+                        if (events().isEnabled(EventSink.Level.WARN)) {
+                            events().emit(EventSink.Level.WARN, "Warning: No valid path found from " + this.getName() + 
+                                            " to " + requestor.getName() + ", using direct delivery");
+                        }
                         transitTime = 0;
                     }
                 }
                 if (transitTime > 0) {
                     simulation.scheduleDelivery(this, requestor, storedItem, 1, 
-                                            simulation.getCurrentTimeStep() + transitTime);
+                                            simulation.getCurrentTimeStep() + transitTime, request);
                 } else { //transitTime is 0
                     // if adjacent, deliver immediately
                     requestor.deliverItem(storedItem, 1);
+                    simulation.getRequestRegistry().delivered(request, simulation.getCurrentTimeStep() + 1);
                     
-                    if (simulation.getVerbosity() >= 1) {
-                        System.out.println("[ingredient delivered]: " + storedItem + 
+                    if (simulation.getVerbosity() >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+                        events().emit(EventSink.Level.INFO, "[ingredient delivered]: " + storedItem + 
                                         " to " + requestor.getName() + 
                                         " from " + name + 
                                         " on cycle " + (simulation.getCurrentTimeStep()+1));
@@ -182,6 +199,7 @@ public class StorageBuilding extends BasicBuilding {
         
         // Always add to queue - completed ones will be collected in step
         requestQueue.add(request);
+        markChanged();
     }
 
 
@@ -197,6 +215,9 @@ public class StorageBuilding extends BasicBuilding {
     @Override
     public List<Request> step(int currentTimeStep, int verbosity) {
         List<Request> completedRequests = new ArrayList<>(); 
+        if (!requestQueue.isEmpty()) {
+            markChanged();
+        }
         // 1. First, process already completed requests from previous addRequest calls
         Iterator<Request> iterator = requestQueue.iterator();
         while (iterator.hasNext()) {
@@ -228,20 +249,23 @@ public class StorageBuilding extends BasicBuilding {
                 if (this.getLocation() != null && requestor.getLocation() != null) {
                     transitTime = simulation.getRoadMap().getShortestDistance(this, requestor);
                     if (transitTime < 0) {
-                        System.err.println("Warning: No valid path found from " + this.getName() + 
-                                        " to " + requestor.getName() + ", using direct delivery");
+                        if (events().isEnabled(EventSink.Level.WARN)) {
+                            events().emit(EventSink.Level.WARN, "Warning: No valid path found from " + this.getName() + 
+                                            " to " + requestor.getName() + ", using direct delivery");
+                        }
                         transitTime = 0;
                     }
                 }
                 if (transitTime > 0) {
                     simulation.scheduleDelivery(this, requestor, storedItem, 1, 
-                                            currentTimeStep + transitTime);
+                                            currentTimeStep + transitTime, request);
                 } else {
                     // if adjacent, deliver immediately
                     requestor.deliverItem(storedItem, 1);
+                    simulation.getRequestRegistry().delivered(request, currentTimeStep + 1);
                     
-                    if (verbosity >= 1) {
-                        System.out.println("[ingredient delivered]: " + storedItem + 
+                    if (verbosity >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+                        events().emit(EventSink.Level.INFO, "[ingredient delivered]: " + storedItem + 
                                         " to " + requestor.getName() + 
                                         " from " + name + 
                                         " on cycle " + (currentTimeStep+1));
@@ -252,8 +276,10 @@ public class StorageBuilding extends BasicBuilding {
                 }
             } else {
                 // User request
-                System.out.println("[order complete] Order " + request.getId() + 
-                                " completed (" + storedItem + ") at time " + (currentTimeStep + 1)  + " [storage request]");
+                if (events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "[order complete] Order " + request.getId() + 
+                                    " completed (" + storedItem + ") at time " + (currentTimeStep + 1)  + " [storage request]");
+                }
             }
             
             // Remove from queue
@@ -292,7 +318,7 @@ public class StorageBuilding extends BasicBuilding {
             }
             
             if (isReady) {
-                System.out.println("    " + i + ": " + recipe.getOutput() + " is ready "  + " [storage request]");
+                events().emit(EventSink.Level.INFO, "    " + i + ": " + recipe.getOutput() + " is ready "  + " [storage request]");
             }
         }
     }
@@ -373,11 +399,11 @@ public class StorageBuilding extends BasicBuilding {
 
 
     /**
-     * Overrides the processIngredients method for StorageBuilding.
+     * Overrides the planIngredients method for StorageBuilding.
      * Storage buildings don't process complex recipes - they just request their stored item.
      */
     @Override
-    public void processIngredients(String item) {
+    protected void planIngredients(String item) {
         // Verify this is the item we store
         if (!item.equals(storedItem)) {
             throw new IllegalArgumentException("Storage building " + name + " cannot process item: " + item);
@@ -399,8 +425,8 @@ public class StorageBuilding extends BasicBuilding {
         Map<String, Building> buildingMap = simulation.getBuildings();
         Recipe recipe = simulation.getRecipe(storedItem);
         
-        if (verbosity >= 2) {
-            System.out.println("[source selection]: " + this.getName() + " (qlen) has request for " + storedItem 
+        if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+            events().emit(EventSink.Level.INFO, "[source selection]: " + this.getName() + " (qlen) has request for " + storedItem 
                 + " on cycle " + simulation.getCurrentTimeStep() + " [storage request]");
         }
         
@@ -428,8 +454,8 @@ public class StorageBuilding extends BasicBuilding {
                     queueLength = b.getQueueLength();
                 }
 
-                if (verbosity >= 2) {
-                    System.out.println("    " + b.getName() + ": " + b.getQueueLength() + " [storage request]");
+                if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+                    events().emit(EventSink.Level.INFO, "    " + b.getName() + ": " + b.getQueueLength() + " [storage request]");
                 }
                 
                 if (queueLength < minRequest) {
@@ -443,28 +469,35 @@ public class StorageBuilding extends BasicBuilding {
             throw new RuntimeException("No building can produce " + storedItem);
         }
         
-        if (verbosity >= 2) {
-            System.out.println("    Selecting " + resBuilding.getName() + " [storage request]");
+        if (verbosity >= 2 && events().isEnabled(EventSink.Level.INFO)) {
+            events().emit(EventSink.Level.INFO, "    Selecting " + resBuilding.getName() + " [storage request]");
         }
         
-        if (verbosity >= 1) {
-            System.out.println("[ingredient assignment]: " + storedItem + " assigned to " + 
+        if (verbosity >= 1 && events().isEnabled(EventSink.Level.INFO)) {
+            events().emit(EventSink.Level.INFO, "[ingredient assignment]: " + storedItem + " assigned to " + 
                             resBuilding.getName() + " to deliver to " + this.getName() + " [storage request]");
         }
         
         // Create a single request for the stored item
         Request newRequest = new Request(simulation.getNextRequestId(), recipe, this, false, simulation.getCurrentTimeStep());
         resBuilding.addRequest(newRequest);
+        simulation.getRequestRegistry().register(newRequest, resBuilding);
         
         // Always call processIngredients on the source, regardless of building type
-        resBuilding.processIngredients(storedItem);
+        simulation.getRequestRegistry().enter(newRequest);
+        try {
+            resBuilding.processIngredients(storedItem);
+        } finally {
+            simulation.getRequestRegistry().exit();
+        }
         
         // Increment outstanding requests counter
         outstandingRequests++;
+        markChanged();
     }
 
     @Override
-    public boolean isViable() {
+    protected boolean computeViability() {
         // 存储建筑需要能够获取它存储的物品
         boolean canGetStoredItem = false;
         
@@ -472,7 +505,7 @@ public class StorageBuilding extends BasicBuilding {
             Building source = simulation.getBuildings().get(sourceName);
             if (source != null && source.canProduce(storedItem)) {
                 // 检查是否有有效的路径
-                if (simulation.getRoadMap().getShortestDistance(source, this) >= 0) {
+                if (simulation.getRoadMap().canReach(source, this)) {
                     canGetStoredItem = true;
                     break;
                 }
@@ -0,0 +1,256 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Watchdog for slow time steps. While a step runs, the simulation reports
+ * how long each building's step, each delivery and each road search took;
+ * the tracer keeps only the slowest few of each in fixed arrays. If the
+ * whole step exceeded the budget, they are written to a bounded buffer of
+ * traces and a summary line is logged; otherwise they are discarded.
+ * <p>
+ * A simulation has no tracer until a budget is set, so tracing costs nothing
+ * when disabled; while enabled, a step that stays within budget allocates
+ * nothing. A TickTracer belongs to one simulation and is used on its engine
+ * thread only.
+ */
+public class TickTracer {
+    /** Number of traces kept by default; older ones are dropped. */
+    public static final int DEFAULT_CAPACITY = 32;
+    /** Number of offenders of each kind kept per trace. */
+    public static final int TOP = 5;
+
+    private final long budgetNanos;
+    private final int capacity;
+    private final Deque<JSONObject> traces = new ArrayDeque<>();
+    private long slowTicks;
+
+    private boolean tracing;
+    private String currentBuilding;
+    private final Top buildings = new Top();
+    private final Top deliveries = new Top();
+    private final Top searches = new Top();
+    private int deliveryCount;
+    private long deliveryNanos;
+    private int searchCount;
+    private long searchNanos;
+
+    /**
+     * Constructs a TickTracer.
+     *
+     * @param budgetNanos the wall-clock budget of one time step, in nanoseconds.
+     * @param capacity    how many traces to keep.
+     */
+    public TickTracer(long budgetNanos, int capacity) {
+        if (budgetNanos <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Budget and capacity must be positive");
+        }
+        this.budgetNanos = budgetNanos;
+        this.capacity = capacity;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public long getSlowTicks() {
+        return slowTicks;
+    }
+
+    /**
+     * Checks whether a time step is being traced, i.e. whether timings
+     * reported now will be kept.
+     *
+     * @return true between {@link #beginTick()} and {@link #endTick}.
+     */
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Starts collecting timings for a time step.
+     */
+    public void beginTick() {
+        tracing = true;
+        currentBuilding = null;
+        buildings.clear();
+        deliveries.clear();
+        searches.clear();
+        deliveryCount = 0;
+        deliveryNanos = 0;
+        searchCount = 0;
+        searchNanos = 0;
+    }
+
+    /**
+     * Notes which building is stepping, so that searches it causes are
+     * attributed to it.
+     *
+     * @param name the building's name, or null between buildings.
+     */
+    public void enterBuilding(String name) {
+        currentBuilding = name;
+    }
+
+    /**
+     * Records one building's step.
+     *
+     * @param name  the building.
+     * @param nanos how long its step took.
+     */
+    public void building(String name, long nanos) {
+        buildings.offer(nanos, name, null, null, null);
+        currentBuilding = null;
+    }
+
+    /**
+     * Records one delivery arriving.
+     *
+     * @param delivery the delivery.
+     * @param nanos    how long handing it over took.
+     */
+    public void delivery(DelayedDelivery delivery, long nanos) {
+        deliveryCount++;
+        deliveryNanos += nanos;
+        deliveries.offer(nanos, delivery.getItem(), delivery.getSource().getName(),
+                delivery.getDestination().getName(), null);
+    }
+
+    /**
+     * Records one road search.
+     *
+     * @param kind        "path" or "distance".
+     * @param source      where the search started.
+     * @param destination where it was going.
+     * @param nanos       how long it took.
+     */
+    public void search(String kind, String source, String destination, long nanos) {
+        searchCount++;
+        searchNanos += nanos;
+        searches.offer(nanos, kind, source, destination, currentBuilding);
+    }
+
+    /**
+     * Finishes a time step. If it went over budget, its trace is kept and logged.
+     *
+     * @param timeStep the time step.
+     * @param nanos    how long the whole step took.
+     * @return true if the step went over budget.
+     */
+    public boolean endTick(int timeStep, long nanos) {
+        tracing = false;
+        if (nanos <= budgetNanos) {
+            return false;
+        }
+        slowTicks++;
+        JSONObject trace = new JSONObject();
+        trace.put("timeStep", timeStep);
+        trace.put("ms", millis(nanos));
+        trace.put("budgetMs", millis(budgetNanos));
+        trace.put("buildings", buildings.toSerializable("name"));
+        JSONObject delivered = new JSONObject();
+        delivered.put("count", deliveryCount);
+        delivered.put("ms", millis(deliveryNanos));
+        delivered.put("slowest", deliveries.toSerializable("item", "from", "to"));
+        trace.put("deliveries", delivered);
+        JSONObject searched = new JSONObject();
+        searched.put("count", searchCount);
+        searched.put("ms", millis(searchNanos));
+        searched.put("slowest", searches.toSerializable("kind", "from", "to", "building"));
+        trace.put("searches", searched);
+        traces.addLast(trace);
+        if (traces.size() > capacity) {
+            traces.removeFirst();
+        }
+        System.err.println(summarize(timeStep, nanos));
+        return true;
+    }
+
+    private String summarize(int timeStep, long nanos) {
+        StringBuilder line = new StringBuilder();
+        line.append("[slow tick] step ").append(timeStep).append(" took ").append(millis(nanos))
+                .append(" ms (budget ").append(millis(budgetNanos)).append(" ms)");
+        if (buildings.size > 0) {
+            line.append("; slowest building ").append(buildings.labels[0][0])
+                    .append(' ').append(millis(buildings.nanos[0])).append(" ms");
+        }
+        line.append("; ").append(deliveryCount).append(" deliveries ").append(millis(deliveryNanos)).append(" ms");
+        line.append("; ").append(searchCount).append(" searches ").append(millis(searchNanos)).append(" ms");
+        return line.toString();
+    }
+
+    /**
+     * Describes the tracer: { budgetMs, capacity, slowTicks, traces: [..] } (oldest first).
+     *
+     * @return the description.
+     */
+    public JSONObject toSerializable() {
+        JSONObject json = new JSONObject();
+        json.put("budgetMs", millis(budgetNanos));
+        json.put("capacity", capacity);
+        json.put("slowTicks", slowTicks);
+        json.put("traces", new JSONArray(traces));
+        return json;
+    }
+
+    /**
+     * Drops the traces kept so far.
+     */
+    public void clear() {
+        traces.clear();
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    /**
+     * The slowest few entries seen, slowest first, with up to four labels each.
+     */
+    private static final class Top {
+        final long[] nanos = new long[TOP];
+        final String[][] labels = new String[TOP][4];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void offer(long n, String a, String b, String c, String d) {
+            if (size == TOP && n <= nanos[TOP - 1]) {
+                return;
+            }
+            // 插入排序：末尾的标签数组被挤出后重复利用
+            int i = size == TOP ? TOP - 1 : size++;
+            String[] slot = labels[i];
+            while (i > 0 && nanos[i - 1] < n) {
+                nanos[i] = nanos[i - 1];
+                labels[i] = labels[i - 1];
+                i--;
+            }
+            nanos[i] = n;
+            labels[i] = slot;
+            slot[0] = a;
+            slot[1] = b;
+            slot[2] = c;
+            slot[3] = d;
+        }
+
+        JSONArray toSerializable(String... keys) {
+            JSONArray entries = new JSONArray();
+            for (int i = 0; i < size; i++) {
+                JSONObject entry = new JSONObject();
+                for (int k = 0; k < keys.length; k++) {
+                    entry.put(keys[k], labels[i][k] == null ? JSONObject.NULL : labels[i][k]);
+                }
+                entry.put("ms", millis(nanos[i]));
+                entries.put(entry);
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grid-bucket index of the occupied cells of a {@link RoadMap}.
+ * <p>
+ * The map is cut into square tiles of {@link #TILE_SIZE} cells. Each tile keeps
+ * the set of its occupied coordinates and the map version at which it last
+ * changed, so a region query only visits the tiles it overlaps, and a client
+ * can tell from the versions whether a region it already has is still current.
+ */
+public class TileIndex {
+    public static final int TILE_SIZE = 16;
+
+    private final Map<Long, Set<Coordinate>> tiles = new HashMap<>();
+    private final Map<Long, Long> tileVersions = new HashMap<>();
+
+    private static long key(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xffffffffL);
+    }
+
+    /**
+     * Gets the tile coordinate of a cell coordinate.
+     *
+     * @param cell the x or y of a cell.
+     * @return the x or y of its tile.
+     */
+    public static int tileOf(int cell) {
+        return Math.floorDiv(cell, TILE_SIZE);
+    }
+
+    /**
+     * Records that a cell is occupied or empty at a map version.
+     *
+     * @param c        the cell.
+     * @param occupied whether a road or building is on it.
+     * @param version  the map version after the change.
+     */
+    public void update(Coordinate c, boolean occupied, long version) {
+        long key = key(tileOf(c.getX()), tileOf(c.getY()));
+        if (occupied) {
+            tiles.computeIfAbsent(key, k -> new HashSet<>()).add(c);
+        } else {
+            Set<Coordinate> cells = tiles.get(key);
+            if (cells != null) {
+                cells.remove(c);
+                // 空瓦片的版本号保留，客户端仍可据此判断缓存是否过期
+                if (cells.isEmpty()) {
+                    tiles.remove(key);
+                }
+            }
+        }
+        tileVersions.put(key, version);
+    }
+
+    /**
+     * Drops every cell, e.g. before re-indexing a replaced map.
+     *
+     * @param version the map version after the change.
+     */
+    public void clear(long version) {
+        for (Long key : tiles.keySet()) {
+            tileVersions.put(key, version);
+        }
+        tiles.clear();
+    }
+
+    /**
+     * Gets the occupied cells inside a rectangle, ordered by row then column.
+     *
+     * @param x0 left edge, inclusive.
+     * @param y0 top edge, inclusive.
+     * @param x1 right edge, exclusive.
+     * @param y1 bottom edge, exclusive.
+     * @return the occupied cells.
+     */
+    public List<Coordinate> query(int x0, int y0, int x1, int y1) {
+        List<Coordinate> result = new ArrayList<>();
+        if (x1 <= x0 || y1 <= y0) {
+            return result;
+        }
+        for (int ty = tileOf(y0); ty <= tileOf(y1 - 1); ty++) {
+            for (int tx = tileOf(x0); tx <= tileOf(x1 - 1); tx++) {
+                Set<Coordinate> cells = tiles.get(key(tx, ty));
+                if (cells == null) {
+                    continue;
+                }
+                for (Coordinate c : cells) {
+                    if (c.getX() >= x0 && c.getX() < x1 && c.getY() >= y0 && c.getY() < y1) {
+                        result.add(c);
+                    }
+                }
+            }
+        }
+        result.sort(Comparator.comparingInt(Coordinate::getY).thenComparingInt(Coordinate::getX));
+        return result;
+    }
+
+    /**
+     * Gets the map version at which a tile last changed.
+     *
+     * @param tileX tile column.
+     * @param tileY tile row.
+     * @return the version, or 0 if nothing was ever placed in the tile.
+     */
+    public long getTileVersion(int tileX, int tileY) {
+        return tileVersions.getOrDefault(key(tileX, tileY), 0L);
+    }
+
+    /**
+     * Gets the latest version among the tiles a rectangle overlaps. Versions
+     * only grow, so the content of the rectangle is unchanged as long as this
+     * value is.
+     *
+     * @param x0 left edge, inclusive.
+     * @param y0 top edge, inclusive.
+     * @param x1 right edge, exclusive.
+     * @param y1 bottom edge, exclusive.
+     * @return the latest tile version, or 0 if none of the tiles ever changed.
+     */
+    public long getRegionVersion(int x0, int y0, int x1, int y1) {
+        long version = 0;
+        if (x1 <= x0 || y1 <= y0) {
+            return version;
+        }
+        for (int ty = tileOf(y0); ty <= tileOf(y1 - 1); ty++) {
+            for (int tx = tileOf(x0); tx <= tileOf(x1 - 1); tx++) {
+                version = Math.max(version, getTileVersion(tx, ty));
+            }
+        }
+        return version;
+    }
+}
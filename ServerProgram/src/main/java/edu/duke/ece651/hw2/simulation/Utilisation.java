@@ -0,0 +1,133 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.Locale;
+
+import org.json.JSONObject;
+
+/**
+ * Counts how a building spent its time steps, over its whole life and over a
+ * sliding window of the most recent steps.
+ * <p>
+ * Every step is one of: busy (working on a request, or finished one this
+ * step), starved (requests queued but none can start yet, with ingredients
+ * still obtainable), blocked (requests queued but some ingredient cannot be
+ * reached from any source) or idle (nothing queued). Recording a step is a
+ * few array writes; the window is a ring buffer with running totals.
+ */
+public class Utilisation {
+    /** How a building spent one time step. */
+    public enum State {
+        BUSY, STARVED, BLOCKED, IDLE;
+
+        private static final State[] VALUES = values();
+    }
+
+    /** Number of recent steps the windowed figures cover. */
+    public static final int DEFAULT_WINDOW = 100;
+
+    private final long[] totals = new long[State.VALUES.length];
+    private final byte[] recent;
+    private final int[] windowTotals = new int[State.VALUES.length];
+    private int next;
+    private int filled;
+
+    public Utilisation() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructs a Utilisation.
+     *
+     * @param window the number of recent steps the windowed figures cover.
+     */
+    public Utilisation(int window) {
+        recent = new byte[Math.max(1, window)];
+    }
+
+    /**
+     * Records one time step.
+     *
+     * @param state how the building spent it.
+     */
+    public void record(State state) {
+        totals[state.ordinal()]++;
+        // 窗口写满后，先减去即将被覆盖的那一步
+        if (filled == recent.length) {
+            windowTotals[recent[next]]--;
+        } else {
+            filled++;
+        }
+        recent[next] = (byte) state.ordinal();
+        windowTotals[state.ordinal()]++;
+        next = (next + 1) % recent.length;
+    }
+
+    public long getTicks(State state) {
+        return totals[state.ordinal()];
+    }
+
+    public int getRecentTicks(State state) {
+        return windowTotals[state.ordinal()];
+    }
+
+    public long getTotalTicks() {
+        long total = 0;
+        for (long t : totals) {
+            total += t;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the share of all recorded steps spent busy.
+     *
+     * @return a value in [0, 1]; 0 before any step was recorded.
+     */
+    public double getUtilisation() {
+        long total = getTotalTicks();
+        return total == 0 ? 0 : (double) totals[State.BUSY.ordinal()] / total;
+    }
+
+    /**
+     * Gets the share of the steps in the window spent busy.
+     *
+     * @return a value in [0, 1]; 0 before any step was recorded.
+     */
+    public double getRecentUtilisation() {
+        return filled == 0 ? 0 : (double) windowTotals[State.BUSY.ordinal()] / filled;
+    }
+
+    /**
+     * Gets the state of the last recorded step.
+     *
+     * @return the state, or null before any step was recorded.
+     */
+    public State getLastState() {
+        return filled == 0 ? null : State.VALUES[recent[(next - 1 + recent.length) % recent.length]];
+    }
+
+    /**
+     * Serializes the counters:
+     * <pre>
+     * { busy, starved, blocked, idle, utilisation, last,
+     *   recent: { steps, busy, starved, blocked, idle, utilisation } }
+     * </pre>
+     *
+     * @return the JSON object.
+     */
+    public JSONObject toSerializable() {
+        JSONObject json = new JSONObject();
+        JSONObject window = new JSONObject();
+        window.put("steps", filled);
+        for (State state : State.VALUES) {
+            String key = state.name().toLowerCase(Locale.ROOT);
+            json.put(key, totals[state.ordinal()]);
+            window.put(key, windowTotals[state.ordinal()]);
+        }
+        json.put("utilisation", getUtilisation());
+        window.put("utilisation", getRecentUtilisation());
+        json.put("last", getLastState() == null ? JSONObject.NULL : getLastState().name().toLowerCase(Locale.ROOT));
+        json.put("recent", window);
+        return json;
+    }
+}
@@ -27,6 +27,6 @@ public class VerboseCommand extends Command {
     @Override
     public void execute(Simulation simulation) throws SimulationException {
         simulation.setVerbosity(level);
-        System.out.println("Verbosity level set to " + level);
+        simulation.getEventSink().emit(EventSink.Level.INFO, "Verbosity level set to " + level);
     }
 }
\ No newline at end of file
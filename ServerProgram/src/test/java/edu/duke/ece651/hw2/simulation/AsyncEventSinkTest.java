@@ -0,0 +1,109 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for AsyncEventSink and the other event sinks.
+ */
+public class AsyncEventSinkTest {
+    @Test
+    public void testWritesEnabledLevelsInOrder() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsyncEventSink sink = new AsyncEventSink(bytes, EventSink.Level.INFO, 16);
+        assertTrue(sink.isEnabled(EventSink.Level.ERROR));
+        assertTrue(sink.isEnabled(EventSink.Level.INFO));
+        assertFalse(sink.isEnabled(EventSink.Level.DEBUG));
+
+        for (int i = 0; i < 10; i++) {
+            sink.emit(EventSink.Level.INFO, "line " + i);
+        }
+        sink.emit(EventSink.Level.DEBUG, "hidden");
+        sink.emit(EventSink.Level.WARN, "careful");
+        sink.close();
+        sink.emit(EventSink.Level.INFO, "after close");
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        expected.append("WARN careful\n");
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+        assertEquals(0, sink.getDropped());
+    }
+
+    @Test
+    public void testDropsMessagesWhileWriterIsStuck() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream slow = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                bytes.write(b, off, len);
+            }
+        };
+        AsyncEventSink sink = new AsyncEventSink(slow, EventSink.Level.INFO, 2);
+        sink.emit(EventSink.Level.INFO, "first");
+        writing.await();
+        // 写线程卡在输出上，队列只能再放两条
+        for (int i = 0; i < 5; i++) {
+            sink.emit(EventSink.Level.INFO, "queued " + i);
+        }
+        assertEquals(3, sink.getDropped());
+        release.countDown();
+        sink.close();
+        assertEquals("first\nqueued 0\nqueued 1\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSimulationOutputFollowsItsSink() throws Exception {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            BasicSimulation sim = new SessionManager()
+                    .createFromFile("t", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+            assertTrue(sim.getEventSink() == ConsoleEventSink.INSTANCE);
+            sim.step(1);
+            assertTrue(bytes.toString(StandardCharsets.UTF_8).contains("Processing building: "));
+
+            bytes.reset();
+            SessionManager sessions = new SessionManager();
+            sessions.setEventSink(EventSink.NONE);
+            BasicSimulation quiet = sessions
+                    .createFromFile("q", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+            quiet.setVerbosity(2);
+            quiet.step(3);
+            // 服务器层的消息（路由、合并的 step）也写到同一个 sink
+            SimulationRoutes routes = new SimulationRoutes(sessions, false);
+            routes.handle(SimulationRoutesTest.request("POST", "/sessions/q/Instruction", "step 2"));
+            routes.handle(SimulationRoutesTest.request("POST", "/sessions/q/Instruction", "no such command"));
+            sessions.delete("q");
+            assertEquals("", bytes.toString(StandardCharsets.UTF_8));
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
@@ -224,5 +225,40 @@ public class BasicBuildingTest {
         assertTrue(str.contains("dummy=10"));
     }
 
-    
-}
\ No newline at end of file
+    @Test
+    public void testViabilityIsCachedUntilReachabilityMayChange() {
+        int[] computed = {0};
+        boolean[] result = {true};
+        MockBuilding mb = new MockBuilding("cached", new ArrayList<>()) {
+            @Override
+            protected boolean computeViability() {
+                computed[0]++;
+                return result[0];
+            }
+        };
+        BasicSimulation sim = new BasicSimulation(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        mb.setSimulation(sim);
+        RoadMap map = sim.getRoadMap();
+
+        assertTrue(mb.isViable());
+        assertTrue(mb.isViable());
+        assertEquals(1, computed[0]);
+        // 只增加连通性的变化不影响已可行的建筑
+        map.noteReachGain();
+        assertTrue(mb.isViable());
+        assertEquals(1, computed[0]);
+
+        result[0] = false;
+        map.removeRoad(new Coordinate(3, 3));
+        assertFalse(mb.isViable());
+        assertEquals(2, computed[0]);
+        map.removeRoad(new Coordinate(3, 3));
+        assertFalse(mb.isViable());
+        assertEquals(2, computed[0]);
+
+        result[0] = true;
+        mb.addSource("B1");
+        assertTrue(mb.isViable());
+        assertEquals(3, computed[0]);
+    }
+}
@@ -107,6 +107,18 @@ public class BasicSimulationTest {
         assertEquals(timeBefore, sim.getCurrentTimeStep());
     }
 
+    @Test
+    public void testProcessCommandsReportsEachResult() {
+        BasicSimulation sim = new BasicSimulation(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        List<CommandResult> results = sim.processCommands(List.of("step 2", "bogus", "step 3"));
+        assertEquals(3, results.size());
+        assertEquals(true, results.get(0).isSuccess());
+        assertEquals("Unknown command", results.get(1).getError());
+        // a failing command does not stop the rest of the batch
+        assertEquals(true, results.get(2).isSuccess());
+        assertEquals(5, sim.getCurrentTimeStep());
+    }
+
     // Test the processIngredients() in BasicBuilding with handleRequestCommand() in
     // BasicSimulation
     @Disabled
@@ -0,0 +1,115 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryStateCodecTest {
+    @Test
+    public void testRoundTripMatchesJsonState() throws Exception {
+        SessionManager sessions = new SessionManager();
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        try {
+            Object[] encoded = session.call(sim -> {
+                sim.processCommand("request 'door' from 'Fdoor'");
+                sim.processCommand("step 3");
+                return new Object[]{BinaryStateCodec.encode(sim), sim.toSerializable()};
+            });
+            byte[] bytes = (byte[]) encoded[0];
+            JSONObject expected = (JSONObject) encoded[1];
+            assertTrue(bytes.length < expected.toString().getBytes(StandardCharsets.UTF_8).length / 4);
+
+            BinaryStateCodec.State state = BinaryStateCodec.decode(ByteBuffer.wrap(bytes));
+            JSONObject actual = state.toSerializable();
+            assertEquals(3, actual.getInt("currentTimeStep"));
+            for (String key : new String[]{"verbosityLevel", "buildings", "recipes", "buildableTypes"}) {
+                assertEquals(expected.get(key).toString(), actual.get(key).toString(), key);
+            }
+
+            JSONArray expectedMap = expected.getJSONArray("roadMap");
+            JSONArray actualMap = actual.getJSONArray("roadMap");
+            for (int row = 0; row < 50; row++) {
+                for (int col = 0; col < 50; col++) {
+                    Object want = expectedMap.getJSONArray(row).opt(col);
+                    Object got = actualMap.getJSONArray(row).opt(col);
+                    if (want instanceof JSONArray cell) {
+                        JSONArray decodedCell = (JSONArray) got;
+                        assertEquals(cell.getString(0), decodedCell.getString(0));
+                        // 描述文本与 toString() 的类型行一致，客户端据此判断建筑种类
+                        String typeLine = cell.getString(1).lines().filter(l -> l.startsWith("Type: "))
+                                .findFirst().orElseThrow();
+                        assertTrue(decodedCell.getString(1).contains(typeLine + "\n"), typeLine);
+                    } else {
+                        assertEquals(String.valueOf(want), String.valueOf(got), row + "," + col);
+                    }
+                }
+            }
+
+            Map<String, BinaryStateCodec.BuildingInfo> byName = new HashMap<>();
+            for (BinaryStateCodec.BuildingInfo b : state.buildings) {
+                byName.put(b.name, b);
+            }
+            BinaryStateCodec.BuildingInfo door = byName.get("Fdoor");
+            assertEquals(7, door.x);
+            assertEquals(7, door.y);
+            assertEquals("[door]", door.recipes.toString());
+            assertEquals("[W1, Ha, Hi]", door.sources.toString());
+            assertTrue(door.describe().contains("Type Recipes: [door]\n"));
+            assertEquals("hinge", byName.get("S1").item);
+            assertEquals(1.7f, byName.get("S1").priority);
+            assertEquals("metal", byName.get("M1").item);
+            assertNotNull(state.renderMap());
+        } finally {
+            sessions.delete("s");
+        }
+    }
+
+    @Test
+    public void testZigZagRoundTripsNegativeValues() throws Exception {
+        for (int value : new int[]{0, 1, -1, -5, 63, -64, 2500, -2500, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryStateCodec.writeZigZag(out, value);
+            assertTrue(out.size() <= 5, value + " took " + out.size() + " bytes");
+            assertEquals(value, BinaryStateCodec.readZigZag(ByteBuffer.wrap(out.toByteArray())));
+        }
+
+        // 场景允许负坐标，建筑位置必须原样解码
+        SessionManager sessions = new SessionManager();
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        try {
+            byte[] bytes = session.call(sim -> {
+                sim.getBuildings().get("M1").setLocation(new Coordinate(-3, -12));
+                return BinaryStateCodec.encode(sim);
+            });
+            for (BinaryStateCodec.BuildingInfo b : BinaryStateCodec.decode(ByteBuffer.wrap(bytes)).buildings) {
+                if (b.name.equals("M1")) {
+                    assertEquals(-3, b.x);
+                    assertEquals(-12, b.y);
+                }
+            }
+        } finally {
+            sessions.delete("s");
+        }
+    }
+
+    @Test
+    public void testDecodeRejectsForeignOrTruncatedInput() {
+        assertThrows(SimulationException.class,
+                () -> BinaryStateCodec.decode(ByteBuffer.wrap("{\"a\":1}".getBytes(StandardCharsets.UTF_8))));
+        assertThrows(SimulationException.class,
+                () -> BinaryStateCodec.decode(ByteBuffer.wrap(new byte[]{'F', 'S', 'T', 9})));
+        assertThrows(SimulationException.class,
+                () -> BinaryStateCodec.decode(ByteBuffer.wrap(new byte[]{'F', 'S', 'T', 1, 5})));
+    }
+}
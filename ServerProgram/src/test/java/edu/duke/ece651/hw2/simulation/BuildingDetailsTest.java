@@ -0,0 +1,83 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BuildingDetailsTest {
+    private final SessionManager sessions = new SessionManager();
+
+    @AfterEach
+    public void tearDown() {
+        sessions.delete("s");
+    }
+
+    @Test
+    public void testMapCellsCarrySummariesOnly() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        JSONObject state = session.call(BasicSimulation::toSerializable);
+        // Fdoor 位于 (7, 7)
+        JSONArray cell = state.getJSONArray("roadMap").getJSONArray(7).getJSONArray(7);
+        assertEquals("Fdoor", cell.getString(0));
+        String summary = cell.getString(1);
+        assertTrue(summary.contains("Type: FactoryBuilding\n"));
+        assertTrue(summary.contains("Type Recipes: [door]\n"));
+        assertFalse(summary.contains("Viable"));
+        assertFalse(summary.contains("RequestQueue"));
+    }
+
+    @Test
+    public void testDetailsArePagedAndFollowBuildingVersion() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        JSONObject[] pages = session.call(sim -> {
+            for (int i = 0; i < 5; i++) {
+                sim.processCommand("request 'handle' from 'Ha'");
+            }
+            BuildingDetails details = new BuildingDetails();
+            JSONObject first = details.render(sim, "Ha", 0, 2);
+            JSONObject second = details.render(sim, "Ha", 4, 2);
+            long version = first.getLong("version");
+            sim.processCommand("request 'handle' from 'Ha'");
+            JSONObject after = details.render(sim, "Ha", 0, 2);
+            assertTrue(after.getLong("version") > version);
+            return new JSONObject[]{first, second, after};
+        });
+
+        JSONObject queue = pages[0].getJSONObject("queue");
+        assertEquals(5, queue.getInt("total"));
+        assertEquals(2, queue.getJSONArray("requests").length());
+        assertEquals("user", queue.getJSONArray("requests").getJSONObject(0).getString("requestor"));
+        assertEquals(1, pages[1].getJSONObject("queue").getJSONArray("requests").length());
+        assertEquals(6, pages[2].getJSONObject("queue").getInt("total"));
+        assertEquals("[handle]", pages[0].getJSONArray("recipes").toString().replace("\"", ""));
+        assertEquals(2, pages[0].getJSONObject("location").getInt("x"));
+
+        assertThrows(SimulationException.class,
+                () -> session.call(sim -> new BuildingDetails().render(sim, "missing", 0, 10)));
+    }
+
+    @Test
+    public void testBuildingRouteRevalidates() throws Exception {
+        sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        SimulationRoutes routes = new SimulationRoutes(sessions, false);
+        HttpResponse first = routes.handle(SimulationRoutesTest.request("GET", "/sessions/s/Building/S1?limit=10", ""));
+        assertEquals(200, first.getStatus());
+        assertEquals("hinge", SimulationRoutesTest.bodyOf(first).getString("storedItem"));
+
+        HttpRequest again = new HttpRequest("GET", "/sessions/s/Building/S1", "limit=10", "HTTP/1.1",
+                Map.of("if-none-match", first.getHeaders().get("ETag")), new byte[0]);
+        assertEquals(304, routes.handle(again).getStatus());
+
+        assertEquals(404, routes.handle(SimulationRoutesTest.request("GET", "/sessions/s/Building/none", "")).getStatus());
+        assertEquals(400, routes.handle(SimulationRoutesTest.request("GET", "/sessions/s/Building/S1?limit=0", ""))
+                .getStatus());
+    }
+}
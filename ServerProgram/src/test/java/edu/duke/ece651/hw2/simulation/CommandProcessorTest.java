@@ -177,4 +177,24 @@ public class CommandProcessorTest {
         );
         assertEquals("Invalid coordinates for build command", ex.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testExecuteCommandCapturesSuccess() {
+        CommandProcessor processor = new CommandProcessor(dummySim);
+        CommandResult result = processor.executeCommand("step 3");
+        assertTrue(result.isSuccess());
+        assertNull(result.getError());
+        assertEquals("step 3", result.getCommand());
+        assertEquals(3, result.getTimeStep());
+    }
+
+    @Test
+    public void testExecuteCommandCapturesError() {
+        CommandProcessor processor = new CommandProcessor(dummySim);
+        CommandResult result = processor.executeCommand("step 0");
+        assertFalse(result.isSuccess());
+        assertEquals("Step value must be >= 1", result.getError());
+        assertFalse(result.toSerializable().getBoolean("ok"));
+        assertEquals("Step value must be >= 1", result.toSerializable().getString("error"));
+    }
+}
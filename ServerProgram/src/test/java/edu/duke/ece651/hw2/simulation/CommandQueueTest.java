@@ -0,0 +1,154 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandQueueTest {
+    private final SessionManager sessions = new SessionManager();
+
+    @AfterEach
+    public void tearDown() {
+        sessions.delete("s");
+    }
+
+    @Test
+    public void testConcurrentProducersKeepTheirOrder() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        int producers = 4;
+        int perProducer = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        List<List<CompletableFuture<CommandResult>>> submitted = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            List<CompletableFuture<CommandResult>> mine = new ArrayList<>();
+            submitted.add(mine);
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    mine.add(session.submit("step 1"));
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        CommandResult[] bySequence = new CommandResult[producers * perProducer];
+        for (List<CompletableFuture<CommandResult>> mine : submitted) {
+            long lastSequence = -1;
+            int lastStep = -1;
+            for (CompletableFuture<CommandResult> f : mine) {
+                CommandResult r = f.get(5, TimeUnit.SECONDS);
+                assertNull(bySequence[(int) r.getSequence()]);
+                bySequence[(int) r.getSequence()] = r;
+                assertTrue(r.isSuccess());
+                // 同一生产者的命令按提交顺序执行，每条命令都落在一个确定的时间步上
+                assertTrue(r.getSequence() > lastSequence);
+                assertTrue(r.getAppliedAt() > lastStep);
+                assertEquals(r.getAppliedAt() + 1, r.getTimeStep());
+                lastSequence = r.getSequence();
+                lastStep = r.getAppliedAt();
+            }
+        }
+        // 序号按执行顺序分配：跨生产者也连续，且与执行的时间步同序
+        for (int i = 1; i < bySequence.length; i++) {
+            assertTrue(bySequence[i].getAppliedAt() > bySequence[i - 1].getAppliedAt());
+        }
+        assertEquals(producers * perProducer, (int) session.call(BasicSimulation::getCurrentTimeStep));
+    }
+
+    @Test
+    public void testClockAppliesCommandsBetweenTicks() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        // 会话引擎空闲，在测试线程上直接驱动时钟；队列的调度任务不执行，只有时钟边界会取命令
+        BasicSimulation sim = session.call(s -> s);
+        CommandQueue queue = new CommandQueue(sim, task -> { });
+        sim.setRate(100);
+        SimulationClock clock = new SimulationClock(sim, sim, null);
+        clock.setTickBoundary(queue::drain);
+        clock.reset(0);
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+
+        assertEquals(3, clock.runDueSteps(30 * ms));
+        CompletableFuture<CommandResult> verbose = queue.submit("verbose 1");
+        assertFalse(verbose.isDone());
+        assertEquals(2, clock.runDueSteps(50 * ms));
+        assertEquals(3, verbose.get().getAppliedAt());
+
+        CompletableFuture<CommandResult> pause = queue.submit("pause");
+        assertEquals(0, clock.runDueSteps(100 * ms));
+        assertEquals(5, pause.get().getAppliedAt());
+        assertEquals(5, sim.getCurrentTimeStep());
+    }
+
+    @Test
+    public void testReadOnlyCommandsKeepTheSnapshot() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        StateSnapshot before = session.getSnapshot();
+        assertTrue(session.await(session.submit("printMap")).isSuccess());
+        assertEquals(before.getVersion(), session.getSnapshot().getVersion());
+        CommandResult bad = session.await(session.submit("no such command"));
+        assertFalse(bad.isSuccess());
+
+        session.close();
+        assertThrows(SimulationException.class, () -> session.await(session.submit("step 1")));
+    }
+
+    @Test
+    public void testConsecutiveStepsAreMerged() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        BasicSimulation sim = session.call(s -> s);
+        CommandQueue queue = new CommandQueue(sim, task -> { });
+        CompletableFuture<CommandResult> a = queue.submit("step 2");
+        CompletableFuture<CommandResult> b = queue.submit("step 3");
+        CompletableFuture<CommandResult> c = queue.submit("verbose 0");
+        CompletableFuture<CommandResult> d = queue.submit("step 1");
+        assertEquals(4, queue.drain());
+
+        assertEquals(0, a.get().getAppliedAt());
+        assertEquals(2, a.get().getTimeStep());
+        assertEquals(2, b.get().getAppliedAt());
+        assertEquals(5, b.get().getTimeStep());
+        assertEquals(5, c.get().getAppliedAt());
+        assertEquals(6, d.get().getTimeStep());
+        assertEquals(3, d.get().getSequence());
+        assertEquals(6, sim.getCurrentTimeStep());
+    }
+
+    @Test
+    public void testBatchStateIsTakenWithTheBatch() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        BasicSimulation sim = session.call(s -> s);
+        CommandQueue queue = new CommandQueue(sim, task -> { });
+        // 要求状态的批次不与后面的 step 合并，状态停在批次结束的那一步
+        CompletableFuture<CommandQueue.Batch> batch = queue.submitBatch(List.of("step 2"), true);
+        CompletableFuture<CommandResult> next = queue.submit("step 3");
+        CompletableFuture<CommandQueue.Batch> plain = queue.submitBatch(List.of("verbose 0"), false);
+        assertEquals(3, queue.drain());
+
+        assertEquals(2, batch.get().getResults().get(0).getTimeStep());
+        assertEquals(2, batch.get().getState().getInt("currentTimeStep"));
+        assertEquals(5, next.get().getTimeStep());
+        assertNull(plain.get().getState());
+        assertEquals(5, sim.getCurrentTimeStep());
+    }
+}
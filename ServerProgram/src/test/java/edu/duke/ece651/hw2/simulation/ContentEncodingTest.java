@@ -0,0 +1,50 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContentEncodingTest {
+    @Test
+    public void testNegotiate() {
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate("br"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, gzip"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.2, deflate;q=0.8"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("*;q=0.5"));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate("*;q=0"));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.negotiate("gzip;q=bad"));
+    }
+
+    private static String decode(ByteBuffer encoded, boolean gzip) throws IOException {
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        try (InputStream in = gzip ? new GZIPInputStream(new ByteArrayInputStream(bytes))
+                : new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testEncodeRoundTrip() throws IOException {
+        String text = "{\"roadMap\":[" + "null,".repeat(2500) + "null]}";
+        ByteBuffer data = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer gzip = ContentEncoding.GZIP.encode(data);
+        ByteBuffer deflate = ContentEncoding.DEFLATE.encode(data);
+        assertEquals(text.length(), data.remaining());
+        assertEquals(text, decode(gzip, true));
+        assertEquals(text, decode(deflate, false));
+        assertEquals(text, StandardCharsets.UTF_8.decode(ContentEncoding.IDENTITY.encode(data)).toString());
+    }
+}
@@ -0,0 +1,59 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for EngineEvents.
+ */
+public class EngineEventsTest {
+    @Test
+    public void testShippedProfileRecordsEngineEvents() throws Exception {
+        Configuration profile = Configuration.create(Path.of("src/main/dist/factory.jfc"));
+        assertEquals("Factory", profile.getLabel());
+
+        BasicSimulation sim = new SessionManager()
+                .createFromFile("jfr", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+        Path file = Files.createTempFile("factory", ".jfr");
+        int created;
+        try (Recording recording = new Recording(profile)) {
+            // 测试中的步进很快，去掉阈值以便每个事件都被记录
+            recording.enable(EngineEvents.BuildingStep.class).withThreshold(java.time.Duration.ZERO);
+            recording.enable(EngineEvents.IngredientPlanning.class).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            sim.processCommand("request 'door' from 'Fdoor'");
+            created = sim.peekNextRequestId();
+            sim.step(2);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        Set<String> names = new HashSet<>();
+        for (RecordedEvent event : events) {
+            names.add(event.getEventType().getName());
+            if (event.getEventType().getName().equals("factory.IngredientPlanning")
+                    && event.getString("building").equals("Fdoor")) {
+                assertEquals(1, event.getInt("depth"));
+                // 用户订单本身在规划之前创建
+                assertEquals(created - 1, event.getInt("requestsCreated"));
+            }
+        }
+        assertTrue(names.contains("factory.Tick"));
+        assertTrue(names.contains("factory.BuildingStep"));
+        assertTrue(names.contains("factory.IngredientPlanning"));
+    }
+}
@@ -0,0 +1,196 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for EventJournal and JournalReader.
+ */
+public class EventJournalTest {
+    private static List<JSONObject> read(Path dir, int from, int to) throws IOException {
+        StringWriter out = new StringWriter();
+        long count = JournalReader.export(dir, from, to, out);
+        List<JSONObject> records = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                records.add(new JSONObject(line));
+            }
+        }
+        assertEquals(count, records.size());
+        return records;
+    }
+
+    @Test
+    public void testRecordsRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try (EventJournal journal = new EventJournal(dir, EventJournal.MIN_SEGMENT_BYTES)) {
+            journal.built(0, "Fdoor", "door factory", 3, -4);
+            journal.connected(0, "M1", "Fdoor");
+            journal.order(1, 7, "Fdoor", "door");
+            journal.assigned(1, 8, 7, "M1", "wood");
+            journal.delivered(3, 8, "M1", "Fdoor", "wood");
+            journal.completed(5, 7, "Fdoor", "door");
+            journal.removed(6, "M1");
+            assertEquals(7, journal.getRecords());
+        }
+
+        List<JSONObject> records = read(dir, 0, Integer.MAX_VALUE);
+        assertEquals(7, records.size());
+        JSONObject built = records.get(0);
+        assertEquals("build", built.getString("kind"));
+        assertEquals("door factory", built.getString("type"));
+        assertEquals(-4, built.getInt("y"));
+        assertEquals("M1", records.get(1).getString("from"));
+        JSONObject assigned = records.get(3);
+        assertEquals("assign", assigned.getString("kind"));
+        assertEquals(7, assigned.getInt("parent"));
+        assertEquals("wood", assigned.getString("item"));
+        JSONObject delivered = records.get(4);
+        assertEquals("Fdoor", delivered.getString("to"));
+        assertEquals(3, delivered.getInt("step"));
+        assertEquals("remove", records.get(6).getString("kind"));
+
+        List<JSONObject> range = read(dir, 1, 3);
+        assertEquals(3, range.size());
+        assertEquals("order", range.get(0).getString("kind"));
+    }
+
+    @Test
+    public void testRotatesIntoSelfContainedSegments() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        int count = 5000;
+        try (EventJournal journal = new EventJournal(dir, EventJournal.MIN_SEGMENT_BYTES)) {
+            for (int i = 0; i < count; i++) {
+                journal.order(i, i, "F" + (i % 3), "door");
+            }
+            assertTrue(journal.getSegment() > 1);
+            assertFalse(Files.exists(dir.resolve(EventJournal.fileName(journal.getSegment() + 1))));
+        }
+        List<JSONObject> records = read(dir, 0, Integer.MAX_VALUE);
+        assertEquals(count, records.size());
+        assertEquals(count - 1, records.get(count - 1).getInt("request"));
+        assertEquals("F" + ((count - 1) % 3), records.get(count - 1).getString("building"));
+
+        // 每段的名字都写在段内，删掉第一段后其余段仍可读
+        Files.delete(dir.resolve(EventJournal.fileName(1)));
+        List<JSONObject> rest = read(dir, 0, Integer.MAX_VALUE);
+        assertTrue(rest.size() < count);
+        assertEquals("door", rest.get(0).getString("item"));
+
+        // 重新打开时从新段开始，不覆盖旧记录
+        try (EventJournal journal = new EventJournal(dir, EventJournal.MIN_SEGMENT_BYTES)) {
+            journal.order(count, count, "F0", "door");
+        }
+        assertEquals(rest.size() + 1, read(dir, 0, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testRecordWithoutKindEndsSegment() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        EventJournal journal = new EventJournal(dir, EventJournal.MIN_SEGMENT_BYTES);
+        journal.order(0, 1, "F", "door");
+        journal.order(1, 2, "F", "door");
+        journal.close();
+        // 关闭后的记录被忽略
+        journal.order(2, 3, "F", "door");
+        assertFalse(journal.isOpen());
+        // 模拟崩溃：最后一条记录的类型字节还没写；它前面是两条名字和一条记录
+        Path segment = dir.resolve(EventJournal.fileName(1));
+        int last = EventJournal.HEADER_BYTES + 5 * EventJournal.RECORD_BYTES;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0}), last);
+        }
+        List<JSONObject> records = read(dir, 0, Integer.MAX_VALUE);
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).getInt("request"));
+
+        Files.write(dir.resolve(EventJournal.fileName(9)), new byte[64]);
+        assertThrows(IOException.class, () -> JournalReader.export(dir, 0, 1, new StringWriter()));
+        assertThrows(IllegalArgumentException.class, () -> new EventJournal(dir, 1024));
+    }
+
+    @Test
+    public void testFailedRotationClosesAndReportsOnce() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        List<String> errors = new ArrayList<>();
+        EventJournal journal = new EventJournal(dir, EventJournal.MIN_SEGMENT_BYTES);
+        journal.setEventSink(new EventSink() {
+            @Override
+            public boolean isEnabled(Level level) {
+                return true;
+            }
+
+            @Override
+            public void emit(Level level, String message) {
+                assertEquals(Level.ERROR, level);
+                errors.add(message);
+            }
+        });
+        // 下一段的文件已存在，换段失败
+        Files.write(dir.resolve(EventJournal.fileName(2)), new byte[0]);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            journal.order(i, i, "F", "door");
+        }
+        assertFalse(journal.isOpen());
+        assertEquals(1, journal.getSegment());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains(EventJournal.fileName(2)), errors.get(0));
+        assertTrue(journal.getRecords() < count);
+        journal.close();
+    }
+
+    @Test
+    public void testSessionJournalsOrdersAndDeliveries() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        SessionManager sessions = new SessionManager();
+        sessions.setEventSink(EventSink.NONE);
+        sessions.setJournalDirectory(dir);
+        Session session = sessions.createFromFile("j", "src/test/resources/inputs/phase_demo.json", false);
+        session.call(sim -> {
+            assertTrue(sim.getJournal().isOpen());
+            sim.processCommand("request 'door' from 'Fdoor'");
+            sim.finish();
+            return null;
+        });
+        sessions.delete("j");
+        assertTrue(session.awaitClosed(5000));
+
+        List<JSONObject> records = read(dir.resolve("j"), 0, Integer.MAX_VALUE);
+        JSONObject order = records.get(0);
+        assertEquals("order", order.getString("kind"));
+        assertEquals("Fdoor", order.getString("building"));
+        assertEquals("door", order.getString("item"));
+        int assigned = 0;
+        int delivered = 0;
+        boolean completed = false;
+        for (JSONObject record : records) {
+            switch (record.getString("kind")) {
+                case "assign" -> assigned++;
+                case "deliver" -> delivered++;
+                case "complete" -> completed |= record.getInt("request") == order.getInt("request");
+                default -> {
+                }
+            }
+        }
+        // 仓库补货的请求在订单完成时可能还没送到
+        assertTrue(delivered > 0);
+        assertTrue(delivered <= assigned);
+        assertTrue(completed);
+    }
+}
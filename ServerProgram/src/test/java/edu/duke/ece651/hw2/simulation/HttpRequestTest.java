@@ -0,0 +1,83 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpRequestTest {
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testParseIncompleteLeavesBufferUntouched() throws Exception {
+        ByteBuffer partialHeader = bytes("GET /Simulation HTTP/1.1\r\nHost: x\r\n");
+        assertNull(HttpRequest.parse(partialHeader, 100));
+        assertEquals(0, partialHeader.position());
+
+        ByteBuffer partialBody = bytes("POST /Instruction HTTP/1.1\r\nContent-Length: 10\r\n\r\nstep");
+        assertNull(HttpRequest.parse(partialBody, 100));
+        assertEquals(0, partialBody.position());
+    }
+
+    @Test
+    public void testParsePipelinedRequests() throws Exception {
+        ByteBuffer buffer = bytes("POST /sessions/a%20b/Instruction?state=false&file=x%2Fy.json HTTP/1.1\r\n"
+                + "Content-Length: 6\r\nCONNECTION: close\r\n\r\nstep 1"
+                + "GET /Simulation HTTP/1.0\r\n\r\n");
+
+        HttpRequest first = HttpRequest.parse(buffer, 100);
+        assertEquals("POST", first.getMethod());
+        assertEquals("/sessions/a b/Instruction", first.getPath());
+        assertEquals("false", first.getQueryParam("state"));
+        assertEquals("x/y.json", first.getQueryParam("file"));
+        assertNull(first.getQueryParam("missing"));
+        assertEquals("step 1", first.getBodyText());
+        assertEquals("close", first.getHeader("Connection"));
+        assertFalse(first.isKeepAlive());
+
+        HttpRequest second = HttpRequest.parse(buffer, 100);
+        assertEquals("/Simulation", second.getPath());
+        assertFalse(second.isKeepAlive());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testKeepAliveDefaults() throws Exception {
+        assertTrue(HttpRequest.parse(bytes("GET / HTTP/1.1\r\n\r\n"), 0).isKeepAlive());
+        assertTrue(HttpRequest.parse(bytes("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n"), 0).isKeepAlive());
+    }
+
+    @Test
+    public void testParseRejectsInvalidRequests() {
+        HttpRequest.BadRequestException tooBig = assertThrows(HttpRequest.BadRequestException.class,
+                () -> HttpRequest.parse(bytes("POST / HTTP/1.1\r\nContent-Length: 101\r\n\r\n"), 100));
+        assertEquals(413, tooBig.getStatus());
+        assertEquals(400, assertThrows(HttpRequest.BadRequestException.class,
+                () -> HttpRequest.parse(bytes("GET /\r\n\r\n"), 100)).getStatus());
+        assertEquals(400, assertThrows(HttpRequest.BadRequestException.class,
+                () -> HttpRequest.parse(bytes("GET / HTTP/1.1\r\nno-colon\r\n\r\n"), 100)).getStatus());
+        assertEquals(411, assertThrows(HttpRequest.BadRequestException.class,
+                () -> HttpRequest.parse(bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"), 100))
+                .getStatus());
+        assertEquals(400, assertThrows(HttpRequest.BadRequestException.class,
+                () -> HttpRequest.parse(bytes("GET /%zz HTTP/1.1\r\n\r\n"), 100)).getStatus());
+    }
+
+    @Test
+    public void testMalformedQueryEscapeIsBadRequest() throws Exception {
+        HttpRequest request = HttpRequest.parse(bytes("POST /sessions?id=%zz&b=%41 HTTP/1.1\r\n\r\n"), 100);
+        assertEquals("A", request.getQueryParam("b"));
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> request.getQueryParam("id"));
+        assertEquals(400, ((HttpRequest.BadRequestException) e.getCause()).getStatus());
+        assertEquals(400, new SimulationRoutes(new SessionManager(), false).handle(request).getStatus());
+    }
+}
@@ -0,0 +1,44 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 1; v <= 10; v++) {
+            h.record(v);
+        }
+        h.record(-3);
+        assertEquals(11, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(10, h.getMax());
+        assertEquals(5, h.getValueAtPercentile(50));
+        assertEquals(9, h.getValueAtPercentile(90));
+        assertEquals(10, h.getValueAtPercentile(100));
+        assertEquals(55.0 / 11, h.getMean(), 1e-9);
+    }
+
+    @Test
+    public void testLargeValuesStayWithinOneSixteenth() {
+        for (long v = 0; v < 100_000; v += 37) {
+            long high = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(v));
+            assertTrue(high >= v && high - v <= v / 16, "value " + v + " reported as " + high);
+        }
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(1000);
+        h.record(5);
+        assertEquals(1000, h.getValueAtPercentile(99));
+        JSONObject json = h.toSerializable();
+        assertEquals(2, json.getLong("count"));
+        assertEquals(5, json.getLong("p50"));
+        assertEquals(0, new LatencyHistogram().toSerializable().getLong("p99"));
+    }
+}
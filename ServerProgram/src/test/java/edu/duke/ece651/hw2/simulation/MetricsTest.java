@@ -0,0 +1,72 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for Metrics.
+ */
+public class MetricsTest {
+    @Test
+    public void testCountersRenderInExpositionFormat() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter ticks = metrics.counter("ticks", "Ticks run.");
+        Metrics.LabeledCounter made = metrics.counter("made", "Items made.", "item");
+        ticks.add(3);
+        ticks.increment();
+        made.increment("door");
+        made.increment("door");
+        made.increment("a \"b\"");
+
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out);
+        assertEquals("# HELP ticks_total Ticks run.\n"
+                + "# TYPE ticks_total counter\n"
+                + "ticks_total 4\n"
+                + "# HELP made_total Items made.\n"
+                + "# TYPE made_total counter\n"
+                + "made_total{item=\"a \\\"b\\\"\"} 1\n"
+                + "made_total{item=\"door\"} 2\n", out.toString());
+        assertEquals(2, made.get("door"));
+        assertEquals(0, made.get("hinge"));
+    }
+
+    @Test
+    public void testHistogramBucketsAreCumulative() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram latency = metrics.histogram("latency_seconds", "Latency.");
+        latency.observeNanos(5_000);           // 5 µs
+        latency.observeNanos(2_000_000);       // 2 ms
+        latency.observeNanos(10_000_000_000L); // 10 s
+
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE latency_seconds histogram\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"1.0E-5\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"0.001\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"0.005\"} 2\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"5.0\"} 2\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("latency_seconds_sum 10.002005\n"));
+        assertTrue(text.contains("latency_seconds_count 3\n"));
+        assertEquals(3, latency.getCount());
+    }
+
+    @Test
+    public void testEngineRecordsTicksAndRequests() throws Exception {
+        BasicSimulation sim = new SessionManager()
+                .createFromFile("m", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+        long ticks = EngineMetrics.TICKS.get();
+        long doors = EngineMetrics.REQUESTS_CREATED.get("door");
+        long histogram = EngineMetrics.TICK_SECONDS.getCount();
+        sim.processCommand("request 'door' from 'Fdoor'");
+        sim.step(3);
+        // 其他测试可能同时在别的会话中步进，只检查增量的下限
+        assertTrue(EngineMetrics.TICKS.get() >= ticks + 3);
+        assertTrue(EngineMetrics.TICK_SECONDS.getCount() >= histogram + 3);
+        assertTrue(EngineMetrics.REQUESTS_CREATED.get("door") >= doors + 1);
+    }
+}
@@ -0,0 +1,141 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NioHttpServerTest {
+    private NioHttpServer server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // "/slow" 请求故意比后续请求更晚完成，用于验证流水线响应的顺序
+        server = new NioHttpServer(new InetSocketAddress("127.0.0.1", 0), request -> {
+            if (request.getPath().equals("/slow")) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return HttpResponse.json(200, "{\"path\":\"" + request.getPath() + "\",\"body\":\""
+                    + request.getBodyText() + "\"}");
+        }, 4);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        server.stop();
+    }
+
+    /**
+     * Reads from the socket until the server closes it or the expected text has arrived.
+     */
+    private static String readUntil(Socket socket, String expected, int occurrences) throws IOException {
+        socket.setSoTimeout(5000);
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        while (countOf(received.toString(StandardCharsets.ISO_8859_1), expected) < occurrences) {
+            int n = in.read(chunk);
+            if (n < 0) {
+                break;
+            }
+            received.write(chunk, 0, n);
+        }
+        return received.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int countOf(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testPipelinedResponsesKeepRequestOrder() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /slow HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "POST /fast HTTP/1.1\r\nHost: x\r\nContent-Length: 6\r\n\r\nstep 1"
+                    + "GET /last HTTP/1.1\r\nHost: x\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            String responses = readUntil(socket, "HTTP/1.1 200 OK", 3);
+            int slow = responses.indexOf("\"path\":\"/slow\"");
+            int fast = responses.indexOf("\"path\":\"/fast\",\"body\":\"step 1\"");
+            int last = responses.indexOf("\"path\":\"/last\"");
+            assertTrue(slow >= 0 && slow < fast && fast < last, responses);
+            assertTrue(responses.contains("Connection: keep-alive"));
+        }
+    }
+
+    @Test
+    public void testKeepAliveServesSequentialRequests() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < 3; i++) {
+                out.write(("GET /poll" + i + " HTTP/1.1\r\nHost: x\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                String response = readUntil(socket, "/poll" + i, 1);
+                assertTrue(response.startsWith("HTTP/1.1 200 OK"), response);
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionCloseIsHonoured() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.getOutputStream().write("GET /once HTTP/1.1\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            // 服务器写完响应后关闭连接，读取在 EOF 处结束
+            String response = readUntil(socket, "never", 1);
+            assertTrue(response.contains("Connection: close"));
+            assertTrue(response.endsWith("\"path\":\"/once\",\"body\":\"\"}"));
+        }
+    }
+
+    @Test
+    public void testOversizedBodyIsRejected() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.getOutputStream().write(("POST /big HTTP/1.1\r\nContent-Length: "
+                    + (NioHttpServer.MAX_BODY_BYTES + 1) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            String response = readUntil(socket, "never", 1);
+            assertTrue(response.startsWith("HTTP/1.1 413 "), response);
+        }
+    }
+
+    @Test
+    public void testMalformedRequestIsRejected() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.getOutputStream().write("nonsense\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            String response = readUntil(socket, "never", 1);
+            assertEquals("HTTP/1.1 400 Bad Request", response.substring(0, response.indexOf("\r\n")));
+        }
+        // 错误的 %-转义只关闭这个连接，服务器继续处理其他连接
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.getOutputStream().write("GET /%zz HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            String response = readUntil(socket, "never", 1);
+            assertEquals("HTTP/1.1 400 Bad Request", response.substring(0, response.indexOf("\r\n")));
+        }
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.getOutputStream().write("GET /after HTTP/1.1\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            assertTrue(readUntil(socket, "never", 1).contains("\"path\":\"/after\""));
+        }
+    }
+}
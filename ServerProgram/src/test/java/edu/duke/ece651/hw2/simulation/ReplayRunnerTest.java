@@ -0,0 +1,102 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CommandLog and ReplayRunner.
+ */
+public class ReplayRunnerTest {
+    private static final String ORDER = "request 'door' from 'Fdoor'";
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    // 在开启命令日志的会话里下单并推进时间，返回关闭前的状态哈希
+    private static String record(Path dir) throws Exception {
+        SessionManager sessions = new SessionManager();
+        sessions.setEventSink(EventSink.NONE);
+        sessions.setCommandLogDirectory(dir);
+        Session session = sessions.createFromFile("r", "src/test/resources/inputs/phase_demo.json", false);
+        String hash = session.call(sim -> {
+            assertTrue(sim.executeCommand(ORDER).isSuccess());
+            // 越过检查点的 step 命令：命令执行完后才写 t=150 的哈希
+            assertTrue(sim.executeCommand("step 150").isSuccess());
+            // 时钟或合并的 step 直接推进时间，不作为命令记录，检查点照常写
+            sim.step(60);
+            sim.processCommand(ORDER);
+            sim.executeCommand("step 30");
+            // 失败的命令不记录，除非它已经推进了时间
+            assertFalse(sim.executeCommand("request 'nothing' from 'Fdoor'").isSuccess());
+            sim.executeCommand("not a command");
+            assertFalse(sim.executeCommand("step until time 1000 within 5").isSuccess());
+            assertEquals(5, sim.getCommandLog().getCommands());
+            return CommandLog.stateHash(sim);
+        });
+        sessions.delete("r");
+        assertTrue(session.awaitClosed(5000));
+        return hash;
+    }
+
+    @Test
+    public void testReplayReproducesState() throws Exception {
+        Path dir = Files.createTempDirectory("commands");
+        String liveHash = record(dir);
+        Path log = dir.resolve("r" + ReplayRunner.LOG_SUFFIX);
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(0, new JSONObject(lines.get(0)).getInt("start"));
+        JSONObject step = new JSONObject(lines.get(2));
+        assertEquals(0, step.getInt("t"));
+        assertEquals("step 150", step.getString("command"));
+        // 命令越过了第 100 步，只在命令之后写一次结束时的哈希
+        assertEquals(150, new JSONObject(lines.get(3)).getInt("t"));
+        assertEquals(200, new JSONObject(lines.get(4)).getInt("t"));
+        JSONObject last = new JSONObject(lines.get(lines.size() - 1));
+        assertEquals(245, last.getInt("t"));
+        assertEquals(liveHash, last.getString("hash"));
+
+        BasicSimulation sim = ReplayRunner.load(ReplayRunner.defaultScenario(log));
+        JSONObject summary = ReplayRunner.replay(sim, reader(String.join("\n", lines)), true);
+        assertEquals(0, summary.getInt("mismatches"));
+        assertEquals(5, summary.getInt("commands"));
+        assertEquals(1, summary.getInt("failedCommands"));
+        assertEquals(245, summary.getInt("steps"));
+        assertEquals(3, summary.getInt("checkpoints"));
+        assertEquals(liveHash, CommandLog.stateHash(sim));
+
+        // 篡改第一个检查点，重放应报告在哪一步出现分歧
+        lines.set(3, new JSONObject(lines.get(3)).put("hash", "00000000").toString());
+        JSONObject diverged = ReplayRunner.replay(ReplayRunner.load(ReplayRunner.defaultScenario(log)),
+                reader(String.join("\n", lines)), true);
+        assertEquals(1, diverged.getInt("mismatches"));
+        assertEquals(150, diverged.getJSONObject("firstMismatch").getInt("t"));
+        assertEquals(0, ReplayRunner.replay(ReplayRunner.load(ReplayRunner.defaultScenario(log)),
+                reader(String.join("\n", lines)), false).getInt("mismatches"));
+    }
+
+    @Test
+    public void testRejectsInvalidLogs() throws Exception {
+        Path scenario = Path.of("src/test/resources/inputs/phase_demo.json");
+        assertThrows(SimulationException.class,
+                () -> ReplayRunner.replay(ReplayRunner.load(scenario), reader(""), true));
+        assertThrows(SimulationException.class,
+                () -> ReplayRunner.replay(ReplayRunner.load(scenario), reader("{\"version\":99}"), true));
+        String backwards = "{\"version\":1,\"start\":0}\n{\"t\":5,\"command\":\"step 10\"}\n{\"t\":3,\"hash\":\"0\"}";
+        assertThrows(SimulationException.class,
+                () -> ReplayRunner.replay(ReplayRunner.load(scenario), reader(backwards), true));
+        assertEquals(Path.of("x", "s1.scenario.json"), ReplayRunner.defaultScenario(Path.of("x", "s1.log")));
+    }
+}
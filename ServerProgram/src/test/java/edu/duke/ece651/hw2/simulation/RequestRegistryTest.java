@@ -0,0 +1,173 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for RequestRegistry.
+ */
+public class RequestRegistryTest {
+    private static BasicSimulation load() throws Exception {
+        return new SessionManager().createFromFile("s", "src/test/resources/inputs/phase_demo.json", false)
+                .call(sim -> sim);
+    }
+
+    @Test
+    public void testTracksIngredientTreeAndCompletion() throws Exception {
+        BasicSimulation sim = load();
+        sim.processCommand("request 'door' from 'Fdoor'");
+        RequestRegistry registry = sim.getRequestRegistry();
+
+        RequestRegistry.Entry door = registry.get(0);
+        assertEquals("door", door.getItem());
+        assertEquals("Fdoor", door.getBuildingName());
+        assertTrue(door.isUserRequest());
+        assertEquals(-1, door.getParent());
+        assertFalse(door.getChildren().isEmpty());
+        // 每个原料请求都挂在为其分配原料的请求下面
+        for (int childId : door.getChildren()) {
+            RequestRegistry.Entry child = registry.get(childId);
+            assertEquals(0, child.getParent());
+            for (int grandchild : child.getChildren()) {
+                assertEquals(childId, registry.get(grandchild).getParent());
+            }
+        }
+        assertEquals(sim.peekNextRequestId(), registry.getOpenCount());
+        assertEquals(1, registry.getOpenOrders().size());
+
+        int latency = sim.getRecipe("door").getLatency();
+        int eta = registry.estimateCompletion(0);
+        assertTrue(eta >= latency);
+        for (int childId : door.getChildren()) {
+            assertTrue(registry.estimateCompletion(childId) < eta);
+        }
+
+        sim.executeCommand("step until order 0");
+        assertEquals(RequestStatus.COMPLETED, door.getStatus());
+        assertEquals(sim.getCurrentTimeStep(), door.getCompletedAt());
+        assertEquals(door.getCompletedAt(), registry.estimateCompletion(0));
+        assertTrue(registry.getOpenOrders().isEmpty());
+        assertEquals(-1, registry.estimateCompletion(9999));
+        assertEquals(sim.peekNextRequestId(), registry.getOpenCount() + registry.getHistorySize());
+    }
+
+    @Test
+    public void testHistoryIsBoundedAndStatsAreKept() throws Exception {
+        BasicSimulation sim = load();
+        Building hi = sim.getBuildings().get("Hi");
+        Recipe hinge = sim.getRecipe("hinge");
+        RequestRegistry registry = new RequestRegistry(sim, 2);
+        for (int id = 0; id < 5; id++) {
+            Request r = new Request(id, hinge, null, true, id);
+            registry.register(r, hi);
+            registry.completed(r, id + 3);
+        }
+        // 只保留最近的两条记录，统计覆盖全部五条
+        assertEquals(0, registry.getOpenCount());
+        assertEquals(2, registry.getHistorySize());
+        assertNull(registry.get(2));
+        assertEquals(7, registry.get(4).getCompletedAt());
+        assertEquals(5, registry.getCompletedCount());
+
+        JSONObject history = registry.historyToSerializable();
+        assertEquals(2, history.getJSONArray("completed").length());
+        assertEquals(4, history.getJSONArray("completed").getJSONObject(0).getInt("id"));
+        JSONObject stats = history.getJSONObject("stats");
+        assertEquals(5, stats.getLong("completedOrders"));
+        assertEquals(3.0, stats.getDouble("meanOrderLeadTime"));
+        assertEquals(5, stats.getJSONObject("completedByItem").getLong("hinge"));
+    }
+
+    @Test
+    public void testRecordsStayBoundedUnderContinuousOrders() throws Exception {
+        BasicSimulation sim = load();
+        RequestRegistry registry = sim.getRequestRegistry();
+        for (int i = 0; i < 600; i++) {
+            sim.processCommand("request 'hinge' from 'Hi'");
+            sim.step(5);
+        }
+        sim.executeCommand("step until idle");
+        assertEquals(0, registry.getOpenCount());
+        assertEquals(RequestRegistry.DEFAULT_HISTORY_CAPACITY, registry.getHistorySize());
+        assertEquals(sim.peekNextRequestId(), registry.getCompletedCount());
+    }
+
+    @Test
+    public void testSerializesOrders() throws Exception {
+        BasicSimulation sim = load();
+        sim.processCommand("request 'hinge' from 'Hi'");
+        sim.step(1);
+        RequestRegistry registry = sim.getRequestRegistry();
+
+        JSONObject order = registry.toSerializable(0);
+        assertEquals("hinge", order.getString("item"));
+        assertEquals("Hi", order.getString("building"));
+        assertEquals(0, order.getInt("requestedAt"));
+        assertEquals(-1, order.getInt("completedAt"));
+        assertEquals(order.getInt("estimatedCompletion") - 1, order.getInt("remainingSteps"));
+        assertEquals(0, registry.openOrdersToSerializable().getJSONArray("orders").getJSONObject(0).getInt("id"));
+        assertNull(registry.toSerializable(9999));
+    }
+
+    @Test
+    public void testStageLatenciesAreRecordedPerItem() throws Exception {
+        BasicSimulation sim = load();
+        Building hi = sim.getBuildings().get("Hi");
+        Building fdoor = sim.getBuildings().get("Fdoor");
+        Recipe hinge = sim.getRecipe("hinge");
+        Recipe door = sim.getRecipe("door");
+        RequestRegistry registry = new RequestRegistry(sim);
+
+        Request order = new Request(0, door, null, true, 0);
+        registry.register(order, fdoor);
+        registry.enter(order);
+        Request part = new Request(1, hinge, fdoor, false, 0);
+        registry.register(part, hi);
+        registry.exit();
+
+        // 铰链第 2 步开工，第 3 步完成，第 6 步送到门厂
+        part.setTimeStarted(2);
+        registry.completed(part, 3);
+        assertNull(registry.getLatency("hinge", RequestRegistry.Stage.TOTAL));
+        registry.delivered(part, 6);
+        assertEquals(6, order.getTimeIngredientsReady());
+        assertEquals(2, registry.getLatency("hinge", RequestRegistry.Stage.QUEUED).getMax());
+        assertEquals(1, registry.getLatency("hinge", RequestRegistry.Stage.PRODUCTION).getMax());
+        assertEquals(3, registry.getLatency("hinge", RequestRegistry.Stage.TRANSIT).getMax());
+        assertEquals(6, registry.getLatency("hinge", RequestRegistry.Stage.TOTAL).getMax());
+
+        // 门在原料到齐后排队一步，生产四步；用户订单没有运输阶段
+        order.setTimeStarted(7);
+        registry.completed(order, 11);
+        assertEquals(6, registry.getLatency("door", RequestRegistry.Stage.WAITING).getMax());
+        assertEquals(1, registry.getLatency("door", RequestRegistry.Stage.QUEUED).getMax());
+        assertEquals(4, registry.getLatency("door", RequestRegistry.Stage.PRODUCTION).getMax());
+        assertEquals(0, registry.getLatency("door", RequestRegistry.Stage.TRANSIT).getMax());
+
+        JSONObject doors = registry.latencyToSerializable("door").getJSONObject("items");
+        assertEquals(1, doors.length());
+        assertEquals(11, doors.getJSONObject("door").getJSONObject("total").getInt("p50"));
+        assertEquals(2, registry.latencyToSerializable(null).getJSONObject("items").length());
+    }
+
+    @Test
+    public void testSimulationRecordsEveryDeliveredRequest() throws Exception {
+        BasicSimulation sim = load();
+        sim.processCommand("request 'door' from 'Fdoor'");
+        sim.executeCommand("step until order 0");
+        RequestRegistry registry = sim.getRequestRegistry();
+        LatencyHistogram total = registry.getLatency("door", RequestRegistry.Stage.TOTAL);
+        assertEquals(1, total.getCount());
+        assertEquals(registry.get(0).getCompletedAt(), total.getMax());
+        // 门的每个原料都已送达
+        for (int childId : registry.get(0).getChildren()) {
+            String item = registry.get(childId).getItem();
+            assertTrue(registry.getLatency(item, RequestRegistry.Stage.TOTAL).getCount() > 0);
+        }
+    }
+}
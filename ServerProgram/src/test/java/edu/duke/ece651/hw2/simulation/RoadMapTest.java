@@ -353,4 +353,66 @@ public class RoadMapTest {
 //        assertTrue(road.getExitDirections().contains(Direction.NORTH) || road.getExitDirections().contains(Direction.SOUTH));
     }
 
+    @Test
+    public void testCanReachFollowsRoadsAndDronesWithoutDispatching() {
+        RoadMap rm = new RoadMap();
+        MineBuilding m1 = new MineBuilding("M1", "m", new Recipe("m", Map.of(), 1), List.of());
+        MineBuilding m2 = new MineBuilding("M2", "m", new Recipe("m", Map.of(), 1), List.of());
+        m1.setLocation(new Coordinate(0, 0));
+        m2.setLocation(new Coordinate(0, 3));
+        rm.addBuilding(m1);
+        rm.addBuilding(m2);
+        assertFalse(rm.canReach(m1, m2));
+
+        long gain = rm.getReachGainVersion();
+        long loss = rm.getReachLossVersion();
+        rm.createPath(m1, m2);
+        assertTrue(rm.canReach(m1, m2));
+        assertTrue(rm.getReachGainVersion() > gain);
+        assertEquals(loss, rm.getReachLossVersion());
+
+        rm.removeRoad(new Coordinate(0, 1));
+        assertFalse(rm.canReach(m1, m2));
+        assertTrue(rm.getReachLossVersion() > loss);
+
+        DroneBuilding port = new DroneBuilding("P");
+        port.setLocation(new Coordinate(5, 0));
+        rm.addBuilding(port);
+        port.constructDrone();
+        assertTrue(rm.canReach(m1, m2));
+        // 可达性检查不会派出无人机
+        assertEquals(1, port.getDroneNumber());
+        assertEquals(0, port.countActiveDrones());
+    }
+
+    @Test
+    public void testGridLimitFollowsTheFurthestBuilding() {
+        RoadMap rm = new RoadMap();
+        BuildingType type = new BuildingType("t", List.of());
+        FactoryBuilding a = new FactoryBuilding("A", type, List.of());
+        FactoryBuilding b = new FactoryBuilding("B", type, List.of());
+        FactoryBuilding wall1 = new FactoryBuilding("W1", type, List.of());
+        FactoryBuilding wall2 = new FactoryBuilding("W2", type, List.of());
+        a.setLocation(new Coordinate(50, 0));
+        b.setLocation(new Coordinate(50, 4));
+        wall1.setLocation(new Coordinate(50, 2));
+        wall2.setLocation(new Coordinate(49, 2));
+        for (FactoryBuilding f : List.of(a, b, wall1, wall2)) {
+            rm.addBuilding(f);
+        }
+        assertEquals(RoadMap.MIN_GRID_LIMIT, rm.getGridLimit());
+        // 第 51 列在 50×50 的地图之外：路只能从西边绕过两座建筑
+        List<Coordinate> path = rm.getOptimalPath(a, b);
+        assertFalse(path.isEmpty());
+        for (Coordinate c : path) {
+            assertTrue(c.getX() <= RoadMap.MIN_GRID_LIMIT, c.toString());
+        }
+
+        FactoryBuilding far = new FactoryBuilding("F", type, List.of());
+        far.setLocation(new Coordinate(70, 3));
+        rm.addBuilding(far);
+        assertEquals(70, rm.getGridLimit());
+        rm.removeBuilding(far.getLocation());
+        assertEquals(RoadMap.MIN_GRID_LIMIT, rm.getGridLimit());
+    }
 }
@@ -0,0 +1,79 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for ScenarioGenerator.
+ */
+public class ScenarioGeneratorTest {
+    private static BasicSimulation load(JSONObject scenario) throws Exception {
+        return new SessionManager().createFromJson("g", scenario.toString(), false).call(sim -> sim);
+    }
+
+    @Test
+    public void testSameSeedGivesSameScenario() {
+        JSONObject a = new ScenarioGenerator(7).generate();
+        assertTrue(a.similar(new ScenarioGenerator(7).generate()));
+        assertFalse(a.similar(new ScenarioGenerator(8).generate()));
+
+        ScenarioGenerator generator = new ScenarioGenerator(7);
+        List<String> orders = generator.orders(a, 20);
+        assertEquals(orders.subList(0, 5), generator.orders(a, 5));
+    }
+
+    @Test
+    public void testGeneratedScenarioLoadsAndCompletesOrders() throws Exception {
+        ScenarioGenerator generator = new ScenarioGenerator(42).depth(2).fanOut(3).itemsPerLevel(4)
+                .clusters(3).storages(4).dronePorts(2).connectionDensity(0.5);
+        JSONObject scenario = generator.generate();
+        BasicSimulation sim = load(scenario);
+        assertEquals(3 * (generator.minesPerCluster() + generator.factoriesPerCluster()) + 4 + 2,
+                sim.getBuildings().size());
+
+        // 簇内的道路全部建成，每个订单都能被接受并完成
+        for (String order : generator.orders(scenario, 10)) {
+            assertTrue(sim.executeCommand(order).isSuccess(), order);
+        }
+        assertEquals(10, sim.getRequestRegistry().getOpenOrders().size());
+        sim.executeCommand("step until idle");
+        assertTrue(sim.getRequestRegistry().getOpenOrders().isEmpty());
+    }
+
+    @Test
+    public void testLargeMapBeyondDefaultGrid() throws Exception {
+        ScenarioGenerator generator = new ScenarioGenerator(3).clusters(30).storages(10).dronePorts(5);
+        int size = generator.requiredMapSize();
+        assertTrue(size > RoadMap.MIN_GRID_LIMIT);
+        JSONObject scenario = generator.mapSize(size).generate();
+        BasicSimulation sim = load(scenario);
+        assertEquals(30 * 15 + 15, sim.getBuildings().size());
+        assertTrue(sim.getRoadMap().getGridLimit() > RoadMap.MIN_GRID_LIMIT);
+
+        // 最后一个簇位于默认的 0..50 网格之外
+        String type = "";
+        for (Object b : scenario.getJSONArray("buildings")) {
+            if (((JSONObject) b).getString("name").equals("C29_root")) {
+                type = ((JSONObject) b).getString("type");
+            }
+        }
+        String item = type.substring("Factory ".length());
+        assertTrue(sim.executeCommand("request '" + item + "' from 'C29_root'").isSuccess());
+        sim.executeCommand("step until idle");
+        assertTrue(sim.getRequestRegistry().getOpenOrders().isEmpty());
+    }
+
+    @Test
+    public void testRejectsImpossibleSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new ScenarioGenerator(1).fanOut(4).generate());
+        assertThrows(IllegalArgumentException.class, () -> new ScenarioGenerator(1).clusters(40).generate());
+        assertThrows(IllegalArgumentException.class, () -> new ScenarioGenerator(1).depth(1).storages(9).generate());
+    }
+}
@@ -0,0 +1,97 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionManagerTest {
+    private static final String SCENARIO = "src/test/resources/inputs/phase_demo.json";
+
+    private final SessionManager manager = new SessionManager();
+
+    @AfterEach
+    public void tearDown() {
+        for (Session session : manager.getSessions()) {
+            manager.delete(session.getId());
+        }
+    }
+
+    @Test
+    public void testSessionsAreIndependentAndShareCatalog() throws Exception {
+        Session a = manager.createFromFile("a", SCENARIO, false);
+        Session b = manager.createFromJson("b", Files.readString(Paths.get(SCENARIO)), false);
+
+        assertSame(a.getCatalog(), b.getCatalog());
+        assertEquals(1, manager.getCatalogCount());
+
+        a.call(sim -> {
+            sim.processCommand("step 3");
+            return null;
+        });
+        assertEquals(3, (int) a.call(BasicSimulation::getCurrentTimeStep));
+        assertEquals(0, (int) b.call(BasicSimulation::getCurrentTimeStep));
+
+        JSONObject info = a.describe();
+        assertEquals("a", info.getString("id"));
+        assertEquals(3, info.getInt("currentTimeStep"));
+        assertTrue(info.getLong("estimatedBytes") > 0);
+    }
+
+    @Test
+    public void testGeneratedIdsAndDuplicates() throws Exception {
+        Session generated = manager.createFromFile(null, SCENARIO, false);
+        assertTrue(generated.getId().startsWith("s"));
+
+        manager.createFromFile("dup", SCENARIO, false);
+        assertThrows(SimulationException.class, () -> manager.createFromFile("dup", SCENARIO, false));
+        assertThrows(SimulationException.class, () -> manager.createFromFile("bad/id", SCENARIO, false));
+        assertEquals(2, manager.getSessions().size());
+    }
+
+    @Test
+    public void testDeleteClosesSession() throws Exception {
+        Session session = manager.createFromFile("gone", SCENARIO, false);
+        assertTrue(manager.delete("gone"));
+        assertFalse(manager.delete("gone"));
+        assertNull(manager.get("gone"));
+        assertTrue(session.awaitClosed(1000));
+        assertThrows(SimulationException.class, () -> session.call(BasicSimulation::getCurrentTimeStep));
+    }
+
+    @Test
+    public void testCatalogsAreReleasedWithTheirSessions() throws Exception {
+        String scenario = Files.readString(Paths.get(SCENARIO));
+        String other = scenario.replaceFirst("\"latency\"\\s*:\\s*(\\d+)", "\"latency\": 99$1");
+        manager.createFromJson("a", scenario, false);
+        manager.createFromJson("b", scenario, false);
+        manager.createFromJson("c", other, false);
+        assertEquals(2, manager.getCatalogCount());
+
+        // 替换成另一组配方后，最后一个引用旧目录的会话不再持有它
+        manager.replaceFromJson("c", scenario, false);
+        assertEquals(1, manager.getCatalogCount());
+        manager.replaceFromJson("a", other, false);
+        assertEquals(2, manager.getCatalogCount());
+
+        manager.delete("a");
+        assertEquals(1, manager.getCatalogCount());
+        manager.delete("b");
+        manager.delete("c");
+        assertEquals(0, manager.getCatalogCount());
+
+        // 建筑无效的场景加载失败，不留下对目录的引用
+        String broken = scenario.replaceFirst("\"buildings\"\\s*:\\s*\\[", "\"buildings\": [ {},");
+        assertThrows(SimulationException.class, () -> manager.createFromJson("d", broken, false));
+        assertEquals(0, manager.getCatalogCount());
+    }
+}
@@ -0,0 +1,110 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimulationClockTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testStepsAreSpreadAcrossTheSecond() {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(1000);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.reset(0);
+
+        // every 10 ms slice runs 10 of the 1000 steps of the second
+        for (int slice = 1; slice <= 100; slice++) {
+            assertEquals(10, clock.runDueSteps(slice * 10 * MS));
+        }
+        assertEquals(1000, sim.getCurrentTimeStep());
+        assertEquals(0, clock.getLagSteps());
+    }
+
+    @Test
+    public void testSlowSlicesDoNotDrift() {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(100);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.reset(0);
+
+        // a late wake-up catches up within the bounded burst instead of losing the steps
+        assertEquals(1, clock.runDueSteps(10 * MS));
+        assertEquals(3, clock.runDueSteps(40 * MS));
+        assertEquals(4, sim.getCurrentTimeStep());
+        assertEquals(0, clock.getLagSteps());
+    }
+
+    @Test
+    public void testCatchUpIsBounded() {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(100);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.reset(0);
+
+        // 50 steps are due but one slice only runs CATCH_UP_FACTOR slices' worth
+        assertEquals(SimulationClock.maxStepsPerSlice(100), clock.runDueSteps(500 * MS));
+        assertEquals(50 - SimulationClock.maxStepsPerSlice(100), clock.getLagSteps());
+        assertEquals(0, clock.getOverruns());
+    }
+
+    @Test
+    public void testOverrunDropsBacklog() {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(10);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.reset(0);
+
+        // 5 seconds without a slice: 50 steps due, more than one virtual second behind
+        int ran = clock.runDueSteps(5000 * MS);
+        assertEquals(SimulationClock.maxStepsPerSlice(10), ran);
+        assertEquals(1, clock.getOverruns());
+        assertEquals(50 - ran, clock.getDroppedSteps());
+        assertEquals(0, clock.getLagSteps());
+        // the clock resumes from the current time without replaying the dropped steps
+        assertEquals(1, clock.runDueSteps(5100 * MS));
+    }
+
+    @Test
+    public void testPauseAndRateChangeRestartOrigin() {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(10);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.reset(0);
+        assertEquals(1, clock.runDueSteps(100 * MS));
+
+        sim.pause();
+        assertEquals(0, clock.runDueSteps(2000 * MS));
+
+        sim.setRate(20);
+        assertEquals(0, clock.runDueSteps(3000 * MS));
+        assertEquals(2, clock.runDueSteps(3100 * MS));
+        assertEquals(3, sim.getCurrentTimeStep());
+    }
+
+    @Test
+    public void testStartDrivesSimulation() throws InterruptedException {
+        DummySimulation sim = new DummySimulation();
+        sim.setRate(200);
+        SimulationClock clock = new SimulationClock(sim, sim, scheduler);
+        clock.start();
+        Thread.sleep(300);
+        clock.stop();
+        assertTrue(clock.getTotalSteps() > 0);
+        assertTrue(clock.toSerializable().has("overruns"));
+    }
+}
@@ -0,0 +1,80 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimulationJobTest {
+    private final SessionManager sessions = new SessionManager();
+
+    @AfterEach
+    public void tearDown() {
+        sessions.delete("s");
+    }
+
+    @Test
+    public void testStepJobReportsProgressAndResult() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        SimulationJob job = session.startJob("step 40");
+        CommandResult result = job.getResult().get(5, TimeUnit.SECONDS);
+        assertTrue(result.isSuccess());
+        assertEquals(40, result.getTimeStep());
+        assertEquals(SimulationJob.Status.DONE, job.getStatus());
+
+        JSONObject json = job.toSerializable();
+        assertEquals(40, json.getJSONObject("progress").getLong("completedSteps"));
+        assertEquals(40, json.getJSONObject("progress").getLong("totalSteps"));
+        assertEquals(1.0, json.getJSONObject("progress").getDouble("fraction"));
+        assertTrue(json.getJSONObject("result").getBoolean("ok"));
+        assertEquals(job, session.getJob(job.getId()));
+    }
+
+    @Test
+    public void testCancelStopsBetweenTicksAndOtherWorkInterleaves() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        session.call(sim -> {
+            sim.processCommand("request 'door' from 'Fdoor'");
+            return null;
+        });
+        SimulationJob job = session.startJob("step 2000000000");
+        // 任务分片执行，期间其他请求仍能进入引擎线程
+        int seen = session.call(BasicSimulation::getCurrentTimeStep);
+        assertTrue(seen >= 0);
+        assertTrue(job.cancel());
+        CommandResult result = job.getResult().get(5, TimeUnit.SECONDS);
+        assertFalse(result.isSuccess());
+        assertEquals(SimulationJob.Status.CANCELLED, job.getStatus());
+        int now = session.call(BasicSimulation::getCurrentTimeStep);
+        assertEquals(job.getCompletedSteps(), now);
+        assertFalse(job.cancel());
+    }
+
+    @Test
+    public void testFinishJobAndInvalidCommand() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        session.call(sim -> {
+            sim.processCommand("request 'hinge' from 'Hi'");
+            return null;
+        });
+        SimulationJob finish = session.startJob("finish");
+        assertTrue(finish.getResult().get(5, TimeUnit.SECONDS).isSuccess());
+        JSONObject progress = finish.toSerializable().getJSONObject("progress");
+        assertEquals(1, progress.getInt("openRequestsAtStart"));
+        assertEquals(0, progress.getInt("openRequests"));
+        assertEquals(0, (int) session.call(BasicSimulation::getOpenUserRequestCount));
+
+        SimulationJob bad = session.startJob("jump");
+        CompletableFuture<CommandResult> badResult = bad.getResult();
+        assertFalse(badResult.get(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(SimulationJob.Status.FAILED, bad.getStatus());
+        assertNull(session.getJob(9999));
+    }
+}
@@ -0,0 +1,267 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimulationRoutesTest {
+    private final SessionManager sessions = new SessionManager();
+    private final SimulationRoutes routes = new SimulationRoutes(sessions, false);
+
+    @AfterEach
+    public void tearDown() {
+        for (Session session : sessions.getSessions()) {
+            sessions.delete(session.getId());
+        }
+    }
+
+    static HttpRequest request(String method, String target, String body) {
+        int q = target.indexOf('?');
+        return new HttpRequest(method, q < 0 ? target : target.substring(0, q), q < 0 ? null : target.substring(q + 1),
+                "HTTP/1.1", new HashMap<>(), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static JSONObject bodyOf(HttpResponse response) {
+        return new JSONObject(StandardCharsets.UTF_8.decode(response.getBody()).toString());
+    }
+
+    @Test
+    public void testDefaultAndSessionRoutes() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+
+        HttpResponse state = routes.handle(request("GET", "/Simulation", ""));
+        assertEquals(200, state.getStatus());
+        assertEquals("*", state.getHeaders().get("Access-Control-Allow-Origin"));
+        assertEquals(0, bodyOf(state).getInt("currentTimeStep"));
+
+        HttpResponse stepped = routes.handle(request("POST", "/Instruction", "step 2"));
+        assertEquals(2, bodyOf(stepped).getInt("currentTimeStep"));
+
+        // 没有场景目录时只接受上传的场景
+        assertEquals(403, routes.handle(request("POST", "/sessions?id=other&file=phase_demo.json", "")).getStatus());
+        sessions.setScenarioDirectory(Paths.get("src/test/resources/inputs"));
+        HttpResponse created = routes.handle(request("POST", "/sessions?id=other&file=phase_demo.json", ""));
+        assertEquals(201, created.getStatus());
+        assertEquals(0, bodyOf(routes.handle(request("GET", "/sessions/other/Simulation", "")))
+                .getInt("currentTimeStep"));
+        assertEquals(403, routes.handle(request("POST", "/sessions?file=..%2F..%2Fpom.xml", "")).getStatus());
+        assertEquals(403, routes.handle(request("POST", "/sessions?file=" + Paths.get("pom.xml").toAbsolutePath(), ""))
+                .getStatus());
+
+        // 无效的场景不替换已有会话；有效的场景替换后旧会话停止
+        routes.handle(request("POST", "/sessions/other/Instruction", "step 3"));
+        Session before = sessions.get("other");
+        assertEquals(400, routes.handle(request("PUT", "/sessions/other", "{\"not\": \"a scenario\"}")).getStatus());
+        assertSame(before, sessions.get("other"));
+        assertEquals(3, bodyOf(routes.handle(request("GET", "/sessions/other/Simulation", "")))
+                .getInt("currentTimeStep"));
+        assertEquals(201, routes.handle(request("PUT", "/sessions/other?file=phase_demo.json", "")).getStatus());
+        assertNotSame(before, sessions.get("other"));
+        assertTrue(before.awaitClosed(5000));
+        assertEquals(0, bodyOf(routes.handle(request("GET", "/sessions/other/Simulation", "")))
+                .getInt("currentTimeStep"));
+
+        assertEquals(405, routes.handle(request("POST", "/Simulation", "")).getStatus());
+        assertEquals(404, routes.handle(request("GET", "/Nothing", "")).getStatus());
+        assertEquals(404, routes.handle(request("GET", "/sessions/missing/Simulation", "")).getStatus());
+        assertEquals(204, routes.handle(request("DELETE", "/sessions/other", "")).getStatus());
+    }
+
+    @Test
+    public void testBinaryStateIsNegotiatedByAccept() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        HttpRequest get = new HttpRequest("GET", "/Simulation", null, "HTTP/1.1",
+                Map.of("accept", BinaryStateCodec.MEDIA_TYPE + ", application/json;q=0.5"), new byte[0]);
+
+        HttpResponse response = routes.handle(get);
+        assertEquals(BinaryStateCodec.MEDIA_TYPE, response.getHeaders().get("Content-Type"));
+        assertEquals("Accept, Accept-Encoding", response.getHeaders().get("Vary"));
+        BinaryStateCodec.State state = BinaryStateCodec.decode(response.getBody());
+        assertEquals(bodyOf(routes.handle(request("GET", "/Simulation", ""))).getJSONArray("buildings").toString(),
+                state.toSerializable().getJSONArray("buildings").toString());
+    }
+
+    @Test
+    public void testTilesServeOnlyTheRequestedRegion() throws Exception {
+        Session session = sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION,
+                "src/test/resources/inputs/phase_demo.json", false);
+
+        HttpResponse region = routes.handle(request("GET", "/Simulation/tiles?x0=0&y0=0&x1=5&y1=5", ""));
+        assertEquals(200, region.getStatus());
+        JSONObject body = bodyOf(region);
+        assertEquals("M1", body.getJSONArray("buildings").getJSONObject(0).getString("name"));
+        assertEquals("MineBuilding", body.getJSONArray("buildings").getJSONObject(0).getString("type"));
+        for (Object road : body.getJSONArray("roads")) {
+            assertTrue(((JSONObject) road).getInt("x") < 5 && ((JSONObject) road).getInt("y") < 5);
+        }
+
+        // 内容未变化时返回 304；步进不改变道路和建筑位置
+        String tag = region.getHeaders().get("ETag");
+        routes.handle(request("POST", "/Instruction", "step 2"));
+        Map<String, String> conditional = Map.of("if-none-match", tag);
+        HttpRequest again = new HttpRequest("GET", "/Simulation/tiles", "x0=0&y0=0&x1=5&y1=5", "HTTP/1.1",
+                conditional, new byte[0]);
+        assertEquals(304, routes.handle(again).getStatus());
+
+        HttpResponse tile = routes.handle(request("GET", "/sessions/default/Simulation/tiles/0/0", ""));
+        assertEquals(200, tile.getStatus());
+        assertEquals(16, bodyOf(tile).getInt("x1"));
+        String tileTag = tile.getHeaders().get("ETag");
+        StateSnapshot cached = session.call(sim -> session.currentTile(0, 0));
+        assertSame(cached, session.call(sim -> session.currentTile(0, 0)));
+
+        routes.handle(request("POST", "/Instruction", "build 3 14 Wood Mine"));
+        HttpRequest tileAgain = new HttpRequest("GET", "/Simulation/tiles/0/0", null, "HTTP/1.1",
+                Map.of("if-none-match", tileTag), new byte[0]);
+        assertEquals(200, routes.handle(tileAgain).getStatus());
+
+        assertEquals(400, routes.handle(request("GET", "/Simulation/tiles?x0=0&y0=0&x1=1000&y1=1000", "")).getStatus());
+        // 宽度在 int 中会回绕成 -1，必须按 long 计算后拒绝
+        assertEquals(400, routes.handle(request("GET",
+                "/Simulation/tiles?x0=-2147483648&y0=0&x1=2147483647&y1=1", "")).getStatus());
+        assertEquals(400, routes.handle(request("GET",
+                "/Simulation/tiles?x0=-2147483648&y0=-2147483648&x1=2147483647&y1=2147483647", "")).getStatus());
+        assertEquals(400, routes.handle(request("GET", "/Simulation/tiles?x0=a", "")).getStatus());
+        assertEquals(404, routes.handle(request("GET", "/Simulation/tiles/1", "")).getStatus());
+    }
+
+    @Test
+    public void testSnapshotIsReusedUntilStateChanges() throws Exception {
+        Session session = sessions.createFromFile("s", "src/test/resources/inputs/phase_demo.json", false);
+        StateSnapshot first = session.getSnapshot();
+        assertSame(first, session.getSnapshot());
+        assertTrue(first.getJson().isDirect());
+        session.call(sim -> {
+            sim.step(1);
+            return null;
+        });
+        StateSnapshot next = session.getSnapshot();
+        assertNotSame(first, next);
+        assertEquals(1, new JSONObject(StandardCharsets.UTF_8.decode(next.getJson()).toString())
+                .getInt("currentTimeStep"));
+    }
+
+    @Test
+    public void testSimulationIsCompressedWhenAccepted() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        HttpResponse plain = routes.handle(request("GET", "/Simulation", ""));
+
+        HttpRequest gzipRequest = new HttpRequest("GET", "/Simulation", null, "HTTP/1.1",
+                new HashMap<>(Map.of("accept-encoding", "gzip, deflate, br")), new byte[0]);
+        HttpResponse gzipped = routes.handle(gzipRequest);
+        assertEquals("gzip", gzipped.getHeaders().get("Content-Encoding"));
+        assertEquals("Accept, Accept-Encoding", gzipped.getHeaders().get("Vary"));
+        assertTrue(gzipped.getBodyLength() * 5 < plain.getBodyLength());
+
+        ByteBuffer body = gzipped.getBody();
+        byte[] compressed = new byte[body.remaining()];
+        body.get(compressed);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals(bodyOf(plain).toString(), new JSONObject(new String(in.readAllBytes(),
+                    StandardCharsets.UTF_8)).toString());
+        }
+    }
+
+    @Test
+    public void testMetricsEndpoint() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        routes.handle(request("POST", "/Instruction", "request 'door' from 'Fdoor'"));
+        routes.handle(request("POST", "/Instruction", "step 1"));
+
+        HttpResponse metrics = routes.handle(request("GET", "/metrics", ""));
+        assertEquals(200, metrics.getStatus());
+        assertTrue(metrics.getHeaders().get("Content-Type").startsWith("text/plain; version=0.0.4"));
+        String text = StandardCharsets.UTF_8.decode(metrics.getBody()).toString();
+        assertTrue(text.contains("# TYPE factory_ticks_total counter\n"));
+        assertTrue(text.contains("factory_tick_duration_seconds_bucket{le=\"+Inf\"}"));
+        assertTrue(text.contains("factory_requests_created_total{item=\"door\"}"));
+        assertTrue(text.contains("factory_current_tick{session=\"default\"} 1\n"));
+        assertTrue(text.contains("factory_open_orders{session=\"default\"} 1\n"));
+        assertTrue(text.contains("factory_building_queue_depth{session=\"default\",building=\"Fdoor\"}"));
+        assertTrue(text.contains("factory_drones{session=\"default\",state=\"constructing\"}"));
+        assertEquals(405, routes.handle(request("POST", "/metrics", "")).getStatus());
+    }
+
+    @Test
+    public void testOrderLatencyEndpoint() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        routes.handle(request("POST", "/Instruction", "request 'door' from 'Fdoor'"));
+        routes.handle(request("POST", "/Instruction", "step 60"));
+
+        JSONObject all = bodyOf(routes.handle(request("GET", "/Orders/latency", ""))).getJSONObject("items");
+        assertEquals(1, all.getJSONObject("door").getJSONObject("total").getInt("count"));
+        assertTrue(all.length() > 1);
+        JSONObject door = bodyOf(routes.handle(request("GET", "/Orders/latency?item=door", ""))).getJSONObject("items");
+        assertEquals(1, door.length());
+        assertTrue(door.getJSONObject("door").has("waiting"));
+    }
+
+    @Test
+    public void testTraceEndpoint() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        assertEquals(0, bodyOf(routes.handle(request("GET", "/Trace", ""))).getInt("budgetMs"));
+
+        assertEquals(204, routes.handle(request("PUT", "/Trace?budgetMs=0.000001&capacity=1", "")).getStatus());
+        routes.handle(request("POST", "/Instruction", "step 2"));
+        JSONObject trace = bodyOf(routes.handle(request("GET", "/Trace", "")));
+        assertEquals(2, trace.getInt("slowTicks"));
+        assertEquals(1, trace.getJSONArray("traces").length());
+        assertEquals(1, trace.getJSONArray("traces").getJSONObject(0).getInt("timeStep"));
+
+        assertEquals(204, routes.handle(request("DELETE", "/Trace", "")).getStatus());
+        assertTrue(bodyOf(routes.handle(request("GET", "/Trace", ""))).getJSONArray("traces").isEmpty());
+        assertEquals(400, routes.handle(request("PUT", "/Trace?budgetMs=-1", "")).getStatus());
+        assertEquals(400, routes.handle(request("PUT", "/Trace", "")).getStatus());
+        assertEquals(204, routes.handle(request("PUT", "/Trace?budgetMs=0", "")).getStatus());
+        assertEquals(0, bodyOf(routes.handle(request("GET", "/Trace", ""))).getInt("budgetMs"));
+    }
+
+    @Test
+    public void testUtilisationEndpoint() throws Exception {
+        sessions.createFromFile(SimulationRoutes.DEFAULT_SESSION, "src/test/resources/inputs/phase_demo.json", false);
+        routes.handle(request("POST", "/Instruction", "step 2"));
+
+        HttpResponse response = routes.handle(request("GET", "/Utilisation", ""));
+        assertEquals(200, response.getStatus());
+        JSONObject body = bodyOf(response);
+        assertEquals(2, body.getInt("timeStep"));
+        assertEquals(Utilisation.DEFAULT_WINDOW, body.getInt("window"));
+        assertEquals(2, body.getJSONObject("buildings").getJSONObject("Fdoor").getLong("idle"));
+        assertEquals(200, routes.handle(request("GET", "/sessions/default/Utilisation", "")).getStatus());
+        assertEquals(405, routes.handle(request("POST", "/Utilisation", "")).getStatus());
+    }
+
+    @Test
+    public void testParseCommandBatchFromLines() {
+        List<String> commands = SimulationRoutes.parseCommandBatch("step 1\r\n\n  verbose 2  \nfinish\n");
+        assertEquals(List.of("step 1", "verbose 2", "finish"), commands);
+    }
+
+    @Test
+    public void testParseCommandBatchFromJsonArray() {
+        List<String> commands = SimulationRoutes.parseCommandBatch(
+                "[\"request 'door' from 'D'\", \"step 5\"]");
+        assertEquals(List.of("request 'door' from 'D'", "step 5"), commands);
+    }
+
+    @Test
+    public void testParseCommandBatchRejectsNonStrings() {
+        assertThrows(JSONException.class, () -> SimulationRoutes.parseCommandBatch("[1, 2]"));
+    }
+}
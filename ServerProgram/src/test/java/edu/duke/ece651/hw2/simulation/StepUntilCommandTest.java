@@ -0,0 +1,104 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for StepUntilCommand and StepCondition.
+ */
+public class StepUntilCommandTest {
+    private static BasicSimulation load() throws Exception {
+        return new SessionManager().createFromFile("s", "src/test/resources/inputs/phase_demo.json", false)
+                .call(sim -> sim);
+    }
+
+    @Test
+    public void testParse() throws SimulationException {
+        CommandProcessor processor = new CommandProcessor(new DummySimulation());
+        StepUntilCommand order = assertInstanceOf(StepUntilCommand.class, processor.parseCommand("step until order 4"));
+        assertEquals(StepCondition.Kind.ORDER, order.getCondition().getKind());
+        assertEquals(4, order.getCondition().getValue());
+        assertEquals(StepUntilCommand.DEFAULT_MAX_STEPS, order.getMaxSteps());
+        StepUntilCommand idle = assertInstanceOf(StepUntilCommand.class,
+                processor.parseCommand("step until idle within 30"));
+        assertEquals(StepCondition.Kind.IDLE, idle.getCondition().getKind());
+        assertEquals(30, idle.getMaxSteps());
+        assertEquals("time 12", ((StepUntilCommand) processor.parseCommand("step until time 12")).getCondition().toString());
+        assertInstanceOf(StepCommand.class, processor.parseCommand("step 3"));
+
+        assertThrows(SimulationException.class, () -> processor.parseCommand("step until"));
+        assertThrows(SimulationException.class, () -> processor.parseCommand("step until order x"));
+        assertThrows(SimulationException.class, () -> processor.parseCommand("step until idle within -1"));
+        assertThrows(SimulationException.class, () -> processor.parseCommand("step until noon"));
+    }
+
+    @Test
+    public void testStepUntilOrderTimeAndIdle() throws Exception {
+        BasicSimulation sim = load();
+        sim.processCommand("request 'door' from 'Fdoor'");
+        assertTrue(sim.isOpenOrder(0));
+        assertFalse(sim.isIdle());
+
+        assertTrue(sim.executeCommand("step until order 0").isSuccess());
+        assertFalse(sim.isOpenOrder(0));
+        int doneAt = sim.getCurrentTimeStep();
+        assertTrue(doneAt > 0);
+
+        // 已完成的订单不再推进时间
+        assertTrue(sim.executeCommand("step until order 0").isSuccess());
+        assertEquals(doneAt, sim.getCurrentTimeStep());
+
+        assertTrue(sim.executeCommand("step until time " + (doneAt + 5)).isSuccess());
+        assertEquals(doneAt + 5, sim.getCurrentTimeStep());
+
+        assertTrue(sim.executeCommand("step until idle").isSuccess());
+        assertTrue(sim.isIdle());
+    }
+
+    @Test
+    public void testStepUntilRejectsUnknownOrdersAndStopsAtTheLimit() throws Exception {
+        BasicSimulation sim = load();
+        assertThrows(SimulationException.class,
+                () -> sim.stepUntil(new StepCondition(StepCondition.Kind.ORDER, 99), 10));
+
+        sim.processCommand("request 'door' from 'Fdoor'");
+        // 配料请求不是用户订单，不能当作已完成的订单等待
+        assertFalse(sim.getRequestRegistry().get(1).isUserRequest());
+        assertFalse(sim.executeCommand("step until order 1").isSuccess());
+        assertEquals(0, sim.getCurrentTimeStep());
+        CommandResult limited = sim.executeCommand("step until order 0 within 2");
+        assertFalse(limited.isSuccess());
+        assertEquals(2, sim.getCurrentTimeStep());
+        assertTrue(sim.isOpenOrder(0));
+    }
+
+    @Test
+    public void testIdleMeansNoBuildingHasWork() throws Exception {
+        BasicSimulation sim = load();
+        for (int i = 0; i < 3; i++) {
+            sim.processCommand("request 'door' from 'Fdoor'");
+        }
+        int idleTicks = 0;
+        for (int t = 0; t < 400; t++) {
+            sim.step(1);
+            if (!sim.isIdle()) {
+                continue;
+            }
+            idleTicks++;
+            // 仓库在同一时间步里补货时，上游建筑在被数过之后才收到请求
+            for (Building b : sim.getBuildings().values()) {
+                assertEquals(0, b.getQueueLength(), b.getName() + " at " + sim.getCurrentTimeStep());
+                if (b instanceof BasicBuilding basic) {
+                    assertNull(basic.getCurrentRequest(), b.getName() + " at " + sim.getCurrentTimeStep());
+                }
+            }
+        }
+        assertTrue(idleTicks > 0);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for TickTracer.
+ */
+public class TickTracerTest {
+    @Test
+    public void testKeepsSlowestOffendersOfSlowTicksOnly() {
+        TickTracer tracer = new TickTracer(10_000_000, 2);
+        tracer.beginTick();
+        tracer.building("fast", 1_000);
+        tracer.endTick(0, 5_000_000);
+        assertFalse(tracer.isTracing());
+        assertEquals(0, tracer.getSlowTicks());
+
+        tracer.beginTick();
+        for (int i = 1; i <= 8; i++) {
+            tracer.enterBuilding("B" + i);
+            tracer.search("distance", "S" + i, "D" + i, i * 100_000L);
+            tracer.building("B" + i, i * 1_000_000L);
+        }
+        assertTrue(tracer.endTick(1, 40_000_000));
+
+        JSONObject trace = tracer.toSerializable().getJSONArray("traces").getJSONObject(0);
+        assertEquals(1, trace.getInt("timeStep"));
+        assertEquals(40.0, trace.getDouble("ms"));
+        JSONArray buildings = trace.getJSONArray("buildings");
+        assertEquals(TickTracer.TOP, buildings.length());
+        assertEquals("B8", buildings.getJSONObject(0).getString("name"));
+        assertEquals("B4", buildings.getJSONObject(4).getString("name"));
+        JSONObject searches = trace.getJSONObject("searches");
+        assertEquals(8, searches.getInt("count"));
+        assertEquals("B8", searches.getJSONArray("slowest").getJSONObject(0).getString("building"));
+        assertEquals("S8", searches.getJSONArray("slowest").getJSONObject(0).getString("from"));
+
+        // 只保留最近的两条记录
+        for (int t = 2; t < 5; t++) {
+            tracer.beginTick();
+            tracer.endTick(t, 20_000_000);
+        }
+        JSONArray traces = tracer.toSerializable().getJSONArray("traces");
+        assertEquals(2, traces.length());
+        assertEquals(3, traces.getJSONObject(0).getInt("timeStep"));
+        assertEquals(4, tracer.getSlowTicks());
+        assertThrows(IllegalArgumentException.class, () -> new TickTracer(0, 1));
+    }
+
+    @Test
+    public void testSimulationReportsBuildingsOfSlowTicks() throws Exception {
+        BasicSimulation sim = new SessionManager()
+                .createFromFile("t", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+        sim.setTickTracer(new TickTracer(1, TickTracer.DEFAULT_CAPACITY));
+        sim.processCommand("request 'door' from 'Fdoor'");
+        sim.step(3);
+
+        JSONArray traces = sim.getTickTracer().toSerializable().getJSONArray("traces");
+        assertEquals(3, traces.length());
+        assertEquals(TickTracer.TOP, traces.getJSONObject(0).getJSONArray("buildings").length());
+        sim.setTickTracer(null);
+        sim.step(1);
+    }
+}
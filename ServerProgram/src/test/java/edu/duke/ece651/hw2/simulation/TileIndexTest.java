@@ -0,0 +1,59 @@
+package edu.duke.ece651.hw2.simulation;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TileIndexTest {
+    @Test
+    public void testQueryOnlyReturnsCellsInsideRegion() {
+        TileIndex index = new TileIndex();
+        index.update(new Coordinate(1, 1), true, 1);
+        index.update(new Coordinate(15, 3), true, 2);
+        index.update(new Coordinate(16, 3), true, 3);
+        index.update(new Coordinate(-1, 40), true, 4);
+
+        assertEquals(List.of(new Coordinate(15, 3), new Coordinate(16, 3)), index.query(2, 0, 20, 10));
+        assertEquals(List.of(new Coordinate(-1, 40)), index.query(-5, 33, 0, 41));
+        assertTrue(index.query(5, 5, 5, 9).isEmpty());
+
+        index.update(new Coordinate(15, 3), false, 5);
+        assertEquals(List.of(new Coordinate(16, 3)), index.query(2, 0, 20, 10));
+    }
+
+    @Test
+    public void testTileVersionsTrackChanges() {
+        TileIndex index = new TileIndex();
+        assertEquals(0, index.getTileVersion(0, 0));
+        index.update(new Coordinate(3, 3), true, 7);
+        index.update(new Coordinate(20, 3), true, 8);
+        assertEquals(7, index.getTileVersion(0, 0));
+        assertEquals(8, index.getTileVersion(1, 0));
+        assertEquals(7, index.getRegionVersion(0, 0, 16, 16));
+        assertEquals(8, index.getRegionVersion(0, 0, 17, 16));
+
+        // 删除后瓦片为空，但版本号仍然前进
+        index.update(new Coordinate(3, 3), false, 9);
+        assertEquals(9, index.getTileVersion(0, 0));
+        index.clear(10);
+        assertEquals(10, index.getTileVersion(1, 0));
+        assertTrue(index.query(0, 0, 50, 50).isEmpty());
+    }
+
+    @Test
+    public void testRoadMapKeepsIndexInSync() {
+        RoadMap map = new RoadMap();
+        FactoryBuilding a = new FactoryBuilding("a", new BuildingType("t", List.of()), List.of());
+        a.setLocation(new Coordinate(2, 2));
+        map.addBuilding(a);
+        long version = map.getVersion();
+        assertEquals(List.of(new Coordinate(2, 2)), map.getTileIndex().query(0, 0, 16, 16));
+
+        map.removeBuilding(new Coordinate(2, 2));
+        assertTrue(map.getVersion() > version);
+        assertTrue(map.getTileIndex().query(0, 0, 16, 16).isEmpty());
+    }
+}
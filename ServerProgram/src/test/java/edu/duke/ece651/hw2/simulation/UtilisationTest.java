@@ -0,0 +1,58 @@
+package edu.duke.ece651.hw2.simulation;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for Utilisation.
+ */
+public class UtilisationTest {
+    @Test
+    public void testWindowDropsOldestSteps() {
+        Utilisation u = new Utilisation(3);
+        assertNull(u.getLastState());
+        assertEquals(0, u.getUtilisation());
+
+        u.record(Utilisation.State.BUSY);
+        u.record(Utilisation.State.BUSY);
+        u.record(Utilisation.State.STARVED);
+        u.record(Utilisation.State.IDLE);
+        u.record(Utilisation.State.BLOCKED);
+
+        assertEquals(5, u.getTotalTicks());
+        assertEquals(2, u.getTicks(Utilisation.State.BUSY));
+        assertEquals(0.4, u.getUtilisation(), 1e-9);
+        // 窗口只剩最近三步：STARVED, IDLE, BLOCKED
+        assertEquals(0, u.getRecentTicks(Utilisation.State.BUSY));
+        assertEquals(1, u.getRecentTicks(Utilisation.State.STARVED));
+        assertEquals(0, u.getRecentUtilisation());
+        assertEquals(Utilisation.State.BLOCKED, u.getLastState());
+
+        JSONObject json = u.toSerializable();
+        assertEquals(2, json.getLong("busy"));
+        assertEquals("blocked", json.getString("last"));
+        assertEquals(3, json.getJSONObject("recent").getInt("steps"));
+        assertEquals(1, json.getJSONObject("recent").getInt("idle"));
+    }
+
+    @Test
+    public void testBuildingsAreClassifiedEachStep() throws Exception {
+        BasicSimulation sim = new SessionManager()
+                .createFromFile("u", "src/test/resources/inputs/phase_demo.json", false).call(s -> s);
+        sim.step(1);
+        JSONObject idle = sim.utilisationToSerializable().getJSONObject("Fdoor");
+        assertEquals(1, idle.getLong("idle"));
+
+        sim.processCommand("request 'door' from 'Fdoor'");
+        sim.step(1);
+        // 门厂刚收到请求，原料尚未送达
+        JSONObject door = sim.utilisationToSerializable().getJSONObject("Fdoor");
+        assertEquals("starved", door.getString("last"));
+        assertEquals(2, door.getJSONObject("recent").getInt("steps"));
+        assertTrue(sim.toSerializable().getJSONObject("utilisation").has("Fdoor"));
+    }
+}